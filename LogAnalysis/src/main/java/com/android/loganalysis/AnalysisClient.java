@@ -0,0 +1,299 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.AnalysisServer.LogType;
+import com.android.loganalysis.util.config.ArgsOptionParser;
+import com.android.loganalysis.util.config.ConfigurationException;
+import com.android.loganalysis.util.config.Option;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A client for an {@link AnalysisServer}, and a command line tool which sends a log to the server
+ * and prints the output, in the same format as {@link LogAnalyzer}.
+ */
+public class AnalysisClient {
+
+    @Option(name="port", description="The loopback port of the server")
+    private int mPort = AnalysisServer.DEFAULT_PORT;
+
+    @Option(name="bugreport", description="The path to the bugreport")
+    private String mBugreportPath = null;
+
+    @Option(name="logcat", description="The path to the logcat")
+    private String mLogcatPath = null;
+
+    @Option(name="kernel-log", description="The path to the kernel log")
+    private String mKernelLogPath = null;
+
+    @Option(name="traces", description="The path to the traces file")
+    private String mTracesPath = null;
+
+    @Option(name="stream", description="Send the content of the log to the server instead of " +
+            "its path, for a server which cannot read the file or has no --file-root")
+    private boolean mStream = false;
+
+    @Option(name="health", description="Print the health of the server")
+    private boolean mHealth = false;
+
+    @Option(name="metrics", description="Print the metrics of the server")
+    private boolean mMetrics = false;
+
+    /**
+     * Constructor for the command line tool.
+     */
+    AnalysisClient() {
+    }
+
+    /**
+     * Constructor for {@link AnalysisClient}.
+     *
+     * @param port the loopback port of the server.
+     */
+    public AnalysisClient(int port) {
+        mPort = port;
+    }
+
+    /**
+     * Get the health of the server.
+     *
+     * @throws IOException if the server could not be reached.
+     */
+    public JSONObject getHealth() throws IOException {
+        return getJson(AnalysisServer.HEALTH);
+    }
+
+    /**
+     * Get the metrics of the server.
+     *
+     * @throws IOException if the server could not be reached.
+     */
+    public JSONObject getMetrics() throws IOException {
+        return getJson(AnalysisServer.METRICS);
+    }
+
+    /**
+     * Ask the server to parse a file, which the server must be able to read and must be under its
+     * file root.
+     *
+     * @param type the {@link LogType} of the file.
+     * @param path the path to the file. A relative path is resolved against the working directory
+     * of the client.
+     * @param output the {@link Writer} for the JSON lines of the response.
+     * @throws IOException if the server could not be reached.
+     */
+    public void parseFile(LogType type, String path, Writer output) throws IOException {
+        Socket socket = connect();
+        try {
+            writeRequest(socket, String.format("%s %s %s %s", AnalysisServer.PARSE, type,
+                    AnalysisServer.FILE, new File(path).getAbsolutePath()));
+            socket.shutdownOutput();
+            copy(socket.getInputStream(), output);
+        } finally {
+            LogAnalyzer.close(socket);
+        }
+    }
+
+    /**
+     * Send the content of a log to the server to parse.
+     * <p>
+     * The content is sent on a background thread while the response is read, since the response
+     * to a traces file is streamed while the file is still being parsed.
+     * </p>
+     *
+     * @param type the {@link LogType} of the log.
+     * @param input the content of the log.
+     * @param output the {@link Writer} for the JSON lines of the response.
+     * @throws IOException if the server could not be reached.
+     */
+    public void parseStream(LogType type, final InputStream input, Writer output)
+            throws IOException {
+        final Socket socket = connect();
+        try {
+            writeRequest(socket, String.format("%s %s %s", AnalysisServer.PARSE, type,
+                    AnalysisServer.STREAM));
+            Thread sender = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        OutputStream socketOutput = socket.getOutputStream();
+                        byte[] buffer = new byte[8192];
+                        int length;
+                        while ((length = input.read(buffer)) != -1) {
+                            socketOutput.write(buffer, 0, length);
+                        }
+                        socketOutput.flush();
+                        socket.shutdownOutput();
+                    } catch (IOException e) {
+                        // The server has closed the connection, which the response will show.
+                    }
+                }
+            }, "AnalysisClient");
+            sender.start();
+            copy(socket.getInputStream(), output);
+            try {
+                sender.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        } finally {
+            LogAnalyzer.close(socket);
+        }
+    }
+
+    /**
+     * Send a request which has a single JSON object as its response.
+     */
+    private JSONObject getJson(String request) throws IOException {
+        Socket socket = connect();
+        try {
+            writeRequest(socket, request);
+            socket.shutdownOutput();
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    socket.getInputStream(), StandardCharsets.UTF_8));
+            String line = reader.readLine();
+            if (line == null) {
+                throw new IOException("The server closed the connection");
+            }
+            return new JSONObject(line);
+        } catch (JSONException e) {
+            throw new IOException("Invalid response from the server", e);
+        } finally {
+            LogAnalyzer.close(socket);
+        }
+    }
+
+    /**
+     * Connect to the server.
+     */
+    private Socket connect() throws IOException {
+        return new Socket(InetAddress.getLoopbackAddress(), mPort);
+    }
+
+    /**
+     * Write the request line.
+     */
+    private static void writeRequest(Socket socket, String request) throws IOException {
+        OutputStream output = socket.getOutputStream();
+        output.write((request + "\n").getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    /**
+     * Copy the response to the output.
+     */
+    private static void copy(InputStream input, Writer output) throws IOException {
+        InputStreamReader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        char[] buffer = new char[8192];
+        int length;
+        while ((length = reader.read(buffer)) != -1) {
+            output.write(buffer, 0, length);
+        }
+        output.flush();
+    }
+
+    /**
+     * Run the command line tool.
+     */
+    public void run(String[] args) {
+        try {
+            new ArgsOptionParser(this).parse(args);
+        } catch (ConfigurationException e) {
+            printUsage();
+            return;
+        }
+
+        LogType type = null;
+        String path = null;
+        int count = 0;
+        if (mBugreportPath != null) {
+            type = LogType.BUGREPORT;
+            path = mBugreportPath;
+            count++;
+        }
+        if (mLogcatPath != null) {
+            type = LogType.LOGCAT;
+            path = mLogcatPath;
+            count++;
+        }
+        if (mKernelLogPath != null) {
+            type = LogType.KERNEL_LOG;
+            path = mKernelLogPath;
+            count++;
+        }
+        if (mTracesPath != null) {
+            type = LogType.TRACES;
+            path = mTracesPath;
+            count++;
+        }
+        if (mHealth) count++;
+        if (mMetrics) count++;
+        if (count != 1) {
+            printUsage();
+            return;
+        }
+
+        Writer output = new OutputStreamWriter(System.out, StandardCharsets.UTF_8);
+        try {
+            if (mHealth) {
+                System.out.println(getHealth().toString());
+            } else if (mMetrics) {
+                System.out.println(getMetrics().toString());
+            } else if (mStream) {
+                InputStream input = new FileInputStream(new File(path));
+                try {
+                    parseStream(type, input, output);
+                } finally {
+                    LogAnalyzer.close(input);
+                }
+            } else {
+                parseFile(type, path, output);
+            }
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Print the usage for the command.
+     */
+    private void printUsage() {
+        System.err.println("Usage: loganalysis-client [--port PORT] [--stream] " +
+                "[--bugreport FILE|--logcat FILE|--kernel-log FILE|--traces FILE|--health|" +
+                "--metrics]");
+    }
+
+    /**
+     * Run the AnalysisClient from the command line.
+     */
+    public static void main(String[] args) {
+        new AnalysisClient().run(args);
+    }
+}
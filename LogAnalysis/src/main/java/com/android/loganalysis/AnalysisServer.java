@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.ThreadItem;
+import com.android.loganalysis.parser.BugreportParser;
+import com.android.loganalysis.parser.ITracesListener;
+import com.android.loganalysis.parser.KernelLogParser;
+import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.parser.TracesParser;
+import com.android.loganalysis.util.LockWaitGraph;
+import com.android.loganalysis.util.ParseStats;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A server which keeps its parsers loaded and parses the logs sent to it by
+ * {@link AnalysisClient}s, so that a batch of small logs does not pay for a new JVM, class loading
+ * and pattern compilation for every log.
+ * <p>
+ * The server only listens on the loopback address. Each connection carries one request, which is
+ * a line of text:
+ * </p><ul>
+ * <li>{@code HEALTH}: a JSON object with the status and uptime of the server.</li>
+ * <li>{@code METRICS}: a JSON object with the request counters of the server, and the
+ * {@code STATS} of the parsers if they are collected.</li>
+ * <li>{@code PARSE <type> FILE <path>}: parse a file under the directory set with
+ * {@link #setFileRoot(File)}. Without a root, the request gets an error, since any local user who
+ * can reach the port could otherwise read any file the server can read.</li>
+ * <li>{@code PARSE <type> STREAM}: parse the rest of the input, until the client shuts down its
+ * side of the connection.</li>
+ * </ul><p>
+ * The type is one of the {@link LogType}s. The response is one JSON object per line: the parsed
+ * log, or for traces each thread followed by the deadlocks, as printed by {@link LogAnalyzer}.
+ * Errors are returned as a JSON object with an {@code ERROR} message.
+ * </p><p>
+ * Each connection is handed off as soon as it is accepted, and its request line is read on one of
+ * up to {@link #REQUEST_THREADS} threads, which must get it within {@link #REQUEST_TIMEOUT_MS}.
+ * {@code HEALTH} and {@code METRICS} are answered on that thread, so they are answered even when
+ * the parses are queued, and clients which send nothing do not hold up the other connections.
+ * Parse requests run on a fixed number of threads with a bounded queue. A request which arrives
+ * when all the threads are busy and the queue is full gets an error instead of waiting. A failed
+ * write of a response, such as to a client which has gone away, is counted as {@link #FAILED}. The
+ * parsers are shared by all requests, so they must be configured before the server is started.
+ * </p>
+ */
+public class AnalysisServer implements Closeable {
+    /** The default port of the server. */
+    public static final int DEFAULT_PORT = 7395;
+    /** The number of requests which can wait for a thread, for each thread. */
+    static final int QUEUE_PER_THREAD = 4;
+    /** The most connections whose request lines are read at the same time. */
+    static final int REQUEST_THREADS = 32;
+    /** How long to wait for a client to send its request line. */
+    static final int REQUEST_TIMEOUT_MS = 5 * 1000;
+    /** How long to wait for a client to send the content of a log. */
+    static final int READ_TIMEOUT_MS = 60 * 1000;
+
+    public static final String HEALTH = "HEALTH";
+    public static final String METRICS = "METRICS";
+    public static final String PARSE = "PARSE";
+    public static final String FILE = "FILE";
+    public static final String STREAM = "STREAM";
+
+    public static final String ERROR = "ERROR";
+    public static final String STATUS = "STATUS";
+    public static final String UPTIME_MS = "UPTIME_MS";
+    public static final String THREADS = "THREADS";
+    public static final String REQUESTS = "REQUESTS";
+    public static final String ACTIVE = "ACTIVE";
+    public static final String QUEUED = "QUEUED";
+    public static final String FAILED = "FAILED";
+    public static final String REJECTED = "REJECTED";
+    public static final String PARSE_TIME_MS = "PARSE_TIME_MS";
+    public static final String PARSED = "PARSED";
+    public static final String STATS = "STATS";
+
+    /**
+     * The kinds of logs the server can parse.
+     */
+    public enum LogType {
+        BUGREPORT,
+        LOGCAT,
+        KERNEL_LOG,
+        TRACES;
+    }
+
+    private final BugreportParser mBugreportParser;
+    private final LogcatParser mLogcatParser;
+    private final KernelLogParser mKernelLogParser;
+    private final TracesParser mTracesParser = new TracesParser();
+    private final int mThreads;
+    private final ThreadPoolExecutor mExecutor;
+    private final ThreadPoolExecutor mRequestExecutor = new ThreadPoolExecutor(0, REQUEST_THREADS,
+            60, TimeUnit.SECONDS, new SynchronousQueue<Runnable>());
+
+    private ServerSocket mServerSocket = null;
+    private Thread mAcceptThread = null;
+    private long mStartTime = 0;
+    private ParseStats mStats = null;
+    private File mFileRoot = null;
+
+    private final AtomicLong mRequests = new AtomicLong();
+    private final AtomicLong mActive = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final AtomicLong mRejected = new AtomicLong();
+    private final AtomicLong mParseTimeMs = new AtomicLong();
+    private final AtomicLongArray mParsed = new AtomicLongArray(LogType.values().length);
+
+    /**
+     * Constructor for {@link AnalysisServer}.
+     *
+     * @param bugreportParser the parser for bugreports.
+     * @param logcatParser the parser for logcats.
+     * @param kernelLogParser the parser for kernel logs.
+     * @param threads the number of requests which are run at the same time.
+     */
+    public AnalysisServer(BugreportParser bugreportParser, LogcatParser logcatParser,
+            KernelLogParser kernelLogParser, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be positive");
+        }
+        mBugreportParser = bugreportParser;
+        mLogcatParser = logcatParser;
+        mKernelLogParser = kernelLogParser;
+        mThreads = threads;
+        mExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<Runnable>(threads * QUEUE_PER_THREAD));
+    }
+
+    /**
+     * Add the counters of the parsers to the response to a {@code METRICS} request. The
+     * {@link ParseStats} must also be set on the parsers, before the server is started.
+     *
+     * @param stats the {@link ParseStats}, or null to leave them out.
+     */
+    public void setStats(ParseStats stats) {
+        mStats = stats;
+    }
+
+    /**
+     * Allow {@code PARSE <type> FILE <path>} requests for the files under a directory. Must be
+     * called before the server is started.
+     *
+     * @param root the directory, or null to refuse all {@code FILE} requests.
+     * @throws IOException if the path of the directory could not be resolved.
+     */
+    public void setFileRoot(File root) throws IOException {
+        mFileRoot = root != null ? root.getCanonicalFile() : null;
+    }
+
+    /**
+     * Start listening on a loopback port and accepting requests in the background.
+     *
+     * @param port the port, or 0 to use any free port.
+     * @throws IOException if the port could not be opened.
+     */
+    public synchronized void start(int port) throws IOException {
+        if (mServerSocket != null) {
+            throw new IllegalStateException("The server is already started");
+        }
+        mServerSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        mStartTime = System.currentTimeMillis();
+        mAcceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptConnections();
+            }
+        }, "AnalysisServer");
+        mAcceptThread.start();
+    }
+
+    /**
+     * Get the port the server is listening on.
+     */
+    public synchronized int getPort() {
+        if (mServerSocket == null) {
+            throw new IllegalStateException("The server is not started");
+        }
+        return mServerSocket.getLocalPort();
+    }
+
+    /**
+     * Wait until the server is closed.
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread acceptThread;
+        synchronized (this) {
+            acceptThread = mAcceptThread;
+        }
+        if (acceptThread != null) {
+            acceptThread.join();
+        }
+    }
+
+    /**
+     * Stop accepting requests, and stop the requests which are running.
+     */
+    @Override
+    public synchronized void close() {
+        if (mServerSocket != null) {
+            LogAnalyzer.close(mServerSocket);
+        }
+        mRequestExecutor.shutdownNow();
+        mExecutor.shutdownNow();
+    }
+
+    /**
+     * Accept connections until the server socket is closed. Each connection is handed to a
+     * request thread at once, so that the accept loop never waits for a client.
+     */
+    private void acceptConnections() {
+        while (true) {
+            final Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (IOException e) {
+                // The server socket was closed.
+                return;
+            }
+            mRequests.incrementAndGet();
+            try {
+                mRequestExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        readRequest(socket);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                reject(socket);
+            }
+        }
+    }
+
+    /**
+     * Read the request line of a connection. {@code HEALTH} and {@code METRICS} requests are
+     * answered here, so that they do not wait behind the parses, and parse requests are queued.
+     */
+    private void readRequest(final Socket socket) {
+        final BufferedReader input;
+        final String request;
+        try {
+            socket.setSoTimeout(REQUEST_TIMEOUT_MS);
+            input = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                    StandardCharsets.UTF_8));
+            request = input.readLine();
+        } catch (IOException e) {
+            // The client did not send its request in time, or has gone away.
+            mFailed.incrementAndGet();
+            LogAnalyzer.close(socket);
+            return;
+        }
+        if (isStatusRequest(request)) {
+            writeStatus(socket, request);
+            return;
+        }
+        try {
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    handleConnection(socket, input, request);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            reject(socket);
+        }
+    }
+
+    /**
+     * Answer a connection which cannot be handled because the server is busy.
+     */
+    private void reject(Socket socket) {
+        mRejected.incrementAndGet();
+        try {
+            PrintWriter output = getWriter(socket);
+            writeJson(output, getError("The server is busy"));
+            output.flush();
+        } catch (IOException e) {
+            // Ignore
+        } finally {
+            LogAnalyzer.close(socket);
+        }
+    }
+
+    /**
+     * Returns true if a request is a {@code HEALTH} or {@code METRICS} request.
+     */
+    private static boolean isStatusRequest(String request) {
+        if (request == null) {
+            return false;
+        }
+        final String name = request.trim();
+        return HEALTH.equals(name) || METRICS.equals(name);
+    }
+
+    /**
+     * Answer a {@code HEALTH} or {@code METRICS} request. It is not counted as active.
+     */
+    private void writeStatus(Socket socket, String request) {
+        try {
+            PrintWriter output = getWriter(socket);
+            writeJson(output, HEALTH.equals(request.trim()) ? getHealth() : getMetrics());
+            checkWritten(output);
+        } catch (IOException e) {
+            // The client has gone away.
+            mFailed.incrementAndGet();
+        } finally {
+            LogAnalyzer.close(socket);
+        }
+    }
+
+    /**
+     * Run the request of a connection and write the response. Any failure of the request is
+     * returned to the client as an error.
+     */
+    private void handleConnection(Socket socket, BufferedReader input, String request) {
+        mActive.incrementAndGet();
+        try {
+            socket.setSoTimeout(READ_TIMEOUT_MS);
+            PrintWriter output = getWriter(socket);
+            try {
+                handleRequest(request, input, output);
+            } catch (IllegalArgumentException e) {
+                mFailed.incrementAndGet();
+                writeJson(output, getError(e.getMessage()));
+            } catch (RuntimeException e) {
+                // A parser failed on the log.
+                mFailed.incrementAndGet();
+                writeJson(output, getError("Failed to parse the log: " + e));
+            } catch (IOException e) {
+                mFailed.incrementAndGet();
+                writeJson(output, getError(e.getMessage()));
+            }
+            checkWritten(output);
+        } catch (IOException e) {
+            // The client has gone away.
+            mFailed.incrementAndGet();
+        } finally {
+            mActive.decrementAndGet();
+            LogAnalyzer.close(socket);
+        }
+    }
+
+    /**
+     * Run a request.
+     *
+     * @param request the first line of the request.
+     * @param input the rest of the request.
+     * @param output the writer for the response.
+     * @throws IllegalArgumentException if the request is not valid, or asks for a file outside the
+     * file root.
+     * @throws IOException if the log could not be read.
+     */
+    void handleRequest(String request, BufferedReader input, PrintWriter output)
+            throws IOException {
+        if (request == null) {
+            throw new IllegalArgumentException("Empty request");
+        }
+        String[] tokens = request.trim().split(" ", 4);
+        if (HEALTH.equals(tokens[0]) && tokens.length == 1) {
+            writeJson(output, getHealth());
+            return;
+        }
+        if (METRICS.equals(tokens[0]) && tokens.length == 1) {
+            writeJson(output, getMetrics());
+            return;
+        }
+        if (!PARSE.equals(tokens[0]) || tokens.length < 3) {
+            throw new IllegalArgumentException("Invalid request: " + request);
+        }
+        final LogType type = getLogType(tokens[1]);
+        if (FILE.equals(tokens[2]) && tokens.length == 4) {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                    new FileInputStream(getFile(tokens[3])), StandardCharsets.UTF_8));
+            try {
+                parse(type, reader, output);
+            } finally {
+                LogAnalyzer.close(reader);
+            }
+        } else if (STREAM.equals(tokens[2]) && tokens.length == 3) {
+            parse(type, input, output);
+        } else {
+            throw new IllegalArgumentException("Invalid request: " + request);
+        }
+    }
+
+    /**
+     * Get the file of a {@code FILE} request, which must be under the file root. The path is
+     * resolved first, so that {@code ..} and links cannot leave the root.
+     *
+     * @throws IllegalArgumentException if there is no file root, or the file is outside it.
+     * @throws IOException if the path could not be resolved.
+     */
+    private File getFile(String path) throws IOException {
+        if (mFileRoot == null) {
+            throw new IllegalArgumentException("FILE requests are not enabled on this server");
+        }
+        final File file = new File(path).getCanonicalFile();
+        for (File parent = file.getParentFile(); parent != null;
+                parent = parent.getParentFile()) {
+            if (parent.equals(mFileRoot)) {
+                return file;
+            }
+        }
+        throw new IllegalArgumentException("The file is outside the file root: " + path);
+    }
+
+    /**
+     * Parse a log and write it as JSON.
+     */
+    private void parse(LogType type, BufferedReader input, final PrintWriter output)
+            throws IOException {
+        final long start = System.currentTimeMillis();
+        switch (type) {
+            case BUGREPORT:
+                writeJson(output, mBugreportParser.parse(input));
+                break;
+            case LOGCAT:
+                writeJson(output, mLogcatParser.parse(input));
+                break;
+            case KERNEL_LOG:
+                writeJson(output, mKernelLogParser.parse(input));
+                break;
+            case TRACES:
+                LockWaitGraph graph = mTracesParser.parseThreads(input, new ITracesListener() {
+                    @Override
+                    public void onThread(ThreadItem thread) {
+                        writeJson(output, thread);
+                    }
+                });
+                writeJson(output, LogAnalyzer.getDeadlocks(graph));
+                break;
+        }
+        mParseTimeMs.addAndGet(System.currentTimeMillis() - start);
+        mParsed.incrementAndGet(type.ordinal());
+    }
+
+    /**
+     * Get the {@link LogType} of a request.
+     *
+     * @throws IllegalArgumentException if the type is not known.
+     */
+    private static LogType getLogType(String name) {
+        try {
+            return LogType.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown log type: " + name);
+        }
+    }
+
+    /**
+     * Get the response to a {@code HEALTH} request.
+     */
+    JSONObject getHealth() {
+        JSONObject health = new JSONObject();
+        try {
+            health.put(STATUS, mExecutor.isShutdown() ? "STOPPING" : "OK");
+            health.put(UPTIME_MS, System.currentTimeMillis() - mStartTime);
+            health.put(THREADS, mThreads);
+            health.put(ACTIVE, mActive.get());
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return health;
+    }
+
+    /**
+     * Get the response to a {@code METRICS} request.
+     */
+    JSONObject getMetrics() {
+        JSONObject metrics = new JSONObject();
+        try {
+            metrics.put(REQUESTS, mRequests.get());
+            metrics.put(ACTIVE, mActive.get());
+            metrics.put(QUEUED, mExecutor.getQueue().size());
+            metrics.put(FAILED, mFailed.get());
+            metrics.put(REJECTED, mRejected.get());
+            metrics.put(PARSE_TIME_MS, mParseTimeMs.get());
+            JSONObject parsed = new JSONObject();
+            for (LogType type : LogType.values()) {
+                parsed.put(type.name(), mParsed.get(type.ordinal()));
+            }
+            metrics.put(PARSED, parsed);
+            if (mStats != null) {
+                metrics.put(STATS, mStats.toJson());
+            }
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return metrics;
+    }
+
+    /**
+     * Get a JSON object with an error message.
+     */
+    private static JSONObject getError(String message) {
+        JSONObject error = new JSONObject();
+        try {
+            error.put(ERROR, message != null ? message : "Unknown error");
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return error;
+    }
+
+    /**
+     * Flush a response, and check that all of it was written, since a {@link PrintWriter} does
+     * not throw when a write fails.
+     *
+     * @throws IOException if the response could not be written.
+     */
+    private static void checkWritten(PrintWriter output) throws IOException {
+        if (output.checkError()) {
+            throw new IOException("The response could not be written");
+        }
+    }
+
+    /**
+     * Get a UTF-8 writer for a socket.
+     */
+    private static PrintWriter getWriter(Socket socket) throws IOException {
+        return new PrintWriter(new OutputStreamWriter(socket.getOutputStream(),
+                StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Write an {@link IItem} as a line of JSON, or an empty object if there is no item.
+     */
+    private static void writeJson(PrintWriter output, IItem item) {
+        writeJson(output, item != null ? item.toJson() : null);
+    }
+
+    /**
+     * Write a JSON object as a line, or an empty object if it is null.
+     */
+    private static void writeJson(PrintWriter output, JSONObject json) {
+        output.print(json != null ? json.toString() : new JSONObject().toString());
+        output.print('\n');
+    }
+}
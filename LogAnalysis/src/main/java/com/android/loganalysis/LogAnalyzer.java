@@ -16,23 +16,65 @@
 package com.android.loganalysis;
 
 import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.EventTimeline;
 import com.android.loganalysis.item.IItem;
 import com.android.loganalysis.item.KernelLogItem;
 import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.item.MemInfoItem;
+import com.android.loganalysis.item.MiscLogcatItem;
+import com.android.loganalysis.item.ThreadItem;
 import com.android.loganalysis.parser.BugreportParser;
+import com.android.loganalysis.parser.ITracesListener;
 import com.android.loganalysis.parser.KernelLogParser;
+import com.android.loganalysis.parser.LogCheckpoint;
+import com.android.loganalysis.parser.LogcatIndex;
+import com.android.loganalysis.parser.LogcatLineIndex;
+import com.android.loganalysis.parser.LogcatMerger;
 import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.parser.TextRetention;
+import com.android.loganalysis.parser.TracesParser;
+import com.android.loganalysis.util.LockWaitGraph;
+import com.android.loganalysis.util.LogTailUtil;
+import com.android.loganalysis.util.ParsePhase;
+import com.android.loganalysis.util.ParseStats;
 import com.android.loganalysis.util.config.ArgsOptionParser;
 import com.android.loganalysis.util.config.ConfigurationException;
 import com.android.loganalysis.util.config.Option;
+import org.json.JSONArray;
+import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 /**
- * A command line tool to parse a bugreport, logcat, or kernel log file and return the output.
+ * A command line tool to parse a bugreport, logcat, kernel log, or traces file and return the
+ * output.
  */
 public class LogAnalyzer {
+    /** Constants for JSON output of a query. */
+    public static final String QUERY = "QUERY";
+    public static final String COUNT = "COUNT";
+    public static final String LINES = "LINES";
+    /** Constants for JSON output of the correlations of a bugreport. */
+    public static final String CORRELATIONS = "CORRELATIONS";
+    public static final String NEARBY = "NEARBY";
+
+    /** The bugreport sections which keep their raw text. */
+    private static final Set<String> TEXT_SECTIONS = new HashSet<String>(Arrays.asList(
+            BugreportItem.MEM_INFO, BugreportItem.PROCRANK, BugreportItem.TOP,
+            BugreportItem.SYSTEM_PROPS));
+
+    /** The optional fields which can be set with {@code --fields}. */
+    private static final Set<String> FIELDS = new HashSet<String>(Arrays.asList(
+            MiscLogcatItem.LAST_PREAMBLE, MiscLogcatItem.PROCESS_PREAMBLE, MiscLogcatItem.STACK,
+            MemInfoItem.TEXT));
 
     private enum OutputFormat{
         // TODO: Add text output support.
@@ -42,15 +84,77 @@ public class LogAnalyzer {
     @Option(name="bugreport", description="The path to the bugreport")
     private String mBugreportPath = null;
 
-    @Option(name="logcat", description="The path to the logcat")
-    private String mLogcatPath = null;
+    @Option(name="logcat", description="The path to the logcat. Can be repeated for rotated " +
+            "logcats or the dumps of several buffers, which are merged by time")
+    private List<String> mLogcatPaths = new ArrayList<String>();
 
     @Option(name="kernel-log", description="The path to the kernel log")
     private String mKernelLogPath = null;
 
+    @Option(name="traces", description="The path to the traces file")
+    private String mTracesPath = null;
+
     @Option(name="output", description="The output format, currently only JSON")
     private OutputFormat mOutputFormat = OutputFormat.JSON;
 
+    @Option(name="text-retention", description="How the raw text of a bugreport section is " +
+            "kept: NONE, LAZY or FULL. Keyed by section: MEM_INFO, PROCRANK, TOP or SYSTEM_PROPS")
+    private Map<String, TextRetention> mTextRetention = new HashMap<String, TextRetention>();
+
+    @Option(name="fields", description="The optional fields to compute and output: " +
+            "LAST_PREAMBLE, PROCESS_PREAMBLE, STACK or TEXT. Defaults to all fields")
+    private Set<String> mFields = new HashSet<String>();
+
+    @Option(name="kernel-rules", description="The path to a pack of kernel log rules, with " +
+            "a category and a regular expression on each line")
+    private List<String> mKernelRulePaths = new ArrayList<String>();
+
+    @Option(name="server", description="Run as a server which parses the logs sent by " +
+            "clients on a loopback port")
+    private boolean mServer = false;
+
+    @Option(name="port", description="The loopback port of the server")
+    private int mPort = AnalysisServer.DEFAULT_PORT;
+
+    @Option(name="file-root", description="Let clients of the server send the path of a log " +
+            "under this directory instead of its content. Defaults to no paths")
+    private String mFileRoot = null;
+
+    @Option(name="threads", description="The number of logs the server parses at once. " +
+            "Defaults to the number of processors")
+    private int mThreads = Runtime.getRuntime().availableProcessors();
+
+    @Option(name="stats", description="Collect the counters of the parsers, sections and " +
+            "rules, and print them as a separate JSON object after the log, or add them to the " +
+            "metrics of the server")
+    private boolean mStats = false;
+
+    @Option(name="since", description="Only parse the part of the logcat from this time, as " +
+            "MM-dd HH:mm:ss[.SSS]. The logcat is read from an index of its timestamps, which is " +
+            "saved next to it")
+    private String mSince = null;
+
+    @Option(name="until", description="Only parse the part of the logcat up to this time, as " +
+            "MM-dd HH:mm:ss[.SSS]")
+    private String mUntil = null;
+
+    @Option(name="query", description="Print the lines of the logcat which match a query, such " +
+            "as 'tag:ActivityManager AND (anr OR level:E) NOT pid:123'. The query is answered " +
+            "from an index of the lines, which is saved next to the logcat")
+    private String mQuery = null;
+
+    @Option(name="correlate", description="Print the events of all the logs of the bugreport " +
+            "within this many seconds of each ANR and crash, as a separate JSON object after " +
+            "the bugreport")
+    private double mCorrelateSeconds = 0;
+
+    @Option(name="resume", description="Resume the parse of a logcat or kernel log which is " +
+            "appended to from a checkpoint, which is saved next to it, so that only the lines " +
+            "appended since the last parse are read")
+    private boolean mResume = false;
+
+    private final ParseStats mParseStats = new ParseStats();
+
     /**
      * Run the command line tool
      */
@@ -69,30 +173,105 @@ public class LogAnalyzer {
 
         BufferedReader reader = null;
         try {
+            if (mServer) {
+                runServer();
+                return;
+            }
+
             if (mBugreportPath != null) {
                 reader = getBufferedReader(mBugreportPath);
-                BugreportItem bugreport = new BugreportParser().parse(reader);
+                BugreportItem bugreport = createBugreportParser().parse(reader);
                 printBugreport(bugreport);
+                printCorrelations(bugreport);
+                printStats();
                 return;
             }
 
-            if (mLogcatPath != null) {
-                reader = getBufferedReader(mLogcatPath);
-                LogcatItem logcat = new LogcatParser().parse(reader);
+            final long since = mSince != null ? LogcatIndex.parseTime(mSince, false)
+                    : Long.MIN_VALUE;
+            final long until = mUntil != null ? LogcatIndex.parseTime(mUntil, true)
+                    : Long.MAX_VALUE;
+
+            if (mLogcatPaths.size() == 1 && mQuery != null) {
+                LogcatLineIndex index = LogcatLineIndex.getIndex(new File(mLogcatPaths.get(0)),
+                        createLogcatParser());
+                printQuery(index.query(mQuery, since, until));
+                printStats();
+                return;
+            }
+
+            if (mLogcatPaths.size() == 1 && (mSince != null || mUntil != null)) {
+                File file = new File(mLogcatPaths.get(0));
+                // Start early enough for the preambles of the first events in the range.
+                reader = LogcatIndex.getIndex(file).open(file, since, until,
+                        LogTailUtil.DEFAULT_MAX_BUFFER_SIZE);
+                LogcatItem logcat = createLogcatParser().parse(reader, since, until);
                 printLogcat(logcat);
+                printStats();
+                return;
+            }
+
+            if (mLogcatPaths.size() == 1 && mResume) {
+                File file = new File(mLogcatPaths.get(0));
+                LogcatItem logcat = createLogcatParser().parse(file,
+                        LogCheckpoint.getCheckpointFile(file));
+                printLogcat(logcat);
+                printStats();
+                return;
+            }
+
+            if (mLogcatPaths.size() == 1) {
+                reader = getBufferedReader(mLogcatPaths.get(0));
+                LogcatItem logcat = createLogcatParser().parse(reader);
+                printLogcat(logcat);
+                printStats();
+                return;
+            }
+
+            if (!mLogcatPaths.isEmpty()) {
+                List<File> files = new ArrayList<File>();
+                for (String path : mLogcatPaths) {
+                    files.add(new File(path));
+                }
+                reader = new LogcatMerger(files).open();
+                LogcatItem logcat = createLogcatParser().parse(reader, since, until);
+                printLogcat(logcat);
+                printStats();
+                return;
+            }
+
+            if (mKernelLogPath != null && mResume) {
+                File file = new File(mKernelLogPath);
+                KernelLogItem kernelLog = createKernelLogParser().parse(file,
+                        LogCheckpoint.getCheckpointFile(file));
+                printKernelLog(kernelLog);
+                printStats();
                 return;
             }
 
             if (mKernelLogPath != null) {
                 reader = getBufferedReader(mKernelLogPath);
-                KernelLogItem kernelLog = new KernelLogParser().parse(reader);
+                KernelLogItem kernelLog = createKernelLogParser().parse(reader);
                 printKernelLog(kernelLog);
+                printStats();
+                return;
+            }
+
+            if (mTracesPath != null) {
+                reader = getBufferedReader(mTracesPath);
+                printTraces(reader);
                 return;
             }
         } catch (FileNotFoundException e) {
             System.err.println(e.getMessage());
         } catch (IOException e) {
             System.err.println(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            // An invalid kernel rule pack, server thread count or time.
+            System.err.println(e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
         } finally {
             close(reader);
         }
@@ -101,6 +280,82 @@ public class LogAnalyzer {
         printUsage();
     }
 
+    /**
+     * Create a {@link BugreportParser} configured with the command line options.
+     */
+    private BugreportParser createBugreportParser() throws IOException {
+        BugreportParser parser = new BugreportParser();
+        parser.setFields(getFields());
+        for (String path : mKernelRulePaths) {
+            parser.addKernelRules(readLines(path));
+        }
+        for (Map.Entry<String, TextRetention> entry : mTextRetention.entrySet()) {
+            parser.setTextRetention(entry.getKey(), entry.getValue());
+        }
+        if (mStats) {
+            parser.setStats(mParseStats);
+        }
+        return parser;
+    }
+
+    /**
+     * Create a {@link LogcatParser} configured with the command line options.
+     */
+    private LogcatParser createLogcatParser() {
+        LogcatParser parser = new LogcatParser();
+        parser.setFields(getFields());
+        if (mStats) {
+            parser.setStats(mParseStats);
+        }
+        return parser;
+    }
+
+    /**
+     * Create a {@link KernelLogParser} configured with the command line options.
+     */
+    private KernelLogParser createKernelLogParser() throws IOException {
+        KernelLogParser parser = new KernelLogParser();
+        parser.setFields(getFields());
+        for (String path : mKernelRulePaths) {
+            parser.addRules(readLines(path));
+        }
+        if (mStats) {
+            parser.setStats(mParseStats);
+        }
+        return parser;
+    }
+
+    /**
+     * Run an {@link AnalysisServer} with parsers configured with the command line options, until
+     * the process is stopped.
+     */
+    private void runServer() throws IOException, InterruptedException {
+        final AnalysisServer server = new AnalysisServer(createBugreportParser(),
+                createLogcatParser(), createKernelLogParser(), mThreads);
+        if (mStats) {
+            server.setStats(mParseStats);
+        }
+        if (mFileRoot != null) {
+            server.setFileRoot(new File(mFileRoot));
+        }
+        server.start(mPort);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            @Override
+            public void run() {
+                server.close();
+            }
+        });
+        System.err.println(String.format("Listening on port %d", server.getPort()));
+        server.awaitTermination();
+    }
+
+    /**
+     * Get the optional fields to compute, or null if all fields should be computed.
+     */
+    private Set<String> getFields() {
+        return mFields.isEmpty() ? null : mFields;
+    }
+
     /**
      * Print the bugreport to stdout.
      */
@@ -111,6 +366,50 @@ public class LogAnalyzer {
         // TODO: Print bugreport in human readable form.
     }
 
+    /**
+     * Print the events of the bugreport near each ANR and crash of the system log to stdout, if
+     * the correlation window is set.
+     */
+    private void printCorrelations(BugreportItem bugreport) {
+        if (mCorrelateSeconds <= 0 || !OutputFormat.JSON.equals(mOutputFormat)) {
+            return;
+        }
+        final long windowMs = (long) (mCorrelateSeconds * 1000);
+        JSONArray correlations = new JSONArray();
+        EventTimeline timeline = bugreport != null ? bugreport.getTimeline() : null;
+        if (timeline != null && bugreport.getSystemLog() != null) {
+            List<MiscLogcatItem> events = new ArrayList<MiscLogcatItem>();
+            events.addAll(bugreport.getSystemLog().getAnrs());
+            events.addAll(bugreport.getSystemLog().getJavaCrashes());
+            events.addAll(bugreport.getSystemLog().getNativeCrashes());
+            for (MiscLogcatItem event : events) {
+                List<EventTimeline.Event> nearby = timeline.getEventsNear(event, windowMs);
+                if (nearby == null) {
+                    continue;
+                }
+                JSONObject correlation = new JSONObject();
+                JSONArray nearbyJson = new JSONArray();
+                for (EventTimeline.Event near : nearby) {
+                    nearbyJson.put(near.toJson());
+                }
+                try {
+                    correlation.put(EventTimeline.EVENT, timeline.getEvent(event).toJson());
+                    correlation.put(NEARBY, nearbyJson);
+                } catch (JSONException e) {
+                    // Ignore
+                }
+                correlations.put(correlation);
+            }
+        }
+        JSONObject output = new JSONObject();
+        try {
+            output.put(CORRELATIONS, correlations);
+        } catch (JSONException e) {
+            // Ignore
+        }
+        System.out.println(output.toString());
+    }
+
     /**
      * Print the logcat to stdout.
      */
@@ -132,14 +431,96 @@ public class LogAnalyzer {
     }
 
     /**
-     * Print an {@link IItem} to stdout.
+     * Stream the threads of a traces file to stdout, one JSON object per line, followed by a JSON
+     * object with the deadlocks found in each process.
      */
-    private void printJson(IItem item) {
-        if (item != null && item.toJson() != null) {
-            System.out.println(item.toJson().toString());
-        } else {
-            System.out.println(new JSONObject().toString());
+    private void printTraces(BufferedReader reader) throws IOException {
+        LockWaitGraph graph = new TracesParser().parseThreads(reader, new ITracesListener() {
+            @Override
+            public void onThread(ThreadItem thread) {
+                printJson(thread);
+            }
+        });
+        System.out.println(getDeadlocks(graph).toString());
+    }
+
+    /**
+     * Get a JSON object with the deadlocks found in each process of a traces file.
+     */
+    static JSONObject getDeadlocks(LockWaitGraph graph) {
+        JSONObject deadlocks = new JSONObject();
+        JSONObject output = new JSONObject();
+        try {
+            for (Integer pid : graph.getPids()) {
+                List<List<Integer>> cycles = graph.getDeadlocks(pid);
+                if (!cycles.isEmpty()) {
+                    deadlocks.put(pid.toString(), cycles);
+                }
+            }
+            output.put("DEADLOCKS", deadlocks);
+        } catch (JSONException e) {
+            // Ignore
         }
+        return output;
+    }
+
+    /**
+     * Print the counters of the parsers to stdout, as a JSON object with the {@code STATS}, if
+     * they were collected.
+     */
+    private void printStats() {
+        if (mStats && OutputFormat.JSON.equals(mOutputFormat)) {
+            System.out.println(getStats(mParseStats).toString());
+        }
+    }
+
+    /**
+     * Print the lines which match a query to stdout, as a JSON object with their count and their
+     * line numbers, starting at 1.
+     */
+    private void printQuery(int[] lines) {
+        if (!OutputFormat.JSON.equals(mOutputFormat)) {
+            return;
+        }
+        JSONObject output = new JSONObject();
+        try {
+            output.put(QUERY, mQuery);
+            output.put(COUNT, lines.length);
+            JSONArray numbers = new JSONArray();
+            for (int line : lines) {
+                numbers.put(line + 1);
+            }
+            output.put(LINES, numbers);
+        } catch (JSONException e) {
+            // Ignore
+        }
+        System.out.println(output.toString());
+    }
+
+    /**
+     * Get a JSON object with the counters of the parsers.
+     */
+    static JSONObject getStats(ParseStats stats) {
+        JSONObject output = new JSONObject();
+        try {
+            output.put(AnalysisServer.STATS, stats.toJson());
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return output;
+    }
+
+    /**
+     * Print an {@link IItem} to stdout. The serialization is recorded as a
+     * {@link ParsePhase.Kind#SERIALIZATION} phase.
+     */
+    private void printJson(IItem item) {
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SERIALIZATION);
+        JSONObject json = item != null ? item.toJson() : null;
+        String output = (json != null ? json : new JSONObject()).toString();
+        phase.end(null, item != null ? item.getClass().getSimpleName() : null, 1,
+                output.length());
+        System.out.println(output);
     }
 
     /**
@@ -152,10 +533,27 @@ public class LogAnalyzer {
         return new BufferedReader(new FileReader(new File(filepath)));
     }
 
+    /**
+     * Read all the lines of a file.
+     */
+    private List<String> readLines(String filepath) throws IOException {
+        BufferedReader reader = getBufferedReader(filepath);
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            close(reader);
+        }
+    }
+
     /**
      * Helper to close a {@link Closeable}.
      */
-    private void close(Closeable closeable) {
+    static void close(Closeable closeable) {
         if (closeable != null) {
             try {
                 closeable.close();
@@ -179,19 +577,67 @@ public class LogAnalyzer {
      * @return true if they are valid, false if they are not.
      */
     private boolean checkPreconditions() {
-        // Check to see that exactly one log is set.
+        // Check to see that exactly one log is set, or none for the server.
         int logCount = 0;
         if (mBugreportPath != null) logCount++;
-        if (mLogcatPath != null) logCount++;
+        if (!mLogcatPaths.isEmpty()) logCount++;
         if (mKernelLogPath != null) logCount++;
-        return (logCount == 1);
+        if (mTracesPath != null) logCount++;
+        if (logCount != (mServer ? 0 : 1)) {
+            return false;
+        }
+
+        // Check that a time range or query is only set for a logcat, and a query for one file.
+        if ((mSince != null || mUntil != null || mQuery != null) && mLogcatPaths.isEmpty()) {
+            System.err.println("--since, --until and --query are only supported with --logcat");
+            return false;
+        }
+        if (mCorrelateSeconds > 0 && mBugreportPath == null) {
+            System.err.println("--correlate is only supported with --bugreport");
+            return false;
+        }
+        if (mQuery != null && mLogcatPaths.size() > 1) {
+            System.err.println("--query is only supported with a single --logcat");
+            return false;
+        }
+        if (mResume && (mLogcatPaths.size() > 1 || mBugreportPath != null || mTracesPath != null
+                || mSince != null || mUntil != null || mQuery != null)) {
+            System.err.println("--resume is only supported with a single --logcat or " +
+                    "--kernel-log, without --since, --until or --query");
+            return false;
+        }
+
+        // Check that the text retention is only set for sections which keep their raw text.
+        for (String section : mTextRetention.keySet()) {
+            if (!TEXT_SECTIONS.contains(section)) {
+                System.err.println(String.format("Section %s does not keep its raw text",
+                        section));
+                return false;
+            }
+        }
+
+        // Check that only the known optional fields are set.
+        for (String field : mFields) {
+            if (!FIELDS.contains(field)) {
+                System.err.println(String.format("Field %s is not an optional field", field));
+                return false;
+            }
+        }
+        return true;
     }
 
     /**
      * Print the usage for the command.
      */
     private void printUsage() {
-        System.err.println("Usage: loganalysis [--bugreport FILE|--logcat FILE|--kernel-log FILE]");
+        System.err.println("Usage: loganalysis [--bugreport FILE|--logcat FILE|--kernel-log FILE|" +
+                "--traces FILE] [--text-retention SECTION NONE|LAZY|FULL] [--fields FIELD]... " +
+                "[--kernel-rules FILE]... [--correlate SECONDS] [--resume] [--stats]");
+        System.err.println("       loganalysis --logcat FILE... [--since TIME] [--until TIME] " +
+                "[--query QUERY] [--fields FIELD]... [--stats]");
+        System.err.println("       loganalysis --server [--port PORT] [--threads COUNT] " +
+                "[--file-root DIR] [--text-retention SECTION NONE|LAZY|FULL] [--fields FIELD]... " +
+                "[--kernel-rules FILE]... [--stats]");
     }
 
     /**
@@ -16,9 +16,15 @@
 package com.android.loganalysis.item;
 
 import com.android.loganalysis.parser.LogcatParser;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -50,6 +56,8 @@ public class AnrItem extends MiscLogcatItem {
     public static final String REASON = "REASON";
     /** Constant for JSON output */
     public static final String TRACE = "TRACE";
+    /** Constant for JSON output */
+    public static final String PROCESS_CPU_USAGE = "PROCESS_CPU_USAGE";
 
     private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
         CpuUsageCategory.TOTAL.toString(),
@@ -59,7 +67,7 @@ public class AnrItem extends MiscLogcatItem {
         LoadCategory.LOAD_1.toString(),
         LoadCategory.LOAD_5.toString(),
         LoadCategory.LOAD_15.toString(),
-        ACTIVITY, REASON, TRACE));
+        ACTIVITY, REASON, TRACE, PROCESS_CPU_USAGE));
 
     /**
      * The constructor for {@link AnrItem}.
@@ -138,4 +146,51 @@ public class AnrItem extends MiscLogcatItem {
     public void setTrace(String trace) {
         setAttribute(TRACE, trace);
     }
+
+    /**
+     * Get the CPU usage of each process from the first CPU usage report of the ANR.
+     */
+    @SuppressWarnings("unchecked")
+    public List<ProcessCpuUsageItem> getProcessCpuUsage() {
+        List<ProcessCpuUsageItem> usage =
+                (List<ProcessCpuUsageItem>) getAttribute(PROCESS_CPU_USAGE);
+        if (usage == null) {
+            return Collections.emptyList();
+        }
+        return usage;
+    }
+
+    /**
+     * Add the CPU usage of a process.
+     */
+    @SuppressWarnings("unchecked")
+    public void addProcessCpuUsage(ProcessCpuUsageItem usage) {
+        List<ProcessCpuUsageItem> list =
+                (List<ProcessCpuUsageItem>) getAttribute(PROCESS_CPU_USAGE);
+        if (list == null) {
+            list = new ArrayList<ProcessCpuUsageItem>();
+            setAttribute(PROCESS_CPU_USAGE, list);
+        }
+        list.add(usage);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        JSONObject object = super.toJson();
+        if (getAttribute(PROCESS_CPU_USAGE) != null) {
+            JSONArray usage = new JSONArray();
+            for (ProcessCpuUsageItem item : getProcessCpuUsage()) {
+                usage.put(item.toJson());
+            }
+            try {
+                object.put(PROCESS_CPU_USAGE, usage);
+            } catch (JSONException e) {
+                // Ignore
+            }
+        }
+        return object;
+    }
 }
@@ -52,6 +52,8 @@ public class BugreportItem extends GenericItem {
 
     public static class CommandLineItem extends GenericMapItem<String> {}
 
+    private EventTimeline mTimeline = null;
+
     /**
      * The constructor for {@link BugreportItem}.
      */
@@ -198,4 +200,20 @@ public class BugreportItem extends GenericItem {
     public void setDumpsys(DumpsysItem dumpsys) {
         setAttribute(DUMPSYS, dumpsys);
     }
+
+    /**
+     * Get the {@link EventTimeline} of the events of the logs of the bugreport, or null if it was
+     * not built. The timeline is not part of the JSON output, and is not kept when items are
+     * merged.
+     */
+    public EventTimeline getTimeline() {
+        return mTimeline;
+    }
+
+    /**
+     * Set the {@link EventTimeline} of the bugreport.
+     */
+    public void setTimeline(EventTimeline timeline) {
+        mTimeline = timeline;
+    }
 }
@@ -15,20 +15,37 @@
  */
 package com.android.loganalysis.item;
 
+import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.IntIndexMap;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * Contains a list of processes and how much memory they are using. Generated from parsing
  * compact mem info file. Refer to CompactMemInfoParser for more details.
+ * <p>
+ * Processes are stored as parallel primitive columns indexed by an {@link IntIndexMap} from PID to
+ * row. Process types only take a handful of distinct values, so they are stored once in a table
+ * and referenced by index.
+ * </p>
  */
 public class CompactMemInfoItem implements IItem {
-    private Map<Integer, Map<String, Object>> mPids = new HashMap<Integer, Map<String, Object>>();
+    private static final int INITIAL_CAPACITY = 16;
+
+    private IntIndexMap mRows = new IntIndexMap();
+    private int[] mPids = new int[INITIAL_CAPACITY];
+    private String[] mNames = new String[INITIAL_CAPACITY];
+    private int[] mTypeIds = new int[INITIAL_CAPACITY];
+    private long[] mPss = new long[INITIAL_CAPACITY];
+    private boolean[] mActivities = new boolean[INITIAL_CAPACITY];
+    private List<String> mTypeTable = new ArrayList<String>();
 
     @Override
     public IItem merge(IItem other) throws ConflictingItemException {
@@ -44,14 +61,14 @@ public class CompactMemInfoItem implements IItem {
     public JSONObject toJson() {
         JSONObject object = new JSONObject();
         JSONArray processes = new JSONArray();
-        for(int pid : getPids()) {
+        for (int i = 0; i < size(); i++) {
             JSONObject proc = new JSONObject();
             try {
-                proc.put("pid", pid);
-                proc.put("name", getName(pid));
-                proc.put("pss", getPss(pid));
-                proc.put("type", getType(pid));
-                proc.put("activities", hasActivities(pid));
+                proc.put("pid", mPids[i]);
+                proc.put("name", mNames[i]);
+                proc.put("pss", mPss[i]);
+                proc.put("type", mTypeTable.get(mTypeIds[i]));
+                proc.put("activities", mActivities[i]);
                 processes.put(proc);
             } catch (JSONException e) {
                 // ignore
@@ -70,37 +87,48 @@ public class CompactMemInfoItem implements IItem {
      * @return
      */
     public Set<Integer> getPids() {
-        return mPids.keySet();
+        Set<Integer> pids = new LinkedHashSet<Integer>();
+        for (int i = 0; i < size(); i++) {
+            pids.add(mPids[i]);
+        }
+        return pids;
     }
 
-    private Map<String, Object> get(int pid) {
-        return mPids.get(pid);
+    /**
+     * Get the number of processes that were added so far.
+     */
+    public int size() {
+        return mRows.size();
     }
 
     /**
      * Adds a process to the list stored in this item.
      */
     public void addPid(int pid, String name, String type, long pss, boolean activities) {
-        Map<String, Object> attributes = new HashMap<String, Object>();
-        attributes.put("name", name);
-        attributes.put("type", type);
-        attributes.put("pss", pss);
-        attributes.put("activities", activities);
-        mPids.put(pid, attributes);
+        final int row = mRows.getOrAdd(pid);
+        if (row == mPids.length) {
+            grow();
+        }
+        mPids[row] = pid;
+        mNames[row] = name;
+        mTypeIds[row] = getTypeId(type);
+        mPss[row] = pss;
+        mActivities[row] = activities;
     }
 
     /**
      * Returns the name of the process with a given pid.
      */
     public String getName(int pid) {
-        return (String)get(pid).get("name");
+        final int row = mRows.get(pid);
+        return row == IntIndexMap.NOT_FOUND ? null : mNames[row];
     }
 
     /**
      * Return pss of the process with a given name.
      */
     public long getPss(int pid) {
-        return (Long)get(pid).get("pss");
+        return mPss[getRow(pid)];
     }
 
     /**
@@ -108,13 +136,86 @@ public class CompactMemInfoItem implements IItem {
      * foreground and etc.
      */
     public String getType(int pid) {
-        return (String)get(pid).get("type");
+        final int row = mRows.get(pid);
+        return row == IntIndexMap.NOT_FOUND ? null : mTypeTable.get(mTypeIds[row]);
     }
 
     /**
      * Returns true if a process has any activities assosiated with it. False otherwise.
      */
     public boolean hasActivities(int pid) {
-        return (Boolean)get(pid).get("activities");
+        return mActivities[getRow(pid)];
+    }
+
+    /**
+     * Get the pids as a column, in the order they were added. The other column getters return
+     * arrays aligned with this one.
+     */
+    public int[] getPidColumn() {
+        return Arrays.copyOf(mPids, size());
+    }
+
+    /**
+     * Get the pss values as a column aligned with {@link #getPidColumn()}.
+     */
+    public long[] getPssColumn() {
+        return Arrays.copyOf(mPss, size());
+    }
+
+    /**
+     * Get all pids sorted by pss, largest first.
+     */
+    public int[] getPidsByPss() {
+        return getTopPidsByPss(size());
+    }
+
+    /**
+     * Get the pids of the {@code n} processes with the largest pss, largest first.
+     */
+    public int[] getTopPidsByPss(int n) {
+        final int size = size();
+        int[] rows = ArrayUtil.sortIndicesDescending(mPss, size);
+        int[] pids = new int[Math.min(Math.max(n, 0), size)];
+        for (int i = 0; i < pids.length; i++) {
+            pids[i] = mPids[rows[i]];
+        }
+        return pids;
+    }
+
+    /**
+     * Get the row of a pid.
+     *
+     * @throws IllegalArgumentException if the pid was not added.
+     */
+    private int getRow(int pid) {
+        final int row = mRows.get(pid);
+        if (row == IntIndexMap.NOT_FOUND) {
+            throw new IllegalArgumentException(String.format("Unknown pid %d", pid));
+        }
+        return row;
+    }
+
+    /**
+     * Get the index of a type in the type table, adding it if it was not seen before.
+     */
+    private int getTypeId(String type) {
+        int id = mTypeTable.indexOf(type);
+        if (id < 0) {
+            id = mTypeTable.size();
+            mTypeTable.add(type);
+        }
+        return id;
+    }
+
+    /**
+     * Double the capacity of all columns.
+     */
+    private void grow() {
+        final int capacity = mPids.length << 1;
+        mPids = Arrays.copyOf(mPids, capacity);
+        mNames = Arrays.copyOf(mNames, capacity);
+        mTypeIds = Arrays.copyOf(mTypeIds, capacity);
+        mPss = Arrays.copyOf(mPss, capacity);
+        mActivities = Arrays.copyOf(mActivities, capacity);
     }
 }
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import com.android.loganalysis.util.CrashSignatureUtil;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory index which groups {@link JavaCrashItem}s, {@link NativeCrashItem}s and
+ * {@link AnrItem}s by signature.
+ * <p>
+ * Each item added is given a signature from {@link CrashSignatureUtil}, which is stored on the
+ * item, and counted in a bucket for that signature. An item which already has a signature, such as
+ * a Java crash signed by {@link com.android.loganalysis.parser.LogcatParser}, keeps it. The index
+ * keeps at most a fixed number of buckets: when it is full, the least recently seen bucket is
+ * evicted, so a long batch of events stays bounded while the buckets which keep recurring stay in
+ * the index. This class is not thread safe.
+ * </p>
+ */
+public class CrashSignatureIndex {
+    /** The default maximum number of buckets. */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    /**
+     * A group of events which share a signature.
+     */
+    public static class Bucket {
+        private final String mSignature;
+        private final MiscLogcatItem mFirst;
+        private MiscLogcatItem mLast;
+        private int mCount = 0;
+
+        private Bucket(String signature, MiscLogcatItem first) {
+            mSignature = signature;
+            mFirst = first;
+        }
+
+        /**
+         * Get the signature of the bucket.
+         */
+        public String getSignature() {
+            return mSignature;
+        }
+
+        /**
+         * Get the first event added to the bucket.
+         */
+        public MiscLogcatItem getFirst() {
+            return mFirst;
+        }
+
+        /**
+         * Get the last event added to the bucket.
+         */
+        public MiscLogcatItem getLast() {
+            return mLast;
+        }
+
+        /**
+         * Get the number of events added to the bucket.
+         */
+        public int getCount() {
+            return mCount;
+        }
+    }
+
+    private final int mFrames;
+    private final Map<String, Bucket> mBuckets;
+    private int mEvicted = 0;
+
+    /**
+     * Constructor for {@link CrashSignatureIndex} with the default arguments.
+     */
+    public CrashSignatureIndex() {
+        this(DEFAULT_CAPACITY, CrashSignatureUtil.DEFAULT_FRAMES);
+    }
+
+    /**
+     * Constructor for {@link CrashSignatureIndex}.
+     *
+     * @param capacity the maximum number of buckets to keep.
+     * @param frames the number of frames used in each signature.
+     */
+    @SuppressWarnings("serial")
+    public CrashSignatureIndex(final int capacity, int frames) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        mFrames = frames;
+        mBuckets = new LinkedHashMap<String, Bucket>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                if (size() > capacity) {
+                    mEvicted++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Compute the signature of an event and store it on the event.
+     *
+     * @return the signature, or {@code null} if the event is not a crash or ANR.
+     */
+    public String sign(MiscLogcatItem item) {
+        return sign(item, item.getStack());
+    }
+
+    /**
+     * Compute the signature of an event and store it on the event.
+     *
+     * @param item the event.
+     * @param stack the stack used for the signature of a Java crash, such as the lines of the
+     * crash when the item does not keep its stack.
+     * @return the signature, or {@code null} if the event is not a crash or ANR.
+     */
+    public String sign(MiscLogcatItem item, String stack) {
+        String signature;
+        if (item instanceof JavaCrashItem) {
+            signature = CrashSignatureUtil.getJavaCrashSignature(
+                    ((JavaCrashItem) item).getException(), stack, mFrames);
+        } else if (item instanceof NativeCrashItem) {
+            signature = getNativeCrashSignature((NativeCrashItem) item);
+        } else if (item instanceof AnrItem) {
+            AnrItem anr = (AnrItem) item;
+            signature = CrashSignatureUtil.getAnrSignature(anr.getApp(), anr.getTrace(),
+                    anr.getReason(), mFrames);
+        } else {
+            return null;
+        }
+        item.setSignature(signature);
+        return signature;
+    }
+
+    /**
+     * Compute the signature of a native crash from its parsed frames, or from its stack if it has
+     * no frames.
+     */
+    private String getNativeCrashSignature(NativeCrashItem crash) {
+        final int count = Math.min(mFrames, crash.getFrameCount());
+        if (count == 0) {
+            return CrashSignatureUtil.getNativeCrashSignature(crash.getStack(), mFrames);
+        }
+        String[] libraries = new String[count];
+        long[] pcs = new long[count];
+        for (int i = 0; i < count; i++) {
+            libraries[i] = crash.getStringTable().get(crash.getFrameLibraryId(i));
+            pcs[i] = crash.getFramePc(i);
+        }
+        return CrashSignatureUtil.getNativeCrashSignature(crash.getSignal(), libraries, pcs,
+                mFrames);
+    }
+
+    /**
+     * Add an event to the bucket for its signature, signing it first if it has no signature.
+     *
+     * @return the {@link Bucket} the event was added to, or {@code null} if the event is not a
+     * crash or ANR.
+     */
+    public Bucket add(MiscLogcatItem item) {
+        final String signature = item.getSignature() != null ? item.getSignature() : sign(item);
+        if (signature == null) {
+            return null;
+        }
+        Bucket bucket = mBuckets.get(signature);
+        if (bucket == null) {
+            bucket = new Bucket(signature, item);
+            mBuckets.put(signature, bucket);
+        }
+        bucket.mLast = item;
+        bucket.mCount++;
+        return bucket;
+    }
+
+    /**
+     * Add all the crashes and ANRs from a list of events.
+     */
+    public void addAll(List<? extends MiscLogcatItem> items) {
+        for (MiscLogcatItem item : items) {
+            add(item);
+        }
+    }
+
+    /**
+     * Get the number of events seen with a signature, or 0 if the signature is not in the index.
+     */
+    public int getCount(String signature) {
+        Bucket bucket = mBuckets.get(signature);
+        return bucket == null ? 0 : bucket.getCount();
+    }
+
+    /**
+     * Get the buckets in the index, from the least to the most recently seen.
+     */
+    public List<Bucket> getBuckets() {
+        return new ArrayList<Bucket>(mBuckets.values());
+    }
+
+    /**
+     * Get the number of buckets in the index.
+     */
+    public int size() {
+        return mBuckets.size();
+    }
+
+    /**
+     * Get the number of buckets which have been evicted to keep the index within its capacity.
+     */
+    public int getEvictedCount() {
+        return mEvicted;
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import com.android.loganalysis.util.IntervalIndex;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An in-memory index of the events of several logs on one wall clock, which finds the events
+ * within some time of another event, such as everything around an ANR.
+ * <p>
+ * Logcat and monkey events already have wall clock times. Kernel log events have times since
+ * boot, which are mapped with the wall clock time of boot of each boot, or, for a boot whose
+ * time is not known, with the time the log was taken, such as the time in the header of a
+ * bugreport. Events which cannot be mapped are only counted. Each event is an interval, so that
+ * a monkey run overlaps all the events during the run. This class is not thread safe.
+ * </p>
+ */
+public class EventTimeline {
+    /** The source of the events of a monkey log. */
+    public static final String MONKEY_LOG = "MONKEY_LOG";
+    /** The source of the events of a smart monkey log. */
+    public static final String SMART_MONKEY_LOG = "SMART_MONKEY_LOG";
+    /** The source of the events of a traces file. */
+    public static final String TRACES = "TRACES";
+
+    /** Constant for JSON output */
+    public static final String SOURCE = "SOURCE";
+    /** Constant for JSON output */
+    public static final String START_TIME = "START_TIME";
+    /** Constant for JSON output */
+    public static final String STOP_TIME = "STOP_TIME";
+    /** Constant for JSON output */
+    public static final String EVENT = "EVENT";
+
+    /**
+     * An event of a log on the wall clock.
+     */
+    public static class Event {
+        private final String mSource;
+        private final IItem mItem;
+        private final long mStartMs;
+        private final long mStopMs;
+
+        private Event(String source, IItem item, long startMs, long stopMs) {
+            mSource = source;
+            mItem = item;
+            mStartMs = startMs;
+            mStopMs = stopMs;
+        }
+
+        /**
+         * Get the source of the event, such as {@link BugreportItem#SYSTEM_LOG}.
+         */
+        public String getSource() {
+            return mSource;
+        }
+
+        /**
+         * Get the item of the event.
+         */
+        public IItem getItem() {
+            return mItem;
+        }
+
+        /**
+         * Get the wall clock time the event starts.
+         */
+        public Date getStartTime() {
+            return new Date(mStartMs);
+        }
+
+        /**
+         * Get the wall clock time the event stops, which is the start for a single event.
+         */
+        public Date getStopTime() {
+            return new Date(mStopMs);
+        }
+
+        /**
+         * Get the event as JSON, with its item.
+         */
+        public JSONObject toJson() {
+            JSONObject output = new JSONObject();
+            try {
+                output.put(SOURCE, mSource);
+                output.put(START_TIME, getStartTime());
+                if (mStopMs != mStartMs) {
+                    output.put(STOP_TIME, getStopTime());
+                }
+                output.put(EVENT, mItem.toJson());
+            } catch (JSONException e) {
+                // Ignore
+            }
+            return output;
+        }
+    }
+
+    private final IntervalIndex<Event> mIndex = new IntervalIndex<Event>();
+    private final Map<IItem, Event> mEvents = new IdentityHashMap<IItem, Event>();
+    private int mUnaligned = 0;
+
+    /**
+     * Add the events of the logs of a bugreport. The boot of the kernel log whose time is not
+     * known is mapped with the time of the bugreport, at which the kernel log stops.
+     */
+    public void addBugreport(BugreportItem bugreport) {
+        if (bugreport.getSystemLog() != null) {
+            addLogcat(BugreportItem.SYSTEM_LOG, bugreport.getSystemLog());
+        }
+        if (bugreport.getKernelLog() != null) {
+            addKernelLog(BugreportItem.KERNEL_LOG, bugreport.getKernelLog(), bugreport.getTime());
+        }
+        if (bugreport.getLastKmsg() != null) {
+            // The last kmsg is from an earlier boot, so it only has a time if its boot does.
+            addKernelLog(BugreportItem.LAST_KMSG, bugreport.getLastKmsg(), null);
+        }
+    }
+
+    /**
+     * Add the events of a logcat.
+     *
+     * @param source the source of the events, such as {@link BugreportItem#SYSTEM_LOG}.
+     * @param logcat the {@link LogcatItem}.
+     */
+    public void addLogcat(String source, LogcatItem logcat) {
+        for (MiscLogcatItem event : logcat.getEvents()) {
+            add(source, event, event.getEventTime(), event.getEventTime());
+        }
+    }
+
+    /**
+     * Add the events of a kernel log, for each of its boots.
+     *
+     * @param source the source of the events, such as {@link BugreportItem#KERNEL_LOG}.
+     * @param kernelLog the {@link KernelLogItem}.
+     * @param stopTime the wall clock time at which the last boot of the log stops, used if the
+     * time of that boot is not known, or null.
+     */
+    public void addKernelLog(String source, KernelLogItem kernelLog, Date stopTime) {
+        List<KernelLogItem> boots = kernelLog.getBoots();
+        for (int i = 0; i < boots.size(); i++) {
+            KernelLogItem boot = boots.get(i);
+            long offsetMs = KernelLogItem.NO_TIME;
+            if (boot.getBootTime() != null) {
+                offsetMs = boot.getBootTime().getTime();
+            } else if (i == boots.size() - 1 && stopTime != null
+                    && boot.getStopTimeUs() != KernelLogItem.NO_TIME) {
+                offsetMs = stopTime.getTime() - boot.getStopTimeUs() / 1000;
+            }
+            for (MiscKernelLogItem event : boot.getEvents()) {
+                final long timeUs = event.getEventTimeUs();
+                if (offsetMs == KernelLogItem.NO_TIME || timeUs == KernelLogItem.NO_TIME) {
+                    mUnaligned++;
+                    continue;
+                }
+                final long timeMs = offsetMs + timeUs / 1000;
+                mIndex.add(timeMs, timeMs, put(new Event(source, event, timeMs, timeMs)));
+            }
+        }
+    }
+
+    /**
+     * Add a monkey run, over the time of the run, and its crash.
+     */
+    public void addMonkeyLog(MonkeyLogItem monkeyLog) {
+        add(MONKEY_LOG, monkeyLog, monkeyLog.getStartTime(), monkeyLog.getStopTime());
+        if (monkeyLog.getCrash() != null) {
+            add(MONKEY_LOG, monkeyLog.getCrash(), monkeyLog.getCrash().getEventTime(),
+                    monkeyLog.getCrash().getEventTime());
+        }
+    }
+
+    /**
+     * Add a smart monkey run, over the time of the run.
+     */
+    public void addSmartMonkeyLog(SmartMonkeyLogItem monkeyLog) {
+        add(SMART_MONKEY_LOG, monkeyLog, monkeyLog.getStartTime(), monkeyLog.getStopTime());
+    }
+
+    /**
+     * Add traces, which have no time of their own.
+     *
+     * @param traces the {@link TracesItem}.
+     * @param time the time the traces were taken, such as the time of the ANR they belong to.
+     */
+    public void addTraces(TracesItem traces, Date time) {
+        add(TRACES, traces, time, time);
+    }
+
+    /**
+     * Get the events which overlap a range of wall clock times.
+     *
+     * @return The events, ordered by their start times.
+     */
+    public List<Event> getEvents(Date from, Date to) {
+        return mIndex.getOverlapping(from.getTime(), to.getTime());
+    }
+
+    /**
+     * Get the events within some time of a wall clock time.
+     *
+     * @param time the wall clock time.
+     * @param windowMs the time before and after the time, in milliseconds.
+     * @return The events, ordered by their start times.
+     */
+    public List<Event> getEventsNear(Date time, long windowMs) {
+        return mIndex.getOverlapping(time.getTime() - windowMs, time.getTime() + windowMs);
+    }
+
+    /**
+     * Get the other events within some time of an event in the timeline, such as an ANR.
+     *
+     * @param item the item of the event.
+     * @param windowMs the time before and after the event, in milliseconds.
+     * @return The events, ordered by their start times, or null if the item is not in the
+     * timeline.
+     */
+    public List<Event> getEventsNear(IItem item, long windowMs) {
+        Event event = mEvents.get(item);
+        if (event == null) {
+            return null;
+        }
+        List<Event> events = mIndex.getOverlapping(event.mStartMs - windowMs,
+                event.mStopMs + windowMs);
+        events.remove(event);
+        return events;
+    }
+
+    /**
+     * Get the event of an item, or null if the item is not in the timeline.
+     */
+    public Event getEvent(IItem item) {
+        return mEvents.get(item);
+    }
+
+    /**
+     * Get the number of events in the timeline.
+     */
+    public int size() {
+        return mIndex.size();
+    }
+
+    /**
+     * Get the number of events which were not added because their time could not be mapped to
+     * the wall clock.
+     */
+    public int getUnalignedCount() {
+        return mUnaligned;
+    }
+
+    /**
+     * Add an event with wall clock times, which is counted as unaligned if it has no start time.
+     */
+    private void add(String source, IItem item, Date start, Date stop) {
+        if (start == null) {
+            mUnaligned++;
+            return;
+        }
+        final long startMs = start.getTime();
+        final long stopMs = stop != null ? Math.max(startMs, stop.getTime()) : startMs;
+        mIndex.add(startMs, stopMs, put(new Event(source, item, startMs, stopMs)));
+    }
+
+    /**
+     * Keep the event of an item, so that the events near the item can be found.
+     */
+    private Event put(Event event) {
+        mEvents.put(event.getItem(), event);
+        return event;
+    }
+}
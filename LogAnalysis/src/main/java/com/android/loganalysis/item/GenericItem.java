@@ -18,6 +18,7 @@ package com.android.loganalysis.item;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -170,6 +171,13 @@ public class GenericItem implements IItem {
         mAttributes.put(attribute, value);
     }
 
+    /**
+     * Get the names of the allowed attributes.
+     */
+    protected Set<String> getAllowedAttributes() {
+        return Collections.unmodifiableSet(mAllowedAttributes);
+    }
+
     /**
      * Get the value of an attribute.
      *
@@ -24,18 +24,43 @@ import java.util.*;
 
 /**
  * A {@link IItem} used to store kernel log info.
+ * <p>
+ * Times are kept as primitive numbers of microseconds since boot, as printed by the kernel, and
+ * are only converted to seconds for the JSON output. If the wall clock time of boot is known, the
+ * JSON output also includes the wall clock time of the log and of each event.
+ * </p><p>
+ * A log with several boots is kept as one {@link KernelLogItem} for each boot, and a merged item
+ * with the events of all boots, which starts with the first boot and stops with the last.
+ * </p>
  */
 public class KernelLogItem extends GenericItem {
+    /** The value of a time which is not known. */
+    public static final long NO_TIME = Long.MIN_VALUE;
 
     /** Constant for JSON output */
     public static final String START_TIME = "START_TIME";
     /** Constant for JSON output */
     public static final String STOP_TIME = "STOP_TIME";
     /** Constant for JSON output */
+    public static final String BOOT_TIME = "BOOT_TIME";
+    /** Constant for JSON output */
+    public static final String START_WALL_TIME = "START_WALL_TIME";
+    /** Constant for JSON output */
+    public static final String STOP_WALL_TIME = "STOP_WALL_TIME";
+    /** Constant for JSON output */
     public static final String EVENTS = "EVENTS";
+    /** Constant for JSON output */
+    public static final String BOOTS = "BOOTS";
+    /** Constant for JSON output */
+    public static final String BOOT = "BOOT";
+
+    private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(EVENTS));
 
-    private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
-            START_TIME, STOP_TIME, EVENTS));
+    private long mStartTimeUs = NO_TIME;
+    private long mStopTimeUs = NO_TIME;
+    private long mBootTimeMs = NO_TIME;
+    private boolean mHasKernelReset = false;
+    private List<KernelLogItem> mBoots = null;
 
     @SuppressWarnings("serial")
     private class ItemList extends LinkedList<MiscKernelLogItem> {}
@@ -50,31 +75,99 @@ public class KernelLogItem extends GenericItem {
     }
 
     /**
-     * Get the start time of the kernel log.
+     * Get the start time of the kernel log in seconds since boot, or null if it is not known.
      */
     public Double getStartTime() {
-        return (Double) getAttribute(START_TIME);
+        return toSeconds(mStartTimeUs);
     }
 
     /**
-     * Set the start time of the kernel log.
+     * Get the start time of the kernel log in microseconds since boot, or {@link #NO_TIME}.
+     */
+    public long getStartTimeUs() {
+        return mStartTimeUs;
+    }
+
+    /**
+     * Set the start time of the kernel log in seconds since boot.
      */
     public void setStartTime(Double time) {
-        setAttribute(START_TIME, time);
+        mStartTimeUs = toMicros(time);
     }
 
     /**
-     * Get the stop time of the kernel log.
+     * Set the start time of the kernel log in microseconds since boot.
+     */
+    public void setStartTimeUs(long time) {
+        mStartTimeUs = time;
+    }
+
+    /**
+     * Get the stop time of the kernel log in seconds since boot, or null if it is not known.
      */
     public Double getStopTime() {
-        return (Double) getAttribute(STOP_TIME);
+        return toSeconds(mStopTimeUs);
+    }
+
+    /**
+     * Get the stop time of the kernel log in microseconds since boot, or {@link #NO_TIME}.
+     */
+    public long getStopTimeUs() {
+        return mStopTimeUs;
     }
 
     /**
-     * Set the stop time of the kernel log.
+     * Set the stop time of the kernel log in seconds since boot.
      */
     public void setStopTime(Double time) {
-        setAttribute(STOP_TIME, time);
+        mStopTimeUs = toMicros(time);
+    }
+
+    /**
+     * Set the stop time of the kernel log in microseconds since boot.
+     */
+    public void setStopTimeUs(long time) {
+        mStopTimeUs = time;
+    }
+
+    /**
+     * Get the wall clock time of boot, or null if it is not known.
+     */
+    public Date getBootTime() {
+        return mBootTimeMs == NO_TIME ? null : new Date(mBootTimeMs);
+    }
+
+    /**
+     * Set the wall clock time of boot, used to map the times in the log to wall clock times.
+     *
+     * @param time the wall clock time of boot, or null if it is not known.
+     */
+    public void setBootTime(Date time) {
+        mBootTimeMs = time == null ? NO_TIME : time.getTime();
+    }
+
+    /**
+     * Set the wall clock time of boot from an anchor, a point in time for which both the wall
+     * clock time and the time since boot are known.
+     *
+     * @param wallTime the wall clock time of the anchor.
+     * @param timeUs the time of the anchor in microseconds since boot.
+     */
+    public void setBootTime(Date wallTime, long timeUs) {
+        mBootTimeMs = wallTime.getTime() - timeUs / 1000;
+    }
+
+    /**
+     * Map a time in microseconds since boot to a wall clock time.
+     *
+     * @return the wall clock time, or null if the time or the wall clock time of boot is not
+     * known.
+     */
+    public Date getWallTime(long timeUs) {
+        if (timeUs == NO_TIME || mBootTimeMs == NO_TIME) {
+            return null;
+        }
+        return new Date(mBootTimeMs + timeUs / 1000);
     }
 
     /**
@@ -89,13 +182,43 @@ public class KernelLogItem extends GenericItem {
      */
     public void addEvent(MiscKernelLogItem event) {
         // Only take the first kernel reset
-        if (KernelLogParser.KERNEL_RESET.equals(event.getCategory()) &&
-                !getMiscEvents(KernelLogParser.KERNEL_RESET).isEmpty()) {
-            return;
+        if (KernelLogParser.KERNEL_RESET.equals(event.getCategory())) {
+            if (mHasKernelReset) {
+                return;
+            }
+            mHasKernelReset = true;
         }
         ((ItemList) getAttribute(EVENTS)).add(event);
     }
 
+    /**
+     * Add a boot to a merged kernel log. The events of the boot are added to the end of the list
+     * of events, including its first kernel reset, and the merged log stops when the boot stops.
+     */
+    public void addBoot(KernelLogItem boot) {
+        if (mBoots == null) {
+            mBoots = new ArrayList<KernelLogItem>();
+            mStartTimeUs = boot.getStartTimeUs();
+        }
+        mBoots.add(boot);
+        mStopTimeUs = boot.getStopTimeUs();
+        for (MiscKernelLogItem event : boot.getEvents()) {
+            mHasKernelReset |= KernelLogParser.KERNEL_RESET.equals(event.getCategory());
+            ((ItemList) getAttribute(EVENTS)).add(event);
+        }
+    }
+
+    /**
+     * Get the boots in the kernel log. A log which was not merged from several boots is its only
+     * boot.
+     */
+    public List<KernelLogItem> getBoots() {
+        if (mBoots == null) {
+            return Collections.singletonList(this);
+        }
+        return Collections.unmodifiableList(mBoots);
+    }
+
     /**
      * Get the list of all {@link MiscKernelLogItem} events for a category.
      */
@@ -124,20 +247,129 @@ public class KernelLogItem extends GenericItem {
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The start and stop times are merged in seconds, as they were when they were attributes.
+     * </p>
      */
     @Override
-    public JSONObject toJson() {
-        JSONObject output = super.toJson();
-        JSONArray events = new JSONArray();
-        for (MiscKernelLogItem event : getEvents()) {
-            events.put(event.toJson());
+    public IItem merge(IItem other) throws ConflictingItemException {
+        if (this == other) {
+            return this;
         }
+        Map<String, Object> attributes = mergeAttributes(other, ATTRIBUTES);
+        KernelLogItem kernelLog = (KernelLogItem) other;
+        attributes.put(START_TIME, mergeObjects(getStartTime(), kernelLog.getStartTime()));
+        attributes.put(STOP_TIME, mergeObjects(getStopTime(), kernelLog.getStopTime()));
+        return new GenericItem(new HashSet<String>(Arrays.asList(START_TIME, STOP_TIME, EVENTS)),
+                attributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isConsistent(IItem other) {
+        if (this == other) {
+            return true;
+        }
+        if (!super.isConsistent(other)) {
+            return false;
+        }
+        KernelLogItem kernelLog = (KernelLogItem) other;
+        return areConsistent(getStartTime(), kernelLog.getStartTime()) &&
+                areConsistent(getStopTime(), kernelLog.getStopTime());
+    }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!super.equals(other)) {
+            return false;
+        }
+        KernelLogItem kernelLog = (KernelLogItem) other;
+        return mStartTimeUs == kernelLog.mStartTimeUs && mStopTimeUs == kernelLog.mStopTimeUs;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Built from the start and stop times, which {@link #equals(Object)} compares.
+     * </p>
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(mStartTimeUs) + Long.hashCode(mStopTimeUs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        JSONObject output = super.toJson();
         try {
+            JSONArray events = new JSONArray();
+            if (mBoots == null) {
+                putEvents(events, null);
+            } else {
+                // The events of a merged log are listed by boot, with the index of their boot.
+                JSONArray boots = new JSONArray();
+                for (int i = 0; i < mBoots.size(); i++) {
+                    KernelLogItem boot = mBoots.get(i);
+                    boot.putEvents(events, i);
+                    JSONObject json = boot.toJson();
+                    json.remove(EVENTS);
+                    boots.put(json);
+                }
+                output.put(BOOTS, boots);
+            }
+
+            output.put(START_TIME, getStartTime());
+            output.put(STOP_TIME, getStopTime());
+            output.put(BOOT_TIME, getBootTime());
+            output.put(START_WALL_TIME, getWallTime(mStartTimeUs));
+            output.put(STOP_WALL_TIME, getWallTime(mStopTimeUs));
             output.put(EVENTS, events);
         } catch (JSONException e) {
             // Ignore
         }
         return output;
     }
+
+    /**
+     * Add the JSON of the events of a boot to an array.
+     *
+     * @param boot the index of the boot in a merged log, or null if the log was not merged.
+     */
+    private void putEvents(JSONArray events, Integer boot) throws JSONException {
+        for (MiscKernelLogItem event : getEvents()) {
+            JSONObject json = event.toJson();
+            json.put(MiscKernelLogItem.EVENT_WALL_TIME, getWallTime(event.getEventTimeUs()));
+            json.put(BOOT, boot);
+            events.put(json);
+        }
+    }
+
+    /**
+     * Convert a time in microseconds to seconds.
+     *
+     * @return the time in seconds, or null if the time is {@link #NO_TIME}.
+     */
+    static Double toSeconds(long timeUs) {
+        return timeUs == NO_TIME ? null : timeUs / 1000000.0;
+    }
+
+    /**
+     * Convert a time in seconds to microseconds.
+     *
+     * @return the time in microseconds, or {@link #NO_TIME} if the time is null.
+     */
+    static long toMicros(Double time) {
+        return time == null ? NO_TIME : Math.round(time * 1000000.0);
+    }
 }
@@ -39,6 +39,8 @@ public class LogcatItem extends GenericItem {
     @SuppressWarnings("serial")
     private class ItemList extends LinkedList<MiscLogcatItem> {}
 
+    private CrashSignatureIndex mCrashSignatures = new CrashSignatureIndex();
+
     /**
      * The constructor for {@link LogcatItem}.
      */
@@ -84,10 +86,30 @@ public class LogcatItem extends GenericItem {
     }
 
     /**
-     * Add an {@link MiscLogcatItem} event to the end of the list of events.
+     * Add an {@link MiscLogcatItem} event to the end of the list of events, and add crashes and
+     * ANRs to the {@link CrashSignatureIndex} of the logcat.
      */
     public void addEvent(MiscLogcatItem event) {
         ((ItemList) getAttribute(EVENTS)).add(event);
+        mCrashSignatures.add(event);
+    }
+
+    /**
+     * Get the {@link CrashSignatureIndex} of the crashes and ANRs of the logcat. The index is not
+     * part of the JSON output, but the signature of each event is.
+     */
+    public CrashSignatureIndex getCrashSignatures() {
+        return mCrashSignatures;
+    }
+
+    /**
+     * Sign an event of the logcat again after it changed, such as an ANR whose trace has been
+     * added, and rebuild the {@link CrashSignatureIndex}.
+     */
+    public void updateSignature(MiscLogcatItem event) {
+        event.setSignature(null);
+        mCrashSignatures = new CrashSignatureIndex();
+        mCrashSignatures.addAll(getEvents());
     }
 
     /**
@@ -192,7 +214,9 @@ public class LogcatItem extends GenericItem {
         LogcatItem mergedLogcat = new LogcatItem();
         mergedLogcat.setStartTime(start);
         mergedLogcat.setStopTime(stop);
-        mergedLogcat.setAttribute(EVENTS, mergedEvents);
+        for (MiscLogcatItem event : mergedEvents) {
+            mergedLogcat.addEvent(event);
+        }
         return mergedLogcat;
     }
 
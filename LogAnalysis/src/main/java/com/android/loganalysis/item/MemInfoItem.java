@@ -15,6 +15,7 @@
  */
 package com.android.loganalysis.item;
 
+import com.android.loganalysis.util.LazyText;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -30,11 +31,15 @@ public class MemInfoItem extends GenericMapItem<Long> {
     public static final String TEXT = "TEXT";
 
     private String mText = null;
+    private LazyText mLazyText = null;
 
     /**
      * Get the raw text of the mem info command.
      */
     public String getText() {
+        if (mLazyText != null) {
+            return mLazyText.toString();
+        }
         return mText;
     }
 
@@ -43,6 +48,15 @@ public class MemInfoItem extends GenericMapItem<Long> {
      */
     public void setText(String text) {
         mText = text;
+        mLazyText = null;
+    }
+
+    /**
+     * Set the raw text of the mem info command, which is only joined when it is first requested.
+     */
+    public void setLazyText(LazyText text) {
+        mText = null;
+        mLazyText = text;
     }
 
     /**
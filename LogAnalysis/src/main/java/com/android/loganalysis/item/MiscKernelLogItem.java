@@ -15,19 +15,30 @@
  */
 package com.android.loganalysis.item;
 
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
 
 /**
  * A generic item containing attributes for time, process, and thread and can be extended for
  * items such as {@link AnrItem} and {@link JavaCrashItem}.
+ * <p>
+ * The event time is kept as a primitive number of microseconds since boot, and is only converted
+ * to seconds for the JSON output.
+ * </p>
  */
 public class MiscKernelLogItem extends GenericItem {
 
     /** Constant for JSON output */
     public static final String EVENT_TIME = "EVENT_TIME";
     /** Constant for JSON output */
+    public static final String EVENT_WALL_TIME = "EVENT_WALL_TIME";
+    /** Constant for JSON output */
     public static final String PREAMBLE = "LAST_PREAMBLE";
     /** Constant for JSON output */
     public static final String CATEGORY = "CATEGORY";
@@ -35,7 +46,9 @@ public class MiscKernelLogItem extends GenericItem {
     public static final String STACK = "STACK";
 
     private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
-            EVENT_TIME, PREAMBLE, CATEGORY, STACK));
+            PREAMBLE, CATEGORY, STACK));
+
+    private long mEventTimeUs = KernelLogItem.NO_TIME;
 
     /**
      * Constructor for {@link MiscKernelLogItem}.
@@ -54,17 +67,32 @@ public class MiscKernelLogItem extends GenericItem {
     }
 
     /**
-     * Get the time object when the event happened.
+     * Get the time when the event happened in seconds since boot, or null if it is not known.
      */
     public Double getEventTime() {
-        return (Double) getAttribute(EVENT_TIME);
+        return KernelLogItem.toSeconds(mEventTimeUs);
+    }
+
+    /**
+     * Get the time when the event happened in microseconds since boot, or
+     * {@link KernelLogItem#NO_TIME} if it is not known.
+     */
+    public long getEventTimeUs() {
+        return mEventTimeUs;
     }
 
     /**
-     * Set the time object when the event happened.
+     * Set the time when the event happened in seconds since boot.
      */
     public void setEventTime(Double time) {
-        setAttribute(EVENT_TIME, time);
+        mEventTimeUs = KernelLogItem.toMicros(time);
+    }
+
+    /**
+     * Set the time when the event happened in microseconds since boot.
+     */
+    public void setEventTimeUs(long time) {
+        mEventTimeUs = time;
     }
 
     /**
@@ -109,6 +137,78 @@ public class MiscKernelLogItem extends GenericItem {
         setAttribute(STACK, stack);
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The event time is merged in seconds, as it was when it was an attribute.
+     * </p>
+     */
+    @Override
+    public IItem merge(IItem other) throws ConflictingItemException {
+        if (this == other) {
+            return this;
+        }
+        Map<String, Object> attributes = mergeAttributes(other, getAllowedAttributes());
+        attributes.put(EVENT_TIME, mergeObjects(getEventTime(),
+                ((MiscKernelLogItem) other).getEventTime()));
+        Set<String> allowedAttributes = new HashSet<String>(getAllowedAttributes());
+        allowedAttributes.add(EVENT_TIME);
+        return new GenericItem(allowedAttributes, attributes);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean isConsistent(IItem other) {
+        if (this == other) {
+            return true;
+        }
+        if (!super.isConsistent(other)) {
+            return false;
+        }
+        return areConsistent(getEventTime(), ((MiscKernelLogItem) other).getEventTime());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!super.equals(other)) {
+            return false;
+        }
+        return mEventTimeUs == ((MiscKernelLogItem) other).mEventTimeUs;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * Built from the category and the event time, which {@link #equals(Object)} compares.
+     * </p>
+     */
+    @Override
+    public int hashCode() {
+        return 31 * Objects.hashCode(getCategory()) + Long.hashCode(mEventTimeUs);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        JSONObject output = super.toJson();
+        try {
+            output.put(EVENT_TIME, getEventTime());
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return output;
+    }
+
     /**
      * Combine an array of attributes with the internal list of attributes.
      */
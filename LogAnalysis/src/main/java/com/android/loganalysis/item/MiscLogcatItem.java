@@ -42,9 +42,12 @@ public class MiscLogcatItem extends GenericItem {
     public static final String CATEGORY = "CATEGORY";
     /** Constant for JSON output */
     public static final String STACK = "STACK";
+    /** Constant for JSON output */
+    public static final String SIGNATURE = "SIGNATURE";
 
     private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
-            EVENT_TIME, PID, TID, APP, TAG, LAST_PREAMBLE, PROCESS_PREAMBLE, CATEGORY, STACK));
+            EVENT_TIME, PID, TID, APP, TAG, LAST_PREAMBLE, PROCESS_PREAMBLE, CATEGORY, STACK,
+            SIGNATURE));
 
     /**
      * Constructor for {@link MiscLogcatItem}.
@@ -196,4 +199,18 @@ public class MiscLogcatItem extends GenericItem {
     public void setStack(String stack) {
         setAttribute(STACK, stack);
     }
+
+    /**
+     * Get the normalized signature of the event, used to group repeated events.
+     */
+    public String getSignature() {
+        return (String) getAttribute(SIGNATURE);
+    }
+
+    /**
+     * Set the normalized signature of the event.
+     */
+    public void setSignature(String signature) {
+        setAttribute(SIGNATURE, signature);
+    }
 }
@@ -16,21 +16,101 @@
 package com.android.loganalysis.item;
 
 import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.util.StringTable;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 /**
  * An {@link IItem} used to store native crash info.
+ * <p>
+ * The frames of the backtrace are stored as primitive columns. Libraries and symbols are stored as
+ * ids in a {@link StringTable}, which can be shared by all the crashes of a batch so that repeated
+ * paths and symbols are only stored once.
+ * </p>
  */
 public class NativeCrashItem extends MiscLogcatItem {
 
     /** Constant for JSON output */
     public static final String FINGERPRINT = "FINGERPRINT";
+    /** Constant for JSON output */
+    public static final String SIGNAL = "SIGNAL";
+    /** Constant for JSON output */
+    public static final String FRAMES = "FRAMES";
+    /** Constant for JSON output */
+    public static final String PC = "PC";
+    /** Constant for JSON output */
+    public static final String LIBRARY = "LIBRARY";
+    /** Constant for JSON output */
+    public static final String SYMBOL = "SYMBOL";
+    /** Constant for JSON output */
+    public static final String SYMBOL_OFFSET = "SYMBOL_OFFSET";
+
+    /** The symbol id of a frame without a symbol. */
+    public static final int NO_SYMBOL = -1;
 
     private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
-            FINGERPRINT));
+            FINGERPRINT, SIGNAL));
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    /**
+     * A view of a single frame of the backtrace.
+     */
+    public static class Frame {
+        private final long mPc;
+        private final String mLibrary;
+        private final String mSymbol;
+        private final long mSymbolOffset;
+
+        private Frame(long pc, String library, String symbol, long symbolOffset) {
+            mPc = pc;
+            mLibrary = library;
+            mSymbol = symbol;
+            mSymbolOffset = symbolOffset;
+        }
+
+        /**
+         * Get the pc of the frame, relative to the library.
+         */
+        public long getPc() {
+            return mPc;
+        }
+
+        /**
+         * Get the path of the library.
+         */
+        public String getLibrary() {
+            return mLibrary;
+        }
+
+        /**
+         * Get the symbol, or {@code null} if the frame has no symbol.
+         */
+        public String getSymbol() {
+            return mSymbol;
+        }
+
+        /**
+         * Get the offset from the symbol, or 0 if the frame has no symbol.
+         */
+        public long getSymbolOffset() {
+            return mSymbolOffset;
+        }
+    }
+
+    private StringTable mStringTable = null;
+    private int mFrameCount = 0;
+    private long[] mPcs = null;
+    private int[] mLibraries = null;
+    private int[] mSymbols = null;
+    private long[] mSymbolOffsets = null;
 
     /**
      * The constructor for {@link NativeCrashItem}.
@@ -53,4 +133,158 @@ public class NativeCrashItem extends MiscLogcatItem {
     public void setFingerprint(String fingerprint) {
         setAttribute(FINGERPRINT, fingerprint);
     }
+
+    /**
+     * Get the signal name, such as {@code SIGSEGV}.
+     */
+    public String getSignal() {
+        return (String) getAttribute(SIGNAL);
+    }
+
+    /**
+     * Set the signal name.
+     */
+    public void setSignal(String signal) {
+        setAttribute(SIGNAL, signal);
+    }
+
+    /**
+     * Set the {@link StringTable} used for libraries and symbols. Must be called before any frames
+     * are added. Defaults to a table owned by this item.
+     */
+    public void setStringTable(StringTable table) {
+        if (mFrameCount > 0) {
+            throw new IllegalStateException("Frames have already been added");
+        }
+        mStringTable = table;
+    }
+
+    /**
+     * Get the {@link StringTable} used for libraries and symbols.
+     */
+    public StringTable getStringTable() {
+        if (mStringTable == null) {
+            mStringTable = new StringTable();
+        }
+        return mStringTable;
+    }
+
+    /**
+     * Add a frame to the bottom of the backtrace.
+     *
+     * @param pc the pc, relative to the library.
+     * @param library the path of the library.
+     * @param symbol the symbol, or {@code null} if there is none.
+     * @param symbolOffset the offset from the symbol.
+     */
+    public void addFrame(long pc, String library, String symbol, long symbolOffset) {
+        if (mPcs == null) {
+            mPcs = new long[INITIAL_CAPACITY];
+            mLibraries = new int[INITIAL_CAPACITY];
+            mSymbols = new int[INITIAL_CAPACITY];
+            mSymbolOffsets = new long[INITIAL_CAPACITY];
+        } else if (mFrameCount == mPcs.length) {
+            final int capacity = mPcs.length << 1;
+            mPcs = Arrays.copyOf(mPcs, capacity);
+            mLibraries = Arrays.copyOf(mLibraries, capacity);
+            mSymbols = Arrays.copyOf(mSymbols, capacity);
+            mSymbolOffsets = Arrays.copyOf(mSymbolOffsets, capacity);
+        }
+        StringTable table = getStringTable();
+        mPcs[mFrameCount] = pc;
+        mLibraries[mFrameCount] = table.intern(library);
+        mSymbols[mFrameCount] = symbol == null ? NO_SYMBOL : table.intern(symbol);
+        mSymbolOffsets[mFrameCount] = symbol == null ? 0 : symbolOffset;
+        mFrameCount++;
+    }
+
+    /**
+     * Get the number of frames in the backtrace.
+     */
+    public int getFrameCount() {
+        return mFrameCount;
+    }
+
+    /**
+     * Get the pc of a frame, relative to its library.
+     */
+    public long getFramePc(int frame) {
+        checkFrame(frame);
+        return mPcs[frame];
+    }
+
+    /**
+     * Get the {@link StringTable} id of the library of a frame.
+     */
+    public int getFrameLibraryId(int frame) {
+        checkFrame(frame);
+        return mLibraries[frame];
+    }
+
+    /**
+     * Get the {@link StringTable} id of the symbol of a frame, or {@link #NO_SYMBOL}.
+     */
+    public int getFrameSymbolId(int frame) {
+        checkFrame(frame);
+        return mSymbols[frame];
+    }
+
+    /**
+     * Get the offset from the symbol of a frame, or 0 if the frame has no symbol.
+     */
+    public long getFrameSymbolOffset(int frame) {
+        checkFrame(frame);
+        return mSymbolOffsets[frame];
+    }
+
+    /**
+     * Get the frames of the backtrace, from the top of the stack.
+     */
+    public List<Frame> getFrames() {
+        List<Frame> frames = new ArrayList<Frame>(mFrameCount);
+        for (int i = 0; i < mFrameCount; i++) {
+            frames.add(new Frame(mPcs[i], mStringTable.get(mLibraries[i]),
+                    mSymbols[i] == NO_SYMBOL ? null : mStringTable.get(mSymbols[i]),
+                    mSymbolOffsets[i]));
+        }
+        return frames;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        JSONObject object = super.toJson();
+        if (mFrameCount == 0) {
+            return object;
+        }
+        JSONArray frames = new JSONArray();
+        try {
+            for (Frame frame : getFrames()) {
+                JSONObject json = new JSONObject();
+                json.put(PC, Long.toHexString(frame.getPc()));
+                json.put(LIBRARY, frame.getLibrary());
+                if (frame.getSymbol() != null) {
+                    json.put(SYMBOL, frame.getSymbol());
+                    json.put(SYMBOL_OFFSET, frame.getSymbolOffset());
+                }
+                frames.put(json);
+            }
+            object.put(FRAMES, frames);
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return object;
+    }
+
+    /**
+     * Check that a frame index is in range.
+     */
+    private void checkFrame(int frame) {
+        if (frame < 0 || frame >= mFrameCount) {
+            throw new IndexOutOfBoundsException(String.format("Frame %d, count %d", frame,
+                    mFrameCount));
+        }
+    }
 }
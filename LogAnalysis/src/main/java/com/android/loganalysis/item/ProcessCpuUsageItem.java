@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * An {@link IItem} used to store the CPU usage of a single process, such as a row of the CPU usage
+ * in an ANR.
+ */
+public class ProcessCpuUsageItem extends GenericItem {
+
+    /** Constant for JSON output */
+    public static final String PID = "PID";
+    /** Constant for JSON output */
+    public static final String PROCESS_NAME = "PROCESS_NAME";
+    /** Constant for JSON output */
+    public static final String TOTAL = "TOTAL";
+    /** Constant for JSON output */
+    public static final String USER = "USER";
+    /** Constant for JSON output */
+    public static final String KERNEL = "KERNEL";
+    /** Constant for JSON output */
+    public static final String MINOR_FAULTS = "MINOR_FAULTS";
+    /** Constant for JSON output */
+    public static final String MAJOR_FAULTS = "MAJOR_FAULTS";
+
+    private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
+            PID, PROCESS_NAME, TOTAL, USER, KERNEL, MINOR_FAULTS, MAJOR_FAULTS));
+
+    /**
+     * The constructor for {@link ProcessCpuUsageItem}.
+     */
+    public ProcessCpuUsageItem() {
+        super(ATTRIBUTES);
+    }
+
+    /**
+     * Get the PID of the process.
+     */
+    public Integer getPid() {
+        return (Integer) getAttribute(PID);
+    }
+
+    /**
+     * Set the PID of the process.
+     */
+    public void setPid(Integer pid) {
+        setAttribute(PID, pid);
+    }
+
+    /**
+     * Get the name of the process.
+     */
+    public String getProcessName() {
+        return (String) getAttribute(PROCESS_NAME);
+    }
+
+    /**
+     * Set the name of the process.
+     */
+    public void setProcessName(String name) {
+        setAttribute(PROCESS_NAME, name);
+    }
+
+    /**
+     * Get the total CPU usage of the process as a percentage.
+     */
+    public Double getTotal() {
+        return (Double) getAttribute(TOTAL);
+    }
+
+    /**
+     * Set the total CPU usage of the process as a percentage.
+     */
+    public void setTotal(Double usage) {
+        setAttribute(TOTAL, usage);
+    }
+
+    /**
+     * Get the user CPU usage of the process as a percentage.
+     */
+    public Double getUser() {
+        return (Double) getAttribute(USER);
+    }
+
+    /**
+     * Set the user CPU usage of the process as a percentage.
+     */
+    public void setUser(Double usage) {
+        setAttribute(USER, usage);
+    }
+
+    /**
+     * Get the kernel CPU usage of the process as a percentage.
+     */
+    public Double getKernel() {
+        return (Double) getAttribute(KERNEL);
+    }
+
+    /**
+     * Set the kernel CPU usage of the process as a percentage.
+     */
+    public void setKernel(Double usage) {
+        setAttribute(KERNEL, usage);
+    }
+
+    /**
+     * Get the number of minor page faults.
+     */
+    public Integer getMinorFaults() {
+        return (Integer) getAttribute(MINOR_FAULTS);
+    }
+
+    /**
+     * Set the number of minor page faults.
+     */
+    public void setMinorFaults(Integer faults) {
+        setAttribute(MINOR_FAULTS, faults);
+    }
+
+    /**
+     * Get the number of major page faults.
+     */
+    public Integer getMajorFaults() {
+        return (Integer) getAttribute(MAJOR_FAULTS);
+    }
+
+    /**
+     * Set the number of major page faults.
+     */
+    public void setMajorFaults(Integer faults) {
+        setAttribute(MAJOR_FAULTS, faults);
+    }
+}
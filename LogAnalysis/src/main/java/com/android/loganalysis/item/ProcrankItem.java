@@ -15,18 +15,24 @@
  */
 package com.android.loganalysis.item;
 
+import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.IntIndexMap;
+import com.android.loganalysis.util.LazyText;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.Set;
 
 
 /**
  * An {@link IItem} used to procrank info.
+ * <p>
+ * Rows are stored as parallel primitive columns indexed by an {@link IntIndexMap} from PID to row,
+ * so that a large number of items can be kept in memory without a boxed object per value.
+ * </p>
  */
 public class ProcrankItem implements IItem {
     public static final String TYPE = "PROCRANK";
@@ -48,24 +54,17 @@ public class ProcrankItem implements IItem {
     /** Constant for JSON output */
     public static final String TEXT = "TEXT";
 
-    private class ProcrankValue {
-        public String mProcessName;
-        public int mVss;
-        public int mRss;
-        public int mPss;
-        public int mUss;
-
-        public ProcrankValue(String processName, int vss, int rss, int pss, int uss) {
-            mProcessName = processName;
-            mVss = vss;
-            mRss = rss;
-            mPss = pss;
-            mUss = uss;
-        }
-    }
+    private static final int INITIAL_CAPACITY = 16;
 
     private String mText = null;
-    private Map<Integer, ProcrankValue> mProcrankLines = new HashMap<Integer, ProcrankValue>();
+    private LazyText mLazyText = null;
+    private IntIndexMap mRows = new IntIndexMap();
+    private int[] mPids = new int[INITIAL_CAPACITY];
+    private String[] mProcessNames = new String[INITIAL_CAPACITY];
+    private int[] mVss = new int[INITIAL_CAPACITY];
+    private int[] mRss = new int[INITIAL_CAPACITY];
+    private int[] mPss = new int[INITIAL_CAPACITY];
+    private int[] mUss = new int[INITIAL_CAPACITY];
 
     /**
      * Add a line from the procrank output to the {@link ProcrankItem}.
@@ -78,75 +77,146 @@ public class ProcrankItem implements IItem {
      * @param uss The USS in KB
      */
     public void addProcrankLine(int pid, String processName, int vss, int rss, int pss, int uss) {
-        mProcrankLines.put(pid, new ProcrankValue(processName, vss, rss, pss, uss));
+        final int row = mRows.getOrAdd(pid);
+        if (row == mPids.length) {
+            grow();
+        }
+        mPids[row] = pid;
+        mProcessNames[row] = processName;
+        mVss[row] = vss;
+        mRss[row] = rss;
+        mPss[row] = pss;
+        mUss[row] = uss;
     }
 
     /**
      * Get a set of PIDs seen in the procrank output.
      */
     public Set<Integer> getPids() {
-        return mProcrankLines.keySet();
+        Set<Integer> pids = new LinkedHashSet<Integer>();
+        for (int i = 0; i < size(); i++) {
+            pids.add(mPids[i]);
+        }
+        return pids;
+    }
+
+    /**
+     * Get the number of lines in the procrank output.
+     */
+    public int size() {
+        return mRows.size();
     }
 
     /**
      * Get the process name for a given PID.
      */
     public String getProcessName(int pid) {
-        if (!mProcrankLines.containsKey(pid)) {
-            return null;
-        }
-
-        return mProcrankLines.get(pid).mProcessName;
+        final int row = mRows.get(pid);
+        return row == IntIndexMap.NOT_FOUND ? null : mProcessNames[row];
     }
 
     /**
      * Get the VSS for a given PID.
      */
     public Integer getVss(int pid) {
-        if (!mProcrankLines.containsKey(pid)) {
-            return null;
-        }
-
-        return mProcrankLines.get(pid).mVss;
+        return getValue(mVss, pid);
     }
 
     /**
      * Get the RSS for a given PID.
      */
     public Integer getRss(int pid) {
-        if (!mProcrankLines.containsKey(pid)) {
-            return null;
-        }
-
-        return mProcrankLines.get(pid).mRss;
+        return getValue(mRss, pid);
     }
 
     /**
      * Get the PSS for a given PID.
      */
     public Integer getPss(int pid) {
-        if (!mProcrankLines.containsKey(pid)) {
-            return null;
-        }
-
-        return mProcrankLines.get(pid).mPss;
+        return getValue(mPss, pid);
     }
 
     /**
      * Get the USS for a given PID.
      */
     public Integer getUss(int pid) {
-        if (!mProcrankLines.containsKey(pid)) {
-            return null;
-        }
+        return getValue(mUss, pid);
+    }
+
+    /**
+     * Get the PIDs as a column, in the order they were added.  The other column getters return
+     * arrays aligned with this one.
+     */
+    public int[] getPidColumn() {
+        return Arrays.copyOf(mPids, size());
+    }
+
+    /**
+     * Get the process names as a column aligned with {@link #getPidColumn()}.
+     */
+    public String[] getProcessNameColumn() {
+        return Arrays.copyOf(mProcessNames, size());
+    }
+
+    /**
+     * Get the VSS values as a column aligned with {@link #getPidColumn()}.
+     */
+    public int[] getVssColumn() {
+        return Arrays.copyOf(mVss, size());
+    }
 
-        return mProcrankLines.get(pid).mUss;
+    /**
+     * Get the RSS values as a column aligned with {@link #getPidColumn()}.
+     */
+    public int[] getRssColumn() {
+        return Arrays.copyOf(mRss, size());
+    }
+
+    /**
+     * Get the PSS values as a column aligned with {@link #getPidColumn()}.
+     */
+    public int[] getPssColumn() {
+        return Arrays.copyOf(mPss, size());
+    }
+
+    /**
+     * Get the USS values as a column aligned with {@link #getPidColumn()}.
+     */
+    public int[] getUssColumn() {
+        return Arrays.copyOf(mUss, size());
+    }
+
+    /**
+     * Get all PIDs sorted by PSS, largest first.
+     */
+    public int[] getPidsByPss() {
+        return getTopPidsByPss(size());
+    }
+
+    /**
+     * Get the PIDs of the {@code n} processes with the largest PSS, largest first.
+     */
+    public int[] getTopPidsByPss(int n) {
+        final int size = size();
+        long[] pss = new long[size];
+        for (int i = 0; i < size; i++) {
+            pss[i] = mPss[i];
+        }
+        int[] rows = ArrayUtil.sortIndicesDescending(pss, size);
+        int[] pids = new int[Math.min(Math.max(n, 0), size)];
+        for (int i = 0; i < pids.length; i++) {
+            pids[i] = mPids[rows[i]];
+        }
+        return pids;
     }
 
     /**
      * Get the raw text of the procrank command.
      */
     public String getText() {
+        if (mLazyText != null) {
+            return mLazyText.toString();
+        }
         return mText;
     }
 
@@ -155,6 +225,15 @@ public class ProcrankItem implements IItem {
      */
     public void setText(String text) {
         mText = text;
+        mLazyText = null;
+    }
+
+    /**
+     * Set the raw text of the procrank command, which is only joined when it is first requested.
+     */
+    public void setLazyText(LazyText text) {
+        mText = null;
+        mLazyText = text;
     }
 
     /**
@@ -181,15 +260,14 @@ public class ProcrankItem implements IItem {
         JSONObject object = new JSONObject();
         JSONArray lines = new JSONArray();
         try {
-            for (Entry<Integer, ProcrankValue> entry : mProcrankLines.entrySet()) {
-                final ProcrankValue procrankValue = entry.getValue();
+            for (int i = 0; i < size(); i++) {
                 JSONObject line = new JSONObject();
-                line.put(PID, entry.getKey());
-                line.put(PROCESS_NAME, procrankValue.mProcessName);
-                line.put(VSS, procrankValue.mVss);
-                line.put(RSS, procrankValue.mRss);
-                line.put(PSS, procrankValue.mPss);
-                line.put(USS, procrankValue.mUss);
+                line.put(PID, mPids[i]);
+                line.put(PROCESS_NAME, mProcessNames[i]);
+                line.put(VSS, mVss[i]);
+                line.put(RSS, mRss[i]);
+                line.put(PSS, mPss[i]);
+                line.put(USS, mUss[i]);
                 lines.put(line);
             }
             object.put(LINES, lines);
@@ -199,4 +277,25 @@ public class ProcrankItem implements IItem {
         }
         return object;
     }
+
+    /**
+     * Get the value from a column for a given PID, or null if the PID was not seen.
+     */
+    private Integer getValue(int[] column, int pid) {
+        final int row = mRows.get(pid);
+        return row == IntIndexMap.NOT_FOUND ? null : column[row];
+    }
+
+    /**
+     * Double the capacity of all columns.
+     */
+    private void grow() {
+        final int capacity = mPids.length << 1;
+        mPids = Arrays.copyOf(mPids, capacity);
+        mProcessNames = Arrays.copyOf(mProcessNames, capacity);
+        mVss = Arrays.copyOf(mVss, capacity);
+        mRss = Arrays.copyOf(mRss, capacity);
+        mPss = Arrays.copyOf(mPss, capacity);
+        mUss = Arrays.copyOf(mUss, capacity);
+    }
 }
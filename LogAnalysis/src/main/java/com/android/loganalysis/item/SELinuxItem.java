@@ -13,10 +13,11 @@
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-
 package com.android.loganalysis.item;
 
 import com.android.loganalysis.parser.KernelLogParser;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 import java.util.Arrays;
 import java.util.HashSet;
@@ -26,16 +27,33 @@ import java.util.Set;
 /**
  * An {@link IItem} used to store traces info.
  * <p>
- * This stores info about selinux events, such as denials.
+ * This stores info about selinux events, such as denials. Identical denials are aggregated into
+ * one item: the event time, preamble and stack are those of the first occurrence, and the item
+ * counts the occurrences and keeps the time of the last one.
  * </p>
  */
 public class SELinuxItem extends MiscKernelLogItem {
 
     /** Constant for JSON output */
     public static final String SCONTEXT = "SCONTEXT";
+    /** Constant for JSON output */
+    public static final String TCONTEXT = "TCONTEXT";
+    /** Constant for JSON output */
+    public static final String TCLASS = "TCLASS";
+    /** Constant for JSON output */
+    public static final String PERMISSION = "PERMISSION";
+    /** Constant for JSON output */
+    public static final String COMM = "COMM";
+    /** Constant for JSON output */
+    public static final String COUNT = "COUNT";
+    /** Constant for JSON output */
+    public static final String LAST_TIME = "LAST_TIME";
 
     private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
-                SCONTEXT));
+                SCONTEXT, TCONTEXT, TCLASS, PERMISSION, COMM));
+
+    private int mCount = 1;
+    private long mLastTimeUs = KernelLogItem.NO_TIME;
 
     /**
      * The constructor for {@link SELinuxItem}.
@@ -58,4 +76,107 @@ public class SELinuxItem extends MiscKernelLogItem {
     public void setSContext(String context) {
         setAttribute(SCONTEXT, context);
     }
+
+    /**
+     * Get the target context for the SELinux item.
+     */
+    public String getTContext() {
+        return (String) getAttribute(TCONTEXT);
+    }
+
+    /**
+     * Set the target context for the SELinux item.
+     */
+    public void setTContext(String context) {
+        setAttribute(TCONTEXT, context);
+    }
+
+    /**
+     * Get the target class for the SELinux item, such as {@code chr_file}.
+     */
+    public String getTClass() {
+        return (String) getAttribute(TCLASS);
+    }
+
+    /**
+     * Set the target class for the SELinux item.
+     */
+    public void setTClass(String tclass) {
+        setAttribute(TCLASS, tclass);
+    }
+
+    /**
+     * Get the permissions for the SELinux item, such as {@code read write}.
+     */
+    public String getPermission() {
+        return (String) getAttribute(PERMISSION);
+    }
+
+    /**
+     * Set the permissions for the SELinux item.
+     */
+    public void setPermission(String permission) {
+        setAttribute(PERMISSION, permission);
+    }
+
+    /**
+     * Get the command of the process for the SELinux item.
+     */
+    public String getComm() {
+        return (String) getAttribute(COMM);
+    }
+
+    /**
+     * Set the command of the process for the SELinux item.
+     */
+    public void setComm(String comm) {
+        setAttribute(COMM, comm);
+    }
+
+    /**
+     * Get the number of times the event occurred.
+     */
+    public int getCount() {
+        return mCount;
+    }
+
+    /**
+     * Get the time of the last occurrence in seconds since boot, or null if it is not known.
+     */
+    public Double getLastTime() {
+        return KernelLogItem.toSeconds(getLastTimeUs());
+    }
+
+    /**
+     * Get the time of the last occurrence in microseconds since boot, or
+     * {@link KernelLogItem#NO_TIME} if it is not known.
+     */
+    public long getLastTimeUs() {
+        return mCount == 1 ? getEventTimeUs() : mLastTimeUs;
+    }
+
+    /**
+     * Record another occurrence of the event.
+     *
+     * @param timeUs the time of the occurrence in microseconds since boot.
+     */
+    public void addOccurrence(long timeUs) {
+        mCount++;
+        mLastTimeUs = timeUs;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        JSONObject output = super.toJson();
+        try {
+            output.put(COUNT, mCount);
+            output.put(LAST_TIME, getLastTime());
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return output;
+    }
 }
@@ -15,6 +15,7 @@
  */
 package com.android.loganalysis.item;
 
+import com.android.loganalysis.util.TimeSeries;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
@@ -26,9 +27,6 @@ import java.util.*;
  */
 public class SmartMonkeyLogItem extends GenericItem {
 
-    @SuppressWarnings("serial")
-    private class DateSet extends HashSet<Date> {}
-
     /** Constant for JSON output */
     public static final String START_TIME = "START_TIME";
     /** Constant for JSON output */
@@ -68,6 +66,8 @@ public class SmartMonkeyLogItem extends GenericItem {
             IS_FINISHED, INTERMEDIATE_COUNT, FINAL_COUNT, ANR_TIMES, CRASH_TIMES,
             INTERMEDIATE_TIME));
 
+    private static final long HOUR_MS = 60 * 60 * 1000;
+
     /**
      * The constructor for {@link MonkeyLogItem}.
      */
@@ -76,9 +76,8 @@ public class SmartMonkeyLogItem extends GenericItem {
 
         setAttribute(APPLICATIONS, new ArrayList<String>());
         setAttribute(PACKAGES, new ArrayList<String>());
-        setAttribute(CRASH_TIMES, new DateSet());
-        setAttribute(ANR_TIMES, new DateSet());
-        setAttribute(INTERMEDIATE_TIME, new DateSet());
+        setAttribute(CRASH_TIMES, new TimeSeries());
+        setAttribute(ANR_TIMES, new TimeSeries());
         setAttribute(THROTTLE, 0);
         setAttribute(FINAL_COUNT, 0);
         setAttribute(IS_FINISHED, false);
@@ -290,31 +289,77 @@ public class SmartMonkeyLogItem extends GenericItem {
     }
 
     /**
-     * Get ANR times
+     * Get ANR times, in increasing order.
      */
     public Set<Date> getAnrTimes() {
-        return (DateSet) getAttribute(ANR_TIMES);
+        return toDates(getAnrSeries().toArray());
     }
 
     /**
      * Add ANR time
      */
     public void addAnrTime(Date time) {
-        ((DateSet) getAttribute(ANR_TIMES)).add(time);
+        getAnrSeries().add(time.getTime());
+    }
+
+    /**
+     * Get the number of ANRs in the range {@code [start, end)}.
+     */
+    public int getAnrCount(Date start, Date end) {
+        return getAnrSeries().count(start.getTime(), end.getTime());
     }
 
     /**
-     * Get Crash times
+     * Get the ANR times in the range {@code [start, end)}, in increasing order.
+     */
+    public Set<Date> getAnrTimes(Date start, Date end) {
+        return toDates(getAnrSeries().range(start.getTime(), end.getTime()));
+    }
+
+    /**
+     * Get the number of ANRs in each hour of the monkey run.
+     *
+     * @see #getHourlyCounts(TimeSeries)
+     */
+    public int[] getAnrsPerHour() {
+        return getHourlyCounts(getAnrSeries());
+    }
+
+    /**
+     * Get Crash times, in increasing order.
      */
     public Set<Date> getCrashTimes() {
-        return (DateSet) getAttribute(CRASH_TIMES);
+        return toDates(getCrashSeries().toArray());
     }
 
     /**
      * Add Crash time
      */
     public void addCrashTime(Date time) {
-        ((DateSet) getAttribute(CRASH_TIMES)).add(time);
+        getCrashSeries().add(time.getTime());
+    }
+
+    /**
+     * Get the number of crashes in the range {@code [start, end)}.
+     */
+    public int getCrashCount(Date start, Date end) {
+        return getCrashSeries().count(start.getTime(), end.getTime());
+    }
+
+    /**
+     * Get the crash times in the range {@code [start, end)}, in increasing order.
+     */
+    public Set<Date> getCrashTimes(Date start, Date end) {
+        return toDates(getCrashSeries().range(start.getTime(), end.getTime()));
+    }
+
+    /**
+     * Get the number of crashes in each hour of the monkey run.
+     *
+     * @see #getHourlyCounts(TimeSeries)
+     */
+    public int[] getCrashesPerHour() {
+        return getHourlyCounts(getCrashSeries());
     }
 
     /**
@@ -344,10 +389,52 @@ public class SmartMonkeyLogItem extends GenericItem {
         put(object, PACKAGES, new JSONArray(getPackages()));
         put(object, ANR_TIMES, new JSONArray(getAnrTimes()));
         put(object, CRASH_TIMES, new JSONArray(getCrashTimes()));
+        if (getIntermediateTime() == null) {
+            put(object, INTERMEDIATE_TIME, new JSONArray());
+        }
 
         return object;
     }
 
+    /**
+     * Get the ANR times as a {@link TimeSeries} of milliseconds.
+     */
+    private TimeSeries getAnrSeries() {
+        return (TimeSeries) getAttribute(ANR_TIMES);
+    }
+
+    /**
+     * Get the crash times as a {@link TimeSeries} of milliseconds.
+     */
+    private TimeSeries getCrashSeries() {
+        return (TimeSeries) getAttribute(CRASH_TIMES);
+    }
+
+    /**
+     * Count the times in each hour from the start time to the stop time, or to the intermediate
+     * time if the run did not stop. Returns an empty array if either time is unknown.
+     */
+    private int[] getHourlyCounts(TimeSeries series) {
+        Date start = getStartTime();
+        Date stop = getStopTime() != null ? getStopTime() : getIntermediateTime();
+        if (start == null || stop == null || stop.before(start)) {
+            return new int[0];
+        }
+        final long duration = stop.getTime() - start.getTime();
+        return series.countBuckets(start.getTime(), HOUR_MS, (int) (duration / HOUR_MS) + 1);
+    }
+
+    /**
+     * Convert an array of milliseconds into an ordered set of {@link Date}s.
+     */
+    private static Set<Date> toDates(long[] times) {
+        Set<Date> dates = new LinkedHashSet<Date>();
+        for (long time : times) {
+            dates.add(new Date(time));
+        }
+        return dates;
+    }
+
     /**
      * Try to put an {@link Object} in a {@link JSONObject} and remove the existing key if it fails.
      */
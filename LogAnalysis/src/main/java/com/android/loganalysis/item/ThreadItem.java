@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An {@link IItem} used to store a single thread from a traces file.
+ */
+public class ThreadItem extends GenericItem {
+
+    /** Constant for JSON output */
+    public static final String PID = "PID";
+    /** Constant for JSON output */
+    public static final String APP = "APP";
+    /** Constant for JSON output */
+    public static final String NAME = "NAME";
+    /** Constant for JSON output */
+    public static final String TID = "TID";
+    /** Constant for JSON output */
+    public static final String SYS_TID = "SYS_TID";
+    /** Constant for JSON output */
+    public static final String STATE = "STATE";
+    /** Constant for JSON output */
+    public static final String HELD_LOCKS = "HELD_LOCKS";
+    /** Constant for JSON output */
+    public static final String WAITING_LOCK = "WAITING_LOCK";
+    /** Constant for JSON output */
+    public static final String LOCK_OWNER_TID = "LOCK_OWNER_TID";
+    /** Constant for JSON output */
+    public static final String WAITING_ON = "WAITING_ON";
+    /** Constant for JSON output */
+    public static final String FRAMES = "FRAMES";
+
+    private static final Set<String> ATTRIBUTES = new HashSet<String>(Arrays.asList(
+            PID, APP, NAME, TID, SYS_TID, STATE, HELD_LOCKS, WAITING_LOCK, LOCK_OWNER_TID,
+            WAITING_ON, FRAMES));
+
+    /**
+     * The constructor for {@link ThreadItem}.
+     */
+    public ThreadItem() {
+        super(ATTRIBUTES);
+
+        setAttribute(HELD_LOCKS, new ArrayList<String>());
+        setAttribute(FRAMES, new ArrayList<String>());
+    }
+
+    /**
+     * Get the PID of the process.
+     */
+    public Integer getPid() {
+        return (Integer) getAttribute(PID);
+    }
+
+    /**
+     * Set the PID of the process.
+     */
+    public void setPid(Integer pid) {
+        setAttribute(PID, pid);
+    }
+
+    /**
+     * Get the app or package name of the process.
+     */
+    public String getApp() {
+        return (String) getAttribute(APP);
+    }
+
+    /**
+     * Set the app or package name of the process.
+     */
+    public void setApp(String app) {
+        setAttribute(APP, app);
+    }
+
+    /**
+     * Get the name of the thread.
+     */
+    public String getName() {
+        return (String) getAttribute(NAME);
+    }
+
+    /**
+     * Set the name of the thread.
+     */
+    public void setName(String name) {
+        setAttribute(NAME, name);
+    }
+
+    /**
+     * Get the VM thread id, or null if the thread is not attached to the VM.
+     */
+    public Integer getTid() {
+        return (Integer) getAttribute(TID);
+    }
+
+    /**
+     * Set the VM thread id.
+     */
+    public void setTid(Integer tid) {
+        setAttribute(TID, tid);
+    }
+
+    /**
+     * Get the kernel thread id.
+     */
+    public Integer getSysTid() {
+        return (Integer) getAttribute(SYS_TID);
+    }
+
+    /**
+     * Set the kernel thread id.
+     */
+    public void setSysTid(Integer sysTid) {
+        setAttribute(SYS_TID, sysTid);
+    }
+
+    /**
+     * Get the state of the thread, such as {@code MONITOR} or {@code Blocked}.
+     */
+    public String getState() {
+        return (String) getAttribute(STATE);
+    }
+
+    /**
+     * Set the state of the thread.
+     */
+    public void setState(String state) {
+        setAttribute(STATE, state);
+    }
+
+    /**
+     * Get the addresses of the monitors held by the thread.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getHeldLocks() {
+        return (List<String>) getAttribute(HELD_LOCKS);
+    }
+
+    /**
+     * Add the address of a monitor held by the thread.
+     */
+    @SuppressWarnings("unchecked")
+    public void addHeldLock(String lock) {
+        ((List<String>) getAttribute(HELD_LOCKS)).add(lock);
+    }
+
+    /**
+     * Get the address of the monitor the thread is blocked trying to lock.
+     */
+    public String getWaitingLock() {
+        return (String) getAttribute(WAITING_LOCK);
+    }
+
+    /**
+     * Set the address of the monitor the thread is blocked trying to lock.
+     */
+    public void setWaitingLock(String lock) {
+        setAttribute(WAITING_LOCK, lock);
+    }
+
+    /**
+     * Get the tid of the thread holding the monitor this thread is blocked on, if it is known.
+     */
+    public Integer getLockOwnerTid() {
+        return (Integer) getAttribute(LOCK_OWNER_TID);
+    }
+
+    /**
+     * Set the tid of the thread holding the monitor this thread is blocked on.
+     */
+    public void setLockOwnerTid(Integer tid) {
+        setAttribute(LOCK_OWNER_TID, tid);
+    }
+
+    /**
+     * Get the address of the monitor the thread is waiting on with {@code Object.wait()}.
+     */
+    public String getWaitingOn() {
+        return (String) getAttribute(WAITING_ON);
+    }
+
+    /**
+     * Set the address of the monitor the thread is waiting on with {@code Object.wait()}.
+     */
+    public void setWaitingOn(String lock) {
+        setAttribute(WAITING_ON, lock);
+    }
+
+    /**
+     * Get the frames of the stack, from the top of the stack.
+     */
+    @SuppressWarnings("unchecked")
+    public List<String> getFrames() {
+        return (List<String>) getAttribute(FRAMES);
+    }
+
+    /**
+     * Add a frame to the bottom of the stack.
+     */
+    @SuppressWarnings("unchecked")
+    public void addFrame(String frame) {
+        ((List<String>) getAttribute(FRAMES)).add(frame);
+    }
+}
@@ -15,6 +15,10 @@
  */
 package com.android.loganalysis.item;
 
+import com.android.loganalysis.util.LazyText;
+import org.json.JSONException;
+import org.json.JSONObject;
+
 import java.util.Arrays;
 import java.util.HashSet;
 import java.util.Set;
@@ -53,7 +57,9 @@ public class TopItem extends GenericItem {
         super(ATTRIBUTES);
 
         for (String attribute : ATTRIBUTES) {
-            setAttribute(attribute, 0);
+            if (!TEXT.equals(attribute)) {
+                setAttribute(attribute, 0);
+            }
         }
     }
 
@@ -173,7 +179,11 @@ public class TopItem extends GenericItem {
      * Get the raw text of the top command.
      */
     public String getText() {
-        return (String) getAttribute(TEXT);
+        Object text = getAttribute(TEXT);
+        if (text instanceof LazyText) {
+            return text.toString();
+        }
+        return (String) text;
     }
 
     /**
@@ -182,4 +192,27 @@ public class TopItem extends GenericItem {
     public void setText(String text) {
         setAttribute(TEXT, text);
     }
+
+    /**
+     * Set the raw text of the top command, which is only joined when it is first requested.
+     */
+    public void setLazyText(LazyText text) {
+        setAttribute(TEXT, text);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public JSONObject toJson() {
+        JSONObject object = super.toJson();
+        if (getAttribute(TEXT) instanceof LazyText) {
+            try {
+                object.put(TEXT, getText());
+            } catch (JSONException e) {
+                // Ignore
+            }
+        }
+        return object;
+    }
 }
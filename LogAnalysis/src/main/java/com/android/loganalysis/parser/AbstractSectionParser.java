@@ -16,6 +16,8 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.util.ParsePhase;
+import com.android.loganalysis.util.ParseStats;
 import com.android.loganalysis.util.RegexTrie;
 
 import java.util.HashMap;
@@ -27,16 +29,23 @@ import java.util.Map;
  * A {@link IParser} that splits an input file into discrete sections and passes each section to an
  * {@link IParser} to parse.
  * <p>
- * Before parsing input, {@link IParser}s can be added with
- * {@link #addSectionParser(IParser, String)}. The default parser is {@link NoopParser} but this can
- * be overwritten by calling {@link #setParser(IParser)} before parsing the input.
+ * The section parsers are added once, with {@link #addSectionParser(IParser, String)}, when the
+ * parser is created. Each parse keeps its state in a {@link Session}, so a parser can be reused and
+ * shared between threads as long as its section parsers can. The default parser of a session is
+ * {@link NoopParser} but this can be overwritten by calling {@link Session#setParser(IParser)}
+ * before parsing the input.
+ * </p><p>
+ * If a {@link ParseStats} is set, each parse and each section is counted. Each section is also
+ * recorded as a {@link ParsePhase.Kind#SECTION} phase. Sections are named by their header without
+ * the dashes, and the lines before the first header by {@link #PREAMBLE}.
  * </p>
  */
 public abstract class AbstractSectionParser implements IParser {
-    private RegexTrie<IParser> mSectionTrie = new RegexTrie<IParser>();
-    private IParser mCurrentParser = new NoopParser();
-    private List<String> mParseBlock = new LinkedList<String>();
-    private Map<IParser, IItem> mSections = new HashMap<IParser, IItem>();
+    /** The name of the lines before the first section header. */
+    public static final String PREAMBLE = "(preamble)";
+
+    private final RegexTrie<IParser> mSectionTrie = new RegexTrie<IParser>();
+    private ParseStats mStats = null;
 
     /**
      * A method to add a given section parser to the set of potential parsers to use.
@@ -55,73 +64,147 @@ public abstract class AbstractSectionParser implements IParser {
     }
 
     /**
-     * Parse a line of input, either adding the input to the current block or switching parsers and
-     * running the current parser.
+     * Collect the counters of each parse and each section, and how often each section header
+     * pattern is evaluated. Must be called after the section parsers are added and before the
+     * parser is shared between threads.
      *
-     * @param line The line to parse
+     * @param stats the {@link ParseStats}, or null to stop collecting.
      */
-    protected void parseLine(String line) {
-        IParser nextParser = mSectionTrie.retrieve(line);
-
-        if (nextParser == null) {
-            // no match, so buffer this for the current parser, if there is one
-            if (mCurrentParser != null) {
-                mParseBlock.add(line);
-            } else {
-                // CLog.w("Line outside of parsed section: %s", line);
-            }
-        } else {
-            runCurrentParser();
-            mCurrentParser = nextParser;
-        }
+    public void setStats(ParseStats stats) {
+        mStats = stats;
+        mSectionTrie.setStats(stats, getClass().getSimpleName());
     }
 
     /**
-     * Signal that the input has finished and run the last parser.
+     * Get the {@link ParseStats}, or null if they are not collected.
      */
-    protected void commit() {
-        runCurrentParser();
+    protected ParseStats getStats() {
+        return mStats;
     }
 
     /**
-     * Gets the {@link IItem} for a given section.
-     *
-     * @param parser The {@link IParser} type for the section.
-     * @return The {@link IItem}.
+     * The state of a single parse: the current section and the items parsed from each section.
      */
-    protected IItem getSection(IParser parser) {
-        return mSections.get(parser);
-    }
+    protected class Session {
+        private IParser mCurrentParser = new NoopParser();
+        private List<String> mParseBlock = new LinkedList<String>();
+        private Map<IParser, IItem> mSections = new HashMap<IParser, IItem>();
 
-    /**
-     * Set the {@link IParser}. Used to set the initial parser.
-     *
-     * @param parser The {@link IParser} to set.
-     */
-    protected void setParser(IParser parser) {
-        mCurrentParser = parser;
-    }
+        /** The counters of the parse, or null if they are not collected. */
+        private final ParseStats mSessionStats = mStats;
+        private final ParseStats.Timer mTimer = mStats != null ? new ParseStats.Timer() : null;
+        private String mSectionName = PREAMBLE;
+        private long mLines = 0;
+        private long mBytes = 0;
+        private long mBlockBytes = 0;
+        private long mPeakBufferedLines = 0;
 
-    /**
-     * Callback for when parsers are switched.
-     */
-    protected void onSwitchParser() {
-    }
+        /**
+         * Parse a line of input, either adding the input to the current block or switching parsers
+         * and running the current parser.
+         *
+         * @param line The line to parse
+         */
+        public void parseLine(String line) {
+            IParser nextParser = mSectionTrie.retrieve(line);
+            if (mSessionStats != null) {
+                mLines++;
+                mBytes += line.length() + 1;
+            }
 
-    /**
-     * Run the current parser and add the {@link IItem} to the sections map.
-     */
-    private void runCurrentParser() {
-        if (mCurrentParser != null) {
-            IItem item = mCurrentParser.parse(mParseBlock);
-            if (item != null && !(mCurrentParser instanceof NoopParser)) {
-                mSections.put(mCurrentParser, item);
-                // CLog.v("Just ran the %s parser", mCurrentParser.getClass().getSimpleName());
+            if (nextParser == null) {
+                // no match, so buffer this for the current parser, if there is one
+                if (mCurrentParser != null) {
+                    mParseBlock.add(line);
+                    if (mSessionStats != null) {
+                        mBlockBytes += line.length() + 1;
+                    }
+                } else {
+                    // CLog.w("Line outside of parsed section: %s", line);
+                }
+            } else {
+                runCurrentParser();
+                mCurrentParser = nextParser;
+                mSectionName = line.replaceAll("^[-\\s]+|[-\\s]+$", "");
+            }
+        }
+
+        /**
+         * Signal that the input has finished and run the last parser.
+         */
+        public void commit() {
+            runCurrentParser();
+            if (mSessionStats != null) {
+                ParseStats.ParserStats stats = mSessionStats.getParser(
+                        AbstractSectionParser.this.getClass().getSimpleName());
+                stats.add(mTimer, mLines, mBytes, mSections.size());
+                stats.updatePeakBufferedLines(mPeakBufferedLines);
             }
         }
 
-        mParseBlock.clear();
-        onSwitchParser();
+        /**
+         * Gets the {@link IItem} for a given section.
+         *
+         * @param parser The {@link IParser} type for the section.
+         * @return The {@link IItem}.
+         */
+        public IItem getSection(IParser parser) {
+            return mSections.get(parser);
+        }
+
+        /**
+         * Set the {@link IParser}. Used to set the initial parser.
+         *
+         * @param parser The {@link IParser} to set.
+         */
+        protected void setParser(IParser parser) {
+            mCurrentParser = parser;
+        }
+
+        /**
+         * Parse the lines of a section. Sessions can override this to pass state of the parse,
+         * such as the year of the input, to a section parser.
+         *
+         * @param parser The {@link IParser} for the section.
+         * @param lines The lines of the section.
+         * @return The {@link IItem}.
+         */
+        protected IItem parseSection(IParser parser, List<String> lines) {
+            return parser.parse(lines);
+        }
+
+        /**
+         * Callback for when parsers are switched.
+         */
+        protected void onSwitchParser() {
+        }
+
+        /**
+         * Run the current parser and add the {@link IItem} to the sections map.
+         */
+        private void runCurrentParser() {
+            if (mCurrentParser != null) {
+                ParseStats.Timer timer = mSessionStats != null ? new ParseStats.Timer() : null;
+                ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SECTION);
+                IItem item = parseSection(mCurrentParser, mParseBlock);
+                phase.end(AbstractSectionParser.this.getClass().getSimpleName(), mSectionName,
+                        mParseBlock);
+                final boolean parsed = item != null && !(mCurrentParser instanceof NoopParser);
+                if (parsed) {
+                    mSections.put(mCurrentParser, item);
+                    // CLog.v("Just ran the %s parser", mCurrentParser.getClass().getSimpleName());
+                }
+                if (mSessionStats != null) {
+                    ParseStats.ParserStats stats = mSessionStats.getSection(mSectionName);
+                    stats.add(timer, mParseBlock.size(), mBlockBytes, parsed ? 1 : 0);
+                    stats.updatePeakBufferedLines(mParseBlock.size());
+                    mPeakBufferedLines = Math.max(mPeakBufferedLines, mParseBlock.size());
+                }
+            }
+
+            mParseBlock.clear();
+            mBlockBytes = 0;
+            onSwitchParser();
+        }
     }
 }
-
@@ -16,6 +16,8 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.AnrItem;
+import com.android.loganalysis.item.ProcessCpuUsageItem;
+import com.android.loganalysis.util.ParsePhase;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -50,73 +52,303 @@ public class AnrParser implements IParser {
      * Matches: 33% TOTAL: 21% user + 11% kernel + 0.3% iowait
      */
     private static final Pattern TOTAL = Pattern.compile("^(\\d+(\\.\\d+)?)% TOTAL: .*$");
-    private static final Pattern USER = Pattern.compile("^.* (\\d+(\\.\\d+)?)% user.*$");
-    private static final Pattern KERNEL = Pattern.compile("^.* (\\d+(\\.\\d+)?)% kernel.*$");
-    private static final Pattern IOWAIT = Pattern.compile("^.* (\\d+(\\.\\d+)?)% iowait.*$");
+
+    private boolean mParseStack = true;
+
+    /**
+     * Sets whether the stack of the ANR is built. Defaults to true.
+     */
+    public void setParseStack(boolean parseStack) {
+        mParseStack = parseStack;
+    }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * Each line is classified by its first character, and only the pattern for that kind of line
+     * is matched. The CPU usage lines are read with a single scan of their tokens.
+     * </p>
      *
      * @return The {@link AnrItem}.
      */
     @Override
     public AnrItem parse(List<String> lines) {
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SUB_PARSER);
+        try {
+            return parseAnr(lines);
+        } finally {
+            phase.end(getClass().getSimpleName(), null, lines);
+        }
+    }
+
+    /**
+     * Parse the lines of an ANR.
+     */
+    private AnrItem parseAnr(List<String> lines) {
         AnrItem anr = null;
         StringBuilder stack = new StringBuilder();
         boolean matchedTotal = false;
+        // The indent of the process rows of the first CPU usage report, -1 until the first row.
+        int processIndent = -1;
 
         for (String line : lines) {
-            Matcher m = START.matcher(line);
-            // Ignore all input until the start pattern is matched.
-            if (m.matches()) {
-                anr = new AnrItem();
-                anr.setApp(m.group(1));
+            if (line.startsWith("ANR ")) {
+                Matcher m = START.matcher(line);
+                // Ignore all input until the start pattern is matched.
+                if (m.matches()) {
+                    anr = new AnrItem();
+                    anr.setApp(m.group(1));
+                }
             }
 
-            if (anr != null) {
-                m = PID.matcher(line);
+            if (anr == null) {
+                continue;
+            }
+
+            final char first = line.isEmpty() ? '\0' : line.charAt(0);
+            if (first == 'P') {
+                Matcher m = PID.matcher(line);
                 if (m.matches()) {
                     anr.setPid(Integer.valueOf(m.group(1)));
                 }
-                m = REASON.matcher(line);
+            } else if (first == 'R') {
+                Matcher m = REASON.matcher(line);
                 if (m.matches()) {
                     anr.setReason(m.group(1));
                 }
-
-                m = LOAD.matcher(line);
+            } else if (first == 'L') {
+                Matcher m = LOAD.matcher(line);
                 if (m.matches()) {
                     anr.setLoad(AnrItem.LoadCategory.LOAD_1, Double.parseDouble(m.group(1)));
                     anr.setLoad(AnrItem.LoadCategory.LOAD_5, Double.parseDouble(m.group(2)));
                     anr.setLoad(AnrItem.LoadCategory.LOAD_15, Double.parseDouble(m.group(3)));
                 }
-
-                m = TOTAL.matcher(line);
-                if (!matchedTotal && m.matches()) {
+            } else if (first >= '0' && first <= '9') {
+                if (!matchedTotal && TOTAL.matcher(line).matches()) {
                     matchedTotal = true;
-                    anr.setCpuUsage(AnrItem.CpuUsageCategory.TOTAL, Double.parseDouble(m.group(1)));
-
-                    m = USER.matcher(line);
-                    Double usage = m.matches() ? Double.parseDouble(m.group(1)) : 0.0;
-                    anr.setCpuUsage(AnrItem.CpuUsageCategory.USER, usage);
-
-                    m = KERNEL.matcher(line);
-                    usage = m.matches() ? Double.parseDouble(m.group(1)) : 0.0;
-                    anr.setCpuUsage(AnrItem.CpuUsageCategory.KERNEL, usage);
-
-                    m = IOWAIT.matcher(line);
-                    usage = m.matches() ? Double.parseDouble(m.group(1)) : 0.0;
-                    anr.setCpuUsage(AnrItem.CpuUsageCategory.IOWAIT, usage);
+                    parseTotal(anr, line);
+                }
+            } else if (first == ' ' && !matchedTotal) {
+                final int indent = getIndent(line);
+                if (processIndent == -1 || indent <= processIndent) {
+                    ProcessCpuUsageItem usage = parseProcessCpuUsage(line, indent);
+                    if (usage != null) {
+                        processIndent = indent;
+                        anr.addProcessCpuUsage(usage);
+                    }
                 }
+            }
 
+            if (mParseStack) {
                 stack.append(line);
                 stack.append("\n");
             }
         }
 
-        if (anr != null) {
+        if (anr != null && mParseStack) {
             anr.setStack(stack.toString().trim());
         }
         return anr;
     }
-}
 
+    /**
+     * Set the CPU usage of the ANR from the line: 33% TOTAL: 21% user + 11% kernel + 0.3% iowait
+     */
+    private static void parseTotal(AnrItem anr, String line) {
+        Double user = 0.0;
+        Double kernel = 0.0;
+        Double iowait = 0.0;
+        PercentScanner scanner = new PercentScanner(line, 0);
+        while (scanner.next()) {
+            final String label = scanner.getLabel();
+            if ("TOTAL:".equals(label)) {
+                anr.setCpuUsage(AnrItem.CpuUsageCategory.TOTAL, scanner.getValue());
+            } else if ("user".equals(label)) {
+                user = scanner.getValue();
+            } else if ("kernel".equals(label)) {
+                kernel = scanner.getValue();
+            } else if ("iowait".equals(label)) {
+                iowait = scanner.getValue();
+            }
+        }
+        anr.setCpuUsage(AnrItem.CpuUsageCategory.USER, user);
+        anr.setCpuUsage(AnrItem.CpuUsageCategory.KERNEL, kernel);
+        anr.setCpuUsage(AnrItem.CpuUsageCategory.IOWAIT, iowait);
+    }
+
+    /**
+     * Parse a process row of the CPU usage, such as:
+     * {@code 22% 3378/com.android.package: 19% user + 3.6% kernel / faults: 73 minor 1 major}
+     *
+     * @return The {@link ProcessCpuUsageItem}, or null if the line is not a process row.
+     */
+    private static ProcessCpuUsageItem parseProcessCpuUsage(String line, int indent) {
+        PercentScanner scanner = new PercentScanner(line, indent);
+        if (!scanner.next()) {
+            return null;
+        }
+        final String process = scanner.getLabel();
+        final int slash = process.indexOf('/');
+        if (slash <= 0 || !process.endsWith(":") || !isDigits(process, 0, slash)) {
+            return null;
+        }
+        ProcessCpuUsageItem usage = new ProcessCpuUsageItem();
+        usage.setPid(Integer.parseInt(process.substring(0, slash)));
+        usage.setProcessName(process.substring(slash + 1, process.length() - 1));
+        usage.setTotal(scanner.getValue());
+        while (scanner.next()) {
+            if ("user".equals(scanner.getLabel())) {
+                usage.setUser(scanner.getValue());
+            } else if ("kernel".equals(scanner.getLabel())) {
+                usage.setKernel(scanner.getValue());
+            }
+        }
+
+        final int faults = line.indexOf(" faults: ", indent);
+        if (faults != -1) {
+            String[] tokens = line.substring(faults + 9).split(" ");
+            for (int i = 0; i + 1 < tokens.length; i += 2) {
+                if (!isDigits(tokens[i], 0, tokens[i].length())) {
+                    break;
+                }
+                if ("minor".equals(tokens[i + 1])) {
+                    usage.setMinorFaults(Integer.parseInt(tokens[i]));
+                } else if ("major".equals(tokens[i + 1])) {
+                    usage.setMajorFaults(Integer.parseInt(tokens[i]));
+                }
+            }
+        }
+        return usage;
+    }
+
+    /**
+     * Get the number of leading spaces of a line.
+     */
+    private static int getIndent(String line) {
+        int i = 0;
+        while (i < line.length() && line.charAt(i) == ' ') {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * Returns true if the range is not empty and only contains digits.
+     */
+    private static boolean isDigits(String s, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            final char c = s.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Scans a line for {@code <number>% <label>} pairs, such as {@code 19% user}, in one pass.
+     * A leading {@code +} or {@code -} on the number, used for processes which started or exited
+     * during the report, is ignored.
+     */
+    private static class PercentScanner {
+        private final String mLine;
+        private int mPosition;
+        private Double mValue = null;
+        private String mLabel = null;
+
+        /**
+         * Constructor for {@link PercentScanner}, starting from a position in the line.
+         */
+        public PercentScanner(String line, int position) {
+            mLine = line;
+            mPosition = position;
+        }
+
+        /**
+         * Move to the next pair.
+         *
+         * @return true if a pair was found, false at the end of the line.
+         */
+        public boolean next() {
+            final int length = mLine.length();
+            while (mPosition < length) {
+                final int start = skipSpaces(mPosition);
+                int end = start;
+                while (end < length && mLine.charAt(end) != ' ') {
+                    end++;
+                }
+                mPosition = end;
+                if (end - start < 2 || mLine.charAt(end - 1) != '%') {
+                    continue;
+                }
+                int numberStart = start;
+                final char sign = mLine.charAt(start);
+                if (sign == '+' || sign == '-') {
+                    numberStart++;
+                }
+                if (!isNumber(numberStart, end - 1)) {
+                    continue;
+                }
+                final int labelStart = skipSpaces(end);
+                int labelEnd = labelStart;
+                while (labelEnd < length && mLine.charAt(labelEnd) != ' ') {
+                    labelEnd++;
+                }
+                if (labelEnd == labelStart) {
+                    return false;
+                }
+                mValue = Double.parseDouble(mLine.substring(numberStart, end - 1));
+                mLabel = mLine.substring(labelStart, labelEnd);
+                mPosition = labelEnd;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Get the percentage of the current pair.
+         */
+        public Double getValue() {
+            return mValue;
+        }
+
+        /**
+         * Get the label of the current pair.
+         */
+        public String getLabel() {
+            return mLabel;
+        }
+
+        /**
+         * Skip spaces from a position.
+         */
+        private int skipSpaces(int position) {
+            while (position < mLine.length() && mLine.charAt(position) == ' ') {
+                position++;
+            }
+            return position;
+        }
+
+        /**
+         * Returns true if the range is digits with at most one decimal point, such as {@code 3.6}.
+         */
+        private boolean isNumber(int start, int end) {
+            boolean digits = false;
+            boolean point = false;
+            for (int i = start; i < end; i++) {
+                final char c = mLine.charAt(i);
+                if (c >= '0' && c <= '9') {
+                    digits = true;
+                } else if (c == '.' && !point) {
+                    point = true;
+                } else {
+                    return false;
+                }
+            }
+            return digits;
+        }
+    }
+}
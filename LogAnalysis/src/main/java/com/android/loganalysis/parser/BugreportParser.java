@@ -17,6 +17,7 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.*;
 import com.android.loganalysis.item.BugreportItem.CommandLineItem;
+import com.android.loganalysis.util.ParseStats;
 
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -26,11 +27,16 @@ import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
  * A {@link IParser} to parse Android bugreports.
+ * <p>
+ * The section parsers are created once with the parser, and the state of each parse is kept in a
+ * session, so a configured parser can be reused and shared between threads.
+ * </p>
  */
 public class BugreportParser extends AbstractSectionParser {
     private static final String MEM_INFO_SECTION_REGEX = "------ MEMORY INFO .*";
@@ -46,6 +52,7 @@ public class BugreportParser extends AbstractSectionParser {
     private static final String NOOP_SECTION_REGEX = "------ .*";
 
     private static final String BOOTREASON = "androidboot.bootreason";
+    private static final String TEXT = "TEXT";
 
     /**
      * Matches: == dumpstate: 2012-04-26 12:13:14
@@ -53,54 +60,132 @@ public class BugreportParser extends AbstractSectionParser {
     private static final Pattern DATE = Pattern.compile(
             "^== dumpstate: (\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})$");
 
+    /**
+     * Matches: Uptime: up 0 weeks, 1 day, 2 hours, 13 minutes, load average: 1.00, 0.90, 0.80
+     */
+    private static final Pattern UPTIME = Pattern.compile(
+            "^Uptime: up (\\d+) weeks?, (\\d+) days?, (\\d+) hours?, (\\d+) minutes?.*$");
+
     /**
      * Matches: Command line: key=value key=value
      */
     private static final Pattern COMMAND_LINE = Pattern.compile(
             "Command line:((\\s+[^\\s=]+=[^\\s]*)*)\\s*");
 
-    private IParser mBugreportParser = new IParser() {
-        @Override
-        public BugreportItem parse(List<String> lines) {
-            BugreportItem bugreport = null;
-            for (String line : lines) {
-                if (bugreport == null && !"".equals(line.trim())) {
-                    bugreport = new BugreportItem();
-                }
-                Matcher m = DATE.matcher(line);
-                if (m.matches()) {
-                    bugreport.setTime(parseTime(m.group(1)));
-                }
-                m = COMMAND_LINE.matcher(line);
-                if (m.matches()) {
-                    String argString = m.group(1).trim();
-                    if (!argString.isEmpty()) {
-                        String[] pairs = argString.split("\\s+");
-                        for (String pair : pairs) {
-                            System.out.println(pair);
-                            String[] keyValue = pair.split("=", 2);
-                            mCommandLine.put(keyValue[0], keyValue[1]);
-                        }
-                    }
-                }
-            }
-            return bugreport;
+    private final MemInfoParser mMemInfoParser = new MemInfoParser();
+    private final ProcrankParser mProcrankParser = new ProcrankParser();
+    private final TopParser mTopParser = new TopParser();
+    private final SystemPropsParser mSystemPropsParser = new SystemPropsParser();
+    private final TracesParser mTracesParser = new TracesParser();
+    private final KernelLogParser mKernelLogParser = new KernelLogParser();
+    private final KernelLogParser mLastKmsgParser = new KernelLogParser();
+    private final LogcatParser mLogcatParser = new LogcatParser();
+    private final DumpsysParser mDumpsysParser = new DumpsysParser();
+
+    /**
+     * Constructor for {@link BugreportParser}, which adds the section parsers.
+     */
+    public BugreportParser() {
+        addSectionParser(mMemInfoParser, MEM_INFO_SECTION_REGEX);
+        addSectionParser(mProcrankParser, PROCRANK_SECTION_REGEX);
+        addSectionParser(mTopParser, TOP_SECTION_REGEX);
+        addSectionParser(mSystemPropsParser, SYSTEM_PROP_SECTION_REGEX);
+        addSectionParser(mTracesParser, ANR_TRACES_SECTION_REGEX);
+        addSectionParser(mLogcatParser, SYSTEM_LOG_SECTION_REGEX);
+        addSectionParser(mKernelLogParser, KERNEL_LOG_SECTION_REGEX);
+        addSectionParser(mLastKmsgParser, LAST_KMSG_SECTION_REGEX);
+        addSectionParser(mDumpsysParser, DUMPSYS_SECTION_REGEX);
+        addSectionParser(new NoopParser(), NOOP_SECTION_REGEX);
+    }
+
+    /**
+     * Set how the raw text of a section is kept in its item.
+     *
+     * @param section the section, one of {@link BugreportItem#MEM_INFO},
+     * {@link BugreportItem#PROCRANK}, {@link BugreportItem#TOP} or
+     * {@link BugreportItem#SYSTEM_PROPS}.
+     * @param retention the {@link TextRetention} for the section.
+     * @throws IllegalArgumentException if the section does not keep its raw text.
+     */
+    public void setTextRetention(String section, TextRetention retention) {
+        if (BugreportItem.MEM_INFO.equals(section)) {
+            mMemInfoParser.setTextRetention(retention);
+        } else if (BugreportItem.PROCRANK.equals(section)) {
+            mProcrankParser.setTextRetention(retention);
+        } else if (BugreportItem.TOP.equals(section)) {
+            mTopParser.setTextRetention(retention);
+        } else if (BugreportItem.SYSTEM_PROPS.equals(section)) {
+            mSystemPropsParser.setTextRetention(retention);
+        } else {
+            throw new IllegalArgumentException(String.format(
+                    "Section %s does not keep its raw text", section));
         }
-    };
-    private MemInfoParser mMemInfoParser = new MemInfoParser();
-    private ProcrankParser mProcrankParser = new ProcrankParser();
-    private TopParser mTopParser = new TopParser();
-    private SystemPropsParser mSystemPropsParser = new SystemPropsParser();
-    private TracesParser mTracesParser = new TracesParser();
-    private KernelLogParser mKernelLogParser = new KernelLogParser();
-    private KernelLogParser mLastKmsgParser = new KernelLogParser();
-    private LogcatParser mLogcatParser = new LogcatParser();
-    private DumpsysParser mDumpsysParser = new DumpsysParser();
-
-    private BugreportItem mBugreport = null;
-    private CommandLineItem mCommandLine = new CommandLineItem();
-
-    private boolean mParsedInput = false;
+    }
+
+    /**
+     * Set how the raw text of all sections is kept in their items.
+     *
+     * @see #setTextRetention(String, TextRetention)
+     */
+    public void setTextRetention(TextRetention retention) {
+        mMemInfoParser.setTextRetention(retention);
+        mProcrankParser.setTextRetention(retention);
+        mTopParser.setTextRetention(retention);
+        mSystemPropsParser.setTextRetention(retention);
+    }
+
+    /**
+     * Sets which of the optional attributes are computed for the events and sections of the
+     * bugreport. The optional attributes are the preambles and stacks of the logcat and kernel log
+     * events, see {@link LogcatParser#setFields(Set)} and {@link KernelLogParser#setFields(Set)},
+     * and the raw {@code TEXT} of the sections. If {@code TEXT} is not in {@code fields}, the
+     * {@link TextRetention} of all sections is set to {@link TextRetention#NONE}.
+     *
+     * @param fields The attributes to compute, or {@code null} to compute all attributes.
+     */
+    public void setFields(Set<String> fields) {
+        mLogcatParser.setFields(fields);
+        mKernelLogParser.setFields(fields);
+        mLastKmsgParser.setFields(fields);
+        if (fields != null && !fields.contains(TEXT)) {
+            setTextRetention(TextRetention.NONE);
+        }
+    }
+
+    /**
+     * Add a pack of rules to the parsers of the kernel log and last kmsg.
+     *
+     * @see KernelLogParser#addRules(List)
+     */
+    public void addKernelRules(List<String> lines) {
+        mKernelLogParser.addRules(lines);
+        mLastKmsgParser.addRules(lines);
+    }
+
+    /**
+     * Sets a listener which receives every thread from the {@code VM TRACES AT LAST ANR} section.
+     *
+     * @see TracesParser#setThreadListener(ITracesListener)
+     */
+    public void setThreadListener(ITracesListener listener) {
+        mTracesParser.setThreadListener(listener);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The counters are also collected by the parsers of the system log, kernel log, last kmsg and
+     * dumpsys sections.
+     * </p>
+     */
+    @Override
+    public void setStats(ParseStats stats) {
+        super.setStats(stats);
+        mLogcatParser.setStats(stats);
+        mKernelLogParser.setStats(stats);
+        mLastKmsgParser.setStats(stats);
+        mDumpsysParser.setStats(stats);
+    }
 
     /**
      * Parse a bugreport from a {@link BufferedReader} into an {@link BugreportItem} object.
@@ -110,18 +195,14 @@ public class BugreportParser extends AbstractSectionParser {
      * @see #parse(List)
      */
     public BugreportItem parse(BufferedReader input) throws IOException {
+        BugreportSession session = new BugreportSession();
         String line;
-
-        setup();
         while ((line = input.readLine()) != null) {
-            if (!mParsedInput && !"".equals(line.trim())) {
-                mParsedInput = true;
-            }
-            parseLine(line);
+            session.parseLine(line);
         }
-        commit();
+        session.commit();
 
-        return mBugreport;
+        return session.getBugreport();
     }
 
     /**
@@ -131,89 +212,202 @@ public class BugreportParser extends AbstractSectionParser {
      */
     @Override
     public BugreportItem parse(List<String> lines) {
-        setup();
+        BugreportSession session = new BugreportSession();
         for (String line : lines) {
-            if (!mParsedInput && !"".equals(line.trim())) {
-                mParsedInput = true;
-            }
-            parseLine(line);
+            session.parseLine(line);
         }
-        commit();
+        session.commit();
 
-        return mBugreport;
+        return session.getBugreport();
     }
 
     /**
-     * Sets up the parser by adding the section parsers and adding an initial {@link IParser} to
-     * parse the bugreport header.
+     * The state of the parse of a single bugreport.
      */
-    protected void setup() {
-        // Set the initial parser explicitly since the header isn't part of a section.
-        setParser(mBugreportParser);
-        addSectionParser(mMemInfoParser, MEM_INFO_SECTION_REGEX);
-        addSectionParser(mProcrankParser, PROCRANK_SECTION_REGEX);
-        addSectionParser(mTopParser, TOP_SECTION_REGEX);
-        addSectionParser(mSystemPropsParser, SYSTEM_PROP_SECTION_REGEX);
-        addSectionParser(mTracesParser, ANR_TRACES_SECTION_REGEX);
-        addSectionParser(mLogcatParser, SYSTEM_LOG_SECTION_REGEX);
-        addSectionParser(mKernelLogParser, KERNEL_LOG_SECTION_REGEX);
-        addSectionParser(mLastKmsgParser, LAST_KMSG_SECTION_REGEX);
-        addSectionParser(mDumpsysParser, DUMPSYS_SECTION_REGEX);
-        addSectionParser(new NoopParser(), NOOP_SECTION_REGEX);
-    }
+    private class BugreportSession extends Session {
+        private BugreportItem mBugreport = null;
+        private CommandLineItem mCommandLine = new CommandLineItem();
+        private Long mUptimeMinutes = null;
+        /** The year of the bugreport, used for the timestamps of the logcat. */
+        private String mYear = null;
+        private boolean mParsedInput = false;
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    protected void commit() {
-        // signal EOF
-        super.commit();
+        /**
+         * The parser of the bugreport header, which stores the command line and uptime in the
+         * session.
+         */
+        private final IParser mHeaderParser = new IParser() {
+            @Override
+            public BugreportItem parse(List<String> lines) {
+                BugreportItem bugreport = null;
+                for (String line : lines) {
+                    if (bugreport == null && !"".equals(line.trim())) {
+                        bugreport = new BugreportItem();
+                    }
+                    Matcher m = DATE.matcher(line);
+                    if (m.matches()) {
+                        bugreport.setTime(parseTime(m.group(1)));
+                    }
+                    m = UPTIME.matcher(line);
+                    if (m.matches()) {
+                        mUptimeMinutes = ((Long.parseLong(m.group(1)) * 7
+                                + Long.parseLong(m.group(2))) * 24
+                                + Long.parseLong(m.group(3))) * 60
+                                + Long.parseLong(m.group(4));
+                    }
+                    m = COMMAND_LINE.matcher(line);
+                    if (m.matches()) {
+                        String argString = m.group(1).trim();
+                        if (!argString.isEmpty()) {
+                            String[] pairs = argString.split("\\s+");
+                            for (String pair : pairs) {
+                                System.out.println(pair);
+                                String[] keyValue = pair.split("=", 2);
+                                mCommandLine.put(keyValue[0], keyValue[1]);
+                            }
+                        }
+                    }
+                }
+                return bugreport;
+            }
+        };
+
+        /**
+         * Constructor for {@link BugreportSession}. The initial parser is set explicitly since the
+         * header isn't part of a section.
+         */
+        public BugreportSession() {
+            setParser(mHeaderParser);
+        }
+
+        /**
+         * Get the {@link BugreportItem}, or null if there was no input.
+         */
+        public BugreportItem getBugreport() {
+            return mBugreport;
+        }
 
-        if (mParsedInput && mBugreport == null) {
-            mBugreport = new BugreportItem();
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void parseLine(String line) {
+            if (!mParsedInput && !"".equals(line.trim())) {
+                mParsedInput = true;
+            }
+            super.parseLine(line);
         }
 
-        if (mBugreport != null) {
-            mBugreport.setCommandLine(mCommandLine);
-            mBugreport.setMemInfo((MemInfoItem) getSection(mMemInfoParser));
-            mBugreport.setProcrank((ProcrankItem) getSection(mProcrankParser));
-            mBugreport.setTop((TopItem) getSection(mTopParser));
-            mBugreport.setSystemLog((LogcatItem) getSection(mLogcatParser));
-            mBugreport.setKernelLog((KernelLogItem) getSection(mKernelLogParser));
-            mBugreport.setLastKmsg((KernelLogItem) getSection(mLastKmsgParser));
-            mBugreport.setSystemProps((SystemPropsItem) getSection(mSystemPropsParser));
-            mBugreport.setDumpsys((DumpsysItem) getSection(mDumpsysParser));
-
-            if (mBugreport.getSystemLog() != null && mBugreport.getProcrank() != null) {
-                for (IItem item : mBugreport.getSystemLog().getEvents()) {
-                    if (item instanceof MiscLogcatItem &&
-                            ((MiscLogcatItem) item).getApp() == null) {
-                        MiscLogcatItem logcatItem = (MiscLogcatItem) item;
-                        logcatItem.setApp(mBugreport.getProcrank().getProcessName(
-                                logcatItem.getPid()));
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void commit() {
+            // signal EOF
+            super.commit();
+
+            if (mParsedInput && mBugreport == null) {
+                mBugreport = new BugreportItem();
+            }
+
+            if (mBugreport != null) {
+                mBugreport.setCommandLine(mCommandLine);
+                mBugreport.setMemInfo((MemInfoItem) getSection(mMemInfoParser));
+                mBugreport.setProcrank((ProcrankItem) getSection(mProcrankParser));
+                mBugreport.setTop((TopItem) getSection(mTopParser));
+                mBugreport.setSystemLog((LogcatItem) getSection(mLogcatParser));
+                mBugreport.setKernelLog((KernelLogItem) getSection(mKernelLogParser));
+                mBugreport.setLastKmsg((KernelLogItem) getSection(mLastKmsgParser));
+                mBugreport.setSystemProps((SystemPropsItem) getSection(mSystemPropsParser));
+                mBugreport.setDumpsys((DumpsysItem) getSection(mDumpsysParser));
+
+                setKernelLogBootTime();
+
+                if (mBugreport.getSystemLog() != null && mBugreport.getProcrank() != null) {
+                    for (IItem item : mBugreport.getSystemLog().getEvents()) {
+                        if (item instanceof MiscLogcatItem &&
+                                ((MiscLogcatItem) item).getApp() == null) {
+                            MiscLogcatItem logcatItem = (MiscLogcatItem) item;
+                            logcatItem.setApp(mBugreport.getProcrank().getProcessName(
+                                    logcatItem.getPid()));
+                        }
+                    }
+                }
+
+                EventTimeline timeline = new EventTimeline();
+                timeline.addBugreport(mBugreport);
+                mBugreport.setTimeline(timeline);
+
+                TracesItem traces = (TracesItem) getSection(mTracesParser);
+                if (traces != null && traces.getApp() != null && traces.getStack() != null &&
+                        mBugreport.getSystemLog() != null) {
+                    AnrItem anr = addAnrTrace(mBugreport.getSystemLog().getAnrs(),
+                            traces.getApp(), traces.getStack());
+                    if (anr != null) {
+                        // The signature of an ANR with a trace is taken from the trace.
+                        mBugreport.getSystemLog().updateSignature(anr);
+                    }
+                    if (anr != null && anr.getEventTime() != null) {
+                        timeline.addTraces(traces, anr.getEventTime());
                     }
                 }
+
+                if (mCommandLine.containsKey(BOOTREASON)) {
+                    String bootreason = mCommandLine.get(BOOTREASON);
+                    Matcher m = KernelLogParser.BAD_BOOTREASONS.matcher(bootreason);
+                    if (m.matches()) {
+                        if (mBugreport.getLastKmsg() == null) {
+                            mBugreport.setLastKmsg(new KernelLogItem());
+                        }
+                        MiscKernelLogItem item = new MiscKernelLogItem();
+                        item.setStack("Last boot reason: " + bootreason.trim());
+                        item.setCategory(KernelLogParser.KERNEL_RESET);
+                        mBugreport.getLastKmsg().addEvent(item);
+                    }
+                }
+            }
+        }
+
+        /**
+         * Set the wall clock time of boot of the kernel log from the time and uptime in the header
+         * of the bugreport. The uptime is only given to the minute, so the mapped times are
+         * approximate.
+         */
+        private void setKernelLogBootTime() {
+            if (mBugreport.getKernelLog() == null) {
+                return;
             }
+            // The uptime is that of the last boot in the log.
+            List<KernelLogItem> boots = mBugreport.getKernelLog().getBoots();
+            KernelLogItem kernelLog = boots.get(boots.size() - 1);
+            if (kernelLog.getBootTime() != null || mBugreport.getTime() == null
+                    || mUptimeMinutes == null) {
+                return;
+            }
+            kernelLog.setBootTime(
+                    new Date(mBugreport.getTime().getTime() - mUptimeMinutes * 60000));
+        }
 
-            TracesItem traces = (TracesItem) getSection(mTracesParser);
-            if (traces != null && traces.getApp() != null && traces.getStack() != null &&
-                    mBugreport.getSystemLog() != null) {
-                addAnrTrace(mBugreport.getSystemLog().getAnrs(), traces.getApp(),
-                        traces.getStack());
+        /**
+         * Parse the logcat with the year from the bugreport header.
+         */
+        @Override
+        protected IItem parseSection(IParser parser, List<String> lines) {
+            if (parser == mLogcatParser && mYear != null) {
+                return mLogcatParser.parse(lines, mYear);
             }
+            return super.parseSection(parser, lines);
+        }
 
-            if (mCommandLine.containsKey(BOOTREASON)) {
-                String bootreason = mCommandLine.get(BOOTREASON);
-                Matcher m = KernelLogParser.BAD_BOOTREASONS.matcher(bootreason);
-                if (m.matches()) {
-                    if (mBugreport.getLastKmsg() == null) {
-                        mBugreport.setLastKmsg(new KernelLogItem());
-                    }
-                    MiscKernelLogItem item = new MiscKernelLogItem();
-                    item.setStack("Last boot reason: " + bootreason.trim());
-                    item.setCategory(KernelLogParser.KERNEL_RESET);
-                    mBugreport.getLastKmsg().addEvent(item);
+        /**
+         * Set the {@link BugreportItem} and the year of the logcat from the bugreport header.
+         */
+        @Override
+        protected void onSwitchParser() {
+            if (mBugreport == null) {
+                mBugreport = (BugreportItem) getSection(mHeaderParser);
+                if (mBugreport != null && mBugreport.getTime() != null) {
+                    mYear = new SimpleDateFormat("yyyy").format(mBugreport.getTime());
                 }
             }
         }
@@ -221,31 +415,20 @@ public class BugreportParser extends AbstractSectionParser {
 
     /**
      * Add the trace from {@link TracesItem} to the last seen {@link AnrItem} matching a given app.
+     *
+     * @return The {@link AnrItem}, or null if no ANR matches the app.
      */
-    private void addAnrTrace(List<AnrItem> anrs, String app, String trace) {
+    private AnrItem addAnrTrace(List<AnrItem> anrs, String app, String trace) {
         ListIterator<AnrItem> li = anrs.listIterator(anrs.size());
 
         while (li.hasPrevious()) {
             AnrItem anr = li.previous();
             if (app.equals(anr.getApp())) {
                 anr.setTrace(trace);
-                return;
-            }
-        }
-    }
-
-    /**
-     * Set the {@link BugreportItem} and the year of the {@link LogcatParser} from the bugreport
-     * header.
-     */
-    @Override
-    protected void onSwitchParser() {
-        if (mBugreport == null) {
-            mBugreport = (BugreportItem) getSection(mBugreportParser);
-            if (mBugreport != null && mBugreport.getTime() != null) {
-                mLogcatParser.setYear(new SimpleDateFormat("yyyy").format(mBugreport.getTime()));
+                return anr;
             }
         }
+        return null;
     }
 
     /**
@@ -49,13 +49,12 @@ public class DumpsysBatteryInfoParser implements IParser {
     private static final Pattern WAKE_LOCK_PAT = Pattern.compile(
             "^  Wake lock #(\\d+) (.+): " + WAKE_LOCK_PAT_SUFFIX);
 
-    private DumpsysBatteryInfoItem mItem = new DumpsysBatteryInfoItem();
-
     /**
      * {@inheritDoc}
      */
     @Override
     public DumpsysBatteryInfoItem parse(List<String> lines) {
+        DumpsysBatteryInfoItem item = new DumpsysBatteryInfoItem();
         WakeLockCategory kernelWakeLockCategory = null;
         WakeLockCategory wakeLockCategory = null;
         boolean inKernelWakeLock = false;
@@ -83,7 +82,7 @@ public class DumpsysBatteryInfoParser implements IParser {
                     if ("".equals(line.trim())) {
                         inKernelWakeLock = false;
                     } else {
-                        parseKernelWakeLock(line, kernelWakeLockCategory);
+                        parseKernelWakeLock(item, line, kernelWakeLockCategory);
                     }
                 } else if (inWakeLock) {
                     if ("".equals(line.trim())) {
@@ -91,7 +90,7 @@ public class DumpsysBatteryInfoParser implements IParser {
                         kernelWakeLockCategory = null;
                         wakeLockCategory = null;
                     } else {
-                        parseWakeLock(line, wakeLockCategory);
+                        parseWakeLock(item, line, wakeLockCategory);
                     }
                 } else {
                     Matcher m = WAKE_LOCK_START_PAT.matcher(line);
@@ -101,16 +100,18 @@ public class DumpsysBatteryInfoParser implements IParser {
                 }
             }
         }
-        return mItem;
+        return item;
     }
 
     /**
-     * Parse a line of output and add it to the last unplugged kernel wake lock section.
+     * Parse a line of output and add it to the last unplugged kernel wake lock section of an
+     * item.
      * <p>
      * Exposed for unit testing.
      * </p>
      */
-    void parseKernelWakeLock(String line, WakeLockCategory category) {
+    void parseKernelWakeLock(DumpsysBatteryInfoItem item, String line,
+            WakeLockCategory category) {
         Matcher m = KERNEL_WAKE_LOCK_PAT.matcher(line);
         if (!m.matches()) {
             return;
@@ -124,16 +125,17 @@ public class DumpsysBatteryInfoParser implements IParser {
         final long msecs = parseLongOrZero(m.group(11));
         final int timesCalled = Integer.parseInt(m.group(12));
 
-        mItem.addWakeLock(name, getMs(days, hours, mins, secs, msecs), timesCalled, category);
+        item.addWakeLock(name, getMs(days, hours, mins, secs, msecs), timesCalled, category);
     }
 
     /**
-     * Parse a line of output and add it to the last unplugged wake lock section.
+     * Parse a line of output and add it to the last unplugged wake lock section of an item.
      * <p>
      * Exposed for unit testing.
      * </p>
      */
-    void parseWakeLock(String line, WakeLockCategory category) {
+    void parseWakeLock(DumpsysBatteryInfoItem item, String line,
+            WakeLockCategory category) {
         Matcher m = WAKE_LOCK_PAT.matcher(line);
         if (!m.matches()) {
             return;
@@ -148,20 +150,10 @@ public class DumpsysBatteryInfoParser implements IParser {
         final long msecs = parseLongOrZero(m.group(12));
         final int timesCalled = Integer.parseInt(m.group(13));
 
-        mItem.addWakeLock(name, number, getMs(days, hours, mins, secs, msecs), timesCalled,
+        item.addWakeLock(name, number, getMs(days, hours, mins, secs, msecs), timesCalled,
                 category);
     }
 
-    /**
-     * Get the {@link DumpsysBatteryInfoItem}.
-     * <p>
-     * Exposed for unit testing.
-     * </p>
-     */
-    DumpsysBatteryInfoItem getItem() {
-        return mItem;
-    }
-
     /**
      * Convert days/hours/mins/secs/msecs into milliseconds.
      * <p>
@@ -27,47 +27,38 @@ public class DumpsysParser extends AbstractSectionParser {
     private static final String BATTERY_INFO_SECTION_REGEX = "DUMP OF SERVICE batteryinfo:";
     private static final String NOOP_SECTION_REGEX = "DUMP OF SERVICE .*";
 
-    private DumpsysBatteryInfoParser mBatteryInfoParser = new DumpsysBatteryInfoParser();
-    private DumpsysItem mDumpsys = null;
+    private final DumpsysBatteryInfoParser mBatteryInfoParser = new DumpsysBatteryInfoParser();
 
     /**
-     * {@inheritDoc}
-     *
-     * @return The {@link DumpsysItem}
+     * Constructor for {@link DumpsysParser}, which adds the section parsers.
      */
-    @Override
-    public DumpsysItem parse(List<String> lines) {
-        setup();
-        for (String line : lines) {
-            if (mDumpsys == null && !"".equals(line.trim())) {
-                mDumpsys = new DumpsysItem();
-            }
-            parseLine(line);
-        }
-        commit();
-
-        return mDumpsys;
-    }
-
-    /**
-     * Sets up the parser by adding the section parsers.
-     */
-    protected void setup() {
+    public DumpsysParser() {
         addSectionParser(mBatteryInfoParser, BATTERY_INFO_SECTION_REGEX);
         addSectionParser(new NoopParser(), NOOP_SECTION_REGEX);
     }
 
     /**
      * {@inheritDoc}
+     *
+     * @return The {@link DumpsysItem}
      */
     @Override
-    protected void commit() {
+    public DumpsysItem parse(List<String> lines) {
+        DumpsysItem dumpsys = null;
+        Session session = new Session();
+        for (String line : lines) {
+            if (dumpsys == null && !"".equals(line.trim())) {
+                dumpsys = new DumpsysItem();
+            }
+            session.parseLine(line);
+        }
         // signal EOF
-        super.commit();
+        session.commit();
 
-        if (mDumpsys != null) {
-            mDumpsys.setBatteryInfo(
-                    (DumpsysBatteryInfoItem) getSection(mBatteryInfoParser));
+        if (dumpsys != null) {
+            dumpsys.setBatteryInfo(
+                    (DumpsysBatteryInfoItem) session.getSection(mBatteryInfoParser));
         }
+        return dumpsys;
     }
 }
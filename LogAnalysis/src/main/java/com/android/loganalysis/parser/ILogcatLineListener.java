@@ -0,0 +1,34 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+/**
+ * An interface for receiving the lines of a logcat as they are parsed.
+ */
+public interface ILogcatLineListener {
+
+    /**
+     * Called once for each line in the threadtime or time format.
+     *
+     * @param line the number of the line in the input, starting at 0.
+     * @param time the time of the line, as returned by {@link LogcatIndex#getTime}.
+     * @param pid the PID.
+     * @param level the log level, such as {@code E}.
+     * @param tag the tag.
+     * @param msg the message.
+     */
+    public void onLine(int line, long time, int pid, String level, String tag, String msg);
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.ThreadItem;
+
+/**
+ * An interface for receiving the threads of a traces file as they are parsed.
+ */
+public interface ITracesListener {
+
+    /**
+     * Called once for each thread, as soon as the thread block has been parsed.
+     *
+     * @param thread The parsed {@link ThreadItem}.
+     */
+    public void onThread(ThreadItem thread);
+}
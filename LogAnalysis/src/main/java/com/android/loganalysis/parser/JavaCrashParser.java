@@ -17,6 +17,7 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.JavaCrashItem;
+import com.android.loganalysis.util.ParsePhase;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -41,6 +42,15 @@ public class JavaCrashParser implements IParser {
      */
     private static final Pattern AT = Pattern.compile("^\tat .+$");
 
+    private boolean mParseStack = true;
+
+    /**
+     * Sets whether the stack of the Java crash is built. Defaults to true.
+     */
+    public void setParseStack(boolean parseStack) {
+        mParseStack = parseStack;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -48,6 +58,18 @@ public class JavaCrashParser implements IParser {
      */
     @Override
     public JavaCrashItem parse(List<String> lines) {
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SUB_PARSER);
+        try {
+            return parseJavaCrash(lines);
+        } finally {
+            phase.end(getClass().getSimpleName(), null, lines);
+        }
+    }
+
+    /**
+     * Parse the lines of a Java crash.
+     */
+    private JavaCrashItem parseJavaCrash(List<String> lines) {
         JavaCrashItem jc = null;
         StringBuilder stack = new StringBuilder();
         StringBuilder message = new StringBuilder();
@@ -95,7 +117,7 @@ public class JavaCrashParser implements IParser {
                 }
             }
 
-            if (inStack) {
+            if (inStack && mParseStack) {
                 stack.append(line);
                 stack.append("\n");
             }
@@ -113,7 +135,9 @@ public class JavaCrashParser implements IParser {
             if (message.length() > 0) {
                 jc.setMessage(message);
             }
-            jc.setStack(stack.trim());
+            if (mParseStack) {
+                jc.setStack(stack.trim());
+            }
         }
     }
 }
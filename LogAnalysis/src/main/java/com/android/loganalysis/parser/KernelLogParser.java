@@ -18,14 +18,35 @@ package com.android.loganalysis.parser;
 import com.android.loganalysis.item.KernelLogItem;
 import com.android.loganalysis.item.MiscKernelLogItem;
 import com.android.loganalysis.item.SELinuxItem;
+import com.android.loganalysis.util.ArrayUtil;
 import com.android.loganalysis.util.LogPatternUtil;
 import com.android.loganalysis.util.LogTailUtil;
+import com.android.loganalysis.util.ParseStats;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
-import java.util.regex.Matcher;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
 * A {@link IParser} to parse {@code /proc/last_kmsg} and the output from {@code dmsg}.
@@ -35,12 +56,6 @@ public class KernelLogParser implements IParser {
     public static final String KERNEL_ERROR = "KERNEL_ERROR";
     public static final String SELINUX_DENIAL = "SELINUX_DENIAL";
 
-    /**
-     * Matches: [     0.000000] Message<br />
-     * Matches: &lt;3&gt;[     0.000000] Message
-     */
-    private static final Pattern LOG_LINE = Pattern.compile(
-            "^(<\\d+>)?\\[\\s*(\\d+\\.\\d{6})\\] (.*)$");
     private static final Pattern SELINUX_DENIAL_PATTERN = Pattern.compile(
             ".*avc:\\s.*scontext=\\w*:\\w*:([\\w\\s]*):\\w*\\s.*");
 
@@ -51,137 +66,870 @@ public class KernelLogParser implements IParser {
             "(?:kernel_panic|rpm_err|hw_reset(?:$|\\n)|wdog_.*|tz_err|adsp_err|modem_err|mba_err|"
             + "watchdogr?|Watchdog|Panic|srto:.*)");
 
-    private KernelLogItem mKernelLog = null;
-    private Double mStartTime = null;
-    private Double mStopTime = null;
+    /**
+     * Kernel reset messages which are not specific to a device.
+     */
+    private static final String[] GENERIC_RESETS = {
+        "kernel BUG at .*",
+        "BUG: failure at .*",
+        "Kernel panic.*",
+        "Unable to handle kernel paging request.*",
+        "Last boot reason: " + BAD_BOOTREASONS,
+    };
+
+    /**
+     * Kernel reset messages of specific devices. Other devices can add their own with
+     * {@link #addRules(List)}.
+     */
+    private static final String[] DEVICE_RESETS = {
+        // Qualcomm modem
+        "smem: DIAG.*",
+        "smsm: AMSS FATAL ERROR.*",
+        // Baseband and DSP
+        "BP panicked",
+        "WROTE DSP RAMDUMP",
+        // PowerVR GPU
+        "PVR_K:\\(Fatal\\): Debug assertion failed! \\[.*\\]",
+        // Tegra
+        "tegra_wdt: last reset due to watchdog timeout.*",
+        "tegra_wdt tegra_wdt.0: last reset is due to watchdog timeout.*",
+        // OMAP
+        "Last reset was MPU Watchdog Timer reset.*",
+        // Samsung modem
+        "\\[MODEM_IF\\].*CRASH.*",
+        // Exynos
+        "Last reset was system watchdog timer reset.*",
+    };
+
+    /**
+     * How far the time stamp must go back for a line to start a new boot. Messages printed by
+     * different CPUs can be slightly out of order.
+     */
+    static final long BOOT_RESET_TOLERANCE_US = 1000000;
+
+    /**
+     * The most lines of a boot which are held in memory to be parsed on the thread pool. The rest
+     * of a longer boot is parsed on the calling thread as it is read.
+     */
+    static final int MAX_BUFFERED_LINES = 100000;
 
-    private LogPatternUtil mPatternUtil = new LogPatternUtil();
-    private LogTailUtil mPreambleUtil = new LogTailUtil(500, 50, 50);
+    private final LogPatternUtil mPatternUtil = new LogPatternUtil();
+
+    private Date mBootTime = null;
+    private boolean mPreamble = true;
+    private boolean mStack = true;
+    private int mParallelism = Runtime.getRuntime().availableProcessors();
+    private ExecutorService mExecutor = null;
+    /** Whether {@link #mExecutor} was created by the parser, which then also stops it. */
+    private boolean mOwnsExecutor = false;
+    private ParseStats mStats = null;
 
     public KernelLogParser() {
         initPatterns();
     }
 
+    /**
+     * Sets which of the optional event attributes are computed.  The optional attributes are
+     * {@link MiscKernelLogItem#PREAMBLE} and {@link MiscKernelLogItem#STACK}. Attributes which are
+     * not in {@code fields} are never computed, stored or serialized.
+     *
+     * @param fields The attributes to compute, or {@code null} to compute all attributes.
+     */
+    public void setFields(Set<String> fields) {
+        mPreamble = fields == null || fields.contains(MiscKernelLogItem.PREAMBLE);
+        mStack = fields == null || fields.contains(MiscKernelLogItem.STACK);
+    }
+
+    /**
+     * Sets the wall clock time of boot, such as one computed from the bugreport header or from a
+     * logcat line, so that the times in the log can be mapped to wall clock times.
+     *
+     * @param bootTime the wall clock time of boot, or null if it is not known.
+     * @see KernelLogItem#getWallTime(long)
+     */
+    public void setBootTime(Date bootTime) {
+        mBootTime = bootTime;
+    }
+
+    /**
+     * Sets the number of boots which are parsed at the same time. Defaults to the number of
+     * processors. The boots are parsed on a thread pool which is created by the first parse that
+     * needs it and reused by the later parses. Ignored if an executor is set with
+     * {@link #setExecutor(ExecutorService)}.
+     *
+     * @param parallelism the number of threads, or 1 to parse the boots on the calling thread.
+     */
+    public synchronized void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be positive");
+        }
+        mParallelism = parallelism;
+        if (mOwnsExecutor) {
+            mExecutor.shutdown();
+            mExecutor = null;
+            mOwnsExecutor = false;
+        }
+    }
+
+    /**
+     * Sets the {@link ExecutorService} which parses the boots, such as a pool shared by several
+     * parsers. The parser does not shut it down.
+     *
+     * @param executor the executor, or null to use a pool of {@link #setParallelism(int)}
+     * threads.
+     */
+    public synchronized void setExecutor(ExecutorService executor) {
+        if (mOwnsExecutor) {
+            mExecutor.shutdown();
+        }
+        mExecutor = executor;
+        mOwnsExecutor = false;
+    }
+
+    /**
+     * Get the executor which parses the boots, creating the parser's own thread pool the first
+     * time it is needed. Its threads are daemons which stop when they have been idle for a
+     * minute, so a parser which is no longer used does not keep them.
+     *
+     * @return the executor, or null if the boots are parsed on the calling thread.
+     */
+    private synchronized ExecutorService getExecutor() {
+        if (mExecutor == null && mParallelism > 1) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(mParallelism, mParallelism, 60,
+                    TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        @Override
+                        public Thread newThread(Runnable runnable) {
+                            Thread thread = new Thread(runnable,
+                                    KernelLogParser.class.getSimpleName());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            mExecutor = executor;
+            mOwnsExecutor = true;
+        }
+        return mExecutor;
+    }
+
+    /**
+     * Collect the counters of each parse, and how often each rule is evaluated and matched. The
+     * CPU time includes the threads which parse the boots. Must be called before the parser is
+     * shared between threads.
+     *
+     * @param stats the {@link ParseStats}, or null to stop collecting.
+     */
+    public void setStats(ParseStats stats) {
+        mStats = stats;
+        mPatternUtil.setStats(stats, getClass().getSimpleName());
+    }
+
     /**
      * Parse a kernel log from a {@link BufferedReader} into an {@link KernelLogItem} object.
+     * <p>
+     * The boots are split and parsed as the lines are read, as described in
+     * {@link #parse(List)}. Only the boots which are parsed on the thread pool are held in
+     * memory, and at most {@link #MAX_BUFFERED_LINES} lines of each.
+     * </p>
      *
      * @return The {@link KernelLogItem}.
      * @see #parse(List)
      */
     public KernelLogItem parse(BufferedReader input) throws IOException {
-        String line;
-        while ((line = input.readLine()) != null) {
-            parseLine(line);
+        BootParser boots = new BootParser();
+        try {
+            String line;
+            while ((line = input.readLine()) != null) {
+                boots.parseLine(line);
+            }
+            return boots.commit();
+        } finally {
+            boots.cancel();
         }
-        commit();
-
-        return mKernelLog;
     }
 
     /**
      * {@inheritDoc}
+     * <p>
+     * The log is split into boots where the time stamps go back, such as a {@code last_kmsg}
+     * with several boots. The first boot is parsed on the calling thread, and once a second boot
+     * is found, the later boots are parsed in parallel. If there is more than one boot, the
+     * returned {@link KernelLogItem} is a merged view of all boots, and each boot is available
+     * from {@link KernelLogItem#getBoots()}. Each boot is parsed in its own session, so the parser
+     * can also be shared between threads.
+     * </p>
      *
      * @return The {@link KernelLogItem}.
      */
     @Override
     public KernelLogItem parse(List<String> lines) {
-        for (String line : lines) {
-            parseLine(line);
+        BootParser boots = new BootParser();
+        try {
+            for (String line : lines) {
+                boots.parseLine(line);
+            }
+            return boots.commit();
+        } finally {
+            boots.cancel();
+        }
+    }
+
+    /**
+     * Parse a kernel log file which is appended to, resuming from a checkpoint of an earlier parse
+     * of the file, and save a checkpoint for the next parse.
+     * <p>
+     * Only the lines after the checkpoint are read, and the {@link KernelLogItem} has the same
+     * boots and events as a parse of the whole file. Without a checkpoint, or if the checkpoint is
+     * not of the file as it is now, or was saved with other fields or rules, the whole file is
+     * parsed. The boots are parsed on the calling thread.
+     * </p>
+     *
+     * @param file the kernel log file.
+     * @param checkpointFile the checkpoint file, such as from
+     * {@link LogCheckpoint#getCheckpointFile(File)}.
+     * @return The {@link KernelLogItem}.
+     * @throws IOException if the kernel log could not be read.
+     */
+    public KernelLogItem parse(File file, File checkpointFile) throws IOException {
+        final ParseStats stats = mStats;
+        ParseStats.Timer timer = stats != null ? new ParseStats.Timer() : null;
+        ResumableParse parse = new ResumableParse();
+        LogCheckpoint checkpoint = new LogCheckpoint(file, checkpointFile,
+                String.format("%s %b %b %s", KernelLogParser.class.getSimpleName(), mPreamble,
+                        mStack, mPatternUtil.getDigest()));
+        try {
+            if (checkpoint.getState() != null) {
+                parse.read(checkpoint.getState());
+            }
+            String line;
+            while ((line = checkpoint.readLine()) != null) {
+                parse.parseLine(line);
+            }
+            checkpoint.save(file, parse);
+            if (checkpoint.getPartialLine() != null) {
+                parse.parseLine(checkpoint.getPartialLine());
+            }
+        } finally {
+            checkpoint.close();
+        }
+        KernelLogItem kernelLog = parse.commit();
+        if (stats != null) {
+            stats.getParser(getClass().getSimpleName()).add(timer, checkpoint.getLineCount(),
+                    checkpoint.getByteCount(),
+                    kernelLog != null ? kernelLog.getEvents().size() : 0);
+        }
+        return kernelLog;
+    }
+
+    /**
+     * Returns true if a line with a time stamp starts a new boot.
+     */
+    private static boolean isBootReset(long lastTime, long time) {
+        return lastTime != KernelLogItem.NO_TIME && time != KernelLogItem.NO_TIME
+                && time + BOOT_RESET_TOLERANCE_US < lastTime;
+    }
+
+    /**
+     * Splits a log into boots as it is read, and parses the boots in order. A boot is parsed on
+     * the calling thread as its lines are read, until a second boot is found. The lines of each
+     * later boot are then held until the boot ends, and the whole boot is parsed on the thread
+     * pool, unless it has more than {@link #MAX_BUFFERED_LINES} lines. Without a thread pool,
+     * every boot is parsed on the calling thread.
+     */
+    private class BootParser {
+        /** The counters of the parse, or null if they are not collected. */
+        private final ParseStats mStats = KernelLogParser.this.mStats;
+        private final ParseStats.Timer mTimer = mStats != null ? new ParseStats.Timer() : null;
+        private final ExecutorService mExecutor = getExecutor();
+        private final List<Future<KernelLogItem>> mBoots = new ArrayList<Future<KernelLogItem>>();
+        /** The session of the boot parsed on the calling thread, or null if it is held. */
+        private Session mSession = new Session();
+        /** The lines of the boot held for the thread pool, or null if it is being parsed. */
+        private BootLines mBootLines = null;
+        private long mLastTime = KernelLogItem.NO_TIME;
+        private long mLines = 0;
+        private long mBytes = 0;
+
+        /**
+         * Parse a line, which may start a new boot.
+         */
+        public void parseLine(String line) {
+            if (mStats != null) {
+                mLines++;
+                mBytes += line.length() + 1;
+            }
+            final long time = parseTime(line);
+            if (isBootReset(mLastTime, time)) {
+                endBoot();
+                if (mExecutor != null) {
+                    mBootLines = new BootLines();
+                } else {
+                    mSession = new Session();
+                }
+            }
+            if (time != KernelLogItem.NO_TIME) {
+                mLastTime = time;
+            }
+            if (mBootLines == null) {
+                mSession.parseLine(line, time);
+                return;
+            }
+            mBootLines.add(line, time);
+            if (mBootLines.size() > MAX_BUFFERED_LINES) {
+                mSession = new Session();
+                mBootLines.parse(mSession);
+                mBootLines = null;
+            }
+        }
+
+        /**
+         * Finish the current boot, or send it to the thread pool if its lines are held.
+         */
+        private void endBoot() {
+            if (mBootLines != null) {
+                submit(mBootLines);
+                mBootLines = null;
+                return;
+            }
+            mSession.commit();
+            mBoots.add(CompletableFuture.completedFuture(mSession.mKernelLog));
+            mSession = null;
+        }
+
+        /**
+         * Parse a held boot on the thread pool.
+         */
+        private void submit(final BootLines lines) {
+            mBoots.add(mExecutor.submit(new Callable<KernelLogItem>() {
+                @Override
+                public KernelLogItem call() {
+                    final long cpuStart = mStats != null ? ParseStats.getCpuTime() : 0;
+                    try {
+                        Session session = new Session();
+                        lines.parse(session);
+                        session.commit();
+                        return session.mKernelLog;
+                    } finally {
+                        if (mStats != null) {
+                            getParserStats().addCpuNanos(ParseStats.getCpuTime() - cpuStart);
+                        }
+                    }
+                }
+            }));
+        }
+
+        /**
+         * Signal that the input has finished, wait for all the boots to be parsed, and get the
+         * merged {@link KernelLogItem}.
+         *
+         * @return The {@link KernelLogItem}, or null if there were no non empty lines.
+         */
+        public KernelLogItem commit() {
+            endBoot();
+            List<KernelLogItem> boots = new ArrayList<KernelLogItem>();
+            for (Future<KernelLogItem> boot : mBoots) {
+                boots.add(getResult(boot));
+            }
+            KernelLogItem kernelLog = mergeBoots(boots);
+            if (mStats != null) {
+                getParserStats().add(mTimer, mLines, mBytes,
+                        kernelLog != null ? kernelLog.getEvents().size() : 0);
+            }
+            return kernelLog;
+        }
+
+        /**
+         * Get the counters of the parser.
+         */
+        private ParseStats.ParserStats getParserStats() {
+            return mStats.getParser(KernelLogParser.this.getClass().getSimpleName());
         }
-        commit();
 
-        return mKernelLog;
+        /**
+         * Cancel the boots which are still being parsed, such as after the input failed. The
+         * thread pool is kept for the next parse.
+         */
+        public void cancel() {
+            for (Future<KernelLogItem> boot : mBoots) {
+                boot.cancel(true);
+            }
+        }
+
+        /**
+         * Wait for a boot to be parsed.
+         */
+        private KernelLogItem getResult(Future<KernelLogItem> boot) {
+            try {
+                return boot.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while parsing the kernel log", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw new IllegalStateException(e.getCause());
+            }
+        }
     }
 
     /**
-     * Parse a line of input.
+     * The lines of a boot and their time stamps, which are held until the boot is parsed.
+     */
+    private static class BootLines {
+        private final List<String> mLines = new ArrayList<String>();
+        private long[] mTimes = new long[16];
+
+        /**
+         * Add a line and its time, as returned by {@link KernelLogParser#parseTime(String)}.
+         */
+        public void add(String line, long time) {
+            final int size = mLines.size();
+            if (size == mTimes.length) {
+                mTimes = Arrays.copyOf(mTimes, size * 2);
+            }
+            mTimes[size] = time;
+            mLines.add(line);
+        }
+
+        /**
+         * Get the number of lines.
+         */
+        public int size() {
+            return mLines.size();
+        }
+
+        /**
+         * Parse the lines in a session.
+         */
+        public void parse(Session session) {
+            for (int i = 0; i < mLines.size(); i++) {
+                session.parseLine(mLines.get(i), mTimes[i]);
+            }
+        }
+    }
+
+    /**
+     * Merge the parsed boots of a log into one {@link KernelLogItem}.
      *
-     * @param line The line to parse
+     * @param boots the boots, where a boot without lines is null.
+     * @return The {@link KernelLogItem}, or null if there were no non empty lines.
      */
-    private void parseLine(String line) {
-        if ("".equals(line.trim())) {
-            return;
+    private KernelLogItem mergeBoots(List<KernelLogItem> boots) {
+        boots.removeAll(Collections.singleton(null));
+        if (boots.isEmpty()) {
+            return null;
+        }
+        // The boot time is the time the last boot started, as given by the bugreport.
+        boots.get(boots.size() - 1).setBootTime(mBootTime);
+        if (boots.size() == 1) {
+            return boots.get(0);
         }
-        if (mKernelLog == null) {
-            mKernelLog = new KernelLogItem();
+        KernelLogItem kernelLog = new KernelLogItem();
+        for (KernelLogItem boot : boots) {
+            kernelLog.addBoot(boot);
         }
-        Matcher m = LOG_LINE.matcher(line);
-        if (m.matches()) {
-            Double time = Double.parseDouble(m.group(2));
-            String msg = m.group(3);
+        return kernelLog;
+    }
 
-            if (mStartTime == null) {
-                mStartTime = time;
+    /**
+     * A parse of a log one line at a time, with the boots parsed so far and the session of the
+     * last boot, which can be written to a checkpoint and resumed.
+     */
+    private class ResumableParse implements LogCheckpoint.IState {
+        private final List<KernelLogItem> mBoots = new ArrayList<KernelLogItem>();
+        private Session mSession = new Session();
+        private long mLastTime = KernelLogItem.NO_TIME;
+
+        /**
+         * Parse a line, which may start a new boot.
+         */
+        public void parseLine(String line) {
+            final long time = parseTime(line);
+            if (isBootReset(mLastTime, time)) {
+                mSession.commit();
+                if (mSession.mKernelLog != null) {
+                    mBoots.add(mSession.mKernelLog);
+                }
+                mSession = new Session();
             }
-            mStopTime = time;
+            if (time != KernelLogItem.NO_TIME) {
+                mLastTime = time;
+            }
+            mSession.parseLine(line, time);
+        }
 
-            checkAndAddKernelEvent(msg);
+        /**
+         * Signal that the input has finished, and merge the boots.
+         */
+        public KernelLogItem commit() {
+            mSession.commit();
+            List<KernelLogItem> boots = new ArrayList<KernelLogItem>(mBoots);
+            boots.add(mSession.mKernelLog);
+            return mergeBoots(boots);
+        }
 
-            mPreambleUtil.addLine(null, line);
-        } else {
-            checkAndAddKernelEvent(line);
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void write(DataOutputStream output) throws IOException {
+            output.writeInt(mBoots.size());
+            for (KernelLogItem boot : mBoots) {
+                output.writeLong(boot.getStartTimeUs());
+                output.writeLong(boot.getStopTimeUs());
+                writeEvents(output, boot.getEvents());
+            }
+            output.writeLong(mLastTime);
+            mSession.write(output);
+        }
+
+        /**
+         * Restore the state written by {@link #write(DataOutputStream)} to a new parse.
+         */
+        public void read(DataInputStream input) throws IOException {
+            final int boots = input.readInt();
+            for (int i = 0; i < boots; i++) {
+                KernelLogItem boot = new KernelLogItem();
+                boot.setStartTimeUs(input.readLong());
+                boot.setStopTimeUs(input.readLong());
+                for (MiscKernelLogItem event : readEvents(input)) {
+                    boot.addEvent(event);
+                }
+                mBoots.add(boot);
+            }
+            mLastTime = input.readLong();
+            mSession.read(input);
         }
     }
 
     /**
-     * Checks if a kernel log message matches a pattern and add a kernel event if it does.
+     * Write the events of a boot.
      */
-    private void checkAndAddKernelEvent(String message) {
-        String category = mPatternUtil.checkMessage(message);
-        if (category == null) {
-            return;
+    private static void writeEvents(DataOutputStream output, List<MiscKernelLogItem> events)
+            throws IOException {
+        output.writeInt(events.size());
+        for (MiscKernelLogItem event : events) {
+            final boolean isDenial = event instanceof SELinuxItem;
+            output.writeBoolean(isDenial);
+            output.writeLong(event.getEventTimeUs());
+            LogCheckpoint.writeString(output, event.getPreamble());
+            LogCheckpoint.writeString(output, event.getCategory());
+            LogCheckpoint.writeString(output, event.getStack());
+            if (isDenial) {
+                SELinuxItem denial = (SELinuxItem) event;
+                LogCheckpoint.writeString(output, denial.getSContext());
+                LogCheckpoint.writeString(output, denial.getTContext());
+                LogCheckpoint.writeString(output, denial.getTClass());
+                LogCheckpoint.writeString(output, denial.getPermission());
+                LogCheckpoint.writeString(output, denial.getComm());
+                output.writeInt(denial.getCount());
+                output.writeLong(denial.getLastTimeUs());
+            }
         }
+    }
 
-        MiscKernelLogItem kernelLogItem;
-        if (category.equals(SELINUX_DENIAL)) {
-            SELinuxItem selinuxItem = new SELinuxItem();
-            Matcher m = SELINUX_DENIAL_PATTERN.matcher(message);
-            if (m.matches()) {
-                selinuxItem.setSContext(m.group(1));
+    /**
+     * Read the events written by {@link #writeEvents(DataOutputStream, List)}.
+     */
+    private static List<MiscKernelLogItem> readEvents(DataInputStream input) throws IOException {
+        final int size = input.readInt();
+        List<MiscKernelLogItem> events = new ArrayList<MiscKernelLogItem>(size);
+        for (int i = 0; i < size; i++) {
+            final boolean isDenial = input.readBoolean();
+            MiscKernelLogItem event = isDenial ? new SELinuxItem() : new MiscKernelLogItem();
+            event.setEventTimeUs(input.readLong());
+            final String preamble = LogCheckpoint.readString(input);
+            if (preamble != null) {
+                event.setPreamble(preamble);
+            }
+            event.setCategory(LogCheckpoint.readString(input));
+            final String stack = LogCheckpoint.readString(input);
+            if (stack != null) {
+                event.setStack(stack);
             }
-            kernelLogItem = selinuxItem;
-        } else {
-            kernelLogItem = new MiscKernelLogItem();
+            if (isDenial) {
+                SELinuxItem denial = (SELinuxItem) event;
+                denial.setSContext(LogCheckpoint.readString(input));
+                denial.setTContext(LogCheckpoint.readString(input));
+                denial.setTClass(LogCheckpoint.readString(input));
+                denial.setPermission(LogCheckpoint.readString(input));
+                denial.setComm(LogCheckpoint.readString(input));
+                final int count = input.readInt();
+                final long lastTimeUs = input.readLong();
+                for (int j = 1; j < count; j++) {
+                    denial.addOccurrence(lastTimeUs);
+                }
+            }
+            events.add(event);
         }
-        kernelLogItem.setEventTime(mStopTime);
-        kernelLogItem.setPreamble(mPreambleUtil.getLastTail());
-        kernelLogItem.setStack(message);
-        kernelLogItem.setCategory(category);
-        mKernelLog.addEvent(kernelLogItem);
+        return events;
     }
 
     /**
-     * Signal that the input has finished.
+     * The state of the parse of a single boot. The parser itself only holds the rules and
+     * settings, which are shared by all sessions.
      */
-    private void commit() {
-        if (mKernelLog == null) {
-            return;
+    private class Session {
+        private KernelLogItem mKernelLog = null;
+        private long mStartTime = KernelLogItem.NO_TIME;
+        private long mStopTime = KernelLogItem.NO_TIME;
+        /** The SELinux denials seen so far, by source, target, class, permissions and command. */
+        private Map<String, SELinuxItem> mDenials = new HashMap<String, SELinuxItem>();
+        private LogTailUtil mPreambleUtil = new LogTailUtil(500, 50, 50);
+
+        /**
+         * Parse a line of input.
+         *
+         * @param line The line to parse
+         * @param time The time stamp of the line, as returned by {@link #parseTime(String)}.
+         */
+        private void parseLine(String line, long time) {
+            if ("".equals(line.trim())) {
+                return;
+            }
+            if (mKernelLog == null) {
+                mKernelLog = new KernelLogItem();
+            }
+            if (time != KernelLogItem.NO_TIME) {
+                // The time stamp has no ']' before the one which closes it.
+                String msg = line.substring(line.indexOf(']') + 2);
+
+                if (mStartTime == KernelLogItem.NO_TIME) {
+                    mStartTime = time;
+                }
+                mStopTime = time;
+
+                checkAndAddKernelEvent(msg);
+
+                if (mPreamble) {
+                    mPreambleUtil.addLine(null, line);
+                }
+            } else {
+                checkAndAddKernelEvent(line);
+            }
+        }
+
+        /**
+         * Checks if a kernel log message matches a pattern and add a kernel event if it does.
+         */
+        private void checkAndAddKernelEvent(String message) {
+            String category = mPatternUtil.checkMessage(message);
+            if (category == null) {
+                return;
+            }
+
+            MiscKernelLogItem kernelLogItem;
+            if (category.equals(SELINUX_DENIAL)) {
+                String[] fields = parseDenial(message);
+                String key = ArrayUtil.join("|", (Object[]) fields);
+                SELinuxItem selinuxItem = mDenials.get(key);
+                if (selinuxItem != null) {
+                    selinuxItem.addOccurrence(mStopTime);
+                    return;
+                }
+                selinuxItem = new SELinuxItem();
+                selinuxItem.setSContext(fields[0]);
+                selinuxItem.setTContext(fields[1]);
+                selinuxItem.setTClass(fields[2]);
+                selinuxItem.setPermission(fields[3]);
+                selinuxItem.setComm(fields[4]);
+                mDenials.put(key, selinuxItem);
+                kernelLogItem = selinuxItem;
+            } else {
+                kernelLogItem = new MiscKernelLogItem();
+            }
+            kernelLogItem.setEventTimeUs(mStopTime);
+            if (mPreamble) {
+                kernelLogItem.setPreamble(mPreambleUtil.getLastTail());
+            }
+            if (mStack) {
+                kernelLogItem.setStack(message);
+            }
+            kernelLogItem.setCategory(category);
+            mKernelLog.addEvent(kernelLogItem);
+        }
+
+        /**
+         * Write the state of the session, after the lines parsed so far.
+         */
+        public void write(DataOutputStream output) throws IOException {
+            output.writeBoolean(mKernelLog != null);
+            output.writeLong(mStartTime);
+            output.writeLong(mStopTime);
+            writeEvents(output, mKernelLog != null ? mKernelLog.getEvents()
+                    : Collections.<MiscKernelLogItem>emptyList());
+            mPreambleUtil.write(output);
+        }
+
+        /**
+         * Restore the state written by {@link #write(DataOutputStream)} to a new session.
+         */
+        public void read(DataInputStream input) throws IOException {
+            if (input.readBoolean()) {
+                mKernelLog = new KernelLogItem();
+            }
+            mStartTime = input.readLong();
+            mStopTime = input.readLong();
+            for (MiscKernelLogItem event : readEvents(input)) {
+                mKernelLog.addEvent(event);
+                if (event instanceof SELinuxItem) {
+                    SELinuxItem denial = (SELinuxItem) event;
+                    mDenials.put(ArrayUtil.join("|", denial.getSContext(), denial.getTContext(),
+                            denial.getTClass(), denial.getPermission(), denial.getComm()), denial);
+                }
+            }
+            mPreambleUtil.read(input);
+        }
+
+        /**
+         * Signal that the input has finished.
+         */
+        private void commit() {
+            if (mKernelLog == null) {
+                return;
+            }
+            mKernelLog.setStartTimeUs(mStartTime);
+            mKernelLog.setStopTimeUs(mStopTime);
         }
-        mKernelLog.setStartTime(mStartTime);
-        mKernelLog.setStopTime(mStopTime);
     }
 
+    /**
+     * Decode the time stamp of a line, such as {@code [   12.345678] Message} or
+     * {@code <3>[   12.345678] Message}, directly from its characters.
+     *
+     * @return the time in microseconds since boot, or {@link KernelLogItem#NO_TIME} if the line
+     * does not start with a time stamp.
+     */
+    private static long parseTime(String line) {
+        final int length = line.length();
+        int i = 0;
+        if (i < length && line.charAt(i) == '<') {
+            i++;
+            final int start = i;
+            while (i < length && isDigit(line.charAt(i))) {
+                i++;
+            }
+            if (i == start || i == length || line.charAt(i) != '>') {
+                return KernelLogItem.NO_TIME;
+            }
+            i++;
+        }
+        if (i == length || line.charAt(i) != '[') {
+            return KernelLogItem.NO_TIME;
+        }
+        i++;
+        while (i < length && Character.isWhitespace(line.charAt(i))) {
+            i++;
+        }
+
+        long seconds = 0;
+        final int start = i;
+        while (i < length && isDigit(line.charAt(i))) {
+            if (seconds > (Long.MAX_VALUE - 9) / 10 / 1000000) {
+                return KernelLogItem.NO_TIME;
+            }
+            seconds = seconds * 10 + (line.charAt(i++) - '0');
+        }
+        // The seconds are followed by a '.', exactly 6 digits, "] " and the message.
+        if (i == start || i + 9 > length || line.charAt(i) != '.') {
+            return KernelLogItem.NO_TIME;
+        }
+        i++;
+        long micros = 0;
+        for (int end = i + 6; i < end; i++) {
+            final char c = line.charAt(i);
+            if (!isDigit(c)) {
+                return KernelLogItem.NO_TIME;
+            }
+            micros = micros * 10 + (c - '0');
+        }
+        if (line.charAt(i) != ']' || line.charAt(i + 1) != ' ') {
+            return KernelLogItem.NO_TIME;
+        }
+        return seconds * 1000000 + micros;
+    }
+
+    /**
+     * Returns true if the character is an ASCII digit.
+     */
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    /**
+     * Parse the fields which identify an SELinux denial, such as:
+     * {@code avc:  denied  { getattr } for  pid=797 comm="Binder_5" path="/dev/pts/1"
+     * dev=devpts ino=4 scontext=u:r:system_server:s0 tcontext=u:object_r:devpts:s0
+     * tclass=chr_file}
+     * <p>
+     * The message is scanned once. The contexts are reduced to their types, so that the same
+     * denial at a different level is counted together.
+     * </p>
+     *
+     * @return the source type, target type, target class, permissions and command, each of which
+     * is null if it is not in the message.
+     */
+    private static String[] parseDenial(String message) {
+        String[] fields = new String[5];
+        final int length = message.length();
+        int i = 0;
+        while (i < length) {
+            while (i < length && message.charAt(i) == ' ') {
+                i++;
+            }
+            int end = message.indexOf(' ', i);
+            if (end == -1) {
+                end = length;
+            }
+            if (end - i == 1 && message.charAt(i) == '{') {
+                final int close = message.indexOf(" }", end);
+                if (close != -1) {
+                    fields[3] = message.substring(end, close).trim();
+                    end = close + 2;
+                }
+            } else if (message.startsWith("scontext=", i)) {
+                fields[0] = getContextType(message.substring(i + 9, end));
+            } else if (message.startsWith("tcontext=", i)) {
+                fields[1] = getContextType(message.substring(i + 9, end));
+            } else if (message.startsWith("tclass=", i)) {
+                fields[2] = message.substring(i + 7, end);
+            } else if (message.startsWith("comm=", i)) {
+                String comm = message.substring(i + 5, end);
+                if (comm.length() >= 2 && comm.charAt(0) == '"'
+                        && comm.charAt(comm.length() - 1) == '"') {
+                    comm = comm.substring(1, comm.length() - 1);
+                }
+                fields[4] = comm;
+            }
+            i = end;
+        }
+        return fields;
+    }
+
+    /**
+     * Get the type of an SELinux context, such as {@code system_server} from
+     * {@code u:r:system_server:s0}, or the whole context if it has no type.
+     */
+    private static String getContextType(String context) {
+        final int role = context.indexOf(':');
+        final int type = role == -1 ? -1 : context.indexOf(':', role + 1);
+        if (type == -1) {
+            return context;
+        }
+        final int level = context.indexOf(':', type + 1);
+        return context.substring(type + 1, level == -1 ? context.length() : level);
+    }
+
+    /**
+     * Add the built in rules. Rules are checked in the order they are added.
+     */
     private void initPatterns() {
         // Kernel resets
-        // TODO: Separate out device specific patterns
-        final String[] kernelResets = {
-            "smem: DIAG.*",
-            "smsm: AMSS FATAL ERROR.*",
-            "kernel BUG at .*",
-            "BUG: failure at .*",
-            "PVR_K:\\(Fatal\\): Debug assertion failed! \\[.*\\]",
-            "Kernel panic.*",
-            "Unable to handle kernel paging request.*",
-            "BP panicked",
-            "WROTE DSP RAMDUMP",
-            "tegra_wdt: last reset due to watchdog timeout.*",
-            "tegra_wdt tegra_wdt.0: last reset is due to watchdog timeout.*",
-            "Last reset was MPU Watchdog Timer reset.*",
-            "\\[MODEM_IF\\].*CRASH.*",
-            "Last boot reason: " + BAD_BOOTREASONS,
-            "Last reset was system watchdog timer reset.*",
-        };
-        for (String pattern : kernelResets) {
+        for (String pattern : GENERIC_RESETS) {
+            mPatternUtil.addPattern(Pattern.compile(pattern), KERNEL_RESET);
+        }
+        for (String pattern : DEVICE_RESETS) {
             mPatternUtil.addPattern(Pattern.compile(pattern), KERNEL_RESET);
         }
 
@@ -191,6 +939,46 @@ public class KernelLogParser implements IParser {
         mPatternUtil.addPattern(SELINUX_DENIAL_PATTERN, SELINUX_DENIAL);
     }
 
+    /**
+     * Add a rule, which gives a category to kernel log messages matching a pattern. Rules are
+     * checked after the built in rules, in the order they are added.
+     *
+     * @param pattern the {@link Pattern} the whole message must match.
+     * @param category the category of the event, such as {@link #KERNEL_RESET}.
+     */
+    public void addRule(Pattern pattern, String category) {
+        mPatternUtil.addPattern(pattern, category);
+    }
+
+    /**
+     * Add a pack of rules, such as the rules for a device family. Each line is a category, white
+     * space and a regular expression, for example {@code KERNEL_RESET Fatal modem error.*}. Empty
+     * lines and lines starting with {@code #} are ignored.
+     *
+     * @param lines the lines of the rule pack.
+     * @throws IllegalArgumentException if a line is not a valid rule.
+     * @see #addRule(Pattern, String)
+     */
+    public void addRules(List<String> lines) {
+        for (int i = 0; i < lines.size(); i++) {
+            final String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            String[] rule = line.split("\\s+", 2);
+            if (rule.length != 2) {
+                throw new IllegalArgumentException(String.format(
+                        "Line %d of the rule pack has no pattern: %s", i + 1, line));
+            }
+            try {
+                addRule(Pattern.compile(rule[1]), rule[0]);
+            } catch (PatternSyntaxException e) {
+                throw new IllegalArgumentException(String.format(
+                        "Line %d of the rule pack has an invalid pattern: %s", i + 1, line), e);
+            }
+        }
+    }
+
     /**
      * Get the internal {@link LogPatternUtil}. Exposed for unit testing.
      */
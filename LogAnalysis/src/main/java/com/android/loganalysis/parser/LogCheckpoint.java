@@ -0,0 +1,449 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.zip.CRC32;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A checkpoint of the parse of a log file which is appended to, such as a log streamed to disk
+ * from a device, so that a later parse only reads the lines appended since.
+ * <p>
+ * The checkpoint holds the state of the parser after the last complete line, and the offset of
+ * the byte after that line. It is persisted next to the log with the {@link #SUFFIX}, along with
+ * a checksum of the bytes at the start of the log and before the offset, so that a checkpoint of
+ * a log which was rotated or truncated is not used. A line without a line break at the end of the
+ * log is parsed, but is read again by the next parse, since it may still be written.
+ * </p><p>
+ * A checkpoint is only used by a parser with the same settings, such as the year and fields of a
+ * {@link LogcatParser}, and the same rules, which are in the key as a
+ * {@link com.android.loganalysis.util.LogPatternUtil#getDigest()}. A parser given other rules
+ * discards the checkpoint and parses the whole log, so events are never categorized by a mix of
+ * the old and new rules.
+ * </p>
+ */
+public class LogCheckpoint implements Closeable {
+    /** The suffix of the file a checkpoint is persisted to. */
+    public static final String SUFFIX = ".checkpoint";
+
+    private static final int MAGIC = 0x4c434b50;
+    private static final int VERSION = 1;
+    /** The number of bytes at the start of the log and before the offset in the checksum. */
+    private static final int CHECK_SIZE = 4096;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    /** The charset of the log, which is read as by a {@link java.io.FileReader}. */
+    private static final Charset CHARSET = Charset.defaultCharset();
+
+    /**
+     * The state of a parse, which is written to the checkpoint.
+     */
+    interface IState {
+        /**
+         * Write the state.
+         */
+        public void write(DataOutputStream output) throws IOException;
+    }
+
+    private final File mCheckpointFile;
+    private final String mKey;
+    private final InputStream mInput;
+    private DataInputStream mState = null;
+
+    private final byte[] mBuffer = new byte[BUFFER_SIZE];
+    private int mPosition = 0;
+    private int mLimit = 0;
+    private byte[] mLine = new byte[256];
+    private int mLength = 0;
+
+    /** The offset of the byte after the last complete line. */
+    private long mOffset = 0;
+    private final long mStartOffset;
+    private long mLines = 0;
+    private long mBytes = 0;
+    private String mPartialLine = null;
+    private boolean mEnd = false;
+
+    /**
+     * Open a log file, from the offset of the checkpoint if it is a checkpoint of the log for a
+     * parser with the same settings, or from the start otherwise.
+     *
+     * @param file the log file.
+     * @param checkpointFile the checkpoint file, which does not need to exist.
+     * @param key the parser and its settings, such as {@code LogcatParser 2019 true true true}
+     * and the digest of its rules.
+     * @throws IOException if the log could not be opened.
+     */
+    LogCheckpoint(File file, File checkpointFile, String key) throws IOException {
+        mCheckpointFile = checkpointFile;
+        mKey = key;
+        mInput = new FileInputStream(file);
+        try {
+            load(file);
+            long skipped = 0;
+            while (skipped < mOffset) {
+                final long count = mInput.skip(mOffset - skipped);
+                if (count <= 0) {
+                    throw new IOException(String.format("Could not seek to %d in %s", mOffset,
+                            file.getPath()));
+                }
+                skipped += count;
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        mStartOffset = mOffset;
+    }
+
+    /**
+     * Get the checkpoint file of a log file, which is next to it.
+     */
+    public static File getCheckpointFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Get the state of the parse, or null if the parse starts at the start of the log.
+     */
+    DataInputStream getState() {
+        return mState;
+    }
+
+    /**
+     * Get the offset the parse started at.
+     */
+    long getStartOffset() {
+        return mStartOffset;
+    }
+
+    /**
+     * Get the offset of the byte after the last complete line read.
+     */
+    long getOffset() {
+        return mOffset;
+    }
+
+    /**
+     * Get the number of lines read, including the line without a line break at the end.
+     */
+    long getLineCount() {
+        return mLines;
+    }
+
+    /**
+     * Get the number of bytes read, including the line without a line break at the end.
+     */
+    long getByteCount() {
+        return mBytes;
+    }
+
+    /**
+     * Read the next complete line, ended by a line break as for {@link java.io.BufferedReader}.
+     *
+     * @return The line, without the line break, or null at the end of the complete lines.
+     * @throws IOException if the log could not be read.
+     */
+    String readLine() throws IOException {
+        if (mEnd) {
+            return null;
+        }
+        mLength = 0;
+        long consumed = 0;
+        while (true) {
+            if (mPosition == mLimit && !fill()) {
+                // The rest of the log may still be written, so it is not part of the checkpoint.
+                mEnd = true;
+                if (consumed > 0) {
+                    mPartialLine = decode();
+                    mLines++;
+                    mBytes += consumed;
+                }
+                return null;
+            }
+            final byte b = mBuffer[mPosition++];
+            consumed++;
+            if (b == '\n') {
+                break;
+            }
+            if (b == '\r') {
+                if (mPosition == mLimit && !fill()) {
+                    // A '\n' may still be written after the '\r'.
+                    mEnd = true;
+                    mPartialLine = decode();
+                    mLines++;
+                    mBytes += consumed;
+                    return null;
+                }
+                if (mBuffer[mPosition] == '\n') {
+                    mPosition++;
+                    consumed++;
+                }
+                break;
+            }
+            if (mLength == mLine.length) {
+                byte[] line = new byte[mLength * 2];
+                System.arraycopy(mLine, 0, line, 0, mLength);
+                mLine = line;
+            }
+            mLine[mLength++] = b;
+        }
+        mOffset += consumed;
+        mLines++;
+        mBytes += consumed;
+        return decode();
+    }
+
+    /**
+     * Get the line without a line break at the end of the log, once all the complete lines are
+     * read.
+     *
+     * @return The line, or null if the log ends with a line break.
+     */
+    String getPartialLine() {
+        return mPartialLine;
+    }
+
+    /**
+     * Save the state of the parse after the last complete line to the checkpoint file. The
+     * checkpoint is written to a temporary file first, so a parse which is stopped never leaves a
+     * partial checkpoint. If the checkpoint cannot be saved, the next parse starts from an earlier
+     * checkpoint or from the start of the log.
+     *
+     * @param file the log file.
+     * @param state the {@link IState} of the parse.
+     */
+    void save(File file, IState state) {
+        File temp = new File(mCheckpointFile.getPath() + ".tmp");
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream stateOutput = new DataOutputStream(new DeflaterOutputStream(bytes));
+            state.write(stateOutput);
+            stateOutput.close();
+            final byte[] compressed = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(compressed);
+
+            DataOutputStream output = new DataOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(temp)));
+            try {
+                output.writeInt(MAGIC);
+                output.writeInt(VERSION);
+                output.writeUTF(mKey);
+                output.writeLong(mOffset);
+                output.writeLong(getChecksum(file, mOffset));
+                output.writeInt(compressed.length);
+                output.writeLong(crc.getValue());
+                output.write(compressed);
+            } finally {
+                output.close();
+            }
+            if (!temp.renameTo(mCheckpointFile)) {
+                mCheckpointFile.delete();
+                if (!temp.renameTo(mCheckpointFile)) {
+                    temp.delete();
+                }
+            }
+        } catch (IOException e) {
+            // Ignore
+            temp.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void close() {
+        try {
+            mInput.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * Load the state and offset from the checkpoint file, if it is a checkpoint of the log as it
+     * is now, for a parser with the same settings.
+     */
+    private void load(File file) {
+        if (!mCheckpointFile.isFile()) {
+            return;
+        }
+        try {
+            DataInputStream input = new DataInputStream(new FileInputStream(mCheckpointFile));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION
+                        || !mKey.equals(input.readUTF())) {
+                    return;
+                }
+                final long offset = input.readLong();
+                if (offset < 0 || offset > file.length()
+                        || input.readLong() != getChecksum(file, offset)) {
+                    return;
+                }
+                byte[] compressed = new byte[input.readInt()];
+                final long expectedCrc = input.readLong();
+                input.readFully(compressed);
+                CRC32 crc = new CRC32();
+                crc.update(compressed);
+                if (crc.getValue() != expectedCrc) {
+                    return;
+                }
+                mState = new DataInputStream(new InflaterInputStream(
+                        new ByteArrayInputStream(compressed)));
+                mOffset = offset;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            // Ignore, the log is parsed from the start.
+        }
+    }
+
+    /**
+     * Get the checksum of the bytes at the start of a log and before an offset.
+     */
+    private static long getChecksum(File file, long offset) throws IOException {
+        CRC32 crc = new CRC32();
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+        try {
+            byte[] bytes = new byte[(int) Math.min(CHECK_SIZE, offset)];
+            input.readFully(bytes);
+            crc.update(bytes);
+            input.seek(offset - bytes.length);
+            input.readFully(bytes);
+            crc.update(bytes);
+        } finally {
+            input.close();
+        }
+        return crc.getValue();
+    }
+
+    /**
+     * Fill the buffer from the log.
+     *
+     * @return false at the end of the log.
+     */
+    private boolean fill() throws IOException {
+        final int count = mInput.read(mBuffer);
+        if (count <= 0) {
+            return false;
+        }
+        mPosition = 0;
+        mLimit = count;
+        return true;
+    }
+
+    /**
+     * Decode the bytes of the current line.
+     */
+    private String decode() {
+        return new String(mLine, 0, mLength, CHARSET);
+    }
+
+    /**
+     * Write a string, which may be null or longer than {@link DataOutput#writeUTF} allows.
+     */
+    static void writeString(DataOutput output, String value) throws IOException {
+        if (value == null) {
+            output.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        output.writeInt(bytes.length);
+        output.write(bytes);
+    }
+
+    /**
+     * Read a string written by {@link #writeString}.
+     */
+    static String readString(DataInput input) throws IOException {
+        final int length = input.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        input.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Write an {@link Integer}, which may be null.
+     */
+    static void writeInteger(DataOutput output, Integer value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeInt(value);
+        }
+    }
+
+    /**
+     * Read an {@link Integer} written by {@link #writeInteger}.
+     */
+    static Integer readInteger(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readInt() : null;
+    }
+
+    /**
+     * Write a {@link Long}, which may be null.
+     */
+    static void writeLong(DataOutput output, Long value) throws IOException {
+        output.writeBoolean(value != null);
+        if (value != null) {
+            output.writeLong(value);
+        }
+    }
+
+    /**
+     * Read a {@link Long} written by {@link #writeLong}.
+     */
+    static Long readLong(DataInput input) throws IOException {
+        return input.readBoolean() ? input.readLong() : null;
+    }
+
+    /**
+     * Write a {@link Date}, which may be null.
+     */
+    static void writeDate(DataOutput output, Date value) throws IOException {
+        writeLong(output, value != null ? value.getTime() : null);
+    }
+
+    /**
+     * Read a {@link Date} written by {@link #writeDate}.
+     */
+    static Date readDate(DataInput input) throws IOException {
+        final Long time = readLong(input);
+        return time != null ? new Date(time) : null;
+    }
+}
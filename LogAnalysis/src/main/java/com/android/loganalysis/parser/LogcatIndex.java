@@ -0,0 +1,460 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A sparse index of the timestamps of a logcat file, so that a time range of a large logcat can
+ * be parsed without reading the whole file.
+ * <p>
+ * Every {@link #DEFAULT_INTERVAL} bytes, the index records the byte offset and line number of the
+ * next line with a timestamp, and that timestamp. The index is built in one pass over the bytes of
+ * the file, and persisted next to it with the {@link #SUFFIX}, along with the size and
+ * modification time of the file so that a stale index is rebuilt.
+ * </p><p>
+ * Logcat timestamps have no year, so times are compared within a year, as keys returned by
+ * {@link #getTime(CharSequence)}. The lines of the logcat are expected to be in time order, as
+ * printed by {@code logcat -d}.
+ * </p>
+ */
+public class LogcatIndex {
+    /** The default number of bytes between entries of the index. */
+    public static final int DEFAULT_INTERVAL = 64 * 1024;
+    /** The suffix of the file an index is persisted to. */
+    public static final String SUFFIX = ".idx";
+    /** The time of a line without a timestamp. */
+    public static final long NO_TIME = -1;
+
+    private static final int MAGIC = 0x4c434958;
+    private static final int VERSION = 1;
+    /** The length of a {@code MM-dd HH:mm:ss.SSS} timestamp. */
+    private static final int TIME_LENGTH = 18;
+    /** A time given on the command line, optionally with a year and milliseconds. */
+    private static final Pattern TIME = Pattern.compile(
+            "(?:\\d{4}-)?(\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})(\\.\\d{3})?");
+
+    private final long mFileLength;
+    private final long mLastModified;
+    private final int mInterval;
+    private long[] mOffsets = new long[16];
+    private long[] mLines = new long[16];
+    private long[] mTimes = new long[16];
+    private int mSize = 0;
+
+    /**
+     * Constructor for {@link LogcatIndex}.
+     *
+     * @param fileLength the length of the indexed file.
+     * @param lastModified the modification time of the indexed file.
+     * @param interval the number of bytes between entries.
+     */
+    private LogcatIndex(long fileLength, long lastModified, int interval) {
+        mFileLength = fileLength;
+        mLastModified = lastModified;
+        mInterval = interval;
+    }
+
+    /**
+     * Get the index of a logcat file, loading it from the index file if it is up to date, or
+     * building it and saving it to the index file otherwise.
+     *
+     * @param file the logcat file.
+     * @return The {@link LogcatIndex}.
+     * @throws IOException if the logcat could not be read.
+     */
+    public static LogcatIndex getIndex(File file) throws IOException {
+        File indexFile = getIndexFile(file);
+        LogcatIndex index = load(file, indexFile);
+        if (index != null) {
+            return index;
+        }
+        index = build(file, DEFAULT_INTERVAL);
+        try {
+            index.save(indexFile);
+        } catch (IOException e) {
+            // Ignore, such as a read only directory. The index is built again next time.
+        }
+        return index;
+    }
+
+    /**
+     * Get the file the index of a logcat file is persisted to.
+     */
+    public static File getIndexFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Build the index of a logcat file.
+     *
+     * @param file the logcat file.
+     * @param interval the number of bytes between entries.
+     * @return The {@link LogcatIndex}.
+     * @throws IOException if the logcat could not be read.
+     */
+    public static LogcatIndex build(File file, int interval) throws IOException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        LogcatIndex index = new LogcatIndex(file.length(), file.lastModified(), interval);
+        InputStream input = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[64 * 1024];
+            byte[] prefix = new byte[TIME_LENGTH];
+            int prefixLength = 0;
+            // Whether an entry is waiting for the next line with a timestamp.
+            boolean pending = true;
+            long pendingOffset = 0;
+            long pendingLine = 0;
+            long offset = 0;
+            long line = 0;
+            int count;
+            while ((count = input.read(buffer)) != -1) {
+                for (int i = 0; i < count; i++, offset++) {
+                    final byte b = buffer[i];
+                    if (b == '\n') {
+                        line++;
+                        prefixLength = 0;
+                        if (!pending && offset + 1 >= index.getNextOffset()) {
+                            pending = true;
+                            pendingOffset = offset + 1;
+                            pendingLine = line;
+                        }
+                    } else if (pending && prefixLength < TIME_LENGTH) {
+                        prefix[prefixLength++] = b;
+                        if (prefixLength == TIME_LENGTH) {
+                            final long time = getTime(
+                                    new String(prefix, StandardCharsets.ISO_8859_1));
+                            if (time != NO_TIME) {
+                                index.add(pendingOffset, pendingLine, time);
+                                pending = false;
+                            }
+                        }
+                    }
+                }
+            }
+        } finally {
+            input.close();
+        }
+        return index;
+    }
+
+    /**
+     * Load the index of a logcat file from an index file.
+     *
+     * @param file the logcat file.
+     * @param indexFile the index file.
+     * @return The {@link LogcatIndex}, or null if there is no index file, or it is not an index of
+     * the logcat as it is now.
+     */
+    public static LogcatIndex load(File file, File indexFile) {
+        if (!indexFile.isFile()) {
+            return null;
+        }
+        try {
+            DataInputStream input = new DataInputStream(
+                    new BufferedInputStream(new FileInputStream(indexFile)));
+            try {
+                if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+                    return null;
+                }
+                final long fileLength = input.readLong();
+                final long lastModified = input.readLong();
+                if (fileLength != file.length() || lastModified != file.lastModified()) {
+                    return null;
+                }
+                LogcatIndex index = new LogcatIndex(fileLength, lastModified, input.readInt());
+                final int size = input.readInt();
+                for (int i = 0; i < size; i++) {
+                    index.add(input.readLong(), input.readLong(), input.readLong());
+                }
+                return index;
+            } finally {
+                input.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Save the index to an index file.
+     *
+     * @throws IOException if the index file could not be written.
+     */
+    public void save(File indexFile) throws IOException {
+        DataOutputStream output = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(indexFile)));
+        try {
+            output.writeInt(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(mFileLength);
+            output.writeLong(mLastModified);
+            output.writeInt(mInterval);
+            output.writeInt(mSize);
+            for (int i = 0; i < mSize; i++) {
+                output.writeLong(mOffsets[i]);
+                output.writeLong(mLines[i]);
+                output.writeLong(mTimes[i]);
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Get the number of entries in the index.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the byte offset to start reading the lines from a time on. The offset is backed up by
+     * some lines, so that the lines before the time can fill the preambles of the first events.
+     *
+     * @param since the time, as returned by {@link #getTime(CharSequence)}.
+     * @param backupLines the number of lines to read before the time.
+     * @return The byte offset of the start of a line.
+     */
+    public long getStartOffset(long since, int backupLines) {
+        // The first entry at or after the time. The lines at the time may start in the entry
+        // before it.
+        int block = Math.max(0, firstEntryAtOrAfter(since) - 1);
+        if (block >= mSize) {
+            return mFileLength;
+        }
+        final long line = mLines[block] - backupLines;
+        while (block > 0 && mLines[block] > line) {
+            block--;
+        }
+        return mLines[block] > line ? 0 : mOffsets[block];
+    }
+
+    /**
+     * Get the byte offset to stop reading the lines up to a time.
+     *
+     * @param until the time, as returned by {@link #getTime(CharSequence)}.
+     * @return The byte offset of the first entry after the time, or the length of the file.
+     */
+    public long getEndOffset(long until) {
+        final int entry = until == Long.MAX_VALUE ? mSize : firstEntryAtOrAfter(until + 1);
+        return entry < mSize ? mOffsets[entry] : mFileLength;
+    }
+
+    /**
+     * Open a reader over the lines of a logcat file which may be in a time range, including the
+     * lines before the range which fill the preambles.
+     *
+     * @param file the logcat file.
+     * @param since the start of the range, or {@link Long#MIN_VALUE}.
+     * @param until the end of the range, or {@link Long#MAX_VALUE}.
+     * @param backupLines the number of lines to read before the range.
+     * @return The {@link BufferedReader}.
+     * @throws IOException if the logcat could not be opened.
+     */
+    public BufferedReader open(File file, long since, long until, int backupLines)
+            throws IOException {
+        final long start = getStartOffset(since, backupLines);
+        final long end = Math.max(start, getEndOffset(until));
+        FileInputStream input = new FileInputStream(file);
+        try {
+            input.getChannel().position(start);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        return new BufferedReader(new InputStreamReader(new RangeInputStream(input, end - start)));
+    }
+
+    /**
+     * Get the time of a logcat line, as a key which increases with the time within a year.
+     *
+     * @param line a line in the {@code threadtime} or {@code time} format.
+     * @return The time, or {@link #NO_TIME} if the line does not start with a timestamp.
+     */
+    public static long getTime(CharSequence line) {
+        if (line.length() < TIME_LENGTH || line.charAt(2) != '-' || line.charAt(5) != ' '
+                || line.charAt(8) != ':' || line.charAt(11) != ':' || line.charAt(14) != '.') {
+            return NO_TIME;
+        }
+        final int month = getNumber(line, 0, 2);
+        final int day = getNumber(line, 3, 5);
+        final int hour = getNumber(line, 6, 8);
+        final int minute = getNumber(line, 9, 11);
+        final int second = getNumber(line, 12, 14);
+        final int millis = getNumber(line, 15, 18);
+        if (month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 || millis < 0) {
+            return NO_TIME;
+        }
+        return ((((month * 32L + day) * 24 + hour) * 60 + minute) * 60 + second) * 1000 + millis;
+    }
+
+    /**
+     * Parse a time given on the command line.
+     *
+     * @param time the time as {@code [yyyy-]MM-dd HH:mm:ss[.SSS]}. The year is ignored.
+     * @param end whether the time is the end of a range, in which case a time without
+     * milliseconds includes the whole second.
+     * @return The time, as returned by {@link #getTime(CharSequence)}.
+     * @throws IllegalArgumentException if the time is not in the format.
+     */
+    public static long parseTime(String time, boolean end) {
+        Matcher m = TIME.matcher(time.trim());
+        if (!m.matches()) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid time %s, expected MM-dd HH:mm:ss[.SSS]", time));
+        }
+        String millis = m.group(2) != null ? m.group(2) : (end ? ".999" : ".000");
+        return getTime(m.group(1) + millis);
+    }
+
+    /**
+     * Add an entry to the index.
+     */
+    private void add(long offset, long line, long time) {
+        if (mSize == mOffsets.length) {
+            mOffsets = Arrays.copyOf(mOffsets, mSize * 2);
+            mLines = Arrays.copyOf(mLines, mSize * 2);
+            mTimes = Arrays.copyOf(mTimes, mSize * 2);
+        }
+        mOffsets[mSize] = offset;
+        mLines[mSize] = line;
+        mTimes[mSize] = time;
+        mSize++;
+    }
+
+    /**
+     * Get the offset from which the next entry is added.
+     */
+    private long getNextOffset() {
+        return mSize == 0 ? 0 : mOffsets[mSize - 1] + mInterval;
+    }
+
+    /**
+     * Get the first entry whose time is at or after a time, or the number of entries if there is
+     * none.
+     */
+    private int firstEntryAtOrAfter(long time) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mTimes[middle] < time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Parse the decimal digits of a part of a line.
+     *
+     * @return The number, or -1 if a character is not a digit.
+     */
+    private static int getNumber(CharSequence line, int start, int end) {
+        int number = 0;
+        for (int i = start; i < end; i++) {
+            final char c = line.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * An {@link InputStream} which ends after a number of bytes.
+     */
+    private static class RangeInputStream extends FilterInputStream {
+        private long mRemaining;
+
+        /**
+         * Constructor for {@link RangeInputStream}.
+         */
+        public RangeInputStream(InputStream input, long length) {
+            super(input);
+            mRemaining = length;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read() throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            final int b = super.read();
+            if (b != -1) {
+                mRemaining--;
+            }
+            return b;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (mRemaining <= 0) {
+                return -1;
+            }
+            final int count = super.read(buffer, offset, (int) Math.min(length, mRemaining));
+            if (count > 0) {
+                mRemaining -= count;
+            }
+            return count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public long skip(long count) throws IOException {
+            final long skipped = super.skip(Math.min(count, mRemaining));
+            mRemaining -= skipped;
+            return skipped;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), mRemaining);
+        }
+    }
+}
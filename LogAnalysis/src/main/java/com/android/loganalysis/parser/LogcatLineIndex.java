@@ -0,0 +1,652 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.util.IntPostings;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An inverted index of the lines of a logcat, which answers queries on the tags, PIDs, levels and
+ * message words of the lines without reading the logcat again.
+ * <p>
+ * The index is built by a {@link Builder} which receives the lines from
+ * {@link LogcatParser#parse(BufferedReader, long, long, ILogcatLineListener)}, and holds a list of
+ * line numbers for each term, such as {@code tag:ActivityManager}, {@code pid:312},
+ * {@code level:E} or {@code msg:anr}, compressed by {@link IntPostings}. The index is written
+ * next to the logcat with the {@link #SUFFIX}, and memory mapped in chunks, so that neither the
+ * index nor the offsets into it are limited to 2GB.
+ * </p><p>
+ * A query combines terms with {@code AND}, {@code OR}, {@code NOT} and parentheses, and terms
+ * next to each other must all match. A term without a field matches the lines whose messages
+ * have all of its words, in any order, since the positions of the words are not indexed. Quotes
+ * only let a term have spaces and parentheses. Words are runs of letters and digits, compared
+ * without case.
+ * </p>
+ */
+public class LogcatLineIndex {
+    /** The suffix of the file an index is persisted to. */
+    public static final String SUFFIX = ".postings";
+
+    public static final String TAG = "tag:";
+    public static final String PID = "pid:";
+    public static final String LEVEL = "level:";
+    public static final String MSG = "msg:";
+
+    private static final int MAGIC = 0x4c434c49;
+    private static final int VERSION = 2;
+    /** The size of the header, before the times of the lines. */
+    private static final int HEADER_SIZE = 32;
+    /** The size of the trailer, which is the offset of the terms. */
+    private static final int TRAILER_SIZE = 8;
+    /** The size of each mapped chunk of the index. */
+    private static final int CHUNK_SIZE = 1 << 30;
+    private static final int MIN_WORD_LENGTH = 2;
+    private static final int MAX_WORD_LENGTH = 64;
+    /** The longest term which is indexed, so that its UTF-8 key fits in a short. */
+    private static final int MAX_TERM_LENGTH = 1024;
+
+    private final MappedFile mFile;
+    private final int mLineCount;
+    private final long mPostingsOffset;
+    /** The offset, size and number of lines of the postings of each term. */
+    private final Map<String, long[]> mTerms = new HashMap<String, long[]>();
+
+    /**
+     * Constructor for {@link LogcatLineIndex}.
+     *
+     * @param file the index, as written by {@link Builder#write(OutputStream, File)}.
+     */
+    private LogcatLineIndex(MappedFile file) {
+        mFile = file;
+        mLineCount = file.getInt(24);
+        final int termCount = file.getInt(28);
+        mPostingsOffset = HEADER_SIZE + (long) mLineCount * 8;
+        long position = file.getLong(file.length() - TRAILER_SIZE);
+        for (int i = 0; i < termCount; i++) {
+            final int length = file.getShort(position) & 0xffff;
+            byte[] key = file.getBytes(position + 2, length);
+            position += 2 + length;
+            mTerms.put(new String(key, StandardCharsets.UTF_8), new long[] {
+                    file.getLong(position), file.getInt(position + 8),
+                    file.getInt(position + 12)});
+            position += 16;
+        }
+    }
+
+    /**
+     * Get the index of a logcat file, opening it from the index file if it is up to date, or
+     * parsing the logcat and saving its index otherwise. If the index file cannot be written,
+     * such as in a read only directory, the index is saved to a temporary file instead.
+     *
+     * @param file the logcat file.
+     * @param parser the {@link LogcatParser} to parse the logcat with.
+     * @return The {@link LogcatLineIndex}.
+     * @throws IOException if the logcat could not be read, or its index could not be written.
+     */
+    public static LogcatLineIndex getIndex(File file, LogcatParser parser) throws IOException {
+        File indexFile = getIndexFile(file);
+        LogcatLineIndex index = open(file, indexFile);
+        if (index != null) {
+            return index;
+        }
+        Builder builder = new Builder();
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            parser.parse(reader, Long.MIN_VALUE, Long.MAX_VALUE, builder);
+        } finally {
+            reader.close();
+        }
+        try {
+            builder.write(indexFile, file);
+        } catch (IOException e) {
+            // The index is built again next time.
+            indexFile.delete();
+            indexFile = File.createTempFile(file.getName(), SUFFIX);
+            indexFile.deleteOnExit();
+            builder.write(indexFile, file);
+        }
+        return open(file, indexFile);
+    }
+
+    /**
+     * Get the file the index of a logcat file is persisted to.
+     */
+    public static File getIndexFile(File file) {
+        return new File(file.getPath() + SUFFIX);
+    }
+
+    /**
+     * Memory map the index of a logcat file.
+     *
+     * @param file the logcat file.
+     * @param indexFile the index file.
+     * @return The {@link LogcatLineIndex}, or null if there is no index file, or it is not an index
+     * of the logcat as it is now.
+     * @throws IOException if the index file could not be mapped.
+     */
+    public static LogcatLineIndex open(File file, File indexFile) throws IOException {
+        return open(file, indexFile, CHUNK_SIZE);
+    }
+
+    /**
+     * Memory map the index of a logcat file in chunks of a given size. Exposed for unit testing.
+     */
+    static LogcatLineIndex open(File file, File indexFile, int chunkSize) throws IOException {
+        if (!indexFile.isFile() || indexFile.length() < HEADER_SIZE) {
+            return null;
+        }
+        MappedFile index = new MappedFile(indexFile, chunkSize);
+        if (index.getInt(0) != MAGIC || index.getInt(4) != VERSION
+                || index.getLong(8) != file.length()
+                || index.getLong(16) != file.lastModified()
+                || index.length() < HEADER_SIZE + (long) index.getInt(24) * 8 + TRAILER_SIZE) {
+            return null;
+        }
+        return new LogcatLineIndex(index);
+    }
+
+    /**
+     * Get the number of lines of the logcat up to the last indexed line, including the lines
+     * which are not indexed.
+     */
+    public int getLineCount() {
+        return mLineCount;
+    }
+
+    /**
+     * Get the number of terms.
+     */
+    public int getTermCount() {
+        return mTerms.size();
+    }
+
+    /**
+     * Get the time of a line.
+     *
+     * @param line the number of the line, starting at 0.
+     * @return The time, as returned by {@link LogcatIndex#getTime}, or {@link LogcatIndex#NO_TIME}
+     * if the line is not indexed.
+     */
+    public long getTime(int line) {
+        return mFile.getLong(HEADER_SIZE + (long) line * 8);
+    }
+
+    /**
+     * Get the lines of a term.
+     *
+     * @param term the term, such as {@code tag:ActivityManager}.
+     * @return The sorted line numbers.
+     */
+    public int[] getLines(String term) {
+        long[] postings = mTerms.get(term);
+        if (postings == null) {
+            return new int[0];
+        }
+        return IntPostings.decode(mFile.slice(mPostingsOffset + postings[0], (int) postings[1]),
+                0, (int) postings[2]);
+    }
+
+    /**
+     * Get the lines which match a query in a time range.
+     *
+     * @param query the query, such as {@code tag:ActivityManager AND (anr OR NOT level:I)}.
+     * @param since the start of the range, as returned by {@link LogcatIndex#getTime}, or
+     * {@link Long#MIN_VALUE}.
+     * @param until the end of the range, or {@link Long#MAX_VALUE}.
+     * @return The sorted line numbers.
+     * @throws IllegalArgumentException if the query is not valid.
+     */
+    public int[] query(String query, long since, long until) {
+        QueryParser parser = new QueryParser(query);
+        int[] lines = parser.parseOr();
+        if (parser.peek() != null) {
+            throw new IllegalArgumentException(String.format(
+                    "Unexpected %s in query %s", parser.peek(), query));
+        }
+        int[] result = new int[lines.length];
+        int size = 0;
+        for (int line : lines) {
+            final long time = getTime(line);
+            if (time != LogcatIndex.NO_TIME && time >= since && time <= until) {
+                result[size++] = line;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Get the words of a message, in lower case.
+     */
+    public static List<String> getWords(String msg) {
+        List<String> words = new ArrayList<String>();
+        final int length = msg.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            if (i < length && Character.isLetterOrDigit(msg.charAt(i))) {
+                if (start < 0) {
+                    start = i;
+                }
+            } else if (start >= 0) {
+                if (i - start >= MIN_WORD_LENGTH && i - start <= MAX_WORD_LENGTH) {
+                    words.add(msg.substring(start, i).toLowerCase());
+                }
+                start = -1;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Get the lines of a term of a query.
+     */
+    private int[] getTermLines(String term) {
+        if (term.startsWith(TAG) || term.startsWith(PID) || term.startsWith(LEVEL)) {
+            return getLines(term);
+        }
+        final String text = term.startsWith(MSG) ? term.substring(MSG.length()) : term;
+        List<String> words = getWords(text);
+        if (words.isEmpty()) {
+            throw new IllegalArgumentException(String.format("No words in query term %s", term));
+        }
+        int[] lines = null;
+        for (String word : words) {
+            int[] wordLines = getLines(MSG + word);
+            lines = lines == null ? wordLines : IntPostings.and(lines, wordLines);
+        }
+        return lines;
+    }
+
+    /**
+     * Get all the lines, for a {@code NOT} query.
+     */
+    private int[] getAllLines() {
+        int[] lines = new int[mLineCount];
+        for (int i = 0; i < mLineCount; i++) {
+            lines[i] = i;
+        }
+        return lines;
+    }
+
+    /**
+     * A recursive descent parser of a query, which evaluates it as it is parsed.
+     */
+    private class QueryParser {
+        private final String mQuery;
+        private int mPosition = 0;
+        private String mToken = null;
+
+        /**
+         * Constructor for {@link QueryParser}.
+         */
+        public QueryParser(String query) {
+            mQuery = query;
+        }
+
+        /**
+         * Parse terms joined by {@code OR}.
+         */
+        public int[] parseOr() {
+            int[] lines = parseAnd();
+            while ("OR".equals(peek())) {
+                next();
+                lines = IntPostings.or(lines, parseAnd());
+            }
+            return lines;
+        }
+
+        /**
+         * Parse terms joined by {@code AND}, or next to each other.
+         */
+        private int[] parseAnd() {
+            int[] lines = parseNot();
+            String token;
+            while ((token = peek()) != null && !"OR".equals(token) && !")".equals(token)) {
+                if ("AND".equals(token)) {
+                    next();
+                }
+                lines = IntPostings.and(lines, parseNot());
+            }
+            return lines;
+        }
+
+        /**
+         * Parse a term, which may be negated with {@code NOT}.
+         */
+        private int[] parseNot() {
+            if ("NOT".equals(peek())) {
+                next();
+                return IntPostings.andNot(getAllLines(), parseNot());
+            }
+            return parseTerm();
+        }
+
+        /**
+         * Parse a term, or a query in parentheses.
+         */
+        private int[] parseTerm() {
+            String token = next();
+            if (token == null || ")".equals(token) || "AND".equals(token)
+                    || "OR".equals(token)) {
+                throw new IllegalArgumentException(String.format(
+                        "Expected a term at %d in query %s", mPosition, mQuery));
+            }
+            if ("(".equals(token)) {
+                int[] lines = parseOr();
+                if (!")".equals(next())) {
+                    throw new IllegalArgumentException(String.format(
+                            "Expected ) at %d in query %s", mPosition, mQuery));
+                }
+                return lines;
+            }
+            return getTermLines(token);
+        }
+
+        /**
+         * Get the next token without consuming it, or null at the end of the query.
+         */
+        public String peek() {
+            if (mToken == null) {
+                mToken = read();
+            }
+            return mToken;
+        }
+
+        /**
+         * Consume the next token.
+         */
+        private String next() {
+            String token = peek();
+            mToken = null;
+            return token;
+        }
+
+        /**
+         * Read a token, which is a parenthesis or a term. Quotes are removed from a term, and
+         * the text between them may have spaces and parentheses. The words of quoted text are
+         * not matched in order.
+         */
+        private String read() {
+            final int length = mQuery.length();
+            while (mPosition < length && Character.isWhitespace(mQuery.charAt(mPosition))) {
+                mPosition++;
+            }
+            if (mPosition == length) {
+                return null;
+            }
+            final char first = mQuery.charAt(mPosition);
+            if (first == '(' || first == ')') {
+                mPosition++;
+                return String.valueOf(first);
+            }
+            StringBuilder token = new StringBuilder();
+            boolean quoted = false;
+            while (mPosition < length) {
+                final char c = mQuery.charAt(mPosition);
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (!quoted && (Character.isWhitespace(c) || c == '(' || c == ')')) {
+                    break;
+                } else {
+                    token.append(c);
+                }
+                mPosition++;
+            }
+            return token.toString();
+        }
+    }
+
+    /**
+     * Builds a {@link LogcatLineIndex} from the lines of a logcat.
+     */
+    public static class Builder implements ILogcatLineListener {
+        private final Map<String, IntPostings> mPostings = new HashMap<String, IntPostings>();
+        private long[] mTimes = new long[1024];
+        private int mLineCount = 0;
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void onLine(int line, long time, int pid, String level, String tag, String msg) {
+            if (line >= mTimes.length) {
+                mTimes = Arrays.copyOf(mTimes, Math.max(mTimes.length * 2, line + 1));
+            }
+            if (line >= mLineCount) {
+                Arrays.fill(mTimes, mLineCount, line, LogcatIndex.NO_TIME);
+                mLineCount = line + 1;
+            }
+            mTimes[line] = time;
+            add(TAG + tag, line);
+            add(PID + pid, line);
+            add(LEVEL + level, line);
+            for (String word : getWords(msg)) {
+                add(MSG + word, line);
+            }
+        }
+
+        /**
+         * Add a line to the postings of a term.
+         */
+        private void add(String term, int line) {
+            if (term.length() > MAX_TERM_LENGTH) {
+                return;
+            }
+            IntPostings postings = mPostings.get(term);
+            if (postings == null) {
+                postings = new IntPostings();
+                mPostings.put(term, postings);
+            }
+            postings.add(line);
+        }
+
+        /**
+         * Write the index to a file.
+         *
+         * @param indexFile the index file.
+         * @param file the logcat file, whose size and modification time are checked when the
+         * index is opened.
+         * @throws IOException if the index could not be written.
+         */
+        public void write(File indexFile, File file) throws IOException {
+            OutputStream output = new BufferedOutputStream(new FileOutputStream(indexFile));
+            try {
+                write(output, file);
+            } finally {
+                output.close();
+            }
+        }
+
+        /**
+         * Write the index: the header, the time of each line, the postings of each term, the
+         * terms with the offsets of their postings, and the offset of the terms. The terms come
+         * after the postings so that the index is written in one pass.
+         *
+         * @param output the {@link OutputStream} to write to.
+         * @param file the logcat file, whose size and modification time are checked when the
+         * index is opened.
+         * @throws IOException if the index could not be written.
+         */
+        public void write(OutputStream output, File file) throws IOException {
+            DataOutputStream data = new DataOutputStream(output);
+            data.writeInt(MAGIC);
+            data.writeInt(VERSION);
+            data.writeLong(file.length());
+            data.writeLong(file.lastModified());
+            data.writeInt(mLineCount);
+            data.writeInt(mPostings.size());
+            for (int i = 0; i < mLineCount; i++) {
+                data.writeLong(mTimes[i]);
+            }
+            final long postingsOffset = HEADER_SIZE + (long) mLineCount * 8;
+            List<String> terms = new ArrayList<String>(mPostings.keySet());
+            long[] offsets = new long[terms.size()];
+            int[] sizes = new int[terms.size()];
+            long offset = 0;
+            for (int i = 0; i < terms.size(); i++) {
+                byte[] postings = mPostings.get(terms.get(i)).encode();
+                data.write(postings);
+                offsets[i] = offset;
+                sizes[i] = postings.length;
+                offset += postings.length;
+            }
+            for (int i = 0; i < terms.size(); i++) {
+                byte[] key = terms.get(i).getBytes(StandardCharsets.UTF_8);
+                data.writeShort(key.length);
+                data.write(key);
+                data.writeLong(offsets[i]);
+                data.writeInt(sizes[i]);
+                data.writeInt(mPostings.get(terms.get(i)).size());
+            }
+            data.writeLong(postingsOffset + offset);
+            data.flush();
+        }
+    }
+
+    /**
+     * A read only file which is memory mapped in chunks, since a single mapping is limited to 2GB.
+     * Values which cross the end of a chunk are read a byte at a time.
+     */
+    private static class MappedFile {
+        private final ByteBuffer[] mChunks;
+        private final int mChunkSize;
+        private final long mLength;
+
+        /**
+         * Map a file. The mapping stays valid once the file is closed.
+         *
+         * @param file the file.
+         * @param chunkSize the size of each mapping.
+         * @throws IOException if the file could not be mapped.
+         */
+        public MappedFile(File file, int chunkSize) throws IOException {
+            mChunkSize = chunkSize;
+            RandomAccessFile input = new RandomAccessFile(file, "r");
+            try {
+                mLength = input.length();
+                mChunks = new ByteBuffer[(int) ((mLength + chunkSize - 1) / chunkSize)];
+                FileChannel channel = input.getChannel();
+                for (int i = 0; i < mChunks.length; i++) {
+                    final long start = (long) i * chunkSize;
+                    mChunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                            Math.min(chunkSize, mLength - start));
+                }
+            } finally {
+                input.close();
+            }
+        }
+
+        /**
+         * Get the length of the file.
+         */
+        public long length() {
+            return mLength;
+        }
+
+        /**
+         * Get a byte.
+         */
+        public byte get(long position) {
+            return mChunks[(int) (position / mChunkSize)].get((int) (position % mChunkSize));
+        }
+
+        /**
+         * Get a big endian value of some bytes.
+         */
+        private long getValue(long position, int size) {
+            final int offset = (int) (position % mChunkSize);
+            if (offset + size <= mChunkSize) {
+                ByteBuffer chunk = mChunks[(int) (position / mChunkSize)];
+                switch (size) {
+                    case 2:
+                        return chunk.getShort(offset);
+                    case 4:
+                        return chunk.getInt(offset);
+                    default:
+                        return chunk.getLong(offset);
+                }
+            }
+            long value = 0;
+            for (int i = 0; i < size; i++) {
+                value = value << 8 | (get(position + i) & 0xff);
+            }
+            return value;
+        }
+
+        /**
+         * Get a short.
+         */
+        public short getShort(long position) {
+            return (short) getValue(position, 2);
+        }
+
+        /**
+         * Get an int.
+         */
+        public int getInt(long position) {
+            return (int) getValue(position, 4);
+        }
+
+        /**
+         * Get a long.
+         */
+        public long getLong(long position) {
+            return getValue(position, 8);
+        }
+
+        /**
+         * Get a copy of some bytes.
+         */
+        public byte[] getBytes(long position, int length) {
+            byte[] bytes = new byte[length];
+            for (int i = 0; i < length; i++) {
+                bytes[i] = get(position + i);
+            }
+            return bytes;
+        }
+
+        /**
+         * Get a buffer of some bytes, which shares the mapping unless the bytes cross the end of
+         * a chunk.
+         */
+        public ByteBuffer slice(long position, int length) {
+            final int offset = (int) (position % mChunkSize);
+            if ((long) offset + length > mChunkSize) {
+                return ByteBuffer.wrap(getBytes(position, length));
+            }
+            ByteBuffer chunk = mChunks[(int) (position / mChunkSize)].duplicate();
+            chunk.position(offset);
+            chunk.limit(offset + length);
+            return chunk.slice();
+        }
+    }
+}
@@ -0,0 +1,434 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Merges several logcat files, such as rotated logcats or the dumps of several buffers, into one
+ * stream of lines in time order, which can be parsed by {@link LogcatParser} as a single logcat.
+ * <p>
+ * Each file is read on its own thread, and the lines are merged by their timestamps. Lines with
+ * the same timestamp in different files are ordered by PID, TID and the order of the files, and
+ * the lines of each file keep their order. A line without a timestamp stays after the line
+ * before it.
+ * </p><p>
+ * Rotated logcats can overlap, so a line is dropped if the same line, with the same timestamp,
+ * was already read from another file. A line repeated within one file is kept as many times as
+ * in the file with the most copies.
+ * </p>
+ */
+public class LogcatMerger {
+    /** The number of lines passed from the thread reading a file at once. */
+    private static final int BATCH_SIZE = 1024;
+    /** The number of batches read ahead for each file. */
+    private static final int QUEUED_BATCHES = 4;
+
+    private final List<File> mFiles;
+
+    /**
+     * Constructor for {@link LogcatMerger}.
+     *
+     * @param files the logcat files, in the order used for lines with the same timestamp, PID
+     * and TID.
+     */
+    public LogcatMerger(List<File> files) {
+        mFiles = new ArrayList<File>(files);
+    }
+
+    /**
+     * Open a {@link BufferedReader} over the merged lines, which must be closed to stop the
+     * threads reading the files if it is not read to the end.
+     *
+     * @throws IOException if a file could not be opened.
+     */
+    public BufferedReader open() throws IOException {
+        List<BufferedReader> readers = new ArrayList<BufferedReader>();
+        try {
+            for (File file : mFiles) {
+                readers.add(new BufferedReader(new FileReader(file)));
+            }
+        } catch (IOException e) {
+            for (BufferedReader reader : readers) {
+                close(reader);
+            }
+            throw e;
+        }
+        return new BufferedReader(new MergedReader(readers));
+    }
+
+    /**
+     * Helper to close a {@link Reader}.
+     */
+    private static void close(Reader reader) {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    /**
+     * A batch of lines of a file, with the timestamp, PID and TID used to merge each line.
+     */
+    private static class Batch {
+        public final String[] mLines;
+        public final long[] mTimes;
+        public final int[] mPids;
+        public final int[] mTids;
+        public int mSize = 0;
+        /** The error which ended the file, or null. */
+        public IOException mError = null;
+
+        /**
+         * Constructor for {@link Batch}.
+         */
+        public Batch(int capacity) {
+            mLines = new String[capacity];
+            mTimes = new long[capacity];
+            mPids = new int[capacity];
+            mTids = new int[capacity];
+        }
+    }
+
+    /**
+     * The lines of one file, read ahead on a thread of the {@link MergedReader}.
+     */
+    private static class Source implements Runnable {
+        /** The batch which ends a file, which is always empty. */
+        private static final Batch END = new Batch(0);
+
+        private final int mIndex;
+        private final BufferedReader mReader;
+        private final BlockingQueue<Batch> mQueue = new ArrayBlockingQueue<Batch>(QUEUED_BATCHES);
+
+        private Batch mBatch = null;
+        private int mPosition = 0;
+
+        /**
+         * Constructor for {@link Source}.
+         *
+         * @param index the index of the file, for lines with the same timestamp, PID and TID.
+         * @param reader the {@link BufferedReader} of the file.
+         */
+        public Source(int index, BufferedReader reader) {
+            mIndex = index;
+            mReader = reader;
+        }
+
+        /**
+         * Read the file into batches, until it ends or the thread is interrupted.
+         */
+        @Override
+        public void run() {
+            long time = Long.MIN_VALUE;
+            int pid = 0;
+            int tid = 0;
+            try {
+                Batch batch = new Batch(BATCH_SIZE);
+                String line;
+                while ((line = mReader.readLine()) != null) {
+                    final long lineTime = LogcatIndex.getTime(line);
+                    if (lineTime != LogcatIndex.NO_TIME) {
+                        time = lineTime;
+                        pid = getId(line, 0);
+                        tid = getId(line, 1);
+                    }
+                    batch.mLines[batch.mSize] = line;
+                    batch.mTimes[batch.mSize] = time;
+                    batch.mPids[batch.mSize] = pid;
+                    batch.mTids[batch.mSize] = tid;
+                    if (++batch.mSize == BATCH_SIZE) {
+                        mQueue.put(batch);
+                        batch = new Batch(BATCH_SIZE);
+                    }
+                }
+                if (batch.mSize > 0) {
+                    mQueue.put(batch);
+                }
+                mQueue.put(END);
+            } catch (IOException e) {
+                Batch error = new Batch(0);
+                error.mError = e;
+                try {
+                    mQueue.put(error);
+                } catch (InterruptedException ie) {
+                    // Ignore, the merged reader was closed.
+                }
+            } catch (InterruptedException e) {
+                // Ignore, the merged reader was closed.
+            } finally {
+                close(mReader);
+            }
+        }
+
+        /**
+         * Move to the next line.
+         *
+         * @return false if the file has ended.
+         * @throws IOException if the file could not be read.
+         */
+        public boolean advance() throws IOException {
+            if (mBatch != null && ++mPosition < mBatch.mSize) {
+                return true;
+            }
+            try {
+                mBatch = mQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while merging logcats");
+            }
+            mPosition = 0;
+            if (mBatch.mError != null) {
+                throw mBatch.mError;
+            }
+            return mBatch.mSize > 0;
+        }
+
+        /**
+         * Get the current line.
+         */
+        public String getLine() {
+            return mBatch.mLines[mPosition];
+        }
+
+        /**
+         * Get the timestamp of the current line.
+         */
+        public long getTime() {
+            return mBatch.mTimes[mPosition];
+        }
+
+        /**
+         * Get the PID of the current line.
+         */
+        public int getPid() {
+            return mBatch.mPids[mPosition];
+        }
+
+        /**
+         * Get the TID of the current line.
+         */
+        public int getTid() {
+            return mBatch.mTids[mPosition];
+        }
+
+        /**
+         * Get the PID or TID of a line in the threadtime format, or the PID of a line in the
+         * time format.
+         *
+         * @param line the line, which starts with a timestamp.
+         * @param field 0 for the PID or 1 for the TID.
+         * @return The id, or 0 if it is not in the line.
+         */
+        private static int getId(String line, int field) {
+            final int length = line.length();
+            int i = 18;
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            if (i < length && Character.isDigit(line.charAt(i))) {
+                // The threadtime format, with the PID and TID after the timestamp.
+                int id = 0;
+                for (int f = 0; f <= field; f++) {
+                    while (i < length && line.charAt(i) == ' ') {
+                        i++;
+                    }
+                    id = 0;
+                    while (i < length && Character.isDigit(line.charAt(i))) {
+                        id = id * 10 + (line.charAt(i++) - '0');
+                    }
+                }
+                return id;
+            }
+            // The time format, with the PID in parentheses after the tag.
+            final int open = line.indexOf('(', i);
+            if (field != 0 || open < 0) {
+                return 0;
+            }
+            i = open + 1;
+            while (i < length && line.charAt(i) == ' ') {
+                i++;
+            }
+            int id = 0;
+            while (i < length && Character.isDigit(line.charAt(i))) {
+                id = id * 10 + (line.charAt(i++) - '0');
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Orders the current lines of the sources by timestamp, PID, TID and file.
+     */
+    private static class SourceComparator implements Comparator<Source> {
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int compare(Source a, Source b) {
+            if (a.getTime() != b.getTime()) {
+                return a.getTime() < b.getTime() ? -1 : 1;
+            }
+            if (a.getPid() != b.getPid()) {
+                return a.getPid() < b.getPid() ? -1 : 1;
+            }
+            if (a.getTid() != b.getTid()) {
+                return a.getTid() < b.getTid() ? -1 : 1;
+            }
+            return a.mIndex - b.mIndex;
+        }
+    }
+
+    /**
+     * A {@link Reader} of the merged lines of the sources.
+     */
+    private static class MergedReader extends Reader {
+        private final List<Source> mSources = new ArrayList<Source>();
+        private final ExecutorService mExecutor;
+        private final PriorityQueue<Source> mHeads;
+        private boolean mStarted = false;
+
+        /** The timestamp of the lines in {@link #mSeen}. */
+        private long mSeenTime = Long.MIN_VALUE;
+        /**
+         * The lines with the timestamp, with the number of times each was returned followed by
+         * the number of times it was read from each file.
+         */
+        private final Map<String, int[]> mSeen = new HashMap<String, int[]>();
+
+        private String mLine = null;
+        /** The position in the line, where the length of the line is its newline. */
+        private int mPosition = 0;
+
+        /**
+         * Constructor for {@link MergedReader}, which starts reading the files.
+         */
+        public MergedReader(List<BufferedReader> readers) {
+            for (int i = 0; i < readers.size(); i++) {
+                mSources.add(new Source(i, readers.get(i)));
+            }
+            mHeads = new PriorityQueue<Source>(Math.max(1, readers.size()),
+                    new SourceComparator());
+            mExecutor = Executors.newFixedThreadPool(Math.max(1, readers.size()));
+            for (Source source : mSources) {
+                mExecutor.execute(source);
+            }
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int count = 0;
+            while (count < length) {
+                if (mLine == null || mPosition > mLine.length()) {
+                    mLine = nextLine();
+                    mPosition = 0;
+                    if (mLine == null) {
+                        break;
+                    }
+                }
+                if (mPosition == mLine.length()) {
+                    buffer[offset + count++] = '\n';
+                    mPosition++;
+                } else {
+                    final int chars = Math.min(length - count, mLine.length() - mPosition);
+                    mLine.getChars(mPosition, mPosition + chars, buffer, offset + count);
+                    mPosition += chars;
+                    count += chars;
+                }
+            }
+            return count == 0 && length > 0 ? -1 : count;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void close() {
+            mExecutor.shutdownNow();
+        }
+
+        /**
+         * Get the next line which is not a duplicate, or null at the end of all the files.
+         */
+        private String nextLine() throws IOException {
+            if (!mStarted) {
+                mStarted = true;
+                for (Source source : mSources) {
+                    if (source.advance()) {
+                        mHeads.add(source);
+                    }
+                }
+            }
+            Source source;
+            while ((source = mHeads.poll()) != null) {
+                final String line = source.getLine();
+                final boolean duplicate = isDuplicate(source.mIndex, source.getTime(), line);
+                if (source.advance()) {
+                    mHeads.add(source);
+                }
+                if (!duplicate) {
+                    return line;
+                }
+            }
+            mExecutor.shutdown();
+            return null;
+        }
+
+        /**
+         * Returns true if a line was already returned as often as it has been read from a file,
+         * because another file has the same line with the same timestamp.
+         */
+        private boolean isDuplicate(int index, long time, String line) {
+            if (time == Long.MIN_VALUE || mSources.size() == 1) {
+                // Only lines with a timestamp can be matched between files.
+                return false;
+            }
+            if (time != mSeenTime) {
+                mSeen.clear();
+                mSeenTime = time;
+            }
+            int[] counts = mSeen.get(line);
+            if (counts == null) {
+                counts = new int[mSources.size() + 1];
+                mSeen.put(line, counts);
+            }
+            if (++counts[index + 1] <= counts[0]) {
+                return true;
+            }
+            counts[0]++;
+            return false;
+        }
+    }
+}
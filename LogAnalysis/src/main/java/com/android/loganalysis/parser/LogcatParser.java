@@ -15,13 +15,21 @@
  */
 package com.android.loganalysis.parser;
 
+import com.android.loganalysis.item.JavaCrashItem;
 import com.android.loganalysis.item.LogcatItem;
 import com.android.loganalysis.item.MiscLogcatItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.CrashSignatureUtil;
 import com.android.loganalysis.util.LogPatternUtil;
 import com.android.loganalysis.util.LogTailUtil;
+import com.android.loganalysis.util.ParsePhase;
+import com.android.loganalysis.util.ParseStats;
+import com.android.loganalysis.util.StringTable;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
@@ -37,6 +45,9 @@ import java.util.regex.Pattern;
  * Since the timestamps in the logcat do not have a year, the year can be set manually when the
  * parser is created or through {@link #setYear(String)}.  If a year is not set, the current year
  * will be used.
+ * </p><p>
+ * The parser only holds its rules and settings, and each call to {@code parse} keeps its state in
+ * a new session, so once configured a parser can be reused and shared between threads.
  * </p>
  */
 public class LogcatParser implements IParser {
@@ -106,22 +117,19 @@ public class LogcatParser implements IParser {
         }
     }
 
-    private LogPatternUtil mPatternUtil = new LogPatternUtil();
-    private LogTailUtil mPreambleUtil = new LogTailUtil();
+    private final LogPatternUtil mPatternUtil = new LogPatternUtil();
 
     private String mYear = null;
+    private ParseStats mStats = null;
 
-    LogcatItem mLogcat = null;
+    private boolean mLastPreamble = true;
+    private boolean mProcessPreamble = true;
+    private boolean mStack = true;
 
-    Map<String, LogcatData> mDataMap = new HashMap<String, LogcatData>();
-    List<LogcatData> mDataList = new LinkedList<LogcatData>();
-
-    private Date mStartTime = null;
-    private Date mStopTime = null;
-
-    private boolean mIsParsing = true;
-
-    private Map<Integer, String> mPids = new HashMap<Integer, String>();
+    private final AnrParser mAnrParser = new AnrParser();
+    private final JavaCrashParser mJavaCrashParser = new JavaCrashParser();
+    private final NativeCrashParser mNativeCrashParser = new NativeCrashParser();
+    private StringTable mNativeStringTable = null;
 
     /**
      * Constructor for {@link LogcatParser}.
@@ -149,6 +157,45 @@ public class LogcatParser implements IParser {
         mYear = year;
     }
 
+    /**
+     * Sets which of the optional event attributes are computed.  The optional attributes are
+     * {@link MiscLogcatItem#LAST_PREAMBLE}, {@link MiscLogcatItem#PROCESS_PREAMBLE} and
+     * {@link MiscLogcatItem#STACK}. Attributes which are not in {@code fields} are never computed,
+     * stored or serialized. Other attributes are always computed. The
+     * {@link MiscLogcatItem#SIGNATURE} of a crash is computed from its stack, or from the lines
+     * of the crash if the stack is not computed, so it is the same either way.
+     *
+     * @param fields The attributes to compute, or {@code null} to compute all attributes.
+     */
+    public void setFields(Set<String> fields) {
+        mLastPreamble = fields == null || fields.contains(MiscLogcatItem.LAST_PREAMBLE);
+        mProcessPreamble = fields == null || fields.contains(MiscLogcatItem.PROCESS_PREAMBLE);
+        mStack = fields == null || fields.contains(MiscLogcatItem.STACK);
+        mAnrParser.setParseStack(mStack);
+        mJavaCrashParser.setParseStack(mStack);
+        mNativeCrashParser.setParseStack(mStack);
+    }
+
+    /**
+     * Sets the {@link StringTable} for the libraries and symbols of native crash frames, so that it
+     * can be shared across several logs. Defaults to a table for each parse, which is released
+     * with the {@link LogcatItem}.
+     */
+    public void setNativeStringTable(StringTable table) {
+        mNativeStringTable = table;
+    }
+
+    /**
+     * Collect the counters of each parse, and how often each event pattern is evaluated and
+     * matched. Must be called before the parser is shared between threads.
+     *
+     * @param stats the {@link ParseStats}, or null to stop collecting.
+     */
+    public void setStats(ParseStats stats) {
+        mStats = stats;
+        mPatternUtil.setStats(stats, getClass().getSimpleName());
+    }
+
     /**
      * Parse a logcat from a {@link BufferedReader} into an {@link LogcatItem} object.
      *
@@ -157,13 +204,106 @@ public class LogcatParser implements IParser {
      * @see #parse(List)
      */
     public LogcatItem parse(BufferedReader input) throws IOException {
+        return parse(input, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    /**
+     * Parse the part of a logcat in a time range from a {@link BufferedReader} into an
+     * {@link LogcatItem} object.
+     * <p>
+     * The lines before the range are only used for the preambles of the events at the start of
+     * the range, and the lines after it are ignored, so the input may start some lines before the
+     * range, such as at an offset from {@link LogcatIndex#getStartOffset(long, int)}.
+     * </p>
+     *
+     * @param input a {@link BufferedReader}.
+     * @param since the start of the range, as returned by {@link LogcatIndex#getTime}, or
+     * {@link Long#MIN_VALUE}.
+     * @param until the end of the range, as returned by {@link LogcatIndex#getTime}, or
+     * {@link Long#MAX_VALUE}.
+     * @return The {@link LogcatItem}.
+     */
+    public LogcatItem parse(BufferedReader input, long since, long until) throws IOException {
+        return parse(input, since, until, null);
+    }
+
+    /**
+     * Parse the part of a logcat in a time range from a {@link BufferedReader} into an
+     * {@link LogcatItem} object, and stream each of its lines to an {@link ILogcatLineListener},
+     * such as the builder of a {@link LogcatLineIndex}.
+     *
+     * @param input a {@link BufferedReader}.
+     * @param since the start of the range, or {@link Long#MIN_VALUE}.
+     * @param until the end of the range, or {@link Long#MAX_VALUE}.
+     * @param listener the {@link ILogcatLineListener} which receives each line in the range, or
+     * null.
+     * @return The {@link LogcatItem}.
+     * @see #parse(BufferedReader, long, long)
+     */
+    public LogcatItem parse(BufferedReader input, long since, long until,
+            ILogcatLineListener listener) throws IOException {
+        final ParseStats stats = mStats;
+        ParseStats.Timer timer = stats != null ? new ParseStats.Timer() : null;
+        Session session = new Session(mYear, since, until, listener);
+        long lines = 0;
+        long bytes = 0;
         String line;
         while ((line = input.readLine()) != null) {
-            parseLine(line);
+            session.parseLine(line);
+            if (stats != null) {
+                lines++;
+                bytes += line.length() + 1;
+            }
         }
-        commit();
+        LogcatItem logcat = session.commit();
+        if (stats != null) {
+            addStats(stats, timer, lines, bytes, logcat);
+        }
+        return logcat;
+    }
 
-        return mLogcat;
+    /**
+     * Parse a logcat file which is appended to, resuming from a checkpoint of an earlier parse of
+     * the file, and save a checkpoint for the next parse.
+     * <p>
+     * Only the lines after the checkpoint are read, and the {@link LogcatItem} has the same events
+     * as a parse of the whole file. Without a checkpoint, or if the checkpoint is not of the file
+     * as it is now, or was saved with another year, other fields or other patterns, the whole file
+     * is parsed.
+     * </p>
+     *
+     * @param file the logcat file.
+     * @param checkpointFile the checkpoint file, such as from
+     * {@link LogCheckpoint#getCheckpointFile(File)}.
+     * @return The {@link LogcatItem}.
+     * @throws IOException if the logcat could not be read.
+     */
+    public LogcatItem parse(File file, File checkpointFile) throws IOException {
+        final ParseStats stats = mStats;
+        ParseStats.Timer timer = stats != null ? new ParseStats.Timer() : null;
+        Session session = new Session(mYear, Long.MIN_VALUE, Long.MAX_VALUE, null);
+        LogCheckpoint checkpoint = new LogCheckpoint(file, checkpointFile,
+                session.getCheckpointKey());
+        try {
+            if (checkpoint.getState() != null) {
+                session.read(checkpoint.getState());
+            }
+            String line;
+            while ((line = checkpoint.readLine()) != null) {
+                session.parseLine(line);
+            }
+            checkpoint.save(file, session);
+            if (checkpoint.getPartialLine() != null) {
+                session.parseLine(checkpoint.getPartialLine());
+            }
+        } finally {
+            checkpoint.close();
+        }
+        LogcatItem logcat = session.commit();
+        if (stats != null) {
+            addStats(stats, timer, checkpoint.getLineCount(), checkpoint.getByteCount(), logcat);
+        }
+        return logcat;
     }
 
     /**
@@ -173,208 +313,451 @@ public class LogcatParser implements IParser {
      */
     @Override
     public LogcatItem parse(List<String> lines) {
-        for (String line : lines) {
-            parseLine(line);
-        }
-        commit();
-
-        return mLogcat;
+        return parse(lines, mYear);
     }
 
     /**
-     * Parse a line of input.
+     * Parse a logcat with a given year instead of the year set on the parser, such as the year of
+     * the bugreport the logcat is part of.
      *
-     * @param line The line to parse
+     * @param lines the lines of the logcat.
+     * @param year The year as a string, or null to use the current year.
+     * @return The {@link LogcatItem}.
      */
-    private void parseLine(String line) {
-        if ("".equals(line.trim())) {
-            return;
+    public LogcatItem parse(List<String> lines, String year) {
+        final ParseStats stats = mStats;
+        ParseStats.Timer timer = stats != null ? new ParseStats.Timer() : null;
+        Session session = new Session(year, Long.MIN_VALUE, Long.MAX_VALUE, null);
+        for (String line : lines) {
+            session.parseLine(line);
         }
-        if (mLogcat == null) {
-            mLogcat = new LogcatItem();
+        LogcatItem logcat = session.commit();
+        if (stats != null) {
+            addStats(stats, timer, lines.size(), ParseStats.getBytes(lines), logcat);
         }
-        Integer pid = null;
-        Integer tid = null;
-        Date time = null;
-        String level = null;
-        String tag = null;
-        String msg = null;
-
-        Matcher m = THREADTIME_LINE.matcher(line);
-        Matcher tm = TIME_LINE.matcher(line);
-        if (m.matches()) {
-            time = parseTime(m.group(1));
-            pid = Integer.parseInt(m.group(2));
-            tid = Integer.parseInt(m.group(3));
-            level = m.group(4);
-            tag = m.group(5);
-            msg = m.group(6);
-        } else if (tm.matches()) {
-            time = parseTime(tm.group(1));
-            level = tm.group(2);
-            tag = tm.group(3);
-            pid = Integer.parseInt(tm.group(4));
-            msg = tm.group(5);
+        return logcat;
+    }
+
+    /**
+     * Add a parse to the counters of the parser.
+     */
+    private void addStats(ParseStats stats, ParseStats.Timer timer, long lines, long bytes,
+            LogcatItem logcat) {
+        stats.getParser(getClass().getSimpleName()).add(timer, lines, bytes,
+                logcat != null ? logcat.getEvents().size() : 0);
+    }
+
+    /**
+     * The state of a single parse. The parser itself only holds the rules and settings, so one
+     * parser can be used for several logs, including from several threads at once.
+     */
+    private class Session implements LogCheckpoint.IState {
+        private final String mYear;
+        private final long mSince;
+        private final long mUntil;
+        private final boolean mIsWindowed;
+        private final ILogcatLineListener mListener;
+
+        /** The number of the next line, for the listener. */
+        private int mLineNumber = 0;
+
+        /** The time of the last line with a timestamp, for a windowed parse. */
+        private long mTimeKey = LogcatIndex.NO_TIME;
+
+        private LogcatItem mLogcat = null;
+
+        private Map<String, LogcatData> mDataMap = new HashMap<String, LogcatData>();
+        private List<LogcatData> mDataList = new LinkedList<LogcatData>();
+
+        private Date mStartTime = null;
+        private Date mStopTime = null;
+
+        private boolean mIsParsing = true;
+
+        private Map<Integer, String> mPids = new HashMap<Integer, String>();
+
+        private LogTailUtil mPreambleUtil = new LogTailUtil();
+
+        /** The libraries and symbols of the native crashes of the parse. */
+        private final StringTable mStringTable = mNativeStringTable != null ? mNativeStringTable :
+                new StringTable();
+
+        /**
+         * Constructor for {@link Session}.
+         *
+         * @param year The year as a string, or null to use the current year.
+         * @param since the start of the time range to parse.
+         * @param until the end of the time range to parse.
+         * @param listener the {@link ILogcatLineListener} for the lines, or null.
+         */
+        public Session(String year, long since, long until, ILogcatLineListener listener) {
+            mYear = year != null ? year : new SimpleDateFormat("yyyy").format(new Date());
+            mSince = since;
+            mUntil = until;
+            mIsWindowed = since != Long.MIN_VALUE || until != Long.MAX_VALUE;
+            mListener = listener;
         }
 
-        if (time != null) {
-            if (mStartTime == null) {
-                mStartTime = time;
+        /**
+         * Parse a line of input.
+         *
+         * @param line The line to parse
+         */
+        public void parseLine(String line) {
+            final int lineNumber = mLineNumber++;
+            if ("".equals(line.trim())) {
+                return;
+            }
+            if (mLogcat == null) {
+                mLogcat = new LogcatItem();
+            }
+            Integer pid = null;
+            Integer tid = null;
+            Date time = null;
+            String level = null;
+            String tag = null;
+            String msg = null;
+
+            Matcher m = THREADTIME_LINE.matcher(line);
+            Matcher tm = TIME_LINE.matcher(line);
+            if (m.matches()) {
+                time = parseTime(m.group(1));
+                pid = Integer.parseInt(m.group(2));
+                tid = Integer.parseInt(m.group(3));
+                level = m.group(4);
+                tag = m.group(5);
+                msg = m.group(6);
+            } else if (tm.matches()) {
+                time = parseTime(tm.group(1));
+                level = tm.group(2);
+                tag = tm.group(3);
+                pid = Integer.parseInt(tm.group(4));
+                msg = tm.group(5);
             }
-            mStopTime = time;
-        }
 
-        // Don't parse any lines after device begins reboot until a new log is detected.
-        if ("I".equals(level) && "ShutdownThread".equals(tag) &&
-                Pattern.matches("Rebooting, reason: .*", msg)) {
-            mIsParsing = false;
-        }
-        if (Pattern.matches(".*--------- beginning of /dev/log/main", line)) {
-            mIsParsing = true;
-        }
+            boolean isBefore = false;
+            if (mIsWindowed) {
+                // Lines without a timestamp belong with the line before them.
+                final long key = LogcatIndex.getTime(line);
+                if (key != LogcatIndex.NO_TIME) {
+                    mTimeKey = key;
+                }
+                if (mTimeKey > mUntil) {
+                    return;
+                }
+                isBefore = mTimeKey < mSince;
+            }
 
-        if (!mIsParsing || !(m.matches() || tm.matches())) {
-            return;
-        }
+            if (mListener != null && msg != null && !isBefore) {
+                mListener.onLine(lineNumber, mIsWindowed ? mTimeKey : LogcatIndex.getTime(line),
+                        pid, level, tag, msg);
+            }
 
+            if (time != null && !isBefore) {
+                if (mStartTime == null) {
+                    mStartTime = time;
+                }
+                mStopTime = time;
+            }
 
-        // When a non app java process starts add its pid to the map
-        Matcher pidMatcher = JAVA_PROC_START.matcher(msg);
-        if (pidMatcher.matches()) {
-            String name = pidMatcher.group(1);
-            mPids.put(pid, name);
-        }
+            // Don't parse any lines after device begins reboot until a new log is detected.
+            if ("I".equals(level) && "ShutdownThread".equals(tag) &&
+                    Pattern.matches("Rebooting, reason: .*", msg)) {
+                mIsParsing = false;
+            }
+            if (Pattern.matches(".*--------- beginning of /dev/log/main", line)) {
+                mIsParsing = true;
+            }
 
-        // ANRs are separated either by different PID/TIDs or when AnrParser.START matches a line.
-        // The newest entry is kept in the dataMap for quick lookup while all entries are added to
-        // the list.
-        if ("E".equals(level) && "ActivityManager".equals(tag)) {
-            String key = encodeLine(pid, tid, level, tag);
-            LogcatData data;
-            if (!mDataMap.containsKey(key) || AnrParser.START.matcher(msg).matches()) {
-                data = new LogcatData(pid, tid, time, level, tag, mPreambleUtil.getLastTail(),
-                        mPreambleUtil.getIdTail(pid));
-                mDataMap.put(key, data);
-                mDataList.add(data);
-            } else {
-                data = mDataMap.get(key);
+            if (!mIsParsing || !(m.matches() || tm.matches())) {
+                return;
             }
-            data.mLines.add(msg);
-        }
 
-        // Native crashes are separated either by different PID/TIDs or when NativeCrashParser.START
-        // matches a line.  The newest entry is kept in the dataMap for quick lookup while all
-        // entries are added to the list.
-        if ("I".equals(level) && "DEBUG".equals(tag)) {
-            String key = encodeLine(pid, tid, level, tag);
-            LogcatData data;
-            if (!mDataMap.containsKey(key) || NativeCrashParser.START.matcher(msg).matches()) {
-                data = new LogcatData(pid, tid, time, level, tag, mPreambleUtil.getLastTail(),
-                        mPreambleUtil.getIdTail(pid));
-                mDataMap.put(key, data);
+
+            // When a non app java process starts add its pid to the map
+            Matcher pidMatcher = JAVA_PROC_START.matcher(msg);
+            if (pidMatcher.matches()) {
+                String name = pidMatcher.group(1);
+                mPids.put(pid, name);
+            }
+
+            // Lines before the window only fill the buffer for the preambles.
+            if (isBefore) {
+                if (mLastPreamble || mProcessPreamble) {
+                    mPreambleUtil.addLine(pid, line);
+                }
+                return;
+            }
+
+            // ANRs are separated either by different PID/TIDs or when AnrParser.START matches a
+            // line. The newest entry is kept in the dataMap for quick lookup while all entries are
+            // added to the list.
+            if ("E".equals(level) && "ActivityManager".equals(tag)) {
+                String key = encodeLine(pid, tid, level, tag);
+                LogcatData data;
+                if (!mDataMap.containsKey(key) || AnrParser.START.matcher(msg).matches()) {
+                    data = new LogcatData(pid, tid, time, level, tag, getLastPreamble(),
+                            getProcessPreamble(pid));
+                    mDataMap.put(key, data);
+                    mDataList.add(data);
+                } else {
+                    data = mDataMap.get(key);
+                }
+                data.mLines.add(msg);
+            }
+
+            // Native crashes are separated either by different PID/TIDs or when
+            // NativeCrashParser.START matches a line.  The newest entry is kept in the dataMap for
+            // quick lookup while all entries are added to the list.
+            if ("I".equals(level) && "DEBUG".equals(tag)) {
+                String key = encodeLine(pid, tid, level, tag);
+                LogcatData data;
+                if (!mDataMap.containsKey(key) || NativeCrashParser.START.matcher(msg).matches()) {
+                    data = new LogcatData(pid, tid, time, level, tag, getLastPreamble(),
+                            getProcessPreamble(pid));
+                    mDataMap.put(key, data);
+                    mDataList.add(data);
+                } else {
+                    data = mDataMap.get(key);
+                }
+                data.mLines.add(msg);
+            }
+
+            // PID and TID are enough to separate Java crashes.
+            if (("E".equals(level) && "AndroidRuntime".equals(tag))) {
+                String key = encodeLine(pid, tid, level, tag);
+                LogcatData data;
+                if (!mDataMap.containsKey(key)) {
+                    data = new LogcatData(pid, tid, time, level, tag, getLastPreamble(),
+                            getProcessPreamble(pid));
+                    mDataMap.put(key, data);
+                    mDataList.add(data);
+                } else {
+                    data = mDataMap.get(key);
+                }
+                data.mLines.add(msg);
+            }
+
+            // Check the message here but add it in commit()
+            if (mPatternUtil.checkMessage(msg, new ExtrasPattern(level, tag)) != null) {
+                LogcatData data = new LogcatData(pid, tid, time, level, tag, getLastPreamble(),
+                        getProcessPreamble(pid));
+                data.mLines.add(msg);
                 mDataList.add(data);
-            } else {
-                data = mDataMap.get(key);
             }
-            data.mLines.add(msg);
+
+            // After parsing the line, add it the the buffer for the preambles.
+            if (mLastPreamble || mProcessPreamble) {
+                mPreambleUtil.addLine(pid, line);
+            }
         }
 
-        // PID and TID are enough to separate Java crashes.
-        if (("E".equals(level) && "AndroidRuntime".equals(tag))) {
-            String key = encodeLine(pid, tid, level, tag);
-            LogcatData data;
-            if (!mDataMap.containsKey(key)) {
-                data = new LogcatData(pid, tid, time, level, tag, mPreambleUtil.getLastTail(),
-                        mPreambleUtil.getIdTail(pid));
-                mDataMap.put(key, data);
-                mDataList.add(data);
-            } else {
-                data = mDataMap.get(key);
+        /**
+         * Get the key of the checkpoints of the session, with the settings which change the
+         * state of the session.
+         */
+        public String getCheckpointKey() {
+            return String.format("%s %s %b %b %b %s", LogcatParser.class.getSimpleName(), mYear,
+                    mLastPreamble, mProcessPreamble, mStack, mPatternUtil.getDigest());
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * The blocks are only parsed into events by {@link #commit()}, so the checkpoint holds the
+         * lines of every block, and which block is the newest for each key.
+         * </p>
+         */
+        @Override
+        public void write(DataOutputStream output) throws IOException {
+            output.writeBoolean(mLogcat != null);
+            output.writeInt(mLineNumber);
+            LogCheckpoint.writeDate(output, mStartTime);
+            LogCheckpoint.writeDate(output, mStopTime);
+            output.writeBoolean(mIsParsing);
+            output.writeInt(mPids.size());
+            for (Map.Entry<Integer, String> entry : mPids.entrySet()) {
+                output.writeInt(entry.getKey());
+                LogCheckpoint.writeString(output, entry.getValue());
+            }
+            mPreambleUtil.write(output);
+
+            Map<LogcatData, Integer> indexes = new IdentityHashMap<LogcatData, Integer>();
+            output.writeInt(mDataList.size());
+            for (LogcatData data : mDataList) {
+                indexes.put(data, indexes.size());
+                LogCheckpoint.writeInteger(output, data.mPid);
+                LogCheckpoint.writeInteger(output, data.mTid);
+                LogCheckpoint.writeDate(output, data.mTime);
+                LogCheckpoint.writeString(output, data.mLevel);
+                LogCheckpoint.writeString(output, data.mTag);
+                LogCheckpoint.writeString(output, data.mLastPreamble);
+                LogCheckpoint.writeString(output, data.mProcPreamble);
+                output.writeInt(data.mLines.size());
+                for (String line : data.mLines) {
+                    LogCheckpoint.writeString(output, line);
+                }
+            }
+            output.writeInt(mDataMap.size());
+            for (Map.Entry<String, LogcatData> entry : mDataMap.entrySet()) {
+                LogCheckpoint.writeString(output, entry.getKey());
+                output.writeInt(indexes.get(entry.getValue()));
             }
-            data.mLines.add(msg);
         }
 
-        // Check the message here but add it in commit()
-        if (mPatternUtil.checkMessage(msg, new ExtrasPattern(level, tag)) != null) {
-            LogcatData data = new LogcatData(pid, tid, time, level, tag,
-                    mPreambleUtil.getLastTail(), mPreambleUtil.getIdTail(pid));
-            data.mLines.add(msg);
-            mDataList.add(data);
+        /**
+         * Restore the state written by {@link #write(DataOutputStream)} to a new session.
+         */
+        public void read(DataInputStream input) throws IOException {
+            if (input.readBoolean()) {
+                mLogcat = new LogcatItem();
+            }
+            mLineNumber = input.readInt();
+            mStartTime = LogCheckpoint.readDate(input);
+            mStopTime = LogCheckpoint.readDate(input);
+            mIsParsing = input.readBoolean();
+            final int pids = input.readInt();
+            for (int i = 0; i < pids; i++) {
+                mPids.put(input.readInt(), LogCheckpoint.readString(input));
+            }
+            mPreambleUtil.read(input);
+
+            final int blocks = input.readInt();
+            List<LogcatData> dataList = new ArrayList<LogcatData>(blocks);
+            for (int i = 0; i < blocks; i++) {
+                LogcatData data = new LogcatData(LogCheckpoint.readInteger(input),
+                        LogCheckpoint.readInteger(input), LogCheckpoint.readDate(input),
+                        LogCheckpoint.readString(input), LogCheckpoint.readString(input),
+                        LogCheckpoint.readString(input), LogCheckpoint.readString(input));
+                final int lines = input.readInt();
+                for (int j = 0; j < lines; j++) {
+                    data.mLines.add(LogCheckpoint.readString(input));
+                }
+                dataList.add(data);
+            }
+            mDataList.addAll(dataList);
+            final int keys = input.readInt();
+            for (int i = 0; i < keys; i++) {
+                mDataMap.put(LogCheckpoint.readString(input), dataList.get(input.readInt()));
+            }
         }
 
-        // After parsing the line, add it the the buffer for the preambles.
-        mPreambleUtil.addLine(pid, line);
-    }
+        /**
+         * Get the last preamble, or null if it is not computed.
+         */
+        private String getLastPreamble() {
+            return mLastPreamble ? mPreambleUtil.getLastTail() : null;
+        }
 
-    /**
-     * Signal that the input has finished.
-     */
-    private void commit() {
-        if (mLogcat == null) {
-            return;
+        /**
+         * Get the process preamble for a PID, or null if it is not computed.
+         */
+        private String getProcessPreamble(int pid) {
+            return mProcessPreamble ? mPreambleUtil.getIdTail(pid) : null;
         }
-        for (LogcatData data : mDataList) {
-            MiscLogcatItem item = null;
-            if ("E".equals(data.mLevel) && "ActivityManager".equals(data.mTag)) {
-                item = new AnrParser().parse(data.mLines);
-            } else if ("E".equals(data.mLevel) && "AndroidRuntime".equals(data.mTag)) {
-                // Get the process name/PID from the Java crash, then pass the rest of the lines to
-                // the parser.
-                Integer pid = null;
-                String app = null;
-                for (int i = 0; i < data.mLines.size(); i++) {
-                    String line = data.mLines.get(i);
-                    Matcher m = JAVA_CRASH_PROCESS_PID.matcher(line);
-                    if (m.matches()) {
-                        app = m.group(2);
-                        pid = Integer.valueOf(m.group(3));
-                        data.mLines = data.mLines.subList(i + 1, data.mLines.size());
-                        break;
+
+        /**
+         * Signal that the input has finished.
+         *
+         * @return The {@link LogcatItem}, or null if there was no input.
+         */
+        public LogcatItem commit() {
+            if (mLogcat == null) {
+                return null;
+            }
+            for (LogcatData data : mDataList) {
+                ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.LOGCAT_BLOCK);
+                final List<String> lines = data.mLines;
+                MiscLogcatItem item = null;
+                if ("E".equals(data.mLevel) && "ActivityManager".equals(data.mTag)) {
+                    item = mAnrParser.parse(data.mLines);
+                } else if ("E".equals(data.mLevel) && "AndroidRuntime".equals(data.mTag)) {
+                    // Get the process name/PID from the Java crash, then pass the rest of the lines
+                    // to the parser.
+                    Integer pid = null;
+                    String app = null;
+                    for (int i = 0; i < data.mLines.size(); i++) {
+                        String line = data.mLines.get(i);
+                        Matcher m = JAVA_CRASH_PROCESS_PID.matcher(line);
+                        if (m.matches()) {
+                            app = m.group(2);
+                            pid = Integer.valueOf(m.group(3));
+                            data.mLines = data.mLines.subList(i + 1, data.mLines.size());
+                            break;
+                        }
+                        m = SYSTEM_SERVER_CRASH.matcher(line);
+                        if (m.matches()) {
+                            app = mPids.get(data.mPid);
+                            if (app == null) {
+                                app = "system_server";
+                            }
+                            data.mLines = data.mLines.subList(i + 1, data.mLines.size());
+                            break;
+                        }
                     }
-                    m = SYSTEM_SERVER_CRASH.matcher(line);
-                    if (m.matches()) {
-                        app = mPids.get(data.mPid);
-                        if (app == null) {
-                            app = "system_server";
+                    item = mJavaCrashParser.parse(data.mLines);
+                    if (item != null) {
+                        item.setApp(app);
+                        item.setPid(pid);
+                        // Sign the crash from its stack, or from its lines if the stack is not
+                        // kept.
+                        String stack = item.getStack() != null ? item.getStack()
+                                : ArrayUtil.join("\n", data.mLines);
+                        item.setSignature(CrashSignatureUtil.getJavaCrashSignature(
+                                ((JavaCrashItem) item).getException(), stack,
+                                CrashSignatureUtil.DEFAULT_FRAMES));
+                    }
+                } else if ("I".equals(data.mLevel) && "DEBUG".equals(data.mTag)) {
+                    // CLog.v("Parsing native crash: %s", data.mLines);
+                    item = mNativeCrashParser.parse(data.mLines, mStringTable);
+                } else {
+                    String msg = ArrayUtil.join("\n", data.mLines);
+                    String category = mPatternUtil.checkMessage(msg, new ExtrasPattern(
+                            data.mLevel, data.mTag));
+                    if (category != null) {
+                        MiscLogcatItem logcatItem = new MiscLogcatItem();
+                        logcatItem.setCategory(category);
+                        if (mStack) {
+                            logcatItem.setStack(msg);
                         }
-                        data.mLines = data.mLines.subList(i + 1, data.mLines.size());
-                        break;
+                        item = logcatItem;
                     }
                 }
-                item = new JavaCrashParser().parse(data.mLines);
                 if (item != null) {
-                    item.setApp(app);
-                    item.setPid(pid);
-                }
-            } else if ("I".equals(data.mLevel) && "DEBUG".equals(data.mTag)) {
-                // CLog.v("Parsing native crash: %s", data.mLines);
-                item = new NativeCrashParser().parse(data.mLines);
-            } else {
-                String msg = ArrayUtil.join("\n", data.mLines);
-                String category = mPatternUtil.checkMessage(msg, new ExtrasPattern(
-                        data.mLevel, data.mTag));
-                if (category != null) {
-                    MiscLogcatItem logcatItem = new MiscLogcatItem();
-                    logcatItem.setCategory(category);
-                    logcatItem.setStack(msg);
-                    item = logcatItem;
-                }
-            }
-            if (item != null) {
-                item.setEventTime(data.mTime);
-                if (item.getPid() == null) {
-                    item.setPid(data.mPid);
-                    item.setTid(data.mTid);
+                    item.setEventTime(data.mTime);
+                    if (item.getPid() == null) {
+                        item.setPid(data.mPid);
+                        item.setTid(data.mTid);
+                    }
+                    item.setLastPreamble(data.mLastPreamble);
+                    item.setProcessPreamble(data.mProcPreamble);
+                    item.setTag(data.mTag);
+                    mLogcat.addEvent(item);
                 }
-                item.setLastPreamble(data.mLastPreamble);
-                item.setProcessPreamble(data.mProcPreamble);
-                item.setTag(data.mTag);
-                mLogcat.addEvent(item);
+                phase.end(LogcatParser.this.getClass().getSimpleName(),
+                        String.format("%s/%s", data.mLevel, data.mTag), lines);
             }
+
+            mLogcat.setStartTime(mStartTime);
+            mLogcat.setStopTime(mStopTime);
+            return mLogcat;
         }
 
-        mLogcat.setStartTime(mStartTime);
-        mLogcat.setStopTime(mStopTime);
+        /**
+         * Parse the timestamp and return a {@link Date} in the year of the session.
+         *
+         * @param timeStr The timestamp in the format {@code MM-dd HH:mm:ss.SSS}.
+         * @return The {@link Date}.
+         */
+        private Date parseTime(String timeStr) {
+            DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+            try {
+                return formatter.parse(String.format("%s-%s", mYear, timeStr));
+            } catch (ParseException e) {
+                // CLog.e("Could not parse time string %s", timeStr);
+                return null;
+            }
+        }
     }
 
     /**
@@ -388,29 +771,6 @@ public class LogcatParser implements IParser {
         return String.format("%d|%d|%s|%s", pid, tid, level, tag);
     }
 
-    /**
-     * Parse the timestamp and return a {@link Date}.  If year is not set, the current year will be
-     * used.
-     *
-     * @param timeStr The timestamp in the format {@code MM-dd HH:mm:ss.SSS}.
-     * @return The {@link Date}.
-     */
-    private Date parseTime(String timeStr) {
-        // If year is null, just use the current year.
-        if (mYear == null) {
-            DateFormat yearFormatter = new SimpleDateFormat("yyyy");
-            mYear = yearFormatter.format(new Date());
-        }
-
-        DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
-        try {
-            return formatter.parse(String.format("%s-%s", mYear, timeStr));
-        } catch (ParseException e) {
-            // CLog.e("Could not parse time string %s", timeStr);
-            return null;
-        }
-    }
-
     private void initPatterns() {
         // High CPU usage
         mPatternUtil.addPattern(Pattern.compile(".* timed out \\(is the CPU pegged\\?\\).*"),
@@ -476,5 +836,14 @@ public class LogcatParser implements IParser {
             }
             return false;
         }
+
+        /**
+         * Get the level and tag, so that the extras are part of
+         * {@link LogPatternUtil#getDigest()}.
+         */
+        @Override
+        public String toString() {
+            return String.format("%s|%s", mLevel, mTag);
+        }
     }
 }
@@ -17,6 +17,7 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.MemInfoItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.LazyText;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -30,6 +31,16 @@ public class MemInfoParser implements IParser {
     /** Match a single MemoryInfo line, such as "MemFree:           65420 kB" */
     private static final Pattern INFO_LINE = Pattern.compile("^([^:]+):\\s+(\\d+) kB");
 
+    private TextRetention mTextRetention = TextRetention.FULL;
+
+    /**
+     * Set how the raw text of the section is kept in the {@link MemInfoItem}. Defaults to
+     * {@link TextRetention#FULL}.
+     */
+    public void setTextRetention(TextRetention retention) {
+        mTextRetention = retention;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -37,13 +48,21 @@ public class MemInfoParser implements IParser {
      */
     @Override
     public MemInfoItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).trim();
-        if ("".equals(text)) {
+        if (LazyText.isBlank(lines)) {
             return null;
         }
 
         MemInfoItem item = new MemInfoItem();
-        item.setText(text);
+        switch (mTextRetention) {
+            case FULL:
+                item.setText(ArrayUtil.join("\n", lines).trim());
+                break;
+            case LAZY:
+                item.setLazyText(new LazyText(lines));
+                break;
+            default:
+                break;
+        }
 
         for (String line : lines) {
             Matcher m = INFO_LINE.matcher(line);
@@ -19,9 +19,13 @@ import com.android.loganalysis.item.*;
 import com.android.loganalysis.item.MonkeyLogItem.DroppedCategory;
 
 import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -74,6 +78,16 @@ public class MonkeyLogParser implements IParser {
     private static final Pattern TRACES_START = Pattern.compile("anr traces:");
     private static final Pattern TRACES_STOP = Pattern.compile("// anr traces status was \\d+");
 
+    /**
+     * The kinds of crash, which are parsed from a block of lines.
+     */
+    private enum CrashType {
+        ANR,
+        JAVA_CRASH,
+        NATIVE_CRASH,
+        EMPTY_NATIVE_CRASH,
+    }
+
     private boolean mMatchingAnr = false;
     private boolean mMatchingCrash = false;
     private boolean mMatchingJavaCrash = false;
@@ -84,6 +98,12 @@ public class MonkeyLogParser implements IParser {
     private String mApp = null;
     private Integer mPid = null;
 
+    /** The kind, lines, app and PID of the crash, so that it can be parsed from a checkpoint. */
+    private CrashType mCrashType = null;
+    private List<String> mCrashBlock = null;
+    private String mCrashApp = null;
+    private Integer mCrashPid = null;
+
     private MonkeyLogItem mMonkeyLog = new MonkeyLogItem();
 
     /**
@@ -102,6 +122,47 @@ public class MonkeyLogParser implements IParser {
         return mMonkeyLog;
     }
 
+    /**
+     * Parse a monkey log file which is appended to, resuming from a checkpoint of an earlier parse
+     * of the file, and save a checkpoint for the next parse.
+     * <p>
+     * Only the lines after the checkpoint are read, and the {@link MonkeyLogItem} is the same as
+     * from a parse of the whole file. Without a checkpoint, or if the checkpoint is not of the
+     * file as it is now, the whole file is parsed.
+     * </p>
+     *
+     * @param file the monkey log file.
+     * @param checkpointFile the checkpoint file, such as from
+     * {@link LogCheckpoint#getCheckpointFile(File)}.
+     * @return The {@link MonkeyLogItem}.
+     * @throws IOException if the monkey log could not be read.
+     */
+    public MonkeyLogItem parse(File file, File checkpointFile) throws IOException {
+        LogCheckpoint checkpoint = new LogCheckpoint(file, checkpointFile,
+                MonkeyLogParser.class.getSimpleName());
+        try {
+            if (checkpoint.getState() != null) {
+                readState(checkpoint.getState());
+            }
+            String line;
+            while ((line = checkpoint.readLine()) != null) {
+                parseLine(line);
+            }
+            checkpoint.save(file, new LogCheckpoint.IState() {
+                @Override
+                public void write(DataOutputStream output) throws IOException {
+                    writeState(output);
+                }
+            });
+            if (checkpoint.getPartialLine() != null) {
+                parseLine(checkpoint.getPartialLine());
+            }
+        } finally {
+            checkpoint.close();
+        }
+        return mMonkeyLog;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -124,8 +185,7 @@ public class MonkeyLogParser implements IParser {
 
         if (mMatchingAnr) {
             if ("".equals(line)) {
-                AnrItem crash = new AnrParser().parse(mBlock);
-                addCrashAndReset(crash);
+                addCrashAndReset(CrashType.ANR, mBlock);
             } else {
                 mBlock.add(line);
                 return;
@@ -144,14 +204,12 @@ public class MonkeyLogParser implements IParser {
                 line = line.replace("// ", "");
                 mBlock.add(line);
                 return;
+            } else if (mMatchingJavaCrash) {
+                addCrashAndReset(CrashType.JAVA_CRASH, mBlock);
+            } else if (mMatchingNativeCrash) {
+                addCrashAndReset(CrashType.NATIVE_CRASH, mBlock);
             } else {
-                MiscLogcatItem crash = null;
-                if (mMatchingJavaCrash) {
-                    crash = new JavaCrashParser().parse(mBlock);
-                } else if (mMatchingNativeCrash) {
-                    crash = new NativeCrashParser().parse(mBlock);
-                }
-                addCrashAndReset(crash);
+                reset();
             }
         }
 
@@ -259,9 +317,7 @@ public class MonkeyLogParser implements IParser {
         }
         m = EMPTY_NATIVE_CRASH.matcher(line);
         if (mMonkeyLog.getCrash() == null && m.matches()) {
-            MiscLogcatItem crash = new NativeCrashItem();
-            crash.setStack("");
-            addCrashAndReset(crash);
+            addCrashAndReset(CrashType.EMPTY_NATIVE_CRASH, null);
         }
         m = TRACES_START.matcher(line);
         if (!mMatchedTrace && m.matches()) {
@@ -271,20 +327,57 @@ public class MonkeyLogParser implements IParser {
     }
 
     /**
-     * Add a crash to the monkey log item and reset the parser state for crashes.
+     * Parse a crash, add it to the monkey log item and reset the parser state for crashes.
      */
-    private void addCrashAndReset(MiscLogcatItem crash) {
+    private void addCrashAndReset(CrashType type, List<String> block) {
+        MiscLogcatItem crash = parseCrash(type, block, mApp, mPid);
+        if (crash != null) {
+            mMonkeyLog.setCrash(crash);
+            mCrashType = type;
+            mCrashBlock = block;
+            mCrashApp = mApp;
+            mCrashPid = mPid;
+        }
+
+        reset();
+    }
+
+    /**
+     * Parse a crash from its lines.
+     *
+     * @param type the {@link CrashType}.
+     * @param block the lines of the crash, or null for an empty native crash.
+     * @param app the app of the crash, if the lines do not have it.
+     * @param pid the PID of the crash, if the lines do not have it.
+     * @return The crash, or null if it could not be parsed.
+     */
+    private static MiscLogcatItem parseCrash(CrashType type, List<String> block, String app,
+            Integer pid) {
+        MiscLogcatItem crash;
+        switch (type) {
+            case ANR:
+                crash = new AnrParser().parse(block);
+                break;
+            case JAVA_CRASH:
+                crash = new JavaCrashParser().parse(block);
+                break;
+            case NATIVE_CRASH:
+                crash = new NativeCrashParser().parse(block);
+                break;
+            default:
+                crash = new NativeCrashItem();
+                crash.setStack("");
+                break;
+        }
         if (crash != null) {
             if (crash.getPid() == null) {
-                crash.setPid(mPid);
+                crash.setPid(pid);
             }
             if (crash.getApp() == null) {
-                crash.setApp(mApp);
+                crash.setApp(app);
             }
-            mMonkeyLog.setCrash(crash);
         }
-
-        reset();
+        return crash;
     }
 
     /**
@@ -301,6 +394,161 @@ public class MonkeyLogParser implements IParser {
         mBlock = null;
     }
 
+    /**
+     * Write the state of the parser, after the lines parsed so far. The crash is written as the
+     * lines it was parsed from, and its trace.
+     */
+    private void writeState(DataOutputStream output) throws IOException {
+        output.writeBoolean(mMatchingAnr);
+        output.writeBoolean(mMatchingCrash);
+        output.writeBoolean(mMatchingJavaCrash);
+        output.writeBoolean(mMatchingNativeCrash);
+        output.writeBoolean(mMatchingTraces);
+        output.writeBoolean(mMatchedTrace);
+        writeLines(output, mBlock);
+        LogCheckpoint.writeString(output, mApp);
+        LogCheckpoint.writeInteger(output, mPid);
+
+        LogCheckpoint.writeDate(output, mMonkeyLog.getStartTime());
+        LogCheckpoint.writeDate(output, mMonkeyLog.getStopTime());
+        writeLines(output, mMonkeyLog.getPackages());
+        writeLines(output, mMonkeyLog.getCategories());
+        output.writeInt(mMonkeyLog.getThrottle());
+        LogCheckpoint.writeLong(output, mMonkeyLog.getSeed());
+        LogCheckpoint.writeInteger(output, mMonkeyLog.getTargetCount());
+        output.writeBoolean(mMonkeyLog.getIgnoreSecurityExceptions());
+        LogCheckpoint.writeLong(output, mMonkeyLog.getTotalDuration());
+        LogCheckpoint.writeLong(output, mMonkeyLog.getStartUptimeDuration());
+        LogCheckpoint.writeLong(output, mMonkeyLog.getStopUptimeDuration());
+        output.writeBoolean(mMonkeyLog.getIsFinished());
+        output.writeBoolean(mMonkeyLog.getNoActivities());
+        output.writeInt(mMonkeyLog.getIntermediateCount());
+        LogCheckpoint.writeInteger(output, mMonkeyLog.getFinalCount());
+        for (DroppedCategory category : DroppedCategory.values()) {
+            LogCheckpoint.writeInteger(output, mMonkeyLog.getDroppedCount(category));
+        }
+
+        final MiscLogcatItem crash = mMonkeyLog.getCrash();
+        output.writeBoolean(crash != null);
+        if (crash != null) {
+            output.writeInt(mCrashType.ordinal());
+            writeLines(output, mCrashBlock);
+            LogCheckpoint.writeString(output, mCrashApp);
+            LogCheckpoint.writeInteger(output, mCrashPid);
+            LogCheckpoint.writeString(output,
+                    crash instanceof AnrItem ? ((AnrItem) crash).getTrace() : null);
+        }
+    }
+
+    /**
+     * Restore the state written by {@link #writeState(DataOutputStream)}.
+     */
+    private void readState(DataInputStream input) throws IOException {
+        mMatchingAnr = input.readBoolean();
+        mMatchingCrash = input.readBoolean();
+        mMatchingJavaCrash = input.readBoolean();
+        mMatchingNativeCrash = input.readBoolean();
+        mMatchingTraces = input.readBoolean();
+        mMatchedTrace = input.readBoolean();
+        mBlock = readLines(input);
+        mApp = LogCheckpoint.readString(input);
+        mPid = LogCheckpoint.readInteger(input);
+
+        mMonkeyLog = new MonkeyLogItem();
+        final Date startTime = LogCheckpoint.readDate(input);
+        if (startTime != null) {
+            mMonkeyLog.setStartTime(startTime);
+        }
+        final Date stopTime = LogCheckpoint.readDate(input);
+        if (stopTime != null) {
+            mMonkeyLog.setStopTime(stopTime);
+        }
+        for (String thePackage : readLines(input)) {
+            mMonkeyLog.addPackage(thePackage);
+        }
+        for (String category : readLines(input)) {
+            mMonkeyLog.addCategory(category);
+        }
+        mMonkeyLog.setThrottle(input.readInt());
+        final Long seed = LogCheckpoint.readLong(input);
+        if (seed != null) {
+            mMonkeyLog.setSeed(seed);
+        }
+        final Integer targetCount = LogCheckpoint.readInteger(input);
+        if (targetCount != null) {
+            mMonkeyLog.setTargetCount(targetCount);
+        }
+        mMonkeyLog.setIgnoreSecurityExceptions(input.readBoolean());
+        final Long totalDuration = LogCheckpoint.readLong(input);
+        if (totalDuration != null) {
+            mMonkeyLog.setTotalDuration(totalDuration);
+        }
+        final Long startUptime = LogCheckpoint.readLong(input);
+        if (startUptime != null) {
+            mMonkeyLog.setStartUptimeDuration(startUptime);
+        }
+        final Long stopUptime = LogCheckpoint.readLong(input);
+        if (stopUptime != null) {
+            mMonkeyLog.setStopUptimeDuration(stopUptime);
+        }
+        mMonkeyLog.setIsFinished(input.readBoolean());
+        mMonkeyLog.setNoActivities(input.readBoolean());
+        mMonkeyLog.setIntermediateCount(input.readInt());
+        final Integer finalCount = LogCheckpoint.readInteger(input);
+        if (finalCount != null) {
+            mMonkeyLog.setFinalCount(finalCount);
+        }
+        for (DroppedCategory category : DroppedCategory.values()) {
+            final Integer count = LogCheckpoint.readInteger(input);
+            if (count != null) {
+                mMonkeyLog.setDroppedCount(category, count);
+            }
+        }
+
+        if (input.readBoolean()) {
+            mCrashType = CrashType.values()[input.readInt()];
+            mCrashBlock = readLines(input);
+            mCrashApp = LogCheckpoint.readString(input);
+            mCrashPid = LogCheckpoint.readInteger(input);
+            MiscLogcatItem crash = parseCrash(mCrashType, mCrashBlock, mCrashApp, mCrashPid);
+            final String trace = LogCheckpoint.readString(input);
+            if (trace != null) {
+                ((AnrItem) crash).setTrace(trace);
+            }
+            mMonkeyLog.setCrash(crash);
+        }
+    }
+
+    /**
+     * Write some lines, which may be null.
+     */
+    private static void writeLines(DataOutputStream output, Collection<String> lines)
+            throws IOException {
+        if (lines == null) {
+            output.writeInt(-1);
+            return;
+        }
+        output.writeInt(lines.size());
+        for (String line : lines) {
+            LogCheckpoint.writeString(output, line);
+        }
+    }
+
+    /**
+     * Read the lines written by {@link #writeLines(DataOutputStream, Collection)}.
+     */
+    private static List<String> readLines(DataInputStream input) throws IOException {
+        final int size = input.readInt();
+        if (size < 0) {
+            return null;
+        }
+        List<String> lines = new LinkedList<String>();
+        for (int i = 0; i < size; i++) {
+            lines.add(LogCheckpoint.readString(input));
+        }
+        return lines;
+    }
+
     /**
      * Parse the timestamp and return a date.
      *
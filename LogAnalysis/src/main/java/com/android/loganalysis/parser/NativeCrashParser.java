@@ -16,6 +16,8 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.NativeCrashItem;
+import com.android.loganalysis.util.ParsePhase;
+import com.android.loganalysis.util.StringTable;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -33,7 +35,29 @@ public class NativeCrashParser implements IParser {
     /** Matches: pid: 957, tid: 963  >>> com.android.camera <<< */
     private static final Pattern APP = Pattern.compile(
             "^pid: (\\d+), tid: (\\d+)(, name: .+)?  >>> (\\S+) <<<$");
+    /** Matches: signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr 00000000 */
+    private static final Pattern SIGNAL = Pattern.compile("^signal \\d+ \\((\\w+)\\).*$");
+    /** Matches: #00  pc 001236a0  /system/lib/libc.so (abort+164) (BuildId: 0123abcd) */
+    private static final Pattern FRAME = Pattern.compile(
+            "^\\s*#\\d+\\s+pc\\s+([0-9a-fA-F]+)\\s+(\\S+)(?:\\s+\\((.*?)\\+(\\d+)\\))?.*$");
 
+    private boolean mParseStack = true;
+    private StringTable mStringTable = null;
+
+    /**
+     * Sets whether the stack of the native crash is built. Defaults to true.
+     */
+    public void setParseStack(boolean parseStack) {
+        mParseStack = parseStack;
+    }
+
+    /**
+     * Sets the {@link StringTable} shared by the libraries and symbols of all the crashes parsed
+     * by this parser. Defaults to a table owned by each crash.
+     */
+    public void setStringTable(StringTable table) {
+        mStringTable = table;
+    }
 
     /**
      * {@inheritDoc}
@@ -42,13 +66,41 @@ public class NativeCrashParser implements IParser {
      */
     @Override
     public NativeCrashItem parse(List<String> lines) {
+        return parse(lines, mStringTable);
+    }
+
+    /**
+     * Parse a native crash whose libraries and symbols are kept in a {@link StringTable}, such as
+     * a table scoped to a logcat parse.
+     *
+     * @param lines the lines of the crash.
+     * @param table the {@link StringTable}, or {@code null} for a table owned by the crash.
+     * @return The {@link NativeCrashItem}.
+     */
+    public NativeCrashItem parse(List<String> lines, StringTable table) {
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SUB_PARSER);
+        try {
+            return parseNativeCrash(lines, table);
+        } finally {
+            phase.end(getClass().getSimpleName(), null, lines);
+        }
+    }
+
+    /**
+     * Parse the lines of a native crash.
+     */
+    private NativeCrashItem parseNativeCrash(List<String> lines, StringTable table) {
         NativeCrashItem nc = null;
         StringBuilder stack = new StringBuilder();
+        // 0 before the backtrace, 1 in the backtrace, and 2 after it.
+        int backtrace = 0;
 
         for (String line : lines) {
             Matcher m = START.matcher(line);
             if (m.matches()) {
                 nc = new NativeCrashItem();
+                nc.setStringTable(table);
+                backtrace = 0;
             }
 
             if (nc != null) {
@@ -62,12 +114,31 @@ public class NativeCrashParser implements IParser {
                     nc.setTid(Integer.valueOf(m.group(2)));
                     nc.setApp(m.group(4));
                 }
+                if (nc.getSignal() == null) {
+                    m = SIGNAL.matcher(line);
+                    if (m.matches()) {
+                        nc.setSignal(m.group(1));
+                    }
+                }
+                if (backtrace < 2) {
+                    m = FRAME.matcher(line);
+                    if (m.matches()) {
+                        backtrace = 1;
+                        nc.addFrame(Long.parseUnsignedLong(m.group(1), 16), m.group(2),
+                                m.group(3), m.group(4) == null ? 0 : Long.parseLong(m.group(4)));
+                    } else if (backtrace == 1) {
+                        // Only the first backtrace is kept.
+                        backtrace = 2;
+                    }
+                }
 
-                stack.append(line);
-                stack.append("\n");
+                if (mParseStack) {
+                    stack.append(line);
+                    stack.append("\n");
+                }
             }
         }
-        if (nc != null) {
+        if (nc != null && mParseStack) {
             nc.setStack(stack.toString().trim());
         }
         return nc;
@@ -17,6 +17,7 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.ProcrankItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.LazyText;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -38,18 +39,36 @@ public class ProcrankParser implements IParser {
     /** Match the end of the Procrank table, determined by three sets of "------". */
     private static final Pattern END_PAT = Pattern.compile("^\\s+-{6}\\s+-{6}\\s+-{6}");
 
+    private TextRetention mTextRetention = TextRetention.FULL;
+
+    /**
+     * Set how the raw text of the section is kept in the {@link ProcrankItem}. Defaults to
+     * {@link TextRetention#FULL}.
+     */
+    public void setTextRetention(TextRetention retention) {
+        mTextRetention = retention;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public ProcrankItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).replaceAll("\\s+$", "");
-        if ("".equals(text.trim())) {
+        if (LazyText.isBlank(lines)) {
             return null;
         }
 
         ProcrankItem item = new ProcrankItem();
-        item.setText(text);
+        switch (mTextRetention) {
+            case FULL:
+                item.setText(ArrayUtil.join("\n", lines).replaceAll("\\s+$", ""));
+                break;
+            case LAZY:
+                item.setLazyText(new LazyText(lines, false));
+                break;
+            default:
+                break;
+        }
 
         for (String line : lines) {
             // If we have reached the end.
@@ -21,6 +21,7 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -31,51 +32,53 @@ import java.util.regex.Pattern;
  */
 public class SmartMonkeyLogParser implements IParser {
 
-    private static final String TIME_STAMP_GROUP =
-            "^(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2}.\\d{3}): ";
+    /** The length of the {@code yyyy-MM-dd HH:mm:ss.SSS: } prefix of each line. */
+    private static final int TIME_STAMP_LENGTH = 25;
+
     private static final String INVOKE_NUM_GROUP = "\\[.*?(\\d+)\\]";
     private static final String SEQ_NUM_GROUP = "\\(Seq:.*?(\\d+)\\)";
 
-    private static final Pattern START_TIME = Pattern.compile(
-            TIME_STAMP_GROUP + "Starting.*");
+    /*
+     * The patterns below are matched against the remainder of the line after the time stamp, and
+     * only after the keyword at the start of the remainder has selected them.
+     */
 
     private static final Pattern START_UPTIME = Pattern.compile(
-            TIME_STAMP_GROUP + "Device uptime: (\\d+) sec$");
+            "Device uptime: (\\d+) sec$");
 
     private static final Pattern STOP_UPTIME = Pattern.compile(
-            TIME_STAMP_GROUP + "Device uptime: (\\d+) sec, Monkey run duration: (\\d+) sec$");
+            "Device uptime: (\\d+) sec, Monkey run duration: (\\d+) sec$");
 
-    private static final Pattern THROTTLE = Pattern.compile(
-            TIME_STAMP_GROUP + "Throttle: (\\d+).*");
+    private static final Pattern THROTTLE = Pattern.compile("Throttle: (\\d+).*");
 
     private static final Pattern TARGET_INVOCATIONS = Pattern.compile(
-            TIME_STAMP_GROUP + "Target invocation count: (\\d+)");
+            "Target invocation count: (\\d+)");
 
     private static final Pattern INTERMEDIATE_COUNT = Pattern.compile(
-            TIME_STAMP_GROUP + INVOKE_NUM_GROUP + SEQ_NUM_GROUP + ".*");
-
-    private static final Pattern INTERMEDIATE_TIME = Pattern.compile(TIME_STAMP_GROUP + ".*");
+            INVOKE_NUM_GROUP + SEQ_NUM_GROUP + "(.*)");
 
-    private static final Pattern FINISHED = Pattern.compile(
-            TIME_STAMP_GROUP + "Monkey finished");
+    private static final Pattern FINISHED = Pattern.compile("Monkey finished");
 
-    private static final Pattern FINAL_COUNT = Pattern.compile(
-            TIME_STAMP_GROUP + "Invocations completed: (\\d+)");
+    private static final Pattern FINAL_COUNT = Pattern.compile("Invocations completed: (\\d+)");
 
-    private static final Pattern APPS_PACKAGES = Pattern.compile(
-            TIME_STAMP_GROUP + "Starting \\[(.*)\\]\\[(.*)\\]");
+    private static final Pattern APPS_PACKAGES = Pattern.compile("Starting \\[(.*)\\]\\[(.*)\\]");
 
-    private static final Pattern ABORTED = Pattern.compile(
-            TIME_STAMP_GROUP + "Monkey aborted.");
+    private static final Pattern ABORTED = Pattern.compile("Monkey aborted.");
 
-    private static final Pattern UI_ANR = Pattern.compile(
-            TIME_STAMP_GROUP + INVOKE_NUM_GROUP + SEQ_NUM_GROUP + "-UI Exception: ANR: (.*)");
+    private static final String UI_ANR = "-UI Exception: ANR: ";
 
-    private static final Pattern UI_CRASH = Pattern.compile(
-            TIME_STAMP_GROUP + INVOKE_NUM_GROUP + SEQ_NUM_GROUP + "-UI Exception: CRASH: (.*)");
+    private static final String UI_CRASH = "-UI Exception: CRASH: ";
 
     private final SmartMonkeyLogItem mSmartMonkeyLog = new SmartMonkeyLogItem();
 
+    /** The time stamp of the last line with a time stamp, used as the intermediate time. */
+    private String mLastTimeStamp = null;
+
+    /** Cache of the last parsed time stamp, down to the second. */
+    private Calendar mCalendar = null;
+    private String mCachedSecond = null;
+    private long mCachedSecondMillis = 0;
+
     /**
      * Parse a monkey log from a {@link BufferedReader} into an {@link SmartMonkeyLogItem}
      * object.
@@ -89,6 +92,7 @@ public class SmartMonkeyLogParser implements IParser {
         while ((line = input.readLine()) != null) {
             parseLine(line);
         }
+        setIntermediateTime();
         return mSmartMonkeyLog;
     }
 
@@ -102,6 +106,7 @@ public class SmartMonkeyLogParser implements IParser {
         for (String line : lines) {
             parseLine(line);
         }
+        setIntermediateTime();
 
         if (mSmartMonkeyLog.getStopUptimeDuration() == 0)
             mSmartMonkeyLog.setIsFinished(false);
@@ -113,73 +118,175 @@ public class SmartMonkeyLogParser implements IParser {
 
     /**
      * Parse a line of input.
+     * <p>
+     * Every line of interest starts with a time stamp followed by a keyword. The time stamp is
+     * checked once, and the keyword selects the only pattern which can match the rest of the line.
+     * </p>
      */
     private void parseLine(String line) {
-        Matcher m = THROTTLE.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setThrottle(Integer.parseInt(m.group(2)));
+        if (!hasTimeStamp(line)) {
+            return;
         }
-        m = TARGET_INVOCATIONS.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setTargetInvocations(Integer.parseInt(m.group(2)));
-        }
-        m = APPS_PACKAGES.matcher(line);
-        if (m.matches()) {
-            String apps = m.group(2);
-            String packages = m.group(3);
-
-            String[] appsArray = apps.split("\\|");
-            for (String a : appsArray) {
-                mSmartMonkeyLog.addApplication(a);
-            }
+        mLastTimeStamp = line.substring(0, TIME_STAMP_LENGTH - 2);
 
-            String[] pkgsArray = packages.split("\\|");
-            for (String p : pkgsArray) {
-                mSmartMonkeyLog.addPackage(p);
-            }
-        }
-        m = INTERMEDIATE_COUNT.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setIntermediateCount(Integer.parseInt(m.group(2)));
+        final int start = TIME_STAMP_LENGTH;
+        final int end = line.length();
+        if (start == end) {
+            return;
         }
-        m = START_TIME.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setStartTime(parseTime(m.group(1)));
+        Matcher m;
+        switch (line.charAt(start)) {
+            case '[':
+                m = INTERMEDIATE_COUNT.matcher(line).region(start, end);
+                if (m.matches()) {
+                    mSmartMonkeyLog.setIntermediateCount(Integer.parseInt(m.group(1)));
+                    final String event = m.group(3);
+                    if (event.startsWith(UI_CRASH)) {
+                        mSmartMonkeyLog.addCrashTime(getTime(mLastTimeStamp));
+                    } else if (event.startsWith(UI_ANR)) {
+                        mSmartMonkeyLog.addAnrTime(getTime(mLastTimeStamp));
+                    }
+                }
+                break;
+            case 'S':
+                if (line.startsWith("Starting", start)) {
+                    mSmartMonkeyLog.setStartTime(getTime(mLastTimeStamp));
+                    m = APPS_PACKAGES.matcher(line).region(start, end);
+                    if (m.matches()) {
+                        addAppsPackages(m.group(1), m.group(2));
+                    }
+                }
+                break;
+            case 'D':
+                m = START_UPTIME.matcher(line).region(start, end);
+                if (m.matches()) {
+                    mSmartMonkeyLog.setStartUptimeDuration((Long.parseLong(m.group(1))));
+                    break;
+                }
+                m = STOP_UPTIME.matcher(line).region(start, end);
+                if (m.matches()) {
+                    mSmartMonkeyLog.setStopTime(getTime(mLastTimeStamp));
+                    mSmartMonkeyLog.setStopUptimeDuration(Long.parseLong(m.group(1)));
+                    mSmartMonkeyLog.setTotalDuration(Long.parseLong(m.group(2)));
+                }
+                break;
+            case 'T':
+                m = THROTTLE.matcher(line).region(start, end);
+                if (m.matches()) {
+                    mSmartMonkeyLog.setThrottle(Integer.parseInt(m.group(1)));
+                    break;
+                }
+                m = TARGET_INVOCATIONS.matcher(line).region(start, end);
+                if (m.matches()) {
+                    mSmartMonkeyLog.setTargetInvocations(Integer.parseInt(m.group(1)));
+                }
+                break;
+            case 'I':
+                m = FINAL_COUNT.matcher(line).region(start, end);
+                if (m.matches()) {
+                    mSmartMonkeyLog.setFinalCount(Integer.parseInt(m.group(1)));
+                }
+                break;
+            case 'M':
+                if (FINISHED.matcher(line).region(start, end).matches()) {
+                    mSmartMonkeyLog.setIsFinished(true);
+                } else if (ABORTED.matcher(line).region(start, end).matches()) {
+                    mSmartMonkeyLog.setIsAborted(true);
+                }
+                break;
+            default:
+                break;
         }
-        m = START_UPTIME.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setStartUptimeDuration((Long.parseLong(m.group(2))));
-        }
-        m = STOP_UPTIME.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setStopTime(parseTime(m.group(1)));
-            mSmartMonkeyLog.setStopUptimeDuration(Long.parseLong(m.group(2)));
-            mSmartMonkeyLog.setTotalDuration(Long.parseLong(m.group(3)));
+    }
+
+    /**
+     * Add the applications and packages from the {@code Starting [apps][packages]} line.
+     */
+    private void addAppsPackages(String apps, String packages) {
+        String[] appsArray = apps.split("\\|");
+        for (String a : appsArray) {
+            mSmartMonkeyLog.addApplication(a);
         }
-        m = INTERMEDIATE_TIME.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setIntermediateTime(parseTime(m.group(1)));
+
+        String[] pkgsArray = packages.split("\\|");
+        for (String p : pkgsArray) {
+            mSmartMonkeyLog.addPackage(p);
         }
-        m = FINAL_COUNT.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setFinalCount(Integer.parseInt(m.group(2)));
+    }
+
+    /**
+     * Set the intermediate time from the last time stamp seen.
+     */
+    private void setIntermediateTime() {
+        if (mLastTimeStamp != null) {
+            mSmartMonkeyLog.setIntermediateTime(getTime(mLastTimeStamp));
         }
-        m = FINISHED.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setIsFinished(true);
+    }
+
+    /**
+     * Returns true if the line starts with a {@code yyyy-MM-dd HH:mm:ss.SSS: } time stamp.
+     */
+    private static boolean hasTimeStamp(String line) {
+        if (line.length() < TIME_STAMP_LENGTH) {
+            return false;
         }
-        m = ABORTED.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.setIsAborted(true);
+        for (int i = 0; i < TIME_STAMP_LENGTH; i++) {
+            final char c = line.charAt(i);
+            switch (i) {
+                case 4:
+                case 7:
+                    if (c != '-') return false;
+                    break;
+                case 10:
+                case 24:
+                    if (c != ' ') return false;
+                    break;
+                case 13:
+                case 16:
+                case 23:
+                    if (c != ':') return false;
+                    break;
+                case 19:
+                    // Any separator between the seconds and the milliseconds.
+                    break;
+                default:
+                    if (c < '0' || c > '9') return false;
+                    break;
+            }
         }
-        m = UI_CRASH.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.addCrashTime(parseTime(m.group(1)));
+        return true;
+    }
+
+    /**
+     * Convert a time stamp which has been checked by {@link #hasTimeStamp(String)} into a
+     * {@link Date}. Gives the same result as {@link #parseTime(String)}, but the conversion of the
+     * date and time down to the second is reused for consecutive time stamps in the same second.
+     */
+    private Date getTime(String timeStamp) {
+        final String second = timeStamp.substring(0, 19);
+        if (!second.equals(mCachedSecond)) {
+            if (mCalendar == null) {
+                mCalendar = Calendar.getInstance();
+            }
+            mCalendar.clear();
+            mCalendar.set(digits(timeStamp, 0, 4), digits(timeStamp, 5, 2) - 1,
+                    digits(timeStamp, 8, 2), digits(timeStamp, 11, 2), digits(timeStamp, 14, 2),
+                    digits(timeStamp, 17, 2));
+            mCachedSecond = second;
+            mCachedSecondMillis = mCalendar.getTimeInMillis();
         }
-        m = UI_ANR.matcher(line);
-        if (m.matches()) {
-            mSmartMonkeyLog.addAnrTime(parseTime(m.group(1)));
+        return new Date(mCachedSecondMillis + digits(timeStamp, 20, 3));
+    }
+
+    /**
+     * Parse {@code count} decimal digits starting at {@code start}.
+     */
+    private static int digits(String s, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            value = value * 10 + (s.charAt(i) - '0');
         }
+        return value;
     }
 
     /**
@@ -17,6 +17,7 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.SystemPropsItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.LazyText;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -29,6 +30,16 @@ public class SystemPropsParser implements IParser {
     /** Match a single property line, such as "[gsm.sim.operator.numeric]: []" */
     private static final Pattern PROP_LINE = Pattern.compile("^\\[(.*)\\]: \\[(.*)\\]$");
 
+    private TextRetention mTextRetention = TextRetention.FULL;
+
+    /**
+     * Set how the raw text of the section is kept in the {@link SystemPropsItem}. Defaults to
+     * {@link TextRetention#FULL}.
+     */
+    public void setTextRetention(TextRetention retention) {
+        mTextRetention = retention;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -36,13 +47,21 @@ public class SystemPropsParser implements IParser {
      */
     @Override
     public SystemPropsItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).trim();
-        if ("".equals(text)) {
+        if (LazyText.isBlank(lines)) {
             return null;
         }
 
         SystemPropsItem item = new SystemPropsItem();
-        item.setText(text);
+        switch (mTextRetention) {
+            case FULL:
+                item.setText(ArrayUtil.join("\n", lines).trim());
+                break;
+            case LAZY:
+                item.setLazyText(new LazyText(lines));
+                break;
+            default:
+                break;
+        }
 
         for (String line : lines) {
             Matcher m = PROP_LINE.matcher(line);
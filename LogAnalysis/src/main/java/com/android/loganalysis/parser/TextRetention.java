@@ -0,0 +1,33 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+/**
+ * How a section parser keeps the raw text of its section alongside the parsed values.
+ */
+public enum TextRetention {
+    /** Do not keep the raw text. */
+    NONE,
+    /**
+     * Keep a copy of the list of section lines and only join them when the text is requested.
+     * The lines themselves are shared with the parse, so this saves the joined copy of the text
+     * and the buffer it is built in, but not the lines, which stay in memory until the text is
+     * requested or the item is released.
+     */
+    LAZY,
+    /** Join the section lines into a single string while parsing. */
+    FULL;
+}
@@ -17,6 +17,7 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.TopItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.LazyText;
 
 import java.util.List;
 import java.util.regex.Matcher;
@@ -39,18 +40,36 @@ public class TopParser implements IParser {
             "User (\\d+) \\+ Nice (\\d+) \\+ Sys (\\d+) \\+ Idle (\\d+) \\+ IOW (\\d+) \\+ " +
             "IRQ (\\d+) \\+ SIRQ (\\d+) = (\\d+)");
 
+    private TextRetention mTextRetention = TextRetention.FULL;
+
+    /**
+     * Set how the raw text of the section is kept in the {@link TopItem}. Defaults to
+     * {@link TextRetention#FULL}.
+     */
+    public void setTextRetention(TextRetention retention) {
+        mTextRetention = retention;
+    }
+
     /**
      * {@inheritDoc}
      */
     @Override
     public TopItem parse(List<String> lines) {
-        final String text = ArrayUtil.join("\n", lines).trim();
-        if ("".equals(text)) {
+        if (LazyText.isBlank(lines)) {
             return null;
         }
 
         TopItem item = new TopItem();
-        item.setText(text);
+        switch (mTextRetention) {
+            case FULL:
+                item.setText(ArrayUtil.join("\n", lines).trim());
+                break;
+            case LAZY:
+                item.setLazyText(new LazyText(lines));
+                break;
+            default:
+                break;
+        }
 
         for (String line : lines) {
             Matcher m = TICKS_PAT.matcher(line);
@@ -15,8 +15,14 @@
  */
 package com.android.loganalysis.parser;
 
+import com.android.loganalysis.item.ThreadItem;
 import com.android.loganalysis.item.TracesItem;
+import com.android.loganalysis.util.LockWaitGraph;
+import com.android.loganalysis.util.ParsePhase;
+import com.android.loganalysis.util.StringTable;
 
+import java.io.BufferedReader;
+import java.io.IOException;
 import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -24,9 +30,14 @@ import java.util.regex.Pattern;
 /**
  * A {@link IParser} to parse Android traces files.
  * <p>
- * For now, this only extracts the main stack trace from the first process. It is used to get a
- * stack from {@code /data/anr/traces.txt} which can be used to give some context about the ANR. If
- * there is a need, this parser can be expanded to parse all stacks from all processes.
+ * {@link #parse(List)} extracts the main stack trace from the first process into a
+ * {@link TracesItem}. It is used to get a stack from {@code /data/anr/traces.txt} which can be used
+ * to give some context about the ANR.
+ * </p><p>
+ * All threads from all processes can be streamed to an {@link ITracesListener} with
+ * {@link #parseThreads(BufferedReader, ITracesListener)}, which only holds one thread block in
+ * memory at a time and builds a {@link LockWaitGraph} to find deadlocks.
+ * </p>
  */
 public class TracesParser implements IParser {
 
@@ -46,6 +57,103 @@ public class TracesParser implements IParser {
      */
     private static final Pattern STACK = Pattern.compile("^\"main\" .*$");
 
+    /**
+     * Matches: "main" prio=5 tid=1 STATE, "Thread-9" daemon prio=5 tid=12 Blocked, or
+     * "Binder" prio=10 (not attached)
+     */
+    private static final Pattern THREAD = Pattern.compile(
+            "^\"(.*)\"(?: daemon)? prio=\\d+ (?:tid=(\\d+) (\\S+)|\\(not attached\\)).*$");
+
+    /**
+     * Matches: | sysTid=2887 nice=0 sched=0/0 cgrp=foreground handle=0000000001
+     */
+    private static final Pattern SYS_TID = Pattern.compile("^\\s*\\| sysTid=(\\d+)\\b.*$");
+
+    /**
+     * Matches: - locked <0x41234567> (a java.lang.Object)
+     */
+    private static final Pattern LOCKED = Pattern.compile("^\\s*- locked <(\\w+)>.*$");
+
+    /**
+     * Matches: - waiting to lock <0x41234567> (a java.lang.Object) held by tid=12 (Thread-9)
+     */
+    private static final Pattern WAITING_TO_LOCK = Pattern.compile(
+            "^\\s*- waiting to lock <(\\w+)>.*$");
+
+    /**
+     * Matches: held by tid=12, or held by thread 12
+     */
+    private static final Pattern HELD_BY = Pattern.compile("held by (?:tid=|thread )(\\d+)");
+
+    /**
+     * Matches: - waiting on <0x41234567> (a java.lang.Object)
+     */
+    private static final Pattern WAITING_ON = Pattern.compile("^\\s*- waiting on <(\\w+)>.*$");
+
+    /**
+     * Matches: at class.method(Class.java:1), #00 pc 00001234 /system/lib/lib.so, or
+     * native: #00 pc 00001234 /system/lib/lib.so
+     */
+    private static final Pattern FRAME = Pattern.compile("^\\s*((?:at |#\\d+ |native: ).*)$");
+
+    /**
+     * Matches: ----- end PID -----
+     */
+    private static final Pattern END = Pattern.compile("^----- end (\\d+) -----$");
+
+    /** The name of the {@link ParsePhase} of a streaming parse of the threads. */
+    private static final String THREADS_PHASE = "threads";
+
+    private ITracesListener mThreadListener = null;
+
+    /**
+     * Set a listener which also receives every thread of every process when parsing with
+     * {@link #parse(List)}. Defaults to null, which only parses the main stack.
+     */
+    public void setThreadListener(ITracesListener listener) {
+        mThreadListener = listener;
+    }
+
+    /**
+     * Stream every thread of every process in a traces file to a listener.
+     *
+     * @param input a {@link BufferedReader}.
+     * @param listener the {@link ITracesListener} which receives each thread.
+     * @return The {@link LockWaitGraph} of the monitors held and waited for by the threads.
+     */
+    public LockWaitGraph parseThreads(BufferedReader input, ITracesListener listener)
+            throws IOException {
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SUB_PARSER);
+        ThreadStream stream = new ThreadStream(listener);
+        long lines = 0;
+        long bytes = 0;
+        String line;
+        while ((line = input.readLine()) != null) {
+            stream.addLine(line);
+            lines++;
+            bytes += line.length() + 1;
+        }
+        LockWaitGraph graph = stream.finish();
+        phase.end(getClass().getSimpleName(), THREADS_PHASE, lines, bytes);
+        return graph;
+    }
+
+    /**
+     * Stream every thread of every process in a list of lines to a listener.
+     *
+     * @see #parseThreads(BufferedReader, ITracesListener)
+     */
+    public LockWaitGraph parseThreads(List<String> lines, ITracesListener listener) {
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SUB_PARSER);
+        ThreadStream stream = new ThreadStream(listener);
+        for (String line : lines) {
+            stream.addLine(line);
+        }
+        LockWaitGraph graph = stream.finish();
+        phase.end(getClass().getSimpleName(), THREADS_PHASE, lines);
+        return graph;
+    }
+
     /**
      * {@inheritDoc}
      *
@@ -53,6 +161,22 @@ public class TracesParser implements IParser {
      */
     @Override
     public TracesItem parse(List<String> lines) {
+        if (mThreadListener != null) {
+            parseThreads(lines, mThreadListener);
+        }
+        ParsePhase phase = ParsePhase.begin(ParsePhase.Kind.SUB_PARSER);
+        try {
+            return parseMainStack(lines);
+        } finally {
+            phase.end(getClass().getSimpleName(), null, lines);
+        }
+    }
+
+    /**
+     * Parse the pid, app and main stack of a traces file.
+     */
+    private TracesItem parseMainStack(List<String> lines) {
+
         TracesItem traces = new TracesItem();
         StringBuffer stack = null;
 
@@ -87,4 +211,140 @@ public class TracesParser implements IParser {
         return traces;
     }
 
+    /**
+     * The state of a streaming parse, which holds at most one thread block.
+     */
+    private static class ThreadStream {
+        private final ITracesListener mListener;
+        private final StringTable mFrames = new StringTable();
+        private final LockWaitGraph mGraph = new LockWaitGraph();
+        private Integer mPid = null;
+        private String mApp = null;
+        private ThreadItem mThread = null;
+
+        /**
+         * Constructor for {@link ThreadStream}.
+         */
+        public ThreadStream(ITracesListener listener) {
+            mListener = listener;
+        }
+
+        /**
+         * Parse a line of the traces.
+         */
+        public void addLine(String line) {
+            if (line.startsWith("\"")) {
+                Matcher m = THREAD.matcher(line);
+                if (m.matches()) {
+                    startThread(m);
+                    return;
+                }
+            } else if (line.startsWith("-----")) {
+                finishThread();
+                Matcher m = PID.matcher(line);
+                if (m.matches()) {
+                    mPid = Integer.parseInt(m.group(1));
+                    mApp = null;
+                    return;
+                }
+                m = END.matcher(line);
+                if (m.matches()) {
+                    mPid = null;
+                    mApp = null;
+                }
+                return;
+            }
+
+            if (mThread == null) {
+                if (line.startsWith("Cmd")) {
+                    Matcher m = APP.matcher(line);
+                    if (m.matches()) {
+                        mApp = m.group(1);
+                    }
+                }
+            } else if (line.isEmpty()) {
+                finishThread();
+            } else {
+                addThreadLine(line);
+            }
+        }
+
+        /**
+         * Finish the last thread block and return the lock wait graph.
+         */
+        public LockWaitGraph finish() {
+            finishThread();
+            return mGraph;
+        }
+
+        /**
+         * Start a new thread block from the thread header.
+         */
+        private void startThread(Matcher m) {
+            finishThread();
+            mThread = new ThreadItem();
+            mThread.setPid(mPid);
+            mThread.setApp(mApp);
+            mThread.setName(m.group(1));
+            if (m.group(2) != null) {
+                mThread.setTid(Integer.parseInt(m.group(2)));
+                mThread.setState(m.group(3));
+            }
+        }
+
+        /**
+         * Parse a line from the body of a thread block.
+         */
+        private void addThreadLine(String line) {
+            Matcher m = FRAME.matcher(line);
+            if (m.matches()) {
+                mThread.addFrame(mFrames.share(m.group(1)));
+                return;
+            }
+            m = LOCKED.matcher(line);
+            if (m.matches()) {
+                mThread.addHeldLock(m.group(1));
+                return;
+            }
+            m = WAITING_TO_LOCK.matcher(line);
+            if (m.matches()) {
+                mThread.setWaitingLock(m.group(1));
+                Matcher owner = HELD_BY.matcher(line);
+                if (owner.find()) {
+                    mThread.setLockOwnerTid(Integer.parseInt(owner.group(1)));
+                }
+                return;
+            }
+            m = WAITING_ON.matcher(line);
+            if (m.matches()) {
+                mThread.setWaitingOn(m.group(1));
+                return;
+            }
+            m = SYS_TID.matcher(line);
+            if (m.matches()) {
+                mThread.setSysTid(Integer.parseInt(m.group(1)));
+            }
+        }
+
+        /**
+         * Add the current thread to the lock wait graph and pass it to the listener.
+         */
+        private void finishThread() {
+            if (mThread == null) {
+                return;
+            }
+            final Integer tid = mThread.getTid();
+            if (mPid != null && tid != null) {
+                for (String lock : mThread.getHeldLocks()) {
+                    mGraph.addHeldLock(mPid, tid, lock);
+                }
+                if (mThread.getWaitingLock() != null) {
+                    mGraph.addWaitingLock(mPid, tid, mThread.getWaitingLock(),
+                            mThread.getLockOwnerTid());
+                }
+            }
+            mListener.onThread(mThread);
+            mThread = null;
+        }
+    }
 }
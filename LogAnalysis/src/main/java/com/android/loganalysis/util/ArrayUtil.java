@@ -67,6 +67,44 @@ public class ArrayUtil {
         return retList;
     }
 
+    /**
+     * Get the indices of the first {@code length} values sorted by value in descending order.
+     * <p>
+     * This is used to sort columnar data without boxing the values.  The sort is stable, so equal
+     * values keep their original relative order.
+     * </p>
+     *
+     * @param values the values to sort by
+     * @param length the number of values to consider, starting at index 0
+     * @return an array of {@code length} indices into {@code values}, largest value first
+     */
+    public static int[] sortIndicesDescending(long[] values, int length) {
+        int[] indices = new int[length];
+        for (int i = 0; i < length; i++) {
+            indices[i] = i;
+        }
+        int[] buffer = new int[length];
+        for (int width = 1; width < length; width <<= 1) {
+            for (int lo = 0; lo < length - width; lo += width << 1) {
+                int mid = lo + width;
+                int hi = Math.min(lo + (width << 1), length);
+                int i = lo, j = mid, k = lo;
+                while (i < mid && j < hi) {
+                    buffer[k++] = values[indices[j]] > values[indices[i]] ?
+                            indices[j++] : indices[i++];
+                }
+                while (i < mid) {
+                    buffer[k++] = indices[i++];
+                }
+                while (j < hi) {
+                    buffer[k++] = indices[j++];
+                }
+                System.arraycopy(buffer, lo, indices, lo, hi - lo);
+            }
+        }
+        return indices;
+    }
+
     private static String internalJoin(String sep, Collection<Object> pieces) {
         StringBuilder sb = new StringBuilder();
         boolean skipSep = true;
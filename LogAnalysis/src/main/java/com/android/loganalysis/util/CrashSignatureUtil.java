@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A utility class for computing normalized signatures of crashes and ANRs.
+ * <p>
+ * A signature is a short hash of the parts of an event which stay the same when the same bug is
+ * hit again, so that repeated events can be grouped without comparing whole stacks:
+ * </p><ul>
+ * <li>Java crashes: the exception class and the top frames, without line numbers and with
+ * anonymous class, lambda and synthetic accessor suffixes removed.</li>
+ * <li>Native crashes: the signal and the library and offset of the top frames.</li>
+ * <li>ANRs: the top frames of the main thread stack from the traces, or the reason if there is no
+ * trace.</li>
+ * </ul>
+ */
+public class CrashSignatureUtil {
+    /** The default number of frames used in a signature. */
+    public static final int DEFAULT_FRAMES = 5;
+
+    /** Matches: at com.android.Class.method(Class.java:123) */
+    private static final Pattern JAVA_FRAME = Pattern.compile("^\\s*at (\\S+?)(?:\\((.*)\\))?$");
+    /** Matches the line number in: Class.java:123 */
+    private static final Pattern LINE_NUMBER = Pattern.compile(":\\d+$");
+    /** Matches the suffix of a lambda class: -$$Lambda$Class$AbCd12 */
+    private static final Pattern LAMBDA_CLASS = Pattern.compile("\\$\\$Lambda\\$[^.]*");
+    /** Matches the numeric suffixes of anonymous classes, lambdas and accessors: $1, $0 */
+    private static final Pattern NUMERIC_SUFFIX = Pattern.compile("\\$\\d+");
+
+    /** Matches: signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr 00000000 */
+    private static final Pattern SIGNAL = Pattern.compile("^signal \\d+ \\((\\w+)\\).*$");
+    /** Matches: #00  pc 001236a0  /system/lib/libwebcore.so (symbol+12) */
+    private static final Pattern NATIVE_FRAME = Pattern.compile(
+            "^\\s*#\\d+\\s+pc\\s+([0-9a-fA-F]+)\\s+(\\S+).*$");
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * Compute the signature of a Java crash.
+     *
+     * @param exception the exception class.
+     * @param stack the stack of the crash.
+     * @param frames the number of frames to include.
+     */
+    public static String getJavaCrashSignature(String exception, String stack, int frames) {
+        return hash(getJavaCrashKey(exception, stack, frames));
+    }
+
+    /**
+     * Compute the signature of a native crash.
+     *
+     * @param stack the tombstone of the crash.
+     * @param frames the number of frames to include.
+     */
+    public static String getNativeCrashSignature(String stack, int frames) {
+        return hash(getNativeCrashKey(stack, frames));
+    }
+
+    /**
+     * Compute the signature of a native crash from frames which have already been parsed.
+     *
+     * @param signal the signal name, such as {@code SIGSEGV}.
+     * @param libraries the library of each frame, from the top of the stack.
+     * @param pcs the pc of each frame.
+     * @param frames the number of frames to include.
+     */
+    public static String getNativeCrashSignature(String signal, String[] libraries, long[] pcs,
+            int frames) {
+        return hash(getNativeCrashKey(signal, libraries, pcs, frames));
+    }
+
+    /**
+     * Compute the signature of an ANR.
+     *
+     * @param app the application which was not responding.
+     * @param trace the main thread stack from the traces, or {@code null} if there is none.
+     * @param reason the reason for the ANR, used if there is no trace.
+     * @param frames the number of frames to include.
+     */
+    public static String getAnrSignature(String app, String trace, String reason, int frames) {
+        return hash(getAnrKey(app, trace, reason, frames));
+    }
+
+    /**
+     * Get the normalized key of a Java crash.
+     */
+    static String getJavaCrashKey(String exception, String stack, int frames) {
+        StringBuilder key = new StringBuilder("java|").append(exception);
+        appendJavaFrames(key, stack, frames);
+        return key.toString();
+    }
+
+    /**
+     * Get the normalized key of a native crash.
+     */
+    static String getNativeCrashKey(String stack, int frames) {
+        StringBuilder key = new StringBuilder("native|");
+        if (stack == null) {
+            return key.toString();
+        }
+        String signal = null;
+        int count = 0;
+        for (String line : stack.split("\n")) {
+            if (signal == null) {
+                Matcher m = SIGNAL.matcher(line);
+                if (m.matches()) {
+                    signal = m.group(1);
+                    key.append(signal);
+                }
+                continue;
+            }
+            if (count >= frames) {
+                break;
+            }
+            Matcher m = NATIVE_FRAME.matcher(line);
+            if (m.matches()) {
+                appendNativeFrame(key, m.group(2), Long.parseUnsignedLong(m.group(1), 16));
+                count++;
+            } else if (count > 0) {
+                // The first backtrace has ended.
+                break;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Get the normalized key of a native crash from frames which have already been parsed. Gives
+     * the same key as {@link #getNativeCrashKey(String, int)} for the same tombstone.
+     */
+    static String getNativeCrashKey(String signal, String[] libraries, long[] pcs, int frames) {
+        StringBuilder key = new StringBuilder("native|");
+        if (signal != null) {
+            key.append(signal);
+        }
+        final int count = Math.min(frames, Math.min(libraries.length, pcs.length));
+        for (int i = 0; i < count; i++) {
+            appendNativeFrame(key, libraries[i], pcs[i]);
+        }
+        return key.toString();
+    }
+
+    /**
+     * Append a native frame to a key.
+     */
+    private static void appendNativeFrame(StringBuilder key, String library, long pc) {
+        key.append('|').append(library).append('+').append(Long.toHexString(pc));
+    }
+
+    /**
+     * Get the normalized key of an ANR.
+     */
+    static String getAnrKey(String app, String trace, String reason, int frames) {
+        StringBuilder key = new StringBuilder("anr|").append(app);
+        if (trace != null) {
+            appendJavaFrames(key, trace, frames);
+        } else if (reason != null) {
+            // Numbers in the reason, such as timeouts and sequence numbers, change between runs.
+            key.append('|').append(reason.replaceAll("\\d+", "#"));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Append the top normalized Java frames of a stack to a key.
+     */
+    private static void appendJavaFrames(StringBuilder key, String stack, int frames) {
+        if (stack == null) {
+            return;
+        }
+        int count = 0;
+        for (String line : stack.split("\n")) {
+            if (count >= frames) {
+                break;
+            }
+            Matcher m = JAVA_FRAME.matcher(line);
+            if (m.matches()) {
+                key.append('|').append(normalizeMethod(m.group(1)));
+                if (m.group(2) != null) {
+                    key.append('(').append(LINE_NUMBER.matcher(m.group(2)).replaceFirst(""))
+                            .append(')');
+                }
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Remove the parts of a method name which change between builds.
+     */
+    static String normalizeMethod(String method) {
+        String normalized = LAMBDA_CLASS.matcher(method).replaceAll("\\$\\$Lambda");
+        return NUMERIC_SUFFIX.matcher(normalized).replaceAll("\\$");
+    }
+
+    /**
+     * Hash a key into a 16 character hex string with 64 bit FNV-1a.
+     */
+    static String hash(String key) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < key.length(); i++) {
+            final char c = key.charAt(i);
+            hash ^= (c & 0xff);
+            hash *= FNV_PRIME;
+            hash ^= (c >>> 8);
+            hash *= FNV_PRIME;
+        }
+        return String.format("%016x", hash);
+    }
+}
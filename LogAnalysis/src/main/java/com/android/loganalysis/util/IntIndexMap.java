@@ -0,0 +1,139 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+/**
+ * An open-addressing map from {@code int} keys to {@code int} row indices.
+ * <p>
+ * Used by items which store their rows in parallel primitive arrays, so that a key such as a PID
+ * can be resolved to a row without boxing the key or allocating a node per entry.  Keys are
+ * assigned rows in insertion order starting at 0, which makes the row index usable directly as an
+ * offset into the column arrays.
+ * </p>
+ */
+public class IntIndexMap {
+    /** The value returned by {@link #get(int)} if the key is not present. */
+    public static final int NOT_FOUND = -1;
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] mKeys;
+    /** Row index + 1 for each slot, so that 0 marks an empty slot. */
+    private int[] mRows;
+    private int mSize = 0;
+
+    /**
+     * Constructor for {@link IntIndexMap} with the default capacity.
+     */
+    public IntIndexMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor for {@link IntIndexMap}.
+     *
+     * @param expectedSize the number of keys expected to be stored without resizing.
+     */
+    public IntIndexMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        mKeys = new int[capacity];
+        mRows = new int[capacity];
+    }
+
+    /**
+     * Get the row for a key.
+     *
+     * @param key the key to look up.
+     * @return The row of the key, or {@link #NOT_FOUND} if the key has not been added.
+     */
+    public int get(int key) {
+        final int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mRows[slot] != 0) {
+            if (mKeys[slot] == key) {
+                return mRows[slot] - 1;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NOT_FOUND;
+    }
+
+    /**
+     * Get the row for a key, assigning the next free row if the key has not been seen before.
+     *
+     * @param key the key to look up or add.
+     * @return The row of the key.
+     */
+    public int getOrAdd(int key) {
+        int row = get(key);
+        if (row != NOT_FOUND) {
+            return row;
+        }
+        if ((mSize + 1) * 2 > mKeys.length) {
+            resize(mKeys.length << 1);
+        }
+        row = mSize++;
+        insert(key, row);
+        return row;
+    }
+
+    /**
+     * Returns true if the key has been added.
+     */
+    public boolean containsKey(int key) {
+        return get(key) != NOT_FOUND;
+    }
+
+    /**
+     * Get the number of keys in the map.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    private void insert(int key, int row) {
+        final int mask = mKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (mRows[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        mKeys[slot] = key;
+        mRows[slot] = row + 1;
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = mKeys;
+        int[] oldRows = mRows;
+        mKeys = new int[capacity];
+        mRows = new int[capacity];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldRows[i] != 0) {
+                insert(oldKeys[i], oldRows[i] - 1);
+            }
+        }
+    }
+
+    /**
+     * Spread the bits of the key, since PIDs are often sequential.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A growing list of sorted, distinct {@code int} ids, such as the lines containing a term, which
+ * is compressed as the variable length deltas between the ids.
+ * <p>
+ * The static methods combine decoded lists, which are sorted {@code int} arrays.
+ * </p>
+ */
+public class IntPostings {
+    private int[] mIds = new int[4];
+    private int mSize = 0;
+
+    /**
+     * Add an id, which is ignored unless it is larger than the last id added.
+     */
+    public void add(int id) {
+        if (mSize > 0 && id <= mIds[mSize - 1]) {
+            return;
+        }
+        if (mSize == mIds.length) {
+            mIds = Arrays.copyOf(mIds, mSize * 2);
+        }
+        mIds[mSize++] = id;
+    }
+
+    /**
+     * Get the number of ids.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the ids as a sorted array.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(mIds, mSize);
+    }
+
+    /**
+     * Encode the ids as the deltas between them, with 7 bits in each byte and the high bit set on
+     * all but the last byte of a delta.
+     */
+    public byte[] encode() {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(mSize + 4);
+        int last = 0;
+        for (int i = 0; i < mSize; i++) {
+            int delta = mIds[i] - last;
+            last = mIds[i];
+            while ((delta & ~0x7f) != 0) {
+                output.write((delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            output.write(delta);
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * Decode ids encoded by {@link #encode()}.
+     *
+     * @param buffer the buffer with the encoded ids.
+     * @param offset the offset of the first byte in the buffer.
+     * @param count the number of ids.
+     * @return The sorted ids.
+     */
+    public static int[] decode(ByteBuffer buffer, int offset, int count) {
+        int[] ids = new int[count];
+        int position = offset;
+        int last = 0;
+        for (int i = 0; i < count; i++) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = buffer.get(position++);
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            last += delta;
+            ids[i] = last;
+        }
+        return ids;
+    }
+
+    /**
+     * Get the ids in both of two sorted arrays.
+     */
+    public static int[] and(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Get the ids in either of two sorted arrays.
+     */
+    public static int[] or(int[] a, int[] b) {
+        int[] result = new int[a.length + b.length];
+        int size = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[size++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[size++] = b[j++];
+            } else {
+                result[size++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+
+    /**
+     * Get the ids in the first sorted array which are not in the second.
+     */
+    public static int[] andNot(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        int size = 0;
+        int j = 0;
+        for (int i = 0; i < a.length; i++) {
+            while (j < b.length && b[j] < a[i]) {
+                j++;
+            }
+            if (j == b.length || b[j] != a[i]) {
+                result[size++] = a[i];
+            }
+        }
+        return Arrays.copyOf(result, size);
+    }
+}
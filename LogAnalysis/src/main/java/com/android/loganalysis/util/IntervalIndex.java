@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An index of values over intervals of {@code long}s, such as the times of events, which finds
+ * the values whose intervals overlap a range in logarithmic time.
+ * <p>
+ * The intervals are kept sorted by start, with a segment tree of the largest stop in each range
+ * of intervals, so a query only visits the ranges which have an overlapping interval, and takes
+ * O(log n) time for each value found. The index is sorted by the first query after values are
+ * added. This class is not thread safe.
+ * </p>
+ */
+public class IntervalIndex<T> {
+    private long[] mStarts = new long[16];
+    private long[] mStops = new long[16];
+    private Object[] mValues = new Object[16];
+    private int mSize = 0;
+    /** The largest stop in each node of the segment tree, or null if the index is not sorted. */
+    private long[] mMaxStops = null;
+
+    /**
+     * Add a value over an interval.
+     *
+     * @param start the start of the interval.
+     * @param stop the inclusive stop of the interval, which is at least the start.
+     * @param value the value.
+     */
+    public void add(long start, long stop, T value) {
+        if (stop < start) {
+            throw new IllegalArgumentException(String.format(
+                    "Interval stops at %d before it starts at %d", stop, start));
+        }
+        if (mSize == mStarts.length) {
+            mStarts = Arrays.copyOf(mStarts, mSize * 2);
+            mStops = Arrays.copyOf(mStops, mSize * 2);
+            mValues = Arrays.copyOf(mValues, mSize * 2);
+        }
+        mStarts[mSize] = start;
+        mStops[mSize] = stop;
+        mValues[mSize] = value;
+        mSize++;
+        mMaxStops = null;
+    }
+
+    /**
+     * Get the number of values.
+     */
+    public int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the values whose intervals overlap a range.
+     *
+     * @param from the start of the range.
+     * @param to the inclusive end of the range.
+     * @return The values, ordered by the start of their intervals, and in the order they were
+     * added for the same start.
+     */
+    public List<T> getOverlapping(long from, long to) {
+        List<T> values = new ArrayList<T>();
+        if (mSize == 0 || to < from) {
+            return values;
+        }
+        if (mMaxStops == null) {
+            sort();
+        }
+        // Only the intervals which start by the end of the range can overlap it.
+        final int last = lastStartAtOrBefore(to);
+        if (last >= 0) {
+            collect(1, 0, mSize - 1, last, from, values);
+        }
+        return values;
+    }
+
+    /**
+     * Collect the values of a node of the segment tree whose intervals stop at or after a time,
+     * up to an index.
+     */
+    @SuppressWarnings("unchecked")
+    private void collect(int node, int low, int high, int last, long from, List<T> values) {
+        if (low > last || mMaxStops[node] < from) {
+            return;
+        }
+        if (low == high) {
+            values.add((T) mValues[low]);
+            return;
+        }
+        final int middle = (low + high) >>> 1;
+        collect(node * 2, low, middle, last, from, values);
+        collect(node * 2 + 1, middle + 1, high, last, from, values);
+    }
+
+    /**
+     * Get the index of the last interval which starts at or before a time, or -1.
+     */
+    private int lastStartAtOrBefore(long time) {
+        int low = 0;
+        int high = mSize;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (mStarts[middle] <= time) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Sort the intervals by start, keeping the order of values with the same start, and build the
+     * segment tree.
+     */
+    private void sort() {
+        Integer[] order = new Integer[mSize];
+        for (int i = 0; i < mSize; i++) {
+            order[i] = i;
+        }
+        final long[] starts = mStarts;
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Long.compare(starts[a], starts[b]);
+            }
+        });
+        long[] sortedStarts = new long[mSize];
+        long[] sortedStops = new long[mSize];
+        Object[] sortedValues = new Object[mSize];
+        for (int i = 0; i < mSize; i++) {
+            sortedStarts[i] = mStarts[order[i]];
+            sortedStops[i] = mStops[order[i]];
+            sortedValues[i] = mValues[order[i]];
+        }
+        mStarts = sortedStarts;
+        mStops = sortedStops;
+        mValues = sortedValues;
+
+        int nodes = 1;
+        while (nodes < mSize) {
+            nodes <<= 1;
+        }
+        mMaxStops = new long[nodes * 2];
+        build(1, 0, mSize - 1);
+    }
+
+    /**
+     * Build a node of the segment tree.
+     */
+    private long build(int node, int low, int high) {
+        if (low == high) {
+            mMaxStops[node] = mStops[low];
+        } else {
+            final int middle = (low + high) >>> 1;
+            mMaxStops[node] = Math.max(build(node * 2, low, middle),
+                    build(node * 2 + 1, middle + 1, high));
+        }
+        return mMaxStops[node];
+    }
+}
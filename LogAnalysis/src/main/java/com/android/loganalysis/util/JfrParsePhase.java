@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import java.util.List;
+
+/**
+ * A {@link ParsePhase} recorded as a Flight Recorder event. This class is only loaded if the JVM
+ * has the Flight Recorder.
+ */
+class JfrParsePhase extends ParsePhase {
+
+    /**
+     * The fields of all the phase events.
+     */
+    @Category({"Log Analysis", "Parser"})
+    abstract static class PhaseEvent extends Event {
+        @Label("Parser")
+        @Description("The parser of the phase")
+        String parser;
+
+        @Label("Name")
+        @Description("The section, logcat block or item of the phase")
+        String name;
+
+        @Label("Lines")
+        long lines;
+
+        @Label("Bytes")
+        @DataAmount
+        long bytes;
+    }
+
+    @Name("com.android.loganalysis.Section")
+    @Label("Section")
+    @Description("A section of a log, parsed by a section parser")
+    static class SectionEvent extends PhaseEvent {
+    }
+
+    @Name("com.android.loganalysis.LogcatBlock")
+    @Label("Logcat Block")
+    @Description("A block of logcat lines, such as an ANR or a crash, turned into an event")
+    static class LogcatBlockEvent extends PhaseEvent {
+    }
+
+    @Name("com.android.loganalysis.SubParser")
+    @Label("Sub Parser")
+    @Description("An invocation of a parser for part of a log")
+    static class SubParserEvent extends PhaseEvent {
+    }
+
+    @Name("com.android.loganalysis.Serialization")
+    @Label("Serialization")
+    @Description("The serialization of an item to JSON")
+    static class SerializationEvent extends PhaseEvent {
+    }
+
+    private final PhaseEvent mEvent;
+
+    /**
+     * Constructor for {@link JfrParsePhase}.
+     */
+    private JfrParsePhase(PhaseEvent event) {
+        mEvent = event;
+    }
+
+    /**
+     * Start a phase.
+     *
+     * @see ParsePhase#begin(Kind)
+     */
+    static ParsePhase start(Kind kind) {
+        PhaseEvent event;
+        switch (kind) {
+            case SECTION:
+                event = new SectionEvent();
+                break;
+            case LOGCAT_BLOCK:
+                event = new LogcatBlockEvent();
+                break;
+            case SUB_PARSER:
+                event = new SubParserEvent();
+                break;
+            default:
+                event = new SerializationEvent();
+                break;
+        }
+        event.begin();
+        return new JfrParsePhase(event);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void end(String parser, String name, long lines, long bytes) {
+        mEvent.end();
+        if (mEvent.shouldCommit()) {
+            commit(parser, name, lines, bytes);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void end(String parser, String name, List<String> lines) {
+        mEvent.end();
+        if (mEvent.shouldCommit()) {
+            commit(parser, name, lines.size(), ParseStats.getBytes(lines));
+        }
+    }
+
+    /**
+     * Set the fields of the event and commit it.
+     */
+    private void commit(String parser, String name, long lines, long bytes) {
+        mEvent.parser = parser;
+        mEvent.name = name;
+        mEvent.lines = lines;
+        mEvent.bytes = bytes;
+        mEvent.commit();
+    }
+}
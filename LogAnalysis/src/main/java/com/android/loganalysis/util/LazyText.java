@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A block of text which is kept as the lines it was read from and only joined when it is needed.
+ * <p>
+ * The list of lines is copied, since section parsers reuse their buffer, but the lines themselves
+ * are shared. Compared to joining the text up front, this saves a second copy of the text for
+ * sections whose text is never requested, but the lines stay in memory until then. Once the text
+ * has been materialized the lines are released, so the text is only held in memory once
+ * regardless of how often it is requested.
+ * </p>
+ */
+public class LazyText {
+    private List<String> mLines;
+    private final boolean mTrimLeading;
+    private String mText = null;
+
+    /**
+     * Constructor for {@link LazyText} which trims leading and trailing whitespace.
+     *
+     * @param lines the lines of the text. The list is copied, but the lines themselves are shared.
+     */
+    public LazyText(List<String> lines) {
+        this(lines, true);
+    }
+
+    /**
+     * Constructor for {@link LazyText}.
+     *
+     * @param lines the lines of the text. The list is copied, but the lines themselves are shared.
+     * @param trimLeading whether to trim leading whitespace. Trailing whitespace is always trimmed.
+     */
+    public LazyText(List<String> lines, boolean trimLeading) {
+        mLines = new ArrayList<String>(lines);
+        mTrimLeading = trimLeading;
+    }
+
+    /**
+     * Returns true if the text is empty after trimming, without joining the lines.
+     */
+    public static boolean isBlank(List<String> lines) {
+        for (String line : lines) {
+            if (!"".equals(line.trim())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the text, joining the lines with newlines on the first call.
+     */
+    @Override
+    public synchronized String toString() {
+        if (mText == null) {
+            String text = ArrayUtil.join("\n", mLines);
+            mText = mTrimLeading ? text.trim() : trimTrailing(text);
+            mLines = null;
+        }
+        return mText;
+    }
+
+    /**
+     * Trim trailing whitespace, equivalent to {@code text.replaceAll("\\s+$", "")}.
+     */
+    private static String trimTrailing(String text) {
+        int end = text.length();
+        while (end > 0 && " \t\n\u000B\f\r".indexOf(text.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return text.substring(0, end);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+        return toString().equals(other.toString());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return toString().hashCode();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * A graph of which threads are blocked on monitors held by which other threads, used to find
+ * deadlocks in traces.
+ * <p>
+ * Threads are identified by PID and VM tid, and monitors by PID and address. Only threads which
+ * hold or wait for a monitor are stored, so the graph stays small even for large traces. A thread
+ * can only be blocked on one monitor at a time, so each thread waits for at most one other thread
+ * and a deadlock is a cycle in that chain.
+ * </p>
+ */
+public class LockWaitGraph {
+    /** Map from thread to the monitor it is blocked on */
+    private final Map<Long, String> mWaitingLocks = new LinkedHashMap<Long, String>();
+    /** Map from thread to the owner of its monitor, when the traces give it */
+    private final Map<Long, Integer> mOwners = new HashMap<Long, Integer>();
+    /** Map from PID and monitor to the thread holding it */
+    private final Map<String, Integer> mHolders = new HashMap<String, Integer>();
+    private final Set<Integer> mPids = new TreeSet<Integer>();
+
+    /**
+     * Record that a thread holds a monitor.
+     */
+    public void addHeldLock(int pid, int tid, String lock) {
+        mHolders.put(getLockKey(pid, lock), tid);
+        mPids.add(pid);
+    }
+
+    /**
+     * Record that a thread is blocked trying to lock a monitor.
+     *
+     * @param ownerTid the thread holding the monitor if the traces give it, or {@code null}.
+     */
+    public void addWaitingLock(int pid, int tid, String lock, Integer ownerTid) {
+        final long thread = getThreadKey(pid, tid);
+        mWaitingLocks.put(thread, lock);
+        if (ownerTid != null) {
+            mOwners.put(thread, ownerTid);
+        }
+        mPids.add(pid);
+    }
+
+    /**
+     * Get the tid of the thread a thread is waiting for, or {@code null} if it is not blocked or
+     * the owner of the monitor is not known.
+     */
+    public Integer getWaitingFor(int pid, int tid) {
+        final long thread = getThreadKey(pid, tid);
+        final String lock = mWaitingLocks.get(thread);
+        if (lock == null) {
+            return null;
+        }
+        final Integer owner = mOwners.get(thread);
+        if (owner != null) {
+            return owner;
+        }
+        return mHolders.get(getLockKey(pid, lock));
+    }
+
+    /**
+     * Get the PIDs of the processes with threads in the graph.
+     */
+    public Set<Integer> getPids() {
+        return Collections.unmodifiableSet(mPids);
+    }
+
+    /**
+     * Get the deadlocks in a process.
+     *
+     * @return a list of cycles, each given as the tids of the threads in the cycle starting from
+     * the lowest tid, in the order in which they wait for each other.
+     */
+    public List<List<Integer>> getDeadlocks(int pid) {
+        List<List<Integer>> deadlocks = new ArrayList<List<Integer>>();
+        Set<Integer> visited = new HashSet<Integer>();
+        for (Long thread : mWaitingLocks.keySet()) {
+            if ((int) (thread >>> 32) != pid) {
+                continue;
+            }
+            // Follow the chain of waits until it ends, reaches a visited thread, or loops.
+            Map<Integer, Integer> path = new LinkedHashMap<Integer, Integer>();
+            Integer tid = (int) thread.longValue();
+            while (tid != null && !visited.contains(tid) && !path.containsKey(tid)) {
+                path.put(tid, path.size());
+                tid = getWaitingFor(pid, tid);
+            }
+            if (tid != null && path.containsKey(tid)) {
+                List<Integer> chain = new ArrayList<Integer>(path.keySet());
+                deadlocks.add(rotateToMin(chain.subList(path.get(tid), chain.size())));
+            }
+            visited.addAll(path.keySet());
+        }
+        return deadlocks;
+    }
+
+    /**
+     * Rotate a cycle so that it starts with its lowest tid.
+     */
+    private static List<Integer> rotateToMin(List<Integer> cycle) {
+        List<Integer> rotated = new ArrayList<Integer>(cycle);
+        Collections.rotate(rotated, -rotated.indexOf(Collections.min(rotated)));
+        return rotated;
+    }
+
+    /**
+     * Get the key for a thread in a process.
+     */
+    private static long getThreadKey(int pid, int tid) {
+        return ((long) pid << 32) | (tid & 0xffffffffL);
+    }
+
+    /**
+     * Get the key for a monitor in a process.
+     */
+    private static String getLockKey(int pid, String lock) {
+        return pid + "/" + lock;
+    }
+}
@@ -0,0 +1,1213 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.util.config.ArgsOptionParser;
+import com.android.loganalysis.util.config.ConfigurationException;
+import com.android.loganalysis.util.config.Option;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+
+/**
+ * Generates realistic logs from a seed, for benchmarks and scaling tests which need inputs that
+ * are large or can't be shared. The same seed, settings and size always give the same log.
+ * <p>
+ * The rates of events are the chance that an event starts at a given line. A log is written until
+ * it reaches the requested size and the event in progress is finished, so a log is slightly larger
+ * than requested. The log is written as it is generated, so the size is only limited by the
+ * output.
+ * </p>
+ */
+public class LogGenerator {
+
+    /** The types of logs which can be generated. */
+    public enum LogType {
+        LOGCAT, KERNEL_LOG, MONKEY_LOG, SMART_MONKEY_LOG, BUGREPORT;
+    }
+
+    /** The formats of a generated logcat. */
+    public enum LogcatFormat {
+        THREADTIME, TIME;
+    }
+
+    /** The time the logs start at: 2012-04-25 09:00:00 UTC. */
+    private static final long START_TIME = 1335344400000L;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000;
+    /** The average time between two lines of a logcat or a kernel log. */
+    private static final int AVERAGE_GAP_MS = 10;
+    /** The average size of a logcat line, used to estimate how long a logcat spans. */
+    private static final int AVERAGE_LINE_SIZE = 90;
+    /** The average size of a monkey event, used to estimate the target count. */
+    private static final int AVERAGE_MONKEY_EVENT_SIZE = 60;
+
+    private static final int SYSTEM_SERVER_PID = 312;
+    private static final int DEBUGGERD_PID = 115;
+    private static final int FIRST_PID = 1000;
+    private static final int MAX_PID = 32767;
+
+    /** The log levels of ordinary logcat lines, weighted by how often they appear. */
+    private static final String LEVELS = "VVDDDDDDDIIIIIIIIWWE";
+
+    private static final String[] TAGS = {
+        "ActivityManager", "PackageManager", "WindowManager", "dalvikvm", "AudioFlinger",
+        "ConnectivityService", "InputDispatcher", "NetworkController", "PowerManagerService",
+        "SurfaceFlinger", "Choreographer", "ActivityThread", "BatteryService", "wpa_supplicant",
+        "OpenGLRenderer", "BluetoothAdapter", "LocationManager", "AlarmManager", "Finsky",
+        "chromium",
+    };
+
+    private static final String[] MESSAGES = {
+        "Displayed activity in ms: ",
+        "GC_CONCURRENT freed 2048K, 12% free, paused ms: ",
+        "Skipped frames! The application may be doing too much work on its main thread: ",
+        "handleMessage what=",
+        "Connection state changed, network id=",
+        "Acquiring wake lock, count=",
+        "Received broadcast, id=",
+        "Loaded resources, size=",
+    };
+
+    private static final String[] PACKAGES = {
+        "com.android.browser", "com.android.phone", "com.android.systemui",
+        "com.android.settings", "com.android.launcher", "com.android.email", "com.android.chrome",
+        "com.google.android.gms", "com.google.android.apps.maps", "com.google.android.youtube",
+    };
+
+    private static final String[] EXCEPTIONS = {
+        "java.lang.NullPointerException",
+        "java.lang.IllegalStateException: Not attached to window manager",
+        "java.lang.IllegalArgumentException: Invalid argument",
+        "java.lang.RuntimeException: Unable to start activity",
+        "java.lang.OutOfMemoryError",
+    };
+
+    private static final String[] ANR_REASONS = {
+        "keyDispatchingTimedOut",
+        "Broadcast of Intent { act=android.intent.action.SCREEN_OFF }",
+        "Executing service com.android.package/.Service",
+    };
+
+    private static final String[] LIBRARIES = {
+        "/system/lib/libc.so", "/system/lib/libdvm.so", "/system/lib/libskia.so",
+        "/system/lib/libutils.so", "/system/lib/libbinder.so",
+    };
+
+    private static final String[] DRIVERS = {
+        "mdss_fb", "wlan", "msm_otg", "healthd", "binder", "lowmemorykiller", "mmc0", "usb",
+        "audio", "thermal",
+    };
+
+    /** The permission, source type, target type and class of the SELinux denials. */
+    private static final String[][] DENIALS = {
+        {"read", "untrusted_app", "sysfs", "file"},
+        {"open", "system_server", "proc", "file"},
+        {"getattr", "mediaserver", "device", "chr_file"},
+        {"search", "platform_app", "debugfs", "dir"},
+        {"ioctl", "surfaceflinger", "graphics_device", "chr_file"},
+        {"write", "shell", "rootfs", "dir"},
+    };
+
+    @Option(name="type", description="The type of log: LOGCAT, KERNEL_LOG, MONKEY_LOG, " +
+            "SMART_MONKEY_LOG or BUGREPORT")
+    private LogType mType = LogType.LOGCAT;
+
+    @Option(name="size", description="The size of the log in bytes, with an optional K, M or G " +
+            "suffix")
+    private String mSize = "1M";
+
+    @Option(name="output", description="The path to write the log to. Defaults to stdout")
+    private String mOutputPath = null;
+
+    @Option(name="seed", description="The seed of the log")
+    private long mSeed = 0;
+
+    @Option(name="logcat-format", description="The format of the logcat: THREADTIME or TIME")
+    private LogcatFormat mLogcatFormat = LogcatFormat.THREADTIME;
+
+    @Option(name="anr-rate", description="The chance that a logcat line starts an ANR")
+    private double mAnrRate = 0.0005;
+
+    @Option(name="java-crash-rate", description="The chance that a logcat line starts a Java " +
+            "crash")
+    private double mJavaCrashRate = 0.0005;
+
+    @Option(name="native-crash-rate", description="The chance that a logcat line starts a " +
+            "native crash tombstone")
+    private double mNativeCrashRate = 0.0002;
+
+    @Option(name="selinux-denial-rate", description="The chance that a kernel log line is an " +
+            "SELinux denial")
+    private double mSelinuxDenialRate = 0.01;
+
+    @Option(name="kernel-error-rate", description="The chance that a kernel log line starts a " +
+            "kernel error")
+    private double mKernelErrorRate = 0.0002;
+
+    @Option(name="kernel-reset-rate", description="The chance that a kernel log line is a " +
+            "kernel panic followed by a new boot")
+    private double mKernelResetRate = 0.00001;
+
+    @Option(name="pid-churn", description="The chance that a logcat line is a process dying " +
+            "and being replaced by a new one")
+    private double mPidChurn = 0.001;
+
+    @Option(name="processes", description="The number of processes logging at once")
+    private int mProcessCount = 40;
+
+    @Option(name="tags", description="The number of distinct logcat tags")
+    private int mTagCount = 100;
+
+    /**
+     * Constructor for {@link LogGenerator}.
+     *
+     * @param seed the seed of the logs.
+     */
+    public LogGenerator(long seed) {
+        mSeed = seed;
+    }
+
+    /**
+     * Constructor for the command line tool.
+     */
+    LogGenerator() {
+    }
+
+    /**
+     * Set the format of generated logcats.
+     */
+    public void setLogcatFormat(LogcatFormat format) {
+        mLogcatFormat = format;
+    }
+
+    /**
+     * Set the chance that a logcat line starts an ANR.
+     */
+    public void setAnrRate(double rate) {
+        mAnrRate = rate;
+    }
+
+    /**
+     * Set the chance that a logcat line starts a Java crash.
+     */
+    public void setJavaCrashRate(double rate) {
+        mJavaCrashRate = rate;
+    }
+
+    /**
+     * Set the chance that a logcat line starts a native crash tombstone.
+     */
+    public void setNativeCrashRate(double rate) {
+        mNativeCrashRate = rate;
+    }
+
+    /**
+     * Set the chance that a kernel log line is an SELinux denial.
+     */
+    public void setSelinuxDenialRate(double rate) {
+        mSelinuxDenialRate = rate;
+    }
+
+    /**
+     * Set the chance that a kernel log line starts a kernel error.
+     */
+    public void setKernelErrorRate(double rate) {
+        mKernelErrorRate = rate;
+    }
+
+    /**
+     * Set the chance that a kernel log line is a kernel panic followed by a new boot.
+     */
+    public void setKernelResetRate(double rate) {
+        mKernelResetRate = rate;
+    }
+
+    /**
+     * Set the chance that a logcat line is a process dying and being replaced by a new one.
+     */
+    public void setPidChurn(double churn) {
+        mPidChurn = churn;
+    }
+
+    /**
+     * Set the number of processes logging at once.
+     */
+    public void setProcessCount(int count) {
+        mProcessCount = count;
+    }
+
+    /**
+     * Set the number of distinct logcat tags.
+     */
+    public void setTagCount(int count) {
+        mTagCount = count;
+    }
+
+    /**
+     * Write a log.
+     *
+     * @param type the {@link LogType} of the log.
+     * @param size the size of the log in bytes.
+     * @param output the {@link Writer} to write the log to.
+     * @throws IOException if the log could not be written.
+     */
+    public void write(LogType type, long size, Writer output) throws IOException {
+        Session session = new Session(output);
+        switch (type) {
+            case LOGCAT:
+                session.writeLogcat(size, new Clock(START_TIME));
+                break;
+            case KERNEL_LOG:
+                session.writeKernelLog(size, true);
+                break;
+            case MONKEY_LOG:
+                session.writeMonkeyLog(size);
+                break;
+            case SMART_MONKEY_LOG:
+                session.writeSmartMonkeyLog(size);
+                break;
+            case BUGREPORT:
+                session.writeBugreport(size);
+                break;
+        }
+        output.flush();
+    }
+
+    /**
+     * Generate a log in memory.
+     *
+     * @param type the {@link LogType} of the log.
+     * @param size the size of the log in bytes.
+     * @return The lines of the log.
+     */
+    public List<String> generate(LogType type, long size) {
+        StringWriter output = new StringWriter();
+        try {
+            write(type, size, output);
+        } catch (IOException e) {
+            // A StringWriter does not throw.
+            throw new IllegalStateException(e);
+        }
+        final String log = output.toString();
+        List<String> lines = new ArrayList<String>();
+        int start = 0;
+        for (int i = 0; i < log.length(); i++) {
+            if (log.charAt(i) == '\n') {
+                lines.add(log.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return lines;
+    }
+
+    /**
+     * Parse a size such as {@code 512}, {@code 64K}, {@code 100M} or {@code 10G}.
+     *
+     * @throws NumberFormatException if the size is invalid.
+     */
+    public static long parseSize(String size) {
+        final String trimmed = size.trim().toUpperCase(Locale.US);
+        if (trimmed.isEmpty()) {
+            throw new NumberFormatException("Empty size");
+        }
+        long multiplier = 1;
+        switch (trimmed.charAt(trimmed.length() - 1)) {
+            case 'K':
+                multiplier = 1L << 10;
+                break;
+            case 'M':
+                multiplier = 1L << 20;
+                break;
+            case 'G':
+                multiplier = 1L << 30;
+                break;
+        }
+        final String number = multiplier == 1 ? trimmed :
+                trimmed.substring(0, trimmed.length() - 1);
+        return Long.parseLong(number) * multiplier;
+    }
+
+    /**
+     * Append a number padded to a width.
+     */
+    private static StringBuilder appendPadded(StringBuilder line, long value, int width,
+            char pad) {
+        long bound = 10;
+        for (int i = 1; i < width; i++, bound *= 10) {
+            if (value < bound) {
+                line.append(pad);
+            }
+        }
+        return line.append(value);
+    }
+
+    /**
+     * Writes lines to a {@link Writer} and counts their size. The logs are ASCII, so the size of
+     * a line in bytes is its length.
+     */
+    private static class LineWriter {
+        private final Writer mWriter;
+        private final StringBuilder mLine = new StringBuilder(256);
+        private char[] mBuffer = new char[256];
+        private long mSize = 0;
+
+        /**
+         * Constructor for {@link LineWriter}.
+         */
+        public LineWriter(Writer writer) {
+            mWriter = writer;
+        }
+
+        /**
+         * Start a line, returning the builder for its content.
+         */
+        public StringBuilder start() {
+            mLine.setLength(0);
+            return mLine;
+        }
+
+        /**
+         * Write the line which was started.
+         */
+        public void end() throws IOException {
+            mLine.append('\n');
+            final int length = mLine.length();
+            if (mBuffer.length < length) {
+                mBuffer = new char[length * 2];
+            }
+            mLine.getChars(0, length, mBuffer, 0);
+            mWriter.write(mBuffer, 0, length);
+            mSize += length;
+        }
+
+        /**
+         * Write a whole line.
+         */
+        public void write(String line) throws IOException {
+            start().append(line);
+            end();
+        }
+
+        /**
+         * Get the size of the lines written.
+         */
+        public long getSize() {
+            return mSize;
+        }
+    }
+
+    /**
+     * The time of a log, which formats the date only when the day changes.
+     */
+    private static class Clock {
+        private final Calendar mCalendar = Calendar.getInstance(TimeZone.getTimeZone("UTC"),
+                Locale.US);
+        private long mTime;
+        private long mDay = Long.MIN_VALUE;
+        private String mDate = null;
+
+        /**
+         * Constructor for {@link Clock}.
+         *
+         * @param time the start time in ms since the epoch.
+         */
+        public Clock(long time) {
+            mTime = time;
+        }
+
+        /**
+         * Get the time in ms since the epoch.
+         */
+        public long getTime() {
+            return mTime;
+        }
+
+        /**
+         * Move the time forward.
+         */
+        public void advance(long ms) {
+            mTime += ms;
+        }
+
+        /**
+         * Append the time as {@code yyyy-MM-dd HH:mm:ss.SSS}.
+         *
+         * @param withYear whether to append the year, which logcat leaves out.
+         * @param withMs whether to append the milliseconds.
+         */
+        public StringBuilder append(StringBuilder line, boolean withYear, boolean withMs) {
+            final long day = mTime / DAY_MS;
+            if (day != mDay) {
+                mCalendar.setTimeInMillis(day * DAY_MS);
+                mDate = String.format("%04d-%02d-%02d", mCalendar.get(Calendar.YEAR),
+                        mCalendar.get(Calendar.MONTH) + 1, mCalendar.get(Calendar.DAY_OF_MONTH));
+                mDay = day;
+            }
+            line.append(mDate, withYear ? 0 : 5, mDate.length()).append(' ');
+            final long ms = mTime - day * DAY_MS;
+            appendPadded(line, ms / 3600000, 2, '0').append(':');
+            appendPadded(line, ms / 60000 % 60, 2, '0').append(':');
+            appendPadded(line, ms / 1000 % 60, 2, '0');
+            if (withMs) {
+                appendPadded(line.append('.'), ms % 1000, 3, '0');
+            }
+            return line;
+        }
+
+        /**
+         * Get the time as {@code yyyy-MM-dd HH:mm:ss}.
+         */
+        public String getDateTime() {
+            return append(new StringBuilder(), true, false).toString();
+        }
+    }
+
+    /**
+     * The state of writing one log: the random numbers, the running processes and the output.
+     */
+    private class Session {
+        private final Random mRandom = new Random(mSeed);
+        private final LineWriter mOut;
+        private final String[] mTags;
+        private final int[] mPids;
+        private final String[] mNames;
+        private int mNextPid = FIRST_PID;
+
+        /**
+         * Constructor for {@link Session}.
+         */
+        public Session(Writer output) {
+            mOut = new LineWriter(output);
+            mTags = new String[Math.max(mTagCount, 1)];
+            for (int i = 0; i < mTags.length; i++) {
+                mTags[i] = i < TAGS.length ? TAGS[i] : TAGS[i % TAGS.length] + (i / TAGS.length);
+            }
+            mPids = new int[Math.max(mProcessCount, 1)];
+            mNames = new String[mPids.length];
+            for (int i = 0; i < mPids.length; i++) {
+                startProcess(i);
+            }
+        }
+
+        /**
+         * Pick a number below a bound, with small numbers more likely, so that a few tags and
+         * processes log most of the lines.
+         */
+        private int pickSkewed(int bound) {
+            return mRandom.nextInt(mRandom.nextInt(bound) + 1);
+        }
+
+        /**
+         * Pick an element of an array.
+         */
+        private String pick(String[] values) {
+            return values[mRandom.nextInt(values.length)];
+        }
+
+        /**
+         * Start a process in a slot of the process table.
+         */
+        private void startProcess(int index) {
+            mPids[index] = mNextPid;
+            mNames[index] = pick(PACKAGES);
+            mNextPid += 1 + mRandom.nextInt(8);
+            if (mNextPid > MAX_PID) {
+                mNextPid = FIRST_PID;
+            }
+        }
+
+        /**
+         * Write a logcat until it grows by a size.
+         */
+        public void writeLogcat(long size, Clock clock) throws IOException {
+            final long limit = mOut.getSize() + size;
+            final double churn = mPidChurn;
+            final double javaCrash = churn + mJavaCrashRate;
+            final double anr = javaCrash + mAnrRate;
+            final double nativeCrash = anr + mNativeCrashRate;
+            while (mOut.getSize() < limit) {
+                clock.advance(mRandom.nextInt(2 * AVERAGE_GAP_MS + 1));
+                final double event = mRandom.nextDouble();
+                final int index = pickSkewed(mPids.length);
+                if (event < churn) {
+                    restartProcess(clock, index);
+                } else if (event < javaCrash) {
+                    writeJavaCrash(clock, index);
+                } else if (event < anr) {
+                    writeAnr(clock, index);
+                } else if (event < nativeCrash) {
+                    writeNativeCrash(clock, index);
+                } else {
+                    final int pid = mPids[index];
+                    final int tid = mRandom.nextInt(3) == 0 ? pid : pid + 1 + mRandom.nextInt(30);
+                    startLogcatLine(clock, pid, tid, LEVELS.charAt(mRandom.nextInt(
+                            LEVELS.length())), mTags[pickSkewed(mTags.length)])
+                            .append(pick(MESSAGES)).append(mRandom.nextInt(100000));
+                    mOut.end();
+                }
+            }
+        }
+
+        /**
+         * Start a logcat line with its header.
+         */
+        private StringBuilder startLogcatLine(Clock clock, int pid, int tid, char level,
+                String tag) {
+            StringBuilder line = clock.append(mOut.start(), false, true);
+            if (mLogcatFormat == LogcatFormat.THREADTIME) {
+                appendPadded(line.append(' '), pid, 5, ' ');
+                appendPadded(line.append(' '), tid, 5, ' ');
+                line.append(' ').append(level).append(' ').append(tag).append(": ");
+            } else {
+                line.append(' ').append(level).append('/').append(tag).append('(');
+                appendPadded(line, pid, 5, ' ').append("): ");
+            }
+            return line;
+        }
+
+        /**
+         * Write a logcat line.
+         */
+        private void writeLogcatLine(Clock clock, int pid, int tid, char level, String tag,
+                String message) throws IOException {
+            startLogcatLine(clock, pid, tid, level, tag).append(message);
+            mOut.end();
+        }
+
+        /**
+         * Write a process dying and a new one starting in its place.
+         */
+        private void restartProcess(Clock clock, int index) throws IOException {
+            writeLogcatLine(clock, SYSTEM_SERVER_PID, SYSTEM_SERVER_PID + 20, 'I',
+                    "ActivityManager", String.format("Process %s (pid %d) has died.",
+                    mNames[index], mPids[index]));
+            startProcess(index);
+            writeLogcatLine(clock, SYSTEM_SERVER_PID, SYSTEM_SERVER_PID + 20, 'I',
+                    "ActivityManager", String.format("Start proc %s for activity %s/.Main: " +
+                    "pid=%d uid=%d gids={50012}", mNames[index], mNames[index], mPids[index],
+                    10000 + index));
+        }
+
+        /**
+         * Write a Java crash, after which the process is restarted.
+         */
+        private void writeJavaCrash(Clock clock, int index) throws IOException {
+            final int pid = mPids[index];
+            final String name = mNames[index];
+            writeLogcatLine(clock, pid, pid, 'E', "AndroidRuntime", "FATAL EXCEPTION: main");
+            writeLogcatLine(clock, pid, pid, 'E', "AndroidRuntime",
+                    String.format("Process: %s, PID: %d", name, pid));
+            writeLogcatLine(clock, pid, pid, 'E', "AndroidRuntime", pick(EXCEPTIONS));
+            for (int i = 0, frames = 5 + mRandom.nextInt(10); i < frames; i++) {
+                writeLogcatLine(clock, pid, pid, 'E', "AndroidRuntime", "\tat " + frame(name));
+            }
+            restartProcess(clock, index);
+        }
+
+        /**
+         * Get a Java stack frame in a package.
+         */
+        private String frame(String name) {
+            final int cls = mRandom.nextInt(20);
+            return String.format("%s.Class%d.method%d(Class%d.java:%d)", name, cls,
+                    mRandom.nextInt(50), cls, 1 + mRandom.nextInt(900));
+        }
+
+        /**
+         * Write an ANR, after which the process is restarted.
+         */
+        private void writeAnr(Clock clock, int index) throws IOException {
+            final int pid = mPids[index];
+            final String name = mNames[index];
+            final int user = 5 + mRandom.nextInt(50);
+            final int kernel = 1 + mRandom.nextInt(30);
+            for (String message : getAnrLines(pid, name, user, kernel)) {
+                writeLogcatLine(clock, SYSTEM_SERVER_PID, SYSTEM_SERVER_PID + 54, 'E',
+                        "ActivityManager", message);
+            }
+            restartProcess(clock, index);
+        }
+
+        /**
+         * Get the lines of an ANR, as logged by the activity manager.
+         */
+        private String[] getAnrLines(int pid, String name, int user, int kernel) {
+            return new String[] {
+                String.format("ANR in %s (%s/.Main)", name, name),
+                String.format("PID: %d", pid),
+                String.format("Reason: %s", pick(ANR_REASONS)),
+                String.format("Load: %d.%02d / %d.%02d / %d.%02d", mRandom.nextInt(4),
+                        mRandom.nextInt(100), mRandom.nextInt(4), mRandom.nextInt(100),
+                        mRandom.nextInt(4), mRandom.nextInt(100)),
+                "CPU usage from 5000ms to 0ms ago:",
+                String.format("  %d%% %d/%s: %d%% user + %d%% kernel / faults: %d minor",
+                        user, pid, name, user * 2 / 3, user / 3, mRandom.nextInt(1000)),
+                String.format("  %d%% %d/system_server: %d%% user + %d%% kernel", kernel,
+                        SYSTEM_SERVER_PID, kernel / 2, kernel - kernel / 2),
+                String.format("%d%% TOTAL: %d%% user + %d%% kernel + 0.3%% iowait",
+                        user + kernel, user * 2 / 3 + kernel / 2, user / 3 + kernel - kernel / 2),
+            };
+        }
+
+        /**
+         * Write a native crash tombstone, after which the process is restarted.
+         */
+        private void writeNativeCrash(Clock clock, int index) throws IOException {
+            final int pid = mPids[index];
+            final String name = mNames[index];
+            final int tid = pid + mRandom.nextInt(30);
+            final String[] lines = {
+                "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***",
+                "Build fingerprint: 'generic/generic/generic:4.1/JRO01/12345:userdebug/dev-keys'",
+                "Revision: '0'",
+                String.format("pid: %d, tid: %d, name: Thread-%d  >>> %s <<<", pid, tid,
+                        tid - pid, name),
+                String.format("signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr %08x",
+                        mRandom.nextInt(4096)),
+                "",
+                "backtrace:",
+            };
+            for (String message : lines) {
+                writeLogcatLine(clock, DEBUGGERD_PID, DEBUGGERD_PID, 'I', "DEBUG", message);
+            }
+            for (int i = 0, frames = 3 + mRandom.nextInt(10); i < frames; i++) {
+                writeLogcatLine(clock, DEBUGGERD_PID, DEBUGGERD_PID, 'I', "DEBUG",
+                        String.format("    #%02d  pc %08x  %s (function%d+%d)", i,
+                        mRandom.nextInt(1 << 24), pick(LIBRARIES), mRandom.nextInt(100),
+                        mRandom.nextInt(512)));
+            }
+            restartProcess(clock, index);
+        }
+
+        /**
+         * Write a kernel log until it grows by a size. Each kernel reset starts a new boot, with
+         * the timestamps starting again from zero.
+         *
+         * @param withLevel whether lines start with the log level, as in {@code dmesg}, rather
+         * than just the timestamp, as in {@code /proc/last_kmsg}.
+         */
+        public void writeKernelLog(long size, boolean withLevel) throws IOException {
+            final long limit = mOut.getSize() + size;
+            final double reset = mKernelResetRate;
+            final double error = reset + mKernelErrorRate;
+            final double denial = error + mSelinuxDenialRate;
+            long us = 0;
+            writeBoot(withLevel);
+            while (mOut.getSize() < limit) {
+                us += mRandom.nextInt(2 * AVERAGE_GAP_MS * 1000 + 1);
+                final double event = mRandom.nextDouble();
+                if (event < reset && us > 2 * 1000000) {
+                    startKernelLine(us, 0, withLevel).append(
+                            "Kernel panic - not syncing: Fatal exception");
+                    mOut.end();
+                    us = 0;
+                    writeBoot(withLevel);
+                } else if (event >= reset && event < error) {
+                    final String driver = pick(DRIVERS);
+                    startKernelLine(us, 0, withLevel).append(
+                            "Internal error: Oops: 17 [#1] PREEMPT SMP");
+                    mOut.end();
+                    startKernelLine(us, 4, withLevel).append("PC is at ").append(driver)
+                            .append("_irq+0x").append(Integer.toHexString(mRandom.nextInt(256)))
+                            .append("/0x200");
+                    mOut.end();
+                    startKernelLine(us, 4, withLevel).append("LR is at ").append(driver)
+                            .append("_probe+0x").append(Integer.toHexString(mRandom.nextInt(256)))
+                            .append("/0x400");
+                    mOut.end();
+                } else if (event >= error && event < denial) {
+                    final String[] denied = DENIALS[pickSkewed(DENIALS.length)];
+                    final int index = pickSkewed(mPids.length);
+                    final String name = mNames[index];
+                    startKernelLine(us, 5, withLevel).append("type=1400 audit(")
+                            .append(START_TIME / 1000 + us / 1000000).append('.')
+                            .append(us / 1000 % 1000).append(':').append(mRandom.nextInt(1000))
+                            .append("): avc:  denied  { ").append(denied[0])
+                            .append(" } for  pid=").append(mPids[index]).append(" comm=\"")
+                            .append(name, Math.max(0, name.length() - 15), name.length())
+                            .append("\" name=\"node").append(mRandom.nextInt(10))
+                            .append("\" dev=\"").append(denied[2]).append("\" ino=")
+                            .append(mRandom.nextInt(100000)).append(" scontext=u:r:")
+                            .append(denied[1]).append(":s0 tcontext=u:object_r:")
+                            .append(denied[2]).append(":s0 tclass=").append(denied[3])
+                            .append(" permissive=0");
+                    mOut.end();
+                } else {
+                    startKernelLine(us, 6, withLevel).append(pick(DRIVERS)).append(": status ")
+                            .append(mRandom.nextInt(10)).append(", value 0x")
+                            .append(Integer.toHexString(mRandom.nextInt()));
+                    mOut.end();
+                }
+            }
+        }
+
+        /**
+         * Write the first lines of a boot.
+         */
+        private void writeBoot(boolean withLevel) throws IOException {
+            startKernelLine(0, 6, withLevel).append("Booting Linux on physical CPU 0");
+            mOut.end();
+            startKernelLine(0, 6, withLevel).append("Initializing cgroup subsys cpu");
+            mOut.end();
+        }
+
+        /**
+         * Start a kernel log line with its header.
+         */
+        private StringBuilder startKernelLine(long us, int level, boolean withLevel) {
+            StringBuilder line = mOut.start();
+            if (withLevel) {
+                line.append('<').append(level).append('>');
+            }
+            appendPadded(line.append('['), us / 1000000, 5, ' ').append('.');
+            return appendPadded(line, us % 1000000, 6, '0').append("] ");
+        }
+
+        /**
+         * Write a monkey log until it reaches a size.
+         */
+        public void writeMonkeyLog(long size) throws IOException {
+            final long limit = mOut.getSize() + size;
+            final String name = pick(PACKAGES);
+            final int seed = mRandom.nextInt(1000);
+            final long target = Math.max(size / AVERAGE_MONKEY_EVENT_SIZE, 1);
+            final long startUptime = 200000 + mRandom.nextInt(100000);
+            Clock clock = new Clock(START_TIME);
+            SimpleDateFormat format = new SimpleDateFormat("EEEE, MM/dd/yyyy hh:mm:ss a",
+                    Locale.US);
+            format.setTimeZone(TimeZone.getTimeZone("UTC"));
+
+            mOut.write(String.format("# %s - device uptime = %d.%02d: Monkey command used for " +
+                    "this test:", format.format(new Date(clock.getTime())), startUptime / 1000,
+                    startUptime / 10 % 100));
+            mOut.write(String.format("adb shell monkey -p %s -c android.intent.category.LAUNCHER " +
+                    "--ignore-crashes --ignore-timeouts --ignore-security-exceptions " +
+                    "--throttle 100 -s %d -v -v -v %d ", name, seed, target));
+            mOut.write("");
+            mOut.write(String.format(":Monkey: seed=%d count=%d", seed, target));
+            mOut.write(":AllowPackage: " + name);
+            mOut.write(":IncludeCategory: android.intent.category.LAUNCHER");
+
+            long events = 0;
+            while (mOut.getSize() < limit) {
+                if (events % 100 == 0) {
+                    clock.append(mOut.start().append("    //[calendar_time:"), true, true)
+                            .append("  system_uptime:")
+                            .append(startUptime + clock.getTime() - START_TIME).append(']');
+                    mOut.end();
+                    mOut.write("    // Sending event #" + events);
+                }
+                final double event = mRandom.nextDouble();
+                final int index = pickSkewed(mPids.length);
+                if (event < mJavaCrashRate) {
+                    writeMonkeyCrash(index);
+                } else if (event < mJavaCrashRate + mAnrRate) {
+                    writeMonkeyAnr(clock, index);
+                } else {
+                    writeMonkeyEvent();
+                }
+                clock.advance(100 + mRandom.nextInt(20));
+                events++;
+            }
+
+            final long ms = clock.getTime() - START_TIME;
+            final long stopUptime = startUptime + ms;
+            mOut.write("Events injected: " + events);
+            mOut.write(String.format(":Dropped: keys=%d pointers=%d trackballs=0 flips=0 " +
+                    "rotations=0", mRandom.nextInt(10), mRandom.nextInt(10)));
+            mOut.write(String.format("## Network stats: elapsed time=%dms (0ms mobile, %dms " +
+                    "wifi, 0ms not connected)", ms, ms));
+            mOut.write("// Monkey finished");
+            mOut.write("");
+            mOut.write(String.format("# %s - device uptime = %d.%02d: Monkey command ran for: " +
+                    "%02d:%02d (mm:ss)", format.format(new Date(clock.getTime())),
+                    stopUptime / 1000, stopUptime / 10 % 100, ms / 60000, ms / 1000 % 60));
+        }
+
+        /**
+         * Write an ordinary monkey event.
+         */
+        private void writeMonkeyEvent() throws IOException {
+            switch (mRandom.nextInt(3)) {
+                case 0:
+                    final int key = 19 + mRandom.nextInt(5);
+                    mOut.write(":Sending Key (ACTION_DOWN): " + key + "    // KEYCODE_DPAD");
+                    mOut.write(":Sending Key (ACTION_UP): " + key + "    // KEYCODE_DPAD");
+                    break;
+                case 1:
+                    final String point = String.format("0:(%d.0,%d.0)", mRandom.nextInt(800),
+                            mRandom.nextInt(1280));
+                    mOut.write(":Sending Touch (ACTION_DOWN): " + point);
+                    mOut.write(":Sending Touch (ACTION_UP): " + point);
+                    break;
+                default:
+                    mOut.write(String.format(":Sending Trackball (ACTION_MOVE): 0:(%d.0,%d.0)",
+                            mRandom.nextInt(11) - 5, mRandom.nextInt(11) - 5));
+                    break;
+            }
+            mOut.write("Sleeping for 100 milliseconds");
+        }
+
+        /**
+         * Write a crash in a monkey log.
+         */
+        private void writeMonkeyCrash(int index) throws IOException {
+            final String name = mNames[index];
+            final String exception = pick(EXCEPTIONS);
+            mOut.write(String.format("// CRASH: %s (pid %d)", name, mPids[index]));
+            mOut.write("// Short Msg: " + exception);
+            mOut.write("// Long Msg: " + exception);
+            mOut.write("// Build Label: generic/generic/generic:4.1/JRO01/12345:userdebug/" +
+                    "dev-keys");
+            mOut.write("// Build Changelist: 12345");
+            mOut.write("// Build Time: " + START_TIME);
+            mOut.write("// " + exception);
+            for (int i = 0, frames = 5 + mRandom.nextInt(10); i < frames; i++) {
+                mOut.write("// \tat " + frame(name));
+            }
+            mOut.write("// ");
+            startProcess(index);
+        }
+
+        /**
+         * Write an ANR in a monkey log, with the traces of the process.
+         */
+        private void writeMonkeyAnr(Clock clock, int index) throws IOException {
+            mOut.write(String.format("// NOT RESPONDING: %s (pid %d)", mNames[index],
+                    mPids[index]));
+            for (String line : getAnrLines(mPids[index], mNames[index], 5 + mRandom.nextInt(50),
+                    1 + mRandom.nextInt(30))) {
+                mOut.write(line);
+            }
+            mOut.write("");
+            mOut.write("procrank:");
+            mOut.write("// procrank status was 0");
+            mOut.write("anr traces:");
+            mOut.write("");
+            writeTraces(clock, index);
+            mOut.write("// anr traces status was 0");
+            startProcess(index);
+        }
+
+        /**
+         * Write the traces of a process.
+         */
+        private void writeTraces(Clock clock, int index) throws IOException {
+            final int pid = mPids[index];
+            final String name = mNames[index];
+            mOut.write(String.format("----- pid %d at %s -----", pid, clock.getDateTime()));
+            mOut.write("Cmd line: " + name);
+            mOut.write("");
+            mOut.write("DALVIK THREADS:");
+            mOut.write("(mutexes: tll=0 tsl=0 tscl=0 ghl=0)");
+            mOut.write("");
+            for (int tid = 1, threads = 5 + mRandom.nextInt(15); tid <= threads; tid++) {
+                mOut.write(String.format("\"%s\" prio=5 tid=%d %s", tid == 1 ? "main" :
+                        "Thread-" + tid, tid, mRandom.nextBoolean() ? "WAIT" : "NATIVE"));
+                mOut.write(String.format("  | group=\"main\" sCount=1 dsCount=0 obj=0x%08x " +
+                        "self=0x%08x", mRandom.nextInt(), mRandom.nextInt()));
+                mOut.write(String.format("  | sysTid=%d nice=0 sched=0/0 cgrp=default " +
+                        "handle=%d", tid == 1 ? pid : pid + tid, mRandom.nextInt(1 << 30)));
+                for (int i = 0, frames = 3 + mRandom.nextInt(10); i < frames; i++) {
+                    mOut.write("  at " + frame(name));
+                }
+                mOut.write("");
+            }
+            mOut.write(String.format("----- end %d -----", pid));
+            mOut.write("");
+        }
+
+        /**
+         * Write a smart monkey log until it reaches a size.
+         */
+        public void writeSmartMonkeyLog(long size) throws IOException {
+            final long limit = mOut.getSize() + size;
+            final String name = pick(PACKAGES);
+            final String app = name.substring(name.lastIndexOf('.') + 1);
+            final long target = Math.max(size / (4 * AVERAGE_MONKEY_EVENT_SIZE), 1);
+            final long uptime = 100000 + mRandom.nextInt(500000);
+            Clock clock = new Clock(START_TIME);
+
+            writeSmartMonkeyLine(clock, String.format("Starting [%s][%s]", app, name));
+            writeSmartMonkeyLine(clock, "Target invocation count: " + target);
+            writeSmartMonkeyLine(clock, "Throttle: 0 ms");
+            writeSmartMonkeyLine(clock, String.format("Device uptime: %d sec", uptime));
+            long invocation = 0;
+            while (mOut.getSize() < limit) {
+                clock.advance(mRandom.nextInt(2000));
+                final double event = mRandom.nextDouble();
+                final String prefix = String.format("[%3d](Seq: %2d)-", invocation,
+                        invocation / 10);
+                if (event < mJavaCrashRate) {
+                    writeSmartMonkeyLine(clock, prefix + "UI Exception: CRASH: Unfortunately, " +
+                            app + " has stopped.");
+                } else if (event < mJavaCrashRate + mAnrRate) {
+                    writeSmartMonkeyLine(clock, prefix + "UI Exception: ANR: " + app +
+                            " is not responding.");
+                } else {
+                    writeSmartMonkeyLine(clock, prefix + String.format("Found %d candidates. " +
+                            "Using index: %d", 6, mRandom.nextInt(6)));
+                    writeSmartMonkeyLine(clock, prefix + String.format("Clicking: CheckBox " +
+                            "(%d,%d)", mRandom.nextInt(800), mRandom.nextInt(1280)));
+                }
+                invocation++;
+            }
+            writeSmartMonkeyLine(clock, "Invocations requested: " + target);
+            writeSmartMonkeyLine(clock, "Invocations completed: " + invocation);
+            writeSmartMonkeyLine(clock, String.format("Device uptime: %d sec, Monkey run " +
+                    "duration: %d sec", uptime + (clock.getTime() - START_TIME) / 1000,
+                    (clock.getTime() - START_TIME) / 1000));
+            writeSmartMonkeyLine(clock, "Monkey finished");
+        }
+
+        /**
+         * Write a smart monkey log line.
+         */
+        private void writeSmartMonkeyLine(Clock clock, String message) throws IOException {
+            clock.append(mOut.start(), true, true).append(": ").append(message);
+            mOut.end();
+        }
+
+        /**
+         * Write a bugreport of about a size, with every section {@code BugreportParser} knows.
+         * Most of the size is the system log and the kernel logs.
+         */
+        public void writeBugreport(long size) throws IOException {
+            final long limit = mOut.getSize() + size;
+            // Start the logcat so that it ends at about the time of the dumpstate.
+            final long logcatSpan = size * 70 / 100 / AVERAGE_LINE_SIZE * AVERAGE_GAP_MS;
+            final long uptimeMinutes = logcatSpan / 60000 + 10 + mRandom.nextInt(60);
+            Clock dumpstate = new Clock(START_TIME + logcatSpan);
+            // Generate the small sections which follow the logs first, so that the logs can
+            // take the rest of the size.
+            final List<String> systemProps = getSystemProps();
+            final List<String> dumpsys = getDumpsys();
+            final long dumpsysSize = getSize(dumpsys);
+            final long tailSize = getSize(systemProps) + dumpsysSize;
+
+            mOut.write("========================================================");
+            mOut.write("== dumpstate: " + dumpstate.getDateTime());
+            mOut.write("========================================================");
+            mOut.write("");
+            mOut.write("Build: JRO01");
+            mOut.write("Build fingerprint: 'generic/generic/generic:4.1/JRO01/12345:userdebug/" +
+                    "dev-keys'");
+            mOut.write(String.format("Uptime: up %d weeks, %d days, %d hours, %d minutes, load " +
+                    "average: 1.00, 0.90, 0.80", uptimeMinutes / (7 * 24 * 60),
+                    uptimeMinutes / (24 * 60) % 7, uptimeMinutes / 60 % 24, uptimeMinutes % 60));
+            mOut.write("Command line: console=ttyHSL0,115200,n8 androidboot.hardware=generic " +
+                    "androidboot.bootreason=reboot");
+            mOut.write("");
+
+            mOut.write("------ MEMORY INFO (/proc/meminfo) ------");
+            final int total = 1 << 20;
+            final int free = mRandom.nextInt(total / 2);
+            mOut.write(String.format("MemTotal:       %8d kB", total));
+            mOut.write(String.format("MemFree:        %8d kB", free));
+            mOut.write(String.format("Buffers:        %8d kB", mRandom.nextInt(total / 16)));
+            mOut.write(String.format("Cached:         %8d kB", mRandom.nextInt(total / 4)));
+            mOut.write(String.format("SwapCached:     %8d kB", 0));
+            mOut.write("");
+
+            mOut.write("------ CPU INFO (top -n 1 -d 1 -m 30 -t) ------");
+            mOut.write("");
+            final int user = mRandom.nextInt(300);
+            final int sys = mRandom.nextInt(300);
+            mOut.write(String.format("User %d%%, System %d%%, IOW 0%%, IRQ 0%%", user / 10,
+                    sys / 10));
+            mOut.write(String.format("User %d + Nice 0 + Sys %d + Idle %d + IOW 0 + IRQ 0 + " +
+                    "SIRQ 0 = 1000", user, sys, 1000 - user - sys));
+            mOut.write("");
+            mOut.write("  PID   TID PR CPU% S     VSS     RSS PCY UID      Thread          Proc");
+            for (int i = 0; i < Math.min(mPids.length, 30); i++) {
+                mOut.write(String.format("%5d %5d  0 %3d%% S %6dK %6dK  fg u0_a%-4d main" +
+                        "            %s", mPids[i], mPids[i], mRandom.nextInt(10),
+                        mRandom.nextInt(900000), mRandom.nextInt(90000), i, mNames[i]));
+            }
+            mOut.write("");
+
+            mOut.write("------ PROCRANK (procrank) ------");
+            mOut.write("  PID      Vss      Rss      Pss      Uss  cmdline");
+            long pssTotal = 0;
+            long ussTotal = 0;
+            for (int i = 0; i < mPids.length; i++) {
+                final int uss = 1000 + mRandom.nextInt(60000);
+                final int pss = uss + mRandom.nextInt(5000);
+                final int rss = pss + mRandom.nextInt(20000);
+                pssTotal += pss;
+                ussTotal += uss;
+                mOut.write(String.format("%5d %7dK %7dK %7dK %7dK  %s", mPids[i],
+                        rss + mRandom.nextInt(20000), rss, pss, uss, mNames[i]));
+            }
+            mOut.write("                          ------   ------  ------");
+            mOut.write(String.format("                          %dK  %dK  TOTAL", pssTotal,
+                    ussTotal));
+            mOut.write(String.format("RAM: %dK total, %dK free, 9016K buffers, 108548K cached",
+                    total, free));
+            mOut.write("[procrank: 1.6s elapsed]");
+            mOut.write("");
+
+            final long logsSize = Math.max(limit - mOut.getSize() - tailSize, 0);
+            mOut.write("------ KERNEL LOG (dmesg) ------");
+            writeKernelLog(logsSize * 15 / 100, true);
+            mOut.write("");
+
+            mOut.write("------ SYSTEM LOG (logcat -v threadtime -d *:v) ------");
+            writeLogcat(logsSize * 70 / 100, new Clock(START_TIME));
+            mOut.write("");
+
+            final int anrIndex = mRandom.nextInt(mPids.length);
+            mOut.write(String.format("------ VM TRACES AT LAST ANR (/data/anr/traces.txt: %s) " +
+                    "------", dumpstate.getDateTime()));
+            mOut.write("");
+            final long tracesLimit = mOut.getSize() + logsSize * 5 / 100;
+            do {
+                writeTraces(dumpstate, anrIndex);
+            } while (mOut.getSize() < tracesLimit);
+
+            for (String line : systemProps) {
+                mOut.write(line);
+            }
+
+            mOut.write("------ LAST KMSG (/proc/last_kmsg) ------");
+            writeKernelLog(limit - mOut.getSize() - dumpsysSize, false);
+            mOut.write("");
+
+            for (String line : dumpsys) {
+                mOut.write(line);
+            }
+        }
+
+        /**
+         * Get the size of lines.
+         */
+        private long getSize(List<String> lines) {
+            long size = 0;
+            for (String line : lines) {
+                size += line.length() + 1;
+            }
+            return size;
+        }
+
+        /**
+         * Get the system properties section of a bugreport.
+         */
+        private List<String> getSystemProps() {
+            List<String> lines = new ArrayList<String>();
+            lines.add("------ SYSTEM PROPERTIES ------");
+            for (int i = 0; i < 200; i++) {
+                lines.add(String.format("[ro.property.%d]: [value%d]", i, mRandom.nextInt(1000)));
+            }
+            lines.add("");
+            return lines;
+        }
+
+        /**
+         * Get the dumpsys section of a bugreport.
+         */
+        private List<String> getDumpsys() {
+            List<String> lines = new ArrayList<String>();
+            lines.add("------ DUMPSYS (dumpsys) ------");
+            lines.add("DUMP OF SERVICE batteryinfo:");
+            lines.add("Statistics since last unplugged:");
+            for (String driver : DRIVERS) {
+                lines.add(String.format("  Kernel Wake lock \"%s\": %dm %ds %dms (%d times) " +
+                        "realtime", driver, mRandom.nextInt(60), mRandom.nextInt(60),
+                        mRandom.nextInt(1000), mRandom.nextInt(100)));
+            }
+            lines.add("");
+            lines.add("  All partial wake locks:");
+            for (int i = 0; i < Math.min(mPids.length, 10); i++) {
+                lines.add(String.format("  Wake lock #%d %s: %ds %dms (%d times) realtime",
+                        10000 + i, mNames[i], mRandom.nextInt(60), mRandom.nextInt(1000),
+                        mRandom.nextInt(100)));
+            }
+            lines.add("");
+            lines.add("DUMP OF SERVICE window:");
+            lines.add("WINDOW MANAGER POLICY STATE (dumpsys window policy)");
+            lines.add("    mSafeMode=false mSystemReady=true mSystemBooted=true");
+            lines.add("");
+            return lines;
+        }
+    }
+
+    /**
+     * Run the command line tool.
+     */
+    public void run(String[] args) {
+        final long size;
+        try {
+            new ArgsOptionParser(this).parse(args);
+            size = parseSize(mSize);
+        } catch (ConfigurationException | NumberFormatException e) {
+            printUsage();
+            return;
+        }
+
+        OutputStream output = System.out;
+        try {
+            if (mOutputPath != null) {
+                output = new FileOutputStream(new File(mOutputPath));
+            }
+            write(mType, size, new BufferedWriter(new OutputStreamWriter(output,
+                    StandardCharsets.UTF_8), 1 << 16));
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        } finally {
+            if (output != System.out) {
+                try {
+                    output.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Print the usage for the command.
+     */
+    private void printUsage() {
+        System.err.println("Usage: loggenerator [--type LOGCAT|KERNEL_LOG|MONKEY_LOG|" +
+                "SMART_MONKEY_LOG|BUGREPORT] [--size SIZE] [--seed SEED] [--output FILE] " +
+                "[--logcat-format THREADTIME|TIME] [--anr-rate RATE] [--java-crash-rate RATE] " +
+                "[--native-crash-rate RATE] [--selinux-denial-rate RATE] " +
+                "[--kernel-error-rate RATE] [--kernel-reset-rate RATE] [--pid-churn RATE] " +
+                "[--processes COUNT] [--tags COUNT]");
+    }
+
+    /**
+     * Run the LogGenerator from the command line.
+     */
+    public static void main(String[] args) {
+        new LogGenerator().run(args);
+    }
+}
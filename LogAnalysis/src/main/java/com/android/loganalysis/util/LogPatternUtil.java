@@ -15,8 +15,13 @@
  */
 package com.android.loganalysis.util;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -26,9 +31,21 @@ import java.util.regex.Pattern;
  * This is used to match a message against a set of patterns, and optionally, an extra object. If
  * the message is matched, a category will be returned. This means that a single object can be used
  * to match many different categories.
+ * </p><p>
+ * Patterns are checked in the order they were added, and the category of the first match is
+ * returned. Rather than trying each pattern in turn, the patterns are compiled on first use into
+ * one combined pattern per leading character: a pattern which starts with a literal character is
+ * only tried on messages starting with that character, so a message is checked with a single
+ * match call against the patterns which could match it. Patterns with flags, named groups or back
+ * references cannot be combined and are tried on their own, in order. Once compiled, messages can
+ * be checked from several threads at once.
+ * </p>
  */
 public class LogPatternUtil {
 
+    /** The leading character of a pattern which can match messages starting with anything. */
+    private static final int ANY = -1;
+
     /**
      * A class used to store pattern, extras, and category.
      */
@@ -36,6 +53,8 @@ public class LogPatternUtil {
         public Pattern mPattern;
         public Object mExtras;
         public String mCategory;
+        /** The counters of the pattern, or null if they are not collected. */
+        public ParseStats.RuleStats mStats = null;
 
         /**
          * Constructor for {@link PatternInfo}
@@ -50,9 +69,124 @@ public class LogPatternUtil {
             mExtras = extras;
             mCategory = category;
         }
+
+        /**
+         * Returns true if the extras of a message match the extras of the pattern.
+         */
+        public boolean matchesExtras(Object extras) {
+            // Treat a null mExtras as a wildcard.
+            return mExtras == null || mExtras.equals(extras);
+        }
     }
 
-    private Set<PatternInfo> mPatterns = new HashSet<PatternInfo>();
+    /**
+     * A run of consecutive patterns which are tried with one combined {@link Pattern}, or a single
+     * pattern which cannot be combined.
+     */
+    private class Segment {
+        private final List<PatternInfo> mInfos;
+        private final Pattern mCombined;
+        private final int[] mGroups;
+        /** Whether the patterns of the segment have counters. */
+        private final boolean mCounted;
+
+        /**
+         * Constructor for {@link Segment}.
+         *
+         * @param infos the patterns of the segment, in order.
+         */
+        public Segment(List<PatternInfo> infos) {
+            mInfos = infos;
+            mCounted = infos.get(0).mStats != null;
+            if (infos.size() == 1) {
+                mCombined = infos.get(0).mPattern;
+                mGroups = null;
+                return;
+            }
+            // Wrap each pattern in a group, and remember the group number of each one.
+            StringBuilder combined = new StringBuilder();
+            mGroups = new int[infos.size()];
+            int group = 1;
+            for (int i = 0; i < infos.size(); i++) {
+                Pattern pattern = infos.get(i).mPattern;
+                combined.append(i == 0 ? "(" : "|(").append(pattern.pattern()).append(')');
+                mGroups[i] = group;
+                group += pattern.matcher("").groupCount() + 1;
+            }
+            mCombined = Pattern.compile(combined.toString());
+        }
+
+        /**
+         * Get the first pattern in the segment which matches the message and extras.
+         *
+         * @return the {@link PatternInfo}, or null if there is no match.
+         */
+        public PatternInfo match(String message, Object extras) {
+            Matcher m = mCombined.matcher(message);
+            if (!m.matches()) {
+                return count(null, mInfos.size());
+            }
+            int first = 0;
+            if (mGroups != null) {
+                while (m.start(mGroups[first]) == -1) {
+                    first++;
+                }
+            }
+            if (mInfos.get(first).matchesExtras(extras)) {
+                return count(mInfos.get(first), first + 1);
+            }
+            // The first match has other extras, so try the rest of the patterns one at a time.
+            for (int i = first + 1; i < mInfos.size(); i++) {
+                PatternInfo info = mInfos.get(i);
+                if (info.matchesExtras(extras) && info.mPattern.matcher(message).matches()) {
+                    return count(info, i + 1);
+                }
+            }
+            return count(null, mInfos.size());
+        }
+
+        /**
+         * Count an evaluation of the first patterns of the segment, which the message was checked
+         * against, and a hit of the pattern which matched, if the patterns have counters.
+         *
+         * @param hit the pattern which matched, or null if there is no match.
+         * @param evaluated the number of patterns which were evaluated.
+         * @return the pattern which matched.
+         */
+        private PatternInfo count(PatternInfo hit, int evaluated) {
+            if (mCounted) {
+                for (int i = 0; i < evaluated; i++) {
+                    mInfos.get(i).mStats.add(mInfos.get(i) == hit);
+                }
+            }
+            return hit;
+        }
+    }
+
+    /**
+     * The patterns compiled into segments. Once built it is not changed, so it can be read by
+     * several threads without locking.
+     */
+    private class Compiled {
+        /** The segments to try for each leading character. */
+        private final Map<Character, List<Segment>> mSegments;
+        /** The segments to try for messages whose leading character has no patterns of its own. */
+        private final List<Segment> mDefaultSegments;
+
+        /**
+         * Constructor for {@link Compiled}.
+         */
+        public Compiled(Map<Character, List<Segment>> segments, List<Segment> defaultSegments) {
+            mSegments = segments;
+            mDefaultSegments = defaultSegments;
+        }
+    }
+
+    private List<PatternInfo> mPatterns = new ArrayList<PatternInfo>();
+    /** The compiled patterns, or null if they need to be compiled. */
+    private volatile Compiled mCompiled = null;
+    private ParseStats mStats = null;
+    private String mStatsGroup = null;
 
     /**
      * Add a pattern to this list of patterns to match against.
@@ -72,8 +206,55 @@ public class LogPatternUtil {
      * be treated as wildcard
      * @param category the category to return if there is a match.
      */
-    public void addPattern(Pattern pattern, Object extras, String category) {
-        mPatterns.add(new PatternInfo(pattern, extras, category));
+    public synchronized void addPattern(Pattern pattern, Object extras, String category) {
+        PatternInfo info = new PatternInfo(pattern, extras, category);
+        if (mStats != null) {
+            info.mStats = mStats.getRule(mStatsGroup, pattern.pattern());
+        }
+        mPatterns.add(info);
+        mCompiled = null;
+    }
+
+    /**
+     * Collect how often each pattern is evaluated and matched, as the rules of a group. This must
+     * be called before messages are checked from several threads.
+     *
+     * @param stats the {@link ParseStats}, or null to stop collecting.
+     * @param group the group of the rules in the {@link ParseStats}.
+     */
+    public synchronized void setStats(ParseStats stats, String group) {
+        mStats = stats;
+        mStatsGroup = group;
+        for (PatternInfo info : mPatterns) {
+            info.mStats = stats != null ? stats.getRule(group, info.mPattern.pattern()) : null;
+        }
+        mCompiled = null;
+    }
+
+    /**
+     * Get a digest of the patterns, with their flags, extras and categories, in the order they
+     * were added. Two sets of patterns with the same digest give the same category to every
+     * message, as long as the extras have a {@link Object#toString()} which identifies them.
+     *
+     * @return The SHA-1 digest of the patterns as a hex string.
+     */
+    public synchronized String getDigest() {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        for (PatternInfo info : mPatterns) {
+            final String rule = String.format("%s\0%d\0%s\0%s\0", info.mPattern.pattern(),
+                    info.mPattern.flags(), info.mExtras, info.mCategory);
+            digest.update(rule.getBytes(StandardCharsets.UTF_8));
+        }
+        StringBuilder hex = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
     }
 
     /**
@@ -94,16 +275,170 @@ public class LogPatternUtil {
      * @return The category of the match.
      */
     public String checkMessage(String message, Object extras) {
-        for (PatternInfo patternInfo : mPatterns) {
-            Matcher m = patternInfo.mPattern.matcher(message);
-
-            // Return the category if the pattern matches and the extras are equal. Treat a null
-            // patternInfo.mExtras as a wildcard.
-            if (m.matches() &&
-                    (patternInfo.mExtras == null || patternInfo.mExtras.equals(extras))) {
-                return patternInfo.mCategory;
+        for (Segment segment : getSegments(message)) {
+            PatternInfo info = segment.match(message, extras);
+            if (info != null) {
+                return info.mCategory;
             }
         }
         return null;
     }
+
+    /**
+     * Get the segments to try for a message, compiling them if the patterns have changed.
+     */
+    private List<Segment> getSegments(String message) {
+        Compiled compiled = mCompiled;
+        if (compiled == null) {
+            compiled = compile();
+        }
+        if (!message.isEmpty()) {
+            List<Segment> segments = compiled.mSegments.get(message.charAt(0));
+            if (segments != null) {
+                return segments;
+            }
+        }
+        return compiled.mDefaultSegments;
+    }
+
+    /**
+     * Compile the patterns into segments for each leading character.
+     */
+    private synchronized Compiled compile() {
+        if (mCompiled != null) {
+            return mCompiled;
+        }
+        Map<Character, List<PatternInfo>> byFirst = new HashMap<Character, List<PatternInfo>>();
+        List<PatternInfo> any = new ArrayList<PatternInfo>();
+        for (PatternInfo info : mPatterns) {
+            final int first = getLeadingChar(info.mPattern);
+            if (first == ANY) {
+                any.add(info);
+                // Patterns which match anything are tried for every leading character.
+                for (List<PatternInfo> infos : byFirst.values()) {
+                    infos.add(info);
+                }
+            } else {
+                List<PatternInfo> infos = byFirst.get((char) first);
+                if (infos == null) {
+                    infos = new ArrayList<PatternInfo>(any);
+                    byFirst.put((char) first, infos);
+                }
+                infos.add(info);
+            }
+        }
+
+        Map<Character, List<Segment>> segments = new HashMap<Character, List<Segment>>();
+        for (Map.Entry<Character, List<PatternInfo>> entry : byFirst.entrySet()) {
+            segments.put(entry.getKey(), getSegments(entry.getValue()));
+        }
+        mCompiled = new Compiled(segments, getSegments(any));
+        return mCompiled;
+    }
+
+    /**
+     * Split a list of patterns into segments of patterns which can be combined.
+     */
+    private List<Segment> getSegments(List<PatternInfo> infos) {
+        List<Segment> segments = new ArrayList<Segment>();
+        List<PatternInfo> run = new ArrayList<PatternInfo>();
+        for (PatternInfo info : infos) {
+            if (isCombinable(info.mPattern)) {
+                run.add(info);
+                continue;
+            }
+            if (!run.isEmpty()) {
+                segments.add(new Segment(run));
+                run = new ArrayList<PatternInfo>();
+            }
+            List<PatternInfo> single = new ArrayList<PatternInfo>(1);
+            single.add(info);
+            segments.add(new Segment(single));
+        }
+        if (!run.isEmpty()) {
+            segments.add(new Segment(run));
+        }
+        return segments;
+    }
+
+    /**
+     * Returns true if a pattern can be wrapped in a group and combined with others without
+     * changing what it matches: it has no flags, no named groups and no back references.
+     */
+    static boolean isCombinable(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return false;
+        }
+        final String regex = pattern.pattern();
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\' && i + 1 < regex.length()) {
+                final char next = regex.charAt(++i);
+                if (next == 'k' || (next >= '1' && next <= '9')) {
+                    return false;
+                }
+            } else if (c == '(' && regex.startsWith("(?<", i) && i + 3 < regex.length()
+                    && regex.charAt(i + 3) != '=' && regex.charAt(i + 3) != '!') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the literal character that every message matched by a pattern starts with.
+     *
+     * @return the character, or {@link #ANY} if the pattern can match messages starting with
+     * different characters.
+     */
+    static int getLeadingChar(Pattern pattern) {
+        if (pattern.flags() != 0) {
+            return ANY;
+        }
+        final String regex = pattern.pattern();
+        int i = regex.startsWith("^") ? 1 : 0;
+        if (i >= regex.length() || hasTopLevelAlternation(regex)) {
+            return ANY;
+        }
+        char c = regex.charAt(i++);
+        if (c == '\\') {
+            if (i >= regex.length() || Character.isLetterOrDigit(regex.charAt(i))) {
+                // A character class such as \d, or a quote such as \Q.
+                return ANY;
+            }
+            c = regex.charAt(i++);
+        } else if (".[](){}*+?^$|".indexOf(c) >= 0) {
+            return ANY;
+        }
+        // The character must not be optional.
+        if (i < regex.length() && "?*{".indexOf(regex.charAt(i)) >= 0) {
+            return ANY;
+        }
+        return c;
+    }
+
+    /**
+     * Returns true if a regular expression has an alternation outside of any group.
+     */
+    private static boolean hasTopLevelAlternation(String regex) {
+        int depth = 0;
+        boolean inClass = false;
+        for (int i = 0; i < regex.length(); i++) {
+            final char c = regex.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = c != ']';
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                return true;
+            }
+        }
+        return false;
+    }
 }
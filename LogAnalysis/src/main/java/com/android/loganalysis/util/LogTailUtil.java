@@ -15,6 +15,10 @@
  */
 package com.android.loganalysis.util;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.ListIterator;
@@ -29,6 +33,9 @@ import java.util.ListIterator;
  * </p>
  */
 public class LogTailUtil {
+    /** The default number of lines in the ring buffer. */
+    public static final int DEFAULT_MAX_BUFFER_SIZE = 500;
+
     private LinkedList<LogLine> mRingBuffer = new LinkedList<LogLine>();
     private int mMaxBufferSize;
     private int mLastTailSize;
@@ -51,7 +58,7 @@ public class LogTailUtil {
      * Constructor for {@link LogTailUtil} with the default arguments.
      */
     public LogTailUtil() {
-        this(500, 15, 15);
+        this(DEFAULT_MAX_BUFFER_SIZE, 15, 15);
     }
 
     /**
@@ -80,6 +87,36 @@ public class LogTailUtil {
         }
     }
 
+    /**
+     * Write the lines in the ring buffer and their ids, such as for a checkpoint of a parse.
+     */
+    public void write(DataOutput output) throws IOException {
+        output.writeInt(mRingBuffer.size());
+        for (LogLine line : mRingBuffer) {
+            output.writeBoolean(line.mId != null);
+            if (line.mId != null) {
+                output.writeInt(line.mId);
+            }
+            final byte[] bytes = line.mLine.getBytes(StandardCharsets.UTF_8);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    /**
+     * Replace the lines in the ring buffer with lines written by {@link #write(DataOutput)}.
+     */
+    public void read(DataInput input) throws IOException {
+        mRingBuffer.clear();
+        final int size = input.readInt();
+        for (int i = 0; i < size; i++) {
+            final Integer id = input.readBoolean() ? input.readInt() : null;
+            final byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            addLine(id, new String(bytes, StandardCharsets.UTF_8));
+        }
+    }
+
     /**
      * Get the last lines of the log.
      *
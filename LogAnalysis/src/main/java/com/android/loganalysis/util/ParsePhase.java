@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.List;
+
+/**
+ * A phase of a parse, such as a section of a bugreport or the serialization of an item, which is
+ * recorded as a JDK Flight Recorder event with its line and byte counts.
+ * <p>
+ * A phase is started with {@link #begin(Kind)} and finished with one of the {@code end} methods.
+ * The events are only committed when they are enabled in a recording, such as one started with
+ * {@code -XX:StartFlightRecording}, and the counts are only computed then. If the JVM has no
+ * Flight Recorder, phases do nothing, and the event classes are never loaded.
+ * </p><p>
+ * The event types are named {@code com.android.loganalysis.<Kind>}, such as
+ * {@code com.android.loganalysis.Section}, and each has the {@code parser}, {@code name},
+ * {@code lines} and {@code bytes} of the phase.
+ * </p>
+ */
+public abstract class ParsePhase {
+
+    /**
+     * The kinds of phases, each recorded as its own event type.
+     */
+    public enum Kind {
+        /** A section of a log, parsed by a section parser. */
+        SECTION,
+        /** A block of logcat lines, such as an ANR or a crash, turned into an event. */
+        LOGCAT_BLOCK,
+        /** An invocation of a parser for part of a log, such as the lines of an ANR. */
+        SUB_PARSER,
+        /** The serialization of an item to JSON. */
+        SERIALIZATION;
+    }
+
+    /** The phase returned when the JVM has no Flight Recorder. */
+    private static final ParsePhase NONE = new ParsePhase() {
+        @Override
+        public void end(String parser, String name, long lines, long bytes) {
+        }
+
+        @Override
+        public void end(String parser, String name, List<String> lines) {
+        }
+    };
+
+    private static final boolean AVAILABLE = isFlightRecorderAvailable();
+
+    /**
+     * Start a phase.
+     *
+     * @param kind the {@link Kind} of phase.
+     * @return The {@link ParsePhase}, which must be ended on the same thread.
+     */
+    public static ParsePhase begin(Kind kind) {
+        return AVAILABLE ? JfrParsePhase.start(kind) : NONE;
+    }
+
+    /**
+     * Returns true if the JVM has the Flight Recorder, so that phases can be recorded.
+     */
+    public static boolean isAvailable() {
+        return AVAILABLE;
+    }
+
+    /**
+     * End the phase, and commit its event if it is enabled.
+     *
+     * @param parser the name of the parser, or null.
+     * @param name the name of the section, block or item, or null.
+     * @param lines the number of lines.
+     * @param bytes the size in bytes.
+     */
+    public abstract void end(String parser, String name, long lines, long bytes);
+
+    /**
+     * End the phase, and commit its event with the counts of some lines if it is enabled.
+     *
+     * @param parser the name of the parser, or null.
+     * @param name the name of the section, block or item, or null.
+     * @param lines the lines of the phase.
+     * @see ParseStats#getBytes(List)
+     */
+    public abstract void end(String parser, String name, List<String> lines);
+
+    /**
+     * Returns true if the Flight Recorder event API is on the class path.
+     */
+    private static boolean isFlightRecorderAvailable() {
+        try {
+            Class.forName("jdk.jfr.Event", false, ParsePhase.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        } catch (LinkageError e) {
+            return false;
+        }
+    }
+}
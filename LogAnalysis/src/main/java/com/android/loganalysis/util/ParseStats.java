@@ -0,0 +1,358 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters of the work done by the parsers: the lines, bytes, time and events of each parser and
+ * of each section of a log, and how often each rule was evaluated and matched.
+ * <p>
+ * Parsers only collect counters once a {@link ParseStats} is set on them, such as with
+ * {@code setStats(ParseStats)}; otherwise the cost is a null check per parse or per rule. The
+ * counters can be updated from several threads at once, so one {@link ParseStats} can be shared
+ * by all the parsers of a batch or of a server, and read at any time with {@link #toJson()}.
+ * </p><p>
+ * The bytes of a log are counted as the characters of its lines, including the line ends, which
+ * is the size in bytes for ASCII logs. The CPU time is the time of the parsing threads, if the
+ * JVM can measure it.
+ * </p>
+ */
+public class ParseStats {
+    public static final String PARSERS = "PARSERS";
+    public static final String SECTIONS = "SECTIONS";
+    public static final String RULES = "RULES";
+    public static final String PARSES = "PARSES";
+    public static final String LINES = "LINES";
+    public static final String BYTES = "BYTES";
+    public static final String WALL_MS = "WALL_MS";
+    public static final String CPU_MS = "CPU_MS";
+    public static final String EVENTS = "EVENTS";
+    public static final String PEAK_BUFFERED_LINES = "PEAK_BUFFERED_LINES";
+    public static final String EVALUATIONS = "EVALUATIONS";
+    public static final String HITS = "HITS";
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The counters of a parser, or of a section of a log.
+     */
+    public static class ParserStats {
+        private final LongAdder mParses = new LongAdder();
+        private final LongAdder mLines = new LongAdder();
+        private final LongAdder mBytes = new LongAdder();
+        private final LongAdder mWallNanos = new LongAdder();
+        private final LongAdder mCpuNanos = new LongAdder();
+        private final LongAdder mEvents = new LongAdder();
+        private final AtomicLong mPeakBufferedLines = new AtomicLong();
+
+        /**
+         * Add a parse.
+         *
+         * @param timer the {@link Timer} started when the parse started.
+         * @param lines the number of lines parsed.
+         * @param bytes the size of the lines parsed.
+         * @param events the number of events found, such as the ANRs and crashes of a logcat or
+         * the sections of a bugreport.
+         */
+        public void add(Timer timer, long lines, long bytes, long events) {
+            mParses.increment();
+            mLines.add(lines);
+            mBytes.add(bytes);
+            mWallNanos.add(timer.getWallNanos());
+            mCpuNanos.add(timer.getCpuNanos());
+            mEvents.add(events);
+        }
+
+        /**
+         * Add CPU time spent on another thread, such as a thread which parses part of a log.
+         */
+        public void addCpuNanos(long nanos) {
+            mCpuNanos.add(nanos);
+        }
+
+        /**
+         * Update the peak number of lines which were buffered at once.
+         */
+        public void updatePeakBufferedLines(long lines) {
+            long peak = mPeakBufferedLines.get();
+            while (lines > peak && !mPeakBufferedLines.compareAndSet(peak, lines)) {
+                peak = mPeakBufferedLines.get();
+            }
+        }
+
+        /**
+         * Get the number of parses.
+         */
+        public long getParses() {
+            return mParses.sum();
+        }
+
+        /**
+         * Get the number of lines parsed.
+         */
+        public long getLines() {
+            return mLines.sum();
+        }
+
+        /**
+         * Get the size of the lines parsed.
+         */
+        public long getBytes() {
+            return mBytes.sum();
+        }
+
+        /**
+         * Get the wall time of the parses, in nanoseconds.
+         */
+        public long getWallNanos() {
+            return mWallNanos.sum();
+        }
+
+        /**
+         * Get the CPU time of the parses, in nanoseconds.
+         */
+        public long getCpuNanos() {
+            return mCpuNanos.sum();
+        }
+
+        /**
+         * Get the number of events found.
+         */
+        public long getEvents() {
+            return mEvents.sum();
+        }
+
+        /**
+         * Get the peak number of lines which were buffered at once.
+         */
+        public long getPeakBufferedLines() {
+            return mPeakBufferedLines.get();
+        }
+
+        /**
+         * Get the counters as a JSON object.
+         */
+        public JSONObject toJson() {
+            JSONObject output = new JSONObject();
+            try {
+                output.put(PARSES, getParses());
+                output.put(LINES, getLines());
+                output.put(BYTES, getBytes());
+                output.put(WALL_MS, TimeUnit.NANOSECONDS.toMillis(getWallNanos()));
+                output.put(CPU_MS, TimeUnit.NANOSECONDS.toMillis(getCpuNanos()));
+                output.put(EVENTS, getEvents());
+                output.put(PEAK_BUFFERED_LINES, getPeakBufferedLines());
+            } catch (JSONException e) {
+                // Ignore
+            }
+            return output;
+        }
+    }
+
+    /**
+     * The counters of a rule: a pattern which lines or messages are matched against.
+     */
+    public static class RuleStats {
+        private final LongAdder mEvaluations = new LongAdder();
+        private final LongAdder mHits = new LongAdder();
+
+        /**
+         * Add an evaluation of the rule.
+         *
+         * @param hit whether the rule matched.
+         */
+        public void add(boolean hit) {
+            mEvaluations.increment();
+            if (hit) {
+                mHits.increment();
+            }
+        }
+
+        /**
+         * Get the number of times the rule was evaluated.
+         */
+        public long getEvaluations() {
+            return mEvaluations.sum();
+        }
+
+        /**
+         * Get the number of times the rule matched.
+         */
+        public long getHits() {
+            return mHits.sum();
+        }
+
+        /**
+         * Get the counters as a JSON object.
+         */
+        public JSONObject toJson() {
+            JSONObject output = new JSONObject();
+            try {
+                output.put(EVALUATIONS, getEvaluations());
+                output.put(HITS, getHits());
+            } catch (JSONException e) {
+                // Ignore
+            }
+            return output;
+        }
+    }
+
+    /**
+     * Measures the wall and CPU time of the current thread since it was created.
+     */
+    public static class Timer {
+        private final long mWallStart = System.nanoTime();
+        private final long mCpuStart = getCpuTime();
+
+        /**
+         * Get the wall time since the timer was created, in nanoseconds.
+         */
+        public long getWallNanos() {
+            return System.nanoTime() - mWallStart;
+        }
+
+        /**
+         * Get the CPU time of the current thread since the timer was created, in nanoseconds.
+         */
+        public long getCpuNanos() {
+            return getCpuTime() - mCpuStart;
+        }
+    }
+
+    private final ConcurrentMap<String, ParserStats> mParsers =
+            new ConcurrentHashMap<String, ParserStats>();
+    private final ConcurrentMap<String, ParserStats> mSections =
+            new ConcurrentHashMap<String, ParserStats>();
+    private final ConcurrentMap<String, ConcurrentMap<String, RuleStats>> mRules =
+            new ConcurrentHashMap<String, ConcurrentMap<String, RuleStats>>();
+
+    /**
+     * Get the counters of a parser, creating them if needed.
+     *
+     * @param name the name of the parser, such as its class name.
+     */
+    public ParserStats getParser(String name) {
+        return getStats(mParsers, name);
+    }
+
+    /**
+     * Get the counters of a section of a log, creating them if needed.
+     *
+     * @param name the name of the section, such as its header without the dashes.
+     */
+    public ParserStats getSection(String name) {
+        return getStats(mSections, name);
+    }
+
+    /**
+     * Get the counters of a rule, creating them if needed.
+     *
+     * @param group the group of the rule, such as the name of the parser which uses it.
+     * @param rule the rule, such as its regular expression.
+     */
+    public RuleStats getRule(String group, String rule) {
+        ConcurrentMap<String, RuleStats> rules = mRules.get(group);
+        if (rules == null) {
+            mRules.putIfAbsent(group, new ConcurrentHashMap<String, RuleStats>());
+            rules = mRules.get(group);
+        }
+        RuleStats stats = rules.get(rule);
+        if (stats == null) {
+            rules.putIfAbsent(rule, new RuleStats());
+            stats = rules.get(rule);
+        }
+        return stats;
+    }
+
+    /**
+     * Get all the counters as a JSON object, with the {@link #PARSERS}, {@link #SECTIONS} and
+     * {@link #RULES} by name.
+     */
+    public JSONObject toJson() {
+        JSONObject output = new JSONObject();
+        try {
+            JSONObject parsers = new JSONObject();
+            for (Map.Entry<String, ParserStats> entry : mParsers.entrySet()) {
+                parsers.put(entry.getKey(), entry.getValue().toJson());
+            }
+            output.put(PARSERS, parsers);
+
+            JSONObject sections = new JSONObject();
+            for (Map.Entry<String, ParserStats> entry : mSections.entrySet()) {
+                sections.put(entry.getKey(), entry.getValue().toJson());
+            }
+            output.put(SECTIONS, sections);
+
+            JSONObject groups = new JSONObject();
+            for (Map.Entry<String, ConcurrentMap<String, RuleStats>> group : mRules.entrySet()) {
+                JSONObject rules = new JSONObject();
+                for (Map.Entry<String, RuleStats> entry : group.getValue().entrySet()) {
+                    rules.put(entry.getKey(), entry.getValue().toJson());
+                }
+                groups.put(group.getKey(), rules);
+            }
+            output.put(RULES, groups);
+        } catch (JSONException e) {
+            // Ignore
+        }
+        return output;
+    }
+
+    /**
+     * Get the size of lines, counting a line end for each line.
+     */
+    public static long getBytes(List<String> lines) {
+        long bytes = 0;
+        for (String line : lines) {
+            bytes += line.length() + 1;
+        }
+        return bytes;
+    }
+
+    /**
+     * Get the CPU time of the current thread in nanoseconds, or 0 if it cannot be measured.
+     */
+    public static long getCpuTime() {
+        if (!THREADS.isCurrentThreadCpuTimeSupported()) {
+            return 0;
+        }
+        return Math.max(0, THREADS.getCurrentThreadCpuTime());
+    }
+
+    /**
+     * Get the counters of a name from a map, creating them if needed.
+     */
+    private static ParserStats getStats(ConcurrentMap<String, ParserStats> map, String name) {
+        ParserStats stats = map.get(name);
+        if (stats == null) {
+            map.putIfAbsent(name, new ParserStats());
+            stats = map.get(name);
+        }
+        return stats;
+    }
+}
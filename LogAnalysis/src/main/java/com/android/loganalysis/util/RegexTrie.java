@@ -62,6 +62,8 @@ public class RegexTrie<V> {
      */
     static class CompPattern {
         protected final Pattern mPattern;
+        /** The counters of the pattern, or null if they are not collected. */
+        ParseStats.RuleStats mStats = null;
 
         CompPattern(Pattern pattern) {
             if (pattern == null) {
@@ -209,7 +211,11 @@ public class RegexTrie<V> {
                 }
 
                 Matcher matcher = pattern.matcher(curKey);
-                if (matcher.matches()) {
+                final boolean matches = matcher.matches();
+                if (pattern.mStats != null) {
+                    pattern.mStats.add(matches);
+                }
+                if (matches) {
                     if (captures != null) {
                         List<String> curCaptures = new ArrayList<String>(matcher.groupCount());
                         for (int i = 0; i < matcher.groupCount(); i++) {
@@ -277,6 +283,25 @@ public class RegexTrie<V> {
         return recursiveRetrieve(captures, sList);
     }
 
+    /**
+     * Collect how often each pattern in the trie is evaluated and matched, as the rules of a
+     * group. The patterns must already be in the trie, and this must be called before the trie
+     * is shared between threads.
+     *
+     * @param stats the {@link ParseStats}, or null to stop collecting.
+     * @param group the group of the rules in the {@link ParseStats}.
+     */
+    public void setStats(ParseStats stats, String group) {
+        for (Map.Entry<CompPattern, RegexTrie<V>> child : mChildren.entrySet()) {
+            CompPattern pattern = child.getKey();
+            if (pattern != null) {
+                pattern.mStats = stats != null
+                        ? stats.getRule(group, pattern.mPattern.pattern()) : null;
+            }
+            child.getValue().setStats(stats, group);
+        }
+    }
+
     private V getValue() {
         return mValue;
     }
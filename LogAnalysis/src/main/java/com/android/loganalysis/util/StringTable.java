@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A table of distinct strings, which interns repeated strings in one of two ways.
+ * <p>
+ * {@link #intern(String)} assigns a dense integer id to each distinct string, so that items can
+ * store ids instead of strings, and values which repeat across many items, such as library paths
+ * and symbols, are stored and compared once. {@link #share(String)} returns a single shared
+ * instance for equal strings, such as the frames of a traces file, and stops adding strings once
+ * the table holds its maximum number of entries, so it cannot grow without bound on a log with
+ * few repeats. Ids are always assigned, since items refer to their strings by id, so a table which
+ * is used for ids should be scoped to a parse or a batch. A table can be shared by parsers running
+ * on several threads.
+ * </p>
+ */
+public class StringTable {
+    /** The id returned for a string which is not in the table. */
+    public static final int NOT_FOUND = -1;
+    /** The default maximum number of strings added by {@link #share(String)}. */
+    public static final int DEFAULT_MAX_SIZE = 100000;
+
+    private final Map<String, Integer> mIds = new HashMap<String, Integer>();
+    private final List<String> mStrings = new ArrayList<String>();
+    private final int mMaxSize;
+
+    /**
+     * Constructor for {@link StringTable} with the default maximum size.
+     */
+    public StringTable() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * Constructor for {@link StringTable}.
+     *
+     * @param maxSize the maximum number of strings which {@link #share(String)} adds to the table.
+     */
+    public StringTable(int maxSize) {
+        mMaxSize = maxSize;
+    }
+
+    /**
+     * Get the id of a string, adding it to the table if it is not already there.
+     */
+    public synchronized int intern(String value) {
+        Integer id = mIds.get(value);
+        if (id == null) {
+            id = mStrings.size();
+            mIds.put(value, id);
+            mStrings.add(value);
+        }
+        return id;
+    }
+
+    /**
+     * Get the shared instance of a string, adding it to the table if there is room.
+     *
+     * @return the shared instance, or the string itself if it is not in the table.
+     */
+    public synchronized String share(String value) {
+        if (value == null) {
+            return null;
+        }
+        Integer id = mIds.get(value);
+        if (id != null) {
+            return mStrings.get(id);
+        }
+        if (mStrings.size() < mMaxSize) {
+            mIds.put(value, mStrings.size());
+            mStrings.add(value);
+        }
+        return value;
+    }
+
+    /**
+     * Get the id of a string, or {@link #NOT_FOUND} if it is not in the table.
+     */
+    public synchronized int indexOf(String value) {
+        Integer id = mIds.get(value);
+        return id == null ? NOT_FOUND : id;
+    }
+
+    /**
+     * Get the string for an id.
+     */
+    public synchronized String get(int id) {
+        return mStrings.get(id);
+    }
+
+    /**
+     * Get the number of strings in the table.
+     */
+    public synchronized int size() {
+        return mStrings.size();
+    }
+}
@@ -0,0 +1,328 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import java.util.Arrays;
+
+/**
+ * A sorted series of distinct {@code long} timestamps stored with delta encoding.
+ * <p>
+ * Values are grouped in blocks of {@link #BLOCK_SIZE}. The first value of each block is kept as an
+ * absolute anchor and the rest of the block as variable length deltas from the previous value, so
+ * a series of nearby timestamps costs one or two bytes per entry. Lookups binary search the
+ * anchors and then decode at most one block.
+ * </p><p>
+ * Adding a value in order is constant time. Values added out of order are kept in a small sorted
+ * buffer and merged into the encoded series once, by the next read, so a log whose timestamps are
+ * nearly always increasing only rebuilds the series once per batch of late values. As with the
+ * {@code Set<Date>} this replaces, a value which is already in the series is only stored once.
+ * Since reads may merge the buffer, this class is not thread safe.
+ * </p>
+ */
+public class TimeSeries {
+    /** The number of values between absolute anchors. */
+    static final int BLOCK_SIZE = 64;
+
+    private int mSize = 0;
+    private long mLast = 0;
+    private long[] mAnchors = new long[4];
+    private int[] mOffsets = new int[4];
+    private byte[] mDeltas = new byte[16];
+    private int mDeltasLength = 0;
+    /** Values less than {@link #mLast} which are not yet encoded, in increasing order. */
+    private long[] mPending = new long[0];
+    private int mPendingSize = 0;
+
+    /**
+     * Add a value to the series.
+     *
+     * @return true if the value was added, false if it was already in the series.
+     */
+    public boolean add(long value) {
+        if (mSize > 0 && value <= mLast) {
+            if (encodedContains(value)) {
+                return false;
+            }
+            int index = Arrays.binarySearch(mPending, 0, mPendingSize, value);
+            if (index >= 0) {
+                return false;
+            }
+            index = -index - 1;
+            if (mPendingSize == mPending.length) {
+                mPending = Arrays.copyOf(mPending, Math.max(mPendingSize << 1, 4));
+            }
+            System.arraycopy(mPending, index, mPending, index + 1, mPendingSize - index);
+            mPending[index] = value;
+            mPendingSize++;
+            return true;
+        }
+        append(value);
+        return true;
+    }
+
+    /**
+     * Get the number of values in the series.
+     */
+    public int size() {
+        return mSize + mPendingSize;
+    }
+
+    /**
+     * Get the value at the given index, in increasing order.
+     */
+    public long get(int index) {
+        merge();
+        if (index < 0 || index >= mSize) {
+            throw new IndexOutOfBoundsException(String.format("Index %d, size %d", index, mSize));
+        }
+        long[] value = new long[1];
+        decode(index, value);
+        return value[0];
+    }
+
+    /**
+     * Returns true if the value is in the series.
+     */
+    public boolean contains(long value) {
+        merge();
+        return encodedContains(value);
+    }
+
+    /**
+     * Get the index of the first value which is greater than or equal to {@code value}, or
+     * {@link #size()} if there is none.
+     */
+    public int lowerBound(long value) {
+        merge();
+        return encodedLowerBound(value);
+    }
+
+    /**
+     * Count the values in the range {@code [start, end)}.
+     */
+    public int count(long start, long end) {
+        if (end <= start) {
+            return 0;
+        }
+        return lowerBound(end) - lowerBound(start);
+    }
+
+    /**
+     * Get the values in the range {@code [start, end)}.
+     */
+    public long[] range(long start, long end) {
+        if (end <= start) {
+            return new long[0];
+        }
+        final int from = lowerBound(start);
+        long[] values = new long[lowerBound(end) - from];
+        decode(from, values);
+        return values;
+    }
+
+    /**
+     * Count the values in consecutive buckets of equal width.
+     *
+     * @param origin the start of the first bucket.
+     * @param width the width of each bucket. Must be positive.
+     * @param buckets the number of buckets.
+     * @return an array with the number of values in each bucket.
+     */
+    public int[] countBuckets(long origin, long width, int buckets) {
+        if (width <= 0) {
+            throw new IllegalArgumentException("Bucket width must be positive");
+        }
+        int[] counts = new int[Math.max(buckets, 0)];
+        int previous = lowerBound(origin);
+        for (int i = 0; i < counts.length; i++) {
+            final int next = lowerBound(origin + (i + 1) * width);
+            counts[i] = next - previous;
+            previous = next;
+        }
+        return counts;
+    }
+
+    /**
+     * Get all values in increasing order.
+     */
+    public long[] toArray() {
+        merge();
+        long[] values = new long[mSize];
+        decode(0, values);
+        return values;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || getClass() != other.getClass()) {
+            return false;
+        }
+        return Arrays.equals(toArray(), ((TimeSeries) other).toArray());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(toArray());
+    }
+
+    /**
+     * Append a value which is greater than the last value in the series.
+     */
+    private void append(long value) {
+        if (mSize % BLOCK_SIZE == 0) {
+            final int block = mSize / BLOCK_SIZE;
+            if (block == mAnchors.length) {
+                mAnchors = Arrays.copyOf(mAnchors, block << 1);
+                mOffsets = Arrays.copyOf(mOffsets, block << 1);
+            }
+            mAnchors[block] = value;
+            mOffsets[block] = mDeltasLength;
+        } else {
+            long delta = value - mLast;
+            if (mDeltasLength + 10 > mDeltas.length) {
+                mDeltas = Arrays.copyOf(mDeltas, Math.max(mDeltas.length << 1, 16));
+            }
+            while ((delta & ~0x7fL) != 0) {
+                mDeltas[mDeltasLength++] = (byte) ((delta & 0x7f) | 0x80);
+                delta >>>= 7;
+            }
+            mDeltas[mDeltasLength++] = (byte) delta;
+        }
+        mLast = value;
+        mSize++;
+    }
+
+    /**
+     * Decode consecutive values, starting at an index of the encoded series. Each block is decoded
+     * once, from the anchor of the block of the first value.
+     */
+    private void decode(int from, long[] values) {
+        if (values.length == 0) {
+            return;
+        }
+        int index = from - from % BLOCK_SIZE;
+        int offset = mOffsets[index / BLOCK_SIZE];
+        long value = 0;
+        for (; index < from + values.length; index++) {
+            if (index % BLOCK_SIZE == 0) {
+                value = mAnchors[index / BLOCK_SIZE];
+            } else {
+                long delta = 0;
+                int shift = 0;
+                byte b;
+                do {
+                    b = mDeltas[offset++];
+                    delta |= (long) (b & 0x7f) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                value += delta;
+            }
+            if (index >= from) {
+                values[index - from] = value;
+            }
+        }
+    }
+
+    /**
+     * Returns true if the value is in the encoded series, ignoring the pending values.
+     */
+    private boolean encodedContains(long value) {
+        final int index = encodedLowerBound(value);
+        if (index >= mSize) {
+            return false;
+        }
+        long[] found = new long[1];
+        decode(index, found);
+        return found[0] == value;
+    }
+
+    /**
+     * Get the index of the first value of the encoded series which is greater than or equal to
+     * {@code value}, ignoring the pending values.
+     */
+    private int encodedLowerBound(long value) {
+        if (mSize == 0) {
+            return 0;
+        }
+        // Find the last block whose anchor is less than the value.
+        int low = 0;
+        int high = (mSize - 1) / BLOCK_SIZE;
+        if (mAnchors[0] >= value) {
+            return 0;
+        }
+        while (low < high) {
+            final int mid = (low + high + 1) >>> 1;
+            if (mAnchors[mid] < value) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        final int end = Math.min(mSize, (low + 1) * BLOCK_SIZE);
+        long current = mAnchors[low];
+        int offset = mOffsets[low];
+        for (int i = low * BLOCK_SIZE + 1; i < end; i++) {
+            long delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = mDeltas[offset++];
+                delta |= (long) (b & 0x7f) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            current += delta;
+            if (current >= value) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Merge the pending values into the encoded series, rebuilding it once.
+     */
+    private void merge() {
+        if (mPendingSize == 0) {
+            return;
+        }
+        long[] values = new long[mSize];
+        decode(0, values);
+        long[] pending = mPending;
+        final int pendingSize = mPendingSize;
+        mPending = new long[0];
+        mPendingSize = 0;
+        mSize = 0;
+        mDeltasLength = 0;
+        int i = 0;
+        int j = 0;
+        while (i < values.length || j < pendingSize) {
+            if (j == pendingSize || (i < values.length && values[i] < pending[j])) {
+                append(values[i++]);
+            } else {
+                append(pending[j++]);
+            }
+        }
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.AnalysisServer.LogType;
+import com.android.loganalysis.item.KernelLogItem;
+import com.android.loganalysis.parser.BugreportParser;
+import com.android.loganalysis.parser.KernelLogParser;
+import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.util.ArrayUtil;
+import junit.framework.TestCase;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link AnalysisServer} and {@link AnalysisClient}.
+ */
+public class AnalysisServerTest extends TestCase {
+    private static final List<String> LOGCAT = Arrays.asList(
+            "04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception",
+            "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)",
+            "04-25 17:17:08.445   312   366 E ActivityManager: ANR in com.android.package",
+            "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut");
+
+    private AnalysisServer mServer = null;
+    private AnalysisClient mClient = null;
+
+    @Override
+    public void setUp() throws Exception {
+        super.setUp();
+        mServer = new AnalysisServer(new BugreportParser(), new LogcatParser("2012"),
+                new KernelLogParser(), 2);
+        mServer.start(0);
+        mClient = new AnalysisClient(mServer.getPort());
+    }
+
+    @Override
+    public void tearDown() throws Exception {
+        mServer.close();
+        mServer.awaitTermination();
+        super.tearDown();
+    }
+
+    /**
+     * Test the health of a running server.
+     */
+    public void testHealth() throws Exception {
+        JSONObject health = mClient.getHealth();
+        assertEquals("OK", health.getString(AnalysisServer.STATUS));
+        assertEquals(2, health.getInt(AnalysisServer.THREADS));
+        assertTrue(health.getLong(AnalysisServer.UPTIME_MS) >= 0);
+    }
+
+    /**
+     * Test that health and metrics are answered while every parse thread is busy and the queue is
+     * full.
+     */
+    public void testHealthWhenBusy() throws Exception {
+        List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            // Streams which send no content keep their thread or queue slot.
+            for (int i = 0; i < 2 + 2 * AnalysisServer.QUEUE_PER_THREAD; i++) {
+                Socket socket = new Socket(InetAddress.getLoopbackAddress(), mServer.getPort());
+                socket.getOutputStream().write(String.format("%s %s %s\n",
+                        AnalysisServer.PARSE, LogType.LOGCAT, AnalysisServer.STREAM)
+                        .getBytes(StandardCharsets.UTF_8));
+                sockets.add(socket);
+            }
+            // The request lines are read in parallel, so wait until the streams fill the queue.
+            final int queued = 2 * AnalysisServer.QUEUE_PER_THREAD;
+            for (int i = 0; i < 100
+                    && mClient.getMetrics().getInt(AnalysisServer.QUEUED) < queued; i++) {
+                Thread.sleep(50);
+            }
+            assertEquals(queued, mClient.getMetrics().getInt(AnalysisServer.QUEUED));
+            assertTrue(new JSONObject(parseStream(LogType.LOGCAT, LOGCAT))
+                    .has(AnalysisServer.ERROR));
+
+            assertEquals("OK", mClient.getHealth().getString(AnalysisServer.STATUS));
+            JSONObject metrics = mClient.getMetrics();
+            assertEquals(1, metrics.getLong(AnalysisServer.REJECTED));
+            assertEquals(2, metrics.getLong(AnalysisServer.ACTIVE));
+        } finally {
+            for (Socket socket : sockets) {
+                LogAnalyzer.close(socket);
+            }
+        }
+    }
+
+    /**
+     * Test that clients which connect and send nothing do not hold up the health of the server.
+     */
+    public void testHealthWithIdleClients() throws Exception {
+        List<Socket> sockets = new ArrayList<Socket>();
+        try {
+            for (int i = 0; i < 4; i++) {
+                sockets.add(new Socket(InetAddress.getLoopbackAddress(), mServer.getPort()));
+            }
+            final long start = System.currentTimeMillis();
+            assertEquals("OK", mClient.getHealth().getString(AnalysisServer.STATUS));
+            assertTrue(System.currentTimeMillis() - start < AnalysisServer.REQUEST_TIMEOUT_MS);
+        } finally {
+            for (Socket socket : sockets) {
+                LogAnalyzer.close(socket);
+            }
+        }
+    }
+
+    /**
+     * Test that streamed content is parsed with the same output as the parser gives.
+     */
+    public void testParseStream() throws Exception {
+        String expected = new LogcatParser("2012").parse(LOGCAT).toJson().toString();
+        for (int i = 0; i < 3; i++) {
+            assertEquals(expected + "\n", parseStream(LogType.LOGCAT, LOGCAT));
+        }
+
+        JSONObject metrics = mClient.getMetrics();
+        assertEquals(3, metrics.getJSONObject(AnalysisServer.PARSED).getLong("LOGCAT"));
+        assertEquals(0, metrics.getLong(AnalysisServer.FAILED));
+    }
+
+    /**
+     * Test that a file is parsed from its path.
+     */
+    public void testParseFile() throws Exception {
+        File file = File.createTempFile("logcat", ".txt");
+        try {
+            FileOutputStream output = new FileOutputStream(file);
+            try {
+                output.write(ArrayUtil.join("\n", LOGCAT).getBytes(StandardCharsets.UTF_8));
+            } finally {
+                output.close();
+            }
+            StringWriter response = new StringWriter();
+            mClient.parseFile(LogType.LOGCAT, file.getPath(), response);
+            assertTrue(new JSONObject(response.toString()).has(AnalysisServer.ERROR));
+
+            mServer.setFileRoot(file.getParentFile());
+            response = new StringWriter();
+            mClient.parseFile(LogType.LOGCAT, file.getPath(), response);
+            String expected = new LogcatParser("2012").parse(LOGCAT).toJson().toString();
+            assertEquals(expected + "\n", response.toString());
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Test that a file outside the file root is not read, even through {@code ..}.
+     */
+    public void testParseFileOutsideRoot() throws Exception {
+        File root = File.createTempFile("root", "");
+        File file = File.createTempFile("logcat", ".txt");
+        try {
+            root.delete();
+            assertTrue(root.mkdir());
+            mServer.setFileRoot(root);
+            for (String path : new String[] {file.getPath(),
+                    new File(root, "../" + file.getName()).getPath(), root.getPath()}) {
+                StringWriter response = new StringWriter();
+                mClient.parseFile(LogType.LOGCAT, path, response);
+                assertTrue(path, new JSONObject(response.toString()).getString(
+                        AnalysisServer.ERROR).contains("outside the file root"));
+            }
+        } finally {
+            file.delete();
+            root.delete();
+        }
+    }
+
+    /**
+     * Test that a parser which fails with an unexpected exception gets an error response, is
+     * counted as failed, and leaves the server running.
+     */
+    public void testParserFailure() throws Exception {
+        AnalysisServer server = new AnalysisServer(new BugreportParser(),
+                new LogcatParser("2012"), new KernelLogParser() {
+                    @Override
+                    public KernelLogItem parse(BufferedReader input) {
+                        throw new ArrayIndexOutOfBoundsException(1);
+                    }
+                }, 1);
+        server.start(0);
+        try {
+            AnalysisClient client = new AnalysisClient(server.getPort());
+            for (int i = 0; i < 2; i++) {
+                StringWriter response = new StringWriter();
+                client.parseStream(LogType.KERNEL_LOG, new ByteArrayInputStream(
+                        "[    0.000000] Start".getBytes(StandardCharsets.UTF_8)), response);
+                assertTrue(new JSONObject(response.toString()).getString(AnalysisServer.ERROR)
+                        .contains("ArrayIndexOutOfBoundsException"));
+            }
+            assertEquals(2, client.getMetrics().getLong(AnalysisServer.FAILED));
+        } finally {
+            server.close();
+            server.awaitTermination();
+        }
+    }
+
+    /**
+     * Test that a traces file is streamed back one thread per line, followed by the deadlocks.
+     */
+    public void testParseTraces() throws Exception {
+        List<String> lines = Arrays.asList(
+                "----- pid 2887 at 2012-05-02 16:43:41 -----",
+                "Cmd line: com.android.package",
+                "",
+                "\"main\" prio=5 tid=1 SUSPENDED",
+                "  at class.method1(Class.java:1)",
+                "",
+                "\"Task_1\" prio=5 tid=27 WAIT",
+                "  at class.method2(Class.java:2)",
+                "",
+                "----- end 2887 -----");
+
+        String[] response = parseStream(LogType.TRACES, lines).split("\n");
+        assertEquals(3, response.length);
+        assertEquals("main", new JSONObject(response[0]).getString("NAME"));
+        assertTrue(new JSONObject(response[2]).has("DEADLOCKS"));
+    }
+
+    /**
+     * Test that invalid requests get an error and are counted as failed.
+     */
+    public void testErrors() throws Exception {
+        StringWriter response = new StringWriter();
+        mClient.parseFile(LogType.LOGCAT, "/does/not/exist", response);
+        assertTrue(new JSONObject(response.toString()).has(AnalysisServer.ERROR));
+        assertEquals(1, mClient.getMetrics().getLong(AnalysisServer.FAILED));
+
+        try {
+            mServer.handleRequest("PARSE UNKNOWN STREAM", null, new PrintWriter(response));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            mServer.handleRequest("PARSE LOGCAT", null, new PrintWriter(response));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Send lines to the server and get the response.
+     */
+    private String parseStream(LogType type, List<String> lines) throws IOException {
+        StringWriter response = new StringWriter();
+        mClient.parseStream(type, new ByteArrayInputStream(
+                ArrayUtil.join("\n", lines).getBytes(StandardCharsets.UTF_8)), response);
+        return response.toString();
+    }
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.util.ParseStats;
+import junit.framework.AssertionFailedError;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Measures the throughput and allocations of a parser and checks them against the baselines in
+ * {@code perf-baselines.json}.
+ * <p>
+ * Each baseline has the expected {@code MB_PER_SECOND} and {@code ALLOCATED_BYTES_PER_LINE} of a
+ * run, and the {@code THROUGHPUT_TOLERANCE} and {@code ALLOCATION_TOLERANCE} which give its
+ * budgets. A run is repeated after warming up, and only fails when its median is worse than a
+ * budget by more than the noise. The noise of the throughput is three times the median absolute
+ * deviation of the throughput of the iterations, relative to the median, or the
+ * {@code NOISE_MARGIN} of the baselines if that is larger. The allocations do not depend on the
+ * machine, so their noise is the {@code NOISE_MARGIN}.
+ * </p><p>
+ * The throughput baselines are for the reference machine of the project. The baselines can be
+ * replaced with the {@code loganalysis.perf.baselines} system property, and the number of
+ * iterations set with {@code loganalysis.perf.warmup} and {@code loganalysis.perf.iterations}.
+ * The results are written as JSON to the file in the {@code loganalysis.perf.report} system
+ * property, if it is set, using the same keys as the baselines so that they can be updated from a
+ * report.
+ * </p>
+ */
+public class PerfBudget {
+    public static final String BASELINES = "perf-baselines.json";
+
+    public static final String NOISE_MARGIN = "NOISE_MARGIN";
+    public static final String MB_PER_SECOND = "MB_PER_SECOND";
+    public static final String ALLOCATED_BYTES_PER_LINE = "ALLOCATED_BYTES_PER_LINE";
+    public static final String THROUGHPUT_TOLERANCE = "THROUGHPUT_TOLERANCE";
+    public static final String ALLOCATION_TOLERANCE = "ALLOCATION_TOLERANCE";
+    public static final String RESULTS = "RESULTS";
+    public static final String LINES = "LINES";
+    public static final String BYTES = "BYTES";
+    public static final String ITERATIONS = "ITERATIONS";
+    public static final String NOISE = "NOISE";
+    public static final String THROUGHPUT_BUDGET = "THROUGHPUT_BUDGET";
+    public static final String ALLOCATION_BUDGET = "ALLOCATION_BUDGET";
+    public static final String FAILURES = "FAILURES";
+
+    private static final int DEFAULT_WARMUP_ITERATIONS = 10;
+    private static final int DEFAULT_ITERATIONS = 5;
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    private static PerfBudget sInstance = null;
+
+    private final JSONObject mBaselines;
+    private final JSONObject mResults = new JSONObject();
+    private final int mWarmupIterations;
+    private final int mIterations;
+    private final File mReport;
+
+    /**
+     * Constructor for {@link PerfBudget}.
+     *
+     * @param baselines the baselines.
+     * @param warmupIterations the number of iterations of each run before it is measured.
+     * @param iterations the number of measured iterations of each run.
+     * @param report the file to write the results to, or null.
+     */
+    public PerfBudget(JSONObject baselines, int warmupIterations, int iterations, File report) {
+        mBaselines = baselines;
+        mWarmupIterations = warmupIterations;
+        mIterations = iterations;
+        mReport = report;
+    }
+
+    /**
+     * Get the {@link PerfBudget} shared by the tests of a run, configured with the system
+     * properties.
+     */
+    public static synchronized PerfBudget getInstance() throws IOException, JSONException {
+        if (sInstance == null) {
+            String path = System.getProperty("loganalysis.perf.baselines");
+            InputStream input = path != null ? new FileInputStream(path)
+                    : PerfBudget.class.getResourceAsStream(BASELINES);
+            if (input == null) {
+                throw new IOException(String.format("Could not find %s", BASELINES));
+            }
+            String report = System.getProperty("loganalysis.perf.report");
+            sInstance = new PerfBudget(new JSONObject(read(input)),
+                    Integer.getInteger("loganalysis.perf.warmup", DEFAULT_WARMUP_ITERATIONS),
+                    Integer.getInteger("loganalysis.perf.iterations", DEFAULT_ITERATIONS),
+                    report != null ? new File(report) : null);
+        }
+        return sInstance;
+    }
+
+    /**
+     * Measure a run and check it against its baseline.
+     *
+     * @param name the name of the baseline.
+     * @param lines the input of the run.
+     * @param run the run, which parses the input.
+     * @throws AssertionFailedError if a budget is exceeded by more than the noise.
+     */
+    public void check(String name, List<String> lines, Runnable run)
+            throws IOException, JSONException {
+        JSONObject baseline = mBaselines.getJSONObject(name);
+        final long bytes = ParseStats.getBytes(lines);
+
+        for (int i = 0; i < mWarmupIterations; i++) {
+            run.run();
+        }
+        double[] throughputs = new double[mIterations];
+        double[] allocations = new double[mIterations];
+        for (int i = 0; i < mIterations; i++) {
+            final long allocatedStart = getAllocatedBytes();
+            final long start = System.nanoTime();
+            run.run();
+            final long nanos = System.nanoTime() - start;
+            final long allocated = getAllocatedBytes() - allocatedStart;
+            throughputs[i] = bytes / BYTES_PER_MB / (nanos / 1e9);
+            allocations[i] = allocatedStart < 0 ? -1 : (double) allocated / lines.size();
+        }
+
+        final double throughput = median(throughputs);
+        final double allocation = median(allocations);
+        final double margin = mBaselines.getDouble(NOISE_MARGIN);
+        final double noise = Math.max(margin, 3 * medianDeviation(throughputs) / throughput);
+        final double throughputBudget = baseline.getDouble(MB_PER_SECOND)
+                * (1 - baseline.getDouble(THROUGHPUT_TOLERANCE));
+        final double allocationBudget = baseline.getDouble(ALLOCATED_BYTES_PER_LINE)
+                * (1 + baseline.getDouble(ALLOCATION_TOLERANCE));
+
+        List<String> failures = new ArrayList<String>();
+        if (throughput < throughputBudget * (1 - noise)) {
+            failures.add(String.format("%s throughput %.1f MB/s is below the budget of %.1f MB/s",
+                    name, throughput, throughputBudget));
+        }
+        if (allocation >= 0 && allocation > allocationBudget * (1 + margin)) {
+            failures.add(String.format(
+                    "%s allocates %.0f bytes per line, above the budget of %.0f bytes per line",
+                    name, allocation, allocationBudget));
+        }
+
+        JSONObject result = new JSONObject();
+        result.put(LINES, lines.size());
+        result.put(BYTES, bytes);
+        result.put(ITERATIONS, mIterations);
+        result.put(MB_PER_SECOND, round(throughput));
+        result.put(ALLOCATED_BYTES_PER_LINE, round(allocation));
+        result.put(NOISE, round(noise));
+        result.put(THROUGHPUT_BUDGET, round(throughputBudget));
+        result.put(ALLOCATION_BUDGET, round(allocationBudget));
+        result.put(FAILURES, failures);
+        addResult(name, result);
+
+        if (!failures.isEmpty()) {
+            throw new AssertionFailedError(failures.toString());
+        }
+    }
+
+    /**
+     * Add a result and write the report, so that it is complete after any test.
+     */
+    private synchronized void addResult(String name, JSONObject result)
+            throws IOException, JSONException {
+        mResults.put(name, result);
+        if (mReport == null) {
+            return;
+        }
+        File dir = mReport.getAbsoluteFile().getParentFile();
+        if (dir != null) {
+            dir.mkdirs();
+        }
+        JSONObject report = new JSONObject();
+        report.put(RESULTS, mResults);
+        Writer writer = new FileWriter(mReport);
+        try {
+            writer.write(report.toString(2));
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * Get the bytes allocated by the current thread, or -1 if the JVM cannot measure them.
+     */
+    private static long getAllocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) {
+            return -1;
+        }
+        com.sun.management.ThreadMXBean sunThreads = (com.sun.management.ThreadMXBean) threads;
+        if (!sunThreads.isThreadAllocatedMemorySupported()
+                || !sunThreads.isThreadAllocatedMemoryEnabled()) {
+            return -1;
+        }
+        return sunThreads.getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    /**
+     * Get the median of some values.
+     */
+    static double median(double[] values) {
+        double[] sorted = Arrays.copyOf(values, values.length);
+        Arrays.sort(sorted);
+        final int middle = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[middle]
+                : (sorted[middle - 1] + sorted[middle]) / 2;
+    }
+
+    /**
+     * Get the median absolute deviation of some values from their median.
+     */
+    static double medianDeviation(double[] values) {
+        final double median = median(values);
+        double[] deviations = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            deviations[i] = Math.abs(values[i] - median);
+        }
+        return median(deviations);
+    }
+
+    /**
+     * Round a value to two decimals for the report.
+     */
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+
+    /**
+     * Read a stream as UTF-8 and close it.
+     */
+    private static String read(InputStream input) throws IOException {
+        Reader reader = new InputStreamReader(input, StandardCharsets.UTF_8);
+        try {
+            StringBuilder text = new StringBuilder();
+            char[] buffer = new char[4096];
+            int count;
+            while ((count = reader.read(buffer)) != -1) {
+                text.append(buffer, 0, count);
+            }
+            return text.toString();
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.parser.ParserPerfTest;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+/**
+ * A test suite for all log analysis performance tests, which check the throughput and
+ * allocations of the parsers against the budgets of {@link PerfBudget}.
+ */
+public class PerfTests extends TestSuite {
+
+    public PerfTests() {
+        super();
+
+        addTestSuite(ParserPerfTest.class);
+    }
+
+    public static Test suite() {
+        return new PerfTests();
+    }
+}
@@ -19,9 +19,19 @@ package com.android.loganalysis;
 import com.android.loganalysis.item.*;
 import com.android.loganalysis.parser.*;
 import com.android.loganalysis.util.ArrayUtilTest;
+import com.android.loganalysis.util.CrashSignatureUtilTest;
+import com.android.loganalysis.util.IntIndexMapTest;
+import com.android.loganalysis.util.IntPostingsTest;
+import com.android.loganalysis.util.IntervalIndexTest;
+import com.android.loganalysis.util.LockWaitGraphTest;
+import com.android.loganalysis.util.LogGeneratorTest;
 import com.android.loganalysis.util.LogPatternUtilTest;
 import com.android.loganalysis.util.LogTailUtilTest;
+import com.android.loganalysis.util.ParsePhaseTest;
+import com.android.loganalysis.util.ParseStatsTest;
 import com.android.loganalysis.util.RegexTrieTest;
+import com.android.loganalysis.util.StringTableTest;
+import com.android.loganalysis.util.TimeSeriesTest;
 import com.android.loganalysis.util.config.ArgsOptionParserTest;
 import com.android.loganalysis.util.config.OptionSetterTest;
 import com.android.loganalysis.util.config.OptionUpdateRuleTest;
@@ -38,9 +48,14 @@ public class UnitTests extends TestSuite {
     public UnitTests() {
         super();
 
+        addTestSuite(AnalysisServerTest.class);
+
         // item
+        addTestSuite(CrashSignatureIndexTest.class);
         addTestSuite(DumpsysBatteryInfoItemTest.class);
+        addTestSuite(EventTimelineTest.class);
         addTestSuite(GenericItemTest.class);
+        addTestSuite(KernelLogItemTest.class);
         addTestSuite(MemInfoItemTest.class);
         addTestSuite(MonkeyLogItemTest.class);
         addTestSuite(ProcrankItemTest.class);
@@ -56,6 +71,10 @@ public class UnitTests extends TestSuite {
         addTestSuite(DumpsysBatteryInfoParserTest.class);
         addTestSuite(JavaCrashParserTest.class);
         addTestSuite(KernelLogParserTest.class);
+        addTestSuite(LogCheckpointTest.class);
+        addTestSuite(LogcatIndexTest.class);
+        addTestSuite(LogcatLineIndexTest.class);
+        addTestSuite(LogcatMergerTest.class);
         addTestSuite(LogcatParserTest.class);
         addTestSuite(MemInfoParserTest.class);
         addTestSuite(MonkeyLogParserTest.class);
@@ -67,9 +86,19 @@ public class UnitTests extends TestSuite {
 
         // util
         addTestSuite(ArrayUtilTest.class);
+        addTestSuite(CrashSignatureUtilTest.class);
+        addTestSuite(IntIndexMapTest.class);
+        addTestSuite(IntPostingsTest.class);
+        addTestSuite(IntervalIndexTest.class);
+        addTestSuite(LockWaitGraphTest.class);
+        addTestSuite(LogGeneratorTest.class);
         addTestSuite(LogPatternUtilTest.class);
         addTestSuite(LogTailUtilTest.class);
+        addTestSuite(ParsePhaseTest.class);
+        addTestSuite(ParseStatsTest.class);
         addTestSuite(RegexTrieTest.class);
+        addTestSuite(StringTableTest.class);
+        addTestSuite(TimeSeriesTest.class);
 
         // util.config
         addTestSuite(ArgsOptionParserTest.class);
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit test for {@link CrashSignatureIndex}.
+ */
+public class CrashSignatureIndexTest extends TestCase {
+
+    /**
+     * Test that repeated crashes are counted in the same bucket and the signature is stored.
+     */
+    public void testAdd() {
+        CrashSignatureIndex index = new CrashSignatureIndex();
+        JavaCrashItem crash1 = createJavaCrash("java.lang.NullPointerException", 42);
+        JavaCrashItem crash2 = createJavaCrash("java.lang.NullPointerException", 43);
+        JavaCrashItem crash3 = createJavaCrash("java.lang.IllegalStateException", 42);
+        AnrItem anr = new AnrItem();
+        anr.setApp("com.android.foo");
+        anr.setReason("keyDispatchingTimedOut");
+        MiscLogcatItem other = new MiscLogcatItem();
+
+        index.addAll(Arrays.asList(crash1, crash2, crash3, anr, other));
+
+        assertEquals(3, index.size());
+        assertNotNull(crash1.getSignature());
+        assertEquals(crash1.getSignature(), crash2.getSignature());
+        assertNull(other.getSignature());
+        assertEquals(2, index.getCount(crash1.getSignature()));
+        assertEquals(1, index.getCount(crash3.getSignature()));
+        assertEquals(1, index.getCount(anr.getSignature()));
+        assertEquals(0, index.getCount("unknown"));
+
+        CrashSignatureIndex.Bucket bucket = index.add(crash1);
+        assertEquals(3, bucket.getCount());
+        assertSame(crash1, bucket.getFirst());
+        assertSame(crash1, bucket.getLast());
+        assertNull(index.add(other));
+    }
+
+    /**
+     * Test that the least recently seen bucket is evicted when the index is full.
+     */
+    public void testEviction() {
+        CrashSignatureIndex index = new CrashSignatureIndex(2, 5);
+        JavaCrashItem a = createJavaCrash("A", 1);
+        JavaCrashItem b = createJavaCrash("B", 1);
+        JavaCrashItem c = createJavaCrash("C", 1);
+
+        index.add(a);
+        index.add(b);
+        index.add(a);
+        index.add(c);
+
+        assertEquals(2, index.size());
+        assertEquals(1, index.getEvictedCount());
+        assertEquals(0, index.getCount(b.getSignature()));
+        List<CrashSignatureIndex.Bucket> buckets = index.getBuckets();
+        assertEquals(a.getSignature(), buckets.get(0).getSignature());
+        assertEquals(c.getSignature(), buckets.get(1).getSignature());
+    }
+
+    /**
+     * Test that native crashes get the same signature from parsed frames as from the stack.
+     */
+    public void testNativeCrash() {
+        NativeCrashItem parsed = new NativeCrashItem();
+        parsed.setSignal("SIGSEGV");
+        parsed.addFrame(0x1236a0L, "/system/lib/libwebcore.so", "foo", 12);
+        parsed.addFrame(0x123896L, "/system/lib/libc.so", null, 0);
+
+        NativeCrashItem unparsed = new NativeCrashItem();
+        unparsed.setStack("signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr 00000000\n" +
+                "         #00  pc 001236a0  /system/lib/libwebcore.so (foo+12)\n" +
+                "         #01  pc 00123896  /system/lib/libc.so\n");
+
+        CrashSignatureIndex index = new CrashSignatureIndex();
+        assertEquals(index.sign(parsed), index.sign(unparsed));
+    }
+
+    /**
+     * Create a {@link JavaCrashItem} with a one frame stack.
+     */
+    private JavaCrashItem createJavaCrash(String exception, int line) {
+        JavaCrashItem crash = new JavaCrashItem();
+        crash.setException(exception);
+        crash.setStack(String.format("%s: message\n\tat com.android.Foo.bar(Foo.java:%d)",
+                exception, line));
+        return crash;
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Unit tests for {@link EventTimeline}.
+ */
+public class EventTimelineTest extends TestCase {
+    /** The wall clock time of an ANR, in milliseconds. */
+    private static final long ANR_MS = 1335374228445L;
+
+    private EventTimeline mTimeline = null;
+    private AnrItem mAnr = null;
+    private MiscLogcatItem mLater = null;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mTimeline = new EventTimeline();
+        LogcatItem logcat = new LogcatItem();
+        mAnr = new AnrItem();
+        mAnr.setEventTime(new Date(ANR_MS));
+        logcat.addEvent(mAnr);
+        mLater = new MiscLogcatItem();
+        mLater.setEventTime(new Date(ANR_MS + 60000));
+        logcat.addEvent(mLater);
+        mTimeline.addLogcat(BugreportItem.SYSTEM_LOG, logcat);
+    }
+
+    /**
+     * Test that the events near an event are found, without the event itself.
+     */
+    public void testGetEventsNear() {
+        assertEquals(2, mTimeline.size());
+        assertTrue(mTimeline.getEventsNear(mAnr, 59999).isEmpty());
+        assertEquals(1, mTimeline.getEventsNear(mAnr, 60000).size());
+        assertSame(mLater, mTimeline.getEventsNear(mAnr, 60000).get(0).getItem());
+        assertEquals(2, mTimeline.getEventsNear(new Date(ANR_MS + 30000), 30000).size());
+        assertNull(mTimeline.getEventsNear(new MiscLogcatItem(), 1000));
+        assertEquals(new Date(ANR_MS), mTimeline.getEvent(mAnr).getStartTime());
+    }
+
+    /**
+     * Test that kernel events are mapped with the boot time of their boot, or with the time the
+     * log stops for the last boot.
+     */
+    public void testAddKernelLog() {
+        KernelLogItem first = createBoot(1000000, 5000000);
+        first.setBootTime(new Date(ANR_MS - 4000));
+        KernelLogItem last = createBoot(2000000, 10000000);
+        KernelLogItem kernelLog = new KernelLogItem();
+        kernelLog.addBoot(first);
+        kernelLog.addBoot(last);
+
+        mTimeline.addKernelLog(BugreportItem.KERNEL_LOG, kernelLog,
+                new Date(ANR_MS + 8000));
+        assertEquals(0, mTimeline.getUnalignedCount());
+        assertEquals(new Date(ANR_MS - 3000),
+                mTimeline.getEvent(first.getEvents().get(0)).getStartTime());
+        assertEquals(new Date(ANR_MS),
+                mTimeline.getEvent(last.getEvents().get(0)).getStartTime());
+
+        List<IItem> near = new ArrayList<IItem>();
+        for (EventTimeline.Event event : mTimeline.getEventsNear(mAnr, 3000)) {
+            near.add(event.getItem());
+            assertEquals(BugreportItem.KERNEL_LOG, event.getSource());
+        }
+        assertEquals(2, near.size());
+        assertSame(first.getEvents().get(0), near.get(0));
+        assertSame(last.getEvents().get(0), near.get(1));
+    }
+
+    /**
+     * Test that the events of a boot without a time are counted as unaligned.
+     */
+    public void testAddKernelLog_unaligned() {
+        mTimeline.addKernelLog(BugreportItem.LAST_KMSG, createBoot(1000000, 2000000), null);
+        assertEquals(1, mTimeline.getUnalignedCount());
+        assertEquals(2, mTimeline.size());
+    }
+
+    /**
+     * Test that a monkey run overlaps the events during the run.
+     */
+    public void testAddMonkeyLog() {
+        MonkeyLogItem monkeyLog = new MonkeyLogItem();
+        monkeyLog.setStartTime(new Date(ANR_MS - 3600000));
+        monkeyLog.setStopTime(new Date(ANR_MS + 30000));
+        mTimeline.addMonkeyLog(monkeyLog);
+
+        List<EventTimeline.Event> near = mTimeline.getEventsNear(mAnr, 0);
+        assertEquals(1, near.size());
+        assertEquals(EventTimeline.MONKEY_LOG, near.get(0).getSource());
+        assertEquals(new Date(ANR_MS + 30000), near.get(0).getStopTime());
+        assertEquals(2, mTimeline.getEventsNear(monkeyLog, 30000).size());
+    }
+
+    /**
+     * Create a boot of a kernel log with one event.
+     */
+    private static KernelLogItem createBoot(long eventTimeUs, long stopTimeUs) {
+        KernelLogItem boot = new KernelLogItem();
+        boot.setStartTimeUs(0);
+        boot.setStopTimeUs(stopTimeUs);
+        MiscKernelLogItem event = new MiscKernelLogItem();
+        event.setEventTimeUs(eventTimeUs);
+        event.setCategory("KERNEL_ERROR");
+        boot.addEvent(event);
+        return boot;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link KernelLogItem} and {@link MiscKernelLogItem}.
+ */
+public class KernelLogItemTest extends TestCase {
+
+    /**
+     * Test that times set in seconds are kept in microseconds.
+     */
+    public void testSetTime() {
+        KernelLogItem kernelLog = new KernelLogItem();
+        kernelLog.setStartTime(0.5);
+        kernelLog.setStopTime(12.345678);
+        assertEquals(500000, kernelLog.getStartTimeUs());
+        assertEquals(12345678, kernelLog.getStopTimeUs());
+        assertEquals(12.345678, kernelLog.getStopTime(), 0.0);
+        kernelLog.setStopTime(null);
+        assertEquals(KernelLogItem.NO_TIME, kernelLog.getStopTimeUs());
+        assertNull(kernelLog.getStopTime());
+
+        MiscKernelLogItem event = new MiscKernelLogItem();
+        event.setEventTime(1.000001);
+        assertEquals(1000001, event.getEventTimeUs());
+    }
+
+    /**
+     * Test that the times are compared by equals and isConsistent, hashed by hashCode, and kept
+     * by merge.
+     */
+    public void testEqualsAndMerge() throws ConflictingItemException {
+        MiscKernelLogItem event1 = createEvent(1000000);
+        MiscKernelLogItem event2 = createEvent(1000000);
+        MiscKernelLogItem event3 = createEvent(2000000);
+        MiscKernelLogItem noTime = createEvent(KernelLogItem.NO_TIME);
+        assertEquals(event1, event2);
+        assertEquals(event1.hashCode(), event2.hashCode());
+        assertFalse(event1.equals(event3));
+        assertTrue(event1.isConsistent(noTime));
+        assertFalse(event1.isConsistent(event3));
+        assertEquals(1.0, ((GenericItem) noTime.merge(event1)).getAttribute(
+                MiscKernelLogItem.EVENT_TIME));
+        try {
+            event1.merge(event3);
+            fail("Expected a ConflictingItemException");
+        } catch (ConflictingItemException e) {
+            // Expected
+        }
+
+        KernelLogItem kernelLog1 = new KernelLogItem();
+        kernelLog1.setStartTimeUs(0);
+        kernelLog1.setStopTimeUs(5000000);
+        KernelLogItem kernelLog2 = new KernelLogItem();
+        kernelLog2.setStartTimeUs(0);
+        assertFalse(kernelLog1.equals(kernelLog2));
+        assertTrue(kernelLog1.isConsistent(kernelLog2));
+        GenericItem merged = (GenericItem) kernelLog1.merge(kernelLog2);
+        assertEquals(0.0, merged.getAttribute(KernelLogItem.START_TIME));
+        assertEquals(5.0, merged.getAttribute(KernelLogItem.STOP_TIME));
+        kernelLog2.setStopTimeUs(5000000);
+        assertEquals(kernelLog1, kernelLog2);
+        assertEquals(kernelLog1.hashCode(), kernelLog2.hashCode());
+    }
+
+    /**
+     * Create an event with a category and a time.
+     */
+    private static MiscKernelLogItem createEvent(long timeUs) {
+        MiscKernelLogItem event = new MiscKernelLogItem();
+        event.setCategory("KERNEL_RESET");
+        event.setEventTimeUs(timeUs);
+        return event;
+    }
+}
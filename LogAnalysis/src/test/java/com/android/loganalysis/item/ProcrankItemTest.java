@@ -20,6 +20,8 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.util.Arrays;
+
 /**
  * Unit test for {@link ProcrankItem}.
  */
@@ -56,4 +58,26 @@ public class ProcrankItemTest extends TestCase {
         assertEquals(3, line.get(ProcrankItem.PSS));
         assertEquals(4, line.get(ProcrankItem.USS));
     }
+
+    /**
+     * Test that the columnar accessors are aligned and that a repeated PID replaces its line.
+     */
+    public void testColumns() {
+        ProcrankItem item = new ProcrankItem();
+        item.addProcrankLine(178, "system_server", 87136, 81684, 52829, 50012);
+        item.addProcrankLine(1313, "com.google.android.apps.maps", 78128, 77996, 48603, 45812);
+        item.addProcrankLine(334, "com.android.launcher", 55740, 55572, 29629, 28360);
+        item.addProcrankLine(1313, "com.google.android.apps.maps", 78128, 77996, 60000, 45812);
+
+        assertEquals(3, item.size());
+        assertTrue(Arrays.equals(new int[] {178, 1313, 334}, item.getPidColumn()));
+        assertTrue(Arrays.equals(new int[] {52829, 60000, 29629}, item.getPssColumn()));
+        assertEquals("com.android.launcher", item.getProcessNameColumn()[2]);
+        assertEquals((Integer) 60000, item.getPss(1313));
+        assertNull(item.getPss(1));
+
+        assertTrue(Arrays.equals(new int[] {1313, 178, 334}, item.getPidsByPss()));
+        assertTrue(Arrays.equals(new int[] {1313, 178}, item.getTopPidsByPss(2)));
+        assertEquals(3, item.getTopPidsByPss(10).length);
+    }
 }
@@ -33,10 +33,11 @@ public class AbstractSectionParserTest extends TestCase {
         mParser = new AbstractSectionParser() {
             @Override
             public IItem parse(List<String> lines) {
+                Session session = new Session();
                 for (String line : lines) {
-                    parseLine(line);
+                    session.parseLine(line);
                 }
-                commit();
+                session.commit();
                 return null;
             }
         };
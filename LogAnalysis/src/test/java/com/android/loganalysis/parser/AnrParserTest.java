@@ -16,6 +16,7 @@
 package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.AnrItem;
+import com.android.loganalysis.item.ProcessCpuUsageItem;
 import com.android.loganalysis.util.ArrayUtil;
 import junit.framework.TestCase;
 
@@ -160,4 +161,47 @@ public class AnrParserTest extends TestCase {
         assertEquals(0.3, anr.getCpuUsage(AnrItem.CpuUsageCategory.IOWAIT));
         assertEquals(ArrayUtil.join("\n", lines), anr.getStack());
     }
+
+    /**
+     * Test that the process rows of the first CPU usage report are parsed, and thread rows are
+     * skipped.
+     */
+    public void testParse_process_cpu_usage() {
+        List<String> lines = Arrays.asList(
+                "ANR in com.android.package",
+                "Load: 0.71 / 0.83 / 0.51",
+                "CPU usage from 4357ms to -1434ms ago:",
+                "  22% 3378/com.android.package: 19% user + 3.6% kernel / faults: 73 minor 1 major",
+                "    18% 3390/RenderThread: 15% user + 3% kernel",
+                "  +0% 4521/com.android.new: 0% user + 0% kernel",
+                "  16% 312/system_server: 12% user + 4.1% kernel / faults: 1082 minor 6 major",
+                "33% TOTAL: 21% user + 11% kernel",
+                "CPU usage from 907ms to 1431ms later:",
+                "  14% 121/mediaserver: 11% user + 3.7% kernel / faults: 17 minor",
+                "18% TOTAL: 11% user + 7.5% kernel");
+
+        AnrItem anr = new AnrParser().parse(lines);
+        assertNotNull(anr);
+        assertEquals(33.0, anr.getCpuUsage(AnrItem.CpuUsageCategory.TOTAL));
+        assertEquals(0.0, anr.getCpuUsage(AnrItem.CpuUsageCategory.IOWAIT));
+
+        List<ProcessCpuUsageItem> usage = anr.getProcessCpuUsage();
+        assertEquals(3, usage.size());
+        assertEquals(3378, usage.get(0).getPid().intValue());
+        assertEquals("com.android.package", usage.get(0).getProcessName());
+        assertEquals(22.0, usage.get(0).getTotal());
+        assertEquals(19.0, usage.get(0).getUser());
+        assertEquals(3.6, usage.get(0).getKernel());
+        assertEquals(73, usage.get(0).getMinorFaults().intValue());
+        assertEquals(1, usage.get(0).getMajorFaults().intValue());
+
+        assertEquals(4521, usage.get(1).getPid().intValue());
+        assertEquals("com.android.new", usage.get(1).getProcessName());
+        assertEquals(0.0, usage.get(1).getTotal());
+        assertNull(usage.get(1).getMinorFaults());
+
+        assertEquals("system_server", usage.get(2).getProcessName());
+        assertEquals(1082, usage.get(2).getMinorFaults().intValue());
+        assertEquals(6, usage.get(2).getMajorFaults().intValue());
+    }
 }
@@ -15,9 +15,16 @@
  */
 package com.android.loganalysis.parser;
 
+import com.android.loganalysis.item.AnrItem;
 import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem;
+import com.android.loganalysis.item.DumpsysBatteryInfoItem.WakeLockCategory;
+import com.android.loganalysis.item.EventTimeline;
 import com.android.loganalysis.item.IItem;
+import com.android.loganalysis.item.KernelLogItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.CrashSignatureUtil;
+import com.android.loganalysis.util.ParseStats;
 import junit.framework.TestCase;
 
 import java.text.DateFormat;
@@ -181,6 +188,128 @@ public class BugreportParserTest extends TestCase {
         assertEquals(parseTime("1999-01-01 01:02:04.000"), bugreport.getSystemLog().getStopTime());
     }
 
+    /**
+     * Test that the boot time of the kernel log is set from the bugreport header.
+     */
+    public void testParse_kernel_log_boot_time() throws ParseException {
+        List<String> lines = Arrays.asList(
+                "========================================================",
+                "== dumpstate: 1999-01-01 02:03:04",
+                "========================================================",
+                "Uptime: up 0 weeks, 0 days, 1 hour, 2 minutes, load average: 1.00, 0.90, 0.80",
+                "------ KERNEL LOG (dmesg) ------",
+                "<6>[ 3719.000000] Start",
+                "");
+
+        BugreportItem bugreport = new BugreportParser().parse(lines);
+        KernelLogItem kernelLog = bugreport.getKernelLog();
+        assertEquals(parseTime("1999-01-01 01:01:04.000"), kernelLog.getBootTime());
+        assertEquals(parseTime("1999-01-01 02:03:03.000"),
+                kernelLog.getWallTime(kernelLog.getStartTimeUs()));
+    }
+
+    /**
+     * Test that the events of the system log, the kernel log and the traces are put on one clock,
+     * so that the kernel panic and the traces are found near the ANR.
+     */
+    public void testParse_timeline() throws ParseException {
+        List<String> lines = Arrays.asList(
+                "========================================================",
+                "== dumpstate: 2012-04-25 17:20:00",
+                "========================================================",
+                "Uptime: up 0 weeks, 0 days, 1 hour, 2 minutes, load average: 1.00, 0.90, 0.80",
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+                "responding) in process: com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "",
+                "------ KERNEL LOG (dmesg) ------",
+                "<6>[ 1000.000000] Start",
+                "<0>[ 3549.000000] Kernel panic",
+                "",
+                "------ VM TRACES AT LAST ANR (/data/anr/traces.txt: 2012-04-25 17:17:08) ------",
+                "",
+                "----- pid 2887 at 2012-04-25 17:17:08 -----",
+                "Cmd line: com.android.package",
+                "",
+                "DALVIK THREADS:",
+                "\"main\" prio=5 tid=1 SUSPENDED",
+                "  at class.method1(Class.java:1)",
+                "",
+                "----- end 2887 -----",
+                "");
+
+        BugreportItem bugreport = new BugreportParser().parse(lines);
+        EventTimeline timeline = bugreport.getTimeline();
+        assertNotNull(timeline);
+        AnrItem anr = bugreport.getSystemLog().getAnrs().get(0);
+
+        List<EventTimeline.Event> near = timeline.getEventsNear(anr, 5000);
+        assertEquals(2, near.size());
+        assertEquals(EventTimeline.TRACES, near.get(0).getSource());
+        assertEquals(parseTime("2012-04-25 17:17:08.445"), near.get(0).getStartTime());
+        assertEquals(BugreportItem.KERNEL_LOG, near.get(1).getSource());
+        assertEquals(parseTime("2012-04-25 17:17:09.000"), near.get(1).getStartTime());
+    }
+
+    /**
+     * Test that a parser can be reused, and that the state of one parse does not carry over to the
+     * next.
+     */
+    public void testParse_reuse() throws ParseException {
+        List<String> first = Arrays.asList(
+                "== dumpstate: 1999-01-01 02:03:04",
+                "Command line: key=value",
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "01-01 01:02:03.000     1     1 I TAG     : message",
+                "");
+        List<String> second = Arrays.asList(
+                "== dumpstate: 2001-01-01 02:03:04",
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "01-01 01:02:03.000     1     1 I TAG     : message",
+                "");
+
+        BugreportParser parser = new BugreportParser();
+        BugreportItem bugreport = parser.parse(first);
+        assertEquals(parseTime("1999-01-01 01:02:03.000"), bugreport.getSystemLog().getStartTime());
+        assertEquals("value", bugreport.getCommandLine().get("key"));
+
+        bugreport = parser.parse(second);
+        assertEquals(parseTime("2001-01-01 02:03:04.000"), bugreport.getTime());
+        assertEquals(parseTime("2001-01-01 01:02:03.000"), bugreport.getSystemLog().getStartTime());
+        assertTrue(bugreport.getCommandLine().isEmpty());
+    }
+
+    /**
+     * Test that the dumpsys battery info of one parse does not carry over to the next parse with
+     * the same parser.
+     */
+    public void testParse_reuse_dumpsys() {
+        List<String> lines = Arrays.asList(
+                "------ DUMPSYS (dumpsys) ------",
+                "DUMP OF SERVICE batteryinfo:",
+                "Statistics since last unplugged:",
+                "  Kernel Wake lock \"PowerManagerService.WakeLocks\": 5m 10s 61ms (2 times) realtime",
+                "",
+                "  All partial wake locks:",
+                "  Wake lock #0 partialWakelock: 5m 9s 260ms (1 times) realtime",
+                "  Wake lock #1000 AlarmManager: 422ms (7 times) realtime",
+                "");
+
+        BugreportParser parser = new BugreportParser();
+        DumpsysBatteryInfoItem last = null;
+        for (int i = 0; i < 3; i++) {
+            DumpsysBatteryInfoItem batteryInfo =
+                    parser.parse(lines).getDumpsys().getBatteryInfo();
+            assertNotSame(last, batteryInfo);
+            assertEquals(1, batteryInfo.getWakeLocks(
+                    WakeLockCategory.LAST_UNPLUGGED_KERNEL_WAKELOCK).size());
+            assertEquals(2, batteryInfo.getWakeLocks(
+                    WakeLockCategory.LAST_UNPLUGGED_WAKELOCK).size());
+            last = batteryInfo;
+        }
+    }
+
     /**
      * Test that the command line is parsed
      */
@@ -366,6 +495,13 @@ public class BugreportParserTest extends TestCase {
         assertEquals(ArrayUtil.join("\n", expectedStack),
                 bugreport.getSystemLog().getAnrs().get(1).getTrace());
         assertNull(bugreport.getSystemLog().getAnrs().get(2).getTrace());
+
+        // The ANR with the trace is signed from its trace.
+        AnrItem anr = bugreport.getSystemLog().getAnrs().get(1);
+        assertEquals(CrashSignatureUtil.getAnrSignature(anr.getApp(), anr.getTrace(),
+                anr.getReason(), CrashSignatureUtil.DEFAULT_FRAMES), anr.getSignature());
+        assertEquals(1, bugreport.getSystemLog().getCrashSignatures().getCount(
+                anr.getSignature()));
     }
 
     /**
@@ -523,6 +659,76 @@ public class BugreportParserTest extends TestCase {
         assertNotNull(bugreport.getSystemLog());
     }
 
+    /**
+     * Test that the text retention can be set per section.
+     */
+    public void testTextRetention() {
+        List<String> lines = Arrays.asList(
+                "========================================================",
+                "== dumpstate: 2012-04-25 20:45:10",
+                "========================================================",
+                "------ MEMORY INFO (/proc/meminfo) ------",
+                "MemTotal:         353332 kB",
+                "------ PROCRANK (procrank) ------",
+                "  PID      Vss      Rss      Pss      Uss  cmdline",
+                " 3064   87136K   81684K   52829K   50012K  com.android.package1");
+
+        BugreportParser parser = new BugreportParser();
+        parser.setTextRetention(TextRetention.NONE);
+        parser.setTextRetention(BugreportItem.PROCRANK, TextRetention.LAZY);
+        BugreportItem bugreport = parser.parse(lines);
+        assertNull(bugreport.getMemInfo().getText());
+        assertEquals((Long) 353332L, bugreport.getMemInfo().get("MemTotal"));
+        assertEquals(" 3064   87136K   81684K   52829K   50012K  com.android.package1",
+                bugreport.getProcrank().getText().split("\n")[1]);
+
+        try {
+            parser.setTextRetention(BugreportItem.SYSTEM_LOG, TextRetention.NONE);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that the counters of the bugreport, its sections and its logs are collected.
+     */
+    public void testParse_stats() {
+        List<String> lines = Arrays.asList(
+                "========================================================",
+                "== dumpstate: 2012-04-25 20:45:10",
+                "========================================================",
+                "------ MEMORY INFO (/proc/meminfo) ------",
+                "MemTotal:         353332 kB",
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+                "responding) in process: com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "");
+
+        ParseStats stats = new ParseStats();
+        BugreportParser parser = new BugreportParser();
+        parser.setStats(stats);
+        parser.parse(lines);
+
+        ParseStats.ParserStats bugreport = stats.getParser("BugreportParser");
+        assertEquals(1, bugreport.getParses());
+        assertEquals(lines.size(), bugreport.getLines());
+        assertEquals(ParseStats.getBytes(lines), bugreport.getBytes());
+        assertEquals(3, bugreport.getEvents());
+        assertEquals(3, bugreport.getPeakBufferedLines());
+
+        assertEquals(1, stats.getSection(AbstractSectionParser.PREAMBLE).getEvents());
+        assertEquals(1, stats.getSection("MEMORY INFO (/proc/meminfo)").getLines());
+        ParseStats.ParserStats systemLog =
+                stats.getSection("SYSTEM LOG (logcat -v threadtime -d *:v)");
+        assertEquals(3, systemLog.getLines());
+        assertEquals(3, stats.getParser("LogcatParser").getLines());
+        assertEquals(1, stats.getParser("LogcatParser").getEvents());
+        assertTrue(stats.getRule("BugreportParser", "------ MEMORY INFO .*")
+                .getHits() > 0);
+    }
+
     private Date parseTime(String timeStr) throws ParseException {
         DateFormat formatter = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
         return formatter.parse(timeStr);
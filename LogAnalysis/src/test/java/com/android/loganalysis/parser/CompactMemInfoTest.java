@@ -101,4 +101,19 @@ public class CompactMemInfoTest extends TestCase {
         JSONArray processes = json.getJSONArray("processes");
         assertEquals(5, processes.length());
     }
+
+    public void testTopPidsByPss() {
+        List<String> input = Arrays.asList(
+                "proc,cached,com.google.android.youtube,2964,19345,e",
+                "proc,cached,com.google.android.apps.plus,2877,9604,e",
+                "proc,foreground,com.google.android.apps.magazines,2009,20111,a",
+                "proc,cached,com.google.android.apps.walletnfcrel,10790,11164,e");
+
+        CompactMemInfoItem item = new CompactMemInfoParser().parse(input);
+
+        assertTrue(Arrays.equals(new int[] {2009, 2964}, item.getTopPidsByPss(2)));
+        assertTrue(Arrays.equals(new long[] {19345, 9604, 20111, 11164}, item.getPssColumn()));
+        assertEquals("foreground", item.getType(2009));
+        assertEquals(true, item.hasActivities(2009));
+    }
 }
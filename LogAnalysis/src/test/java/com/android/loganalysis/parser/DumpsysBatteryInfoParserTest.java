@@ -118,8 +118,8 @@ public class DumpsysBatteryInfoParserTest extends TestCase {
         String inputLine = "  Kernel Wake lock \"Process\": 1d 2h 3m 4s 5ms (6 times) realtime";
 
         DumpsysBatteryInfoParser parser = new DumpsysBatteryInfoParser();
-        parser.parseKernelWakeLock(inputLine, WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK);
-        DumpsysBatteryInfoItem item = parser.getItem();
+        DumpsysBatteryInfoItem item = new DumpsysBatteryInfoItem();
+        parser.parseKernelWakeLock(item, inputLine, WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK);
 
         assertEquals(1, item.getWakeLocks(WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK).size());
         WakeLock wakeLock = item.getWakeLocks(WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK).get(0);
@@ -131,8 +131,8 @@ public class DumpsysBatteryInfoParserTest extends TestCase {
         inputLine = "  Kernel Wake lock \"Process\": 5m 7ms (2 times) realtime";
 
         parser = new DumpsysBatteryInfoParser();
-        parser.parseKernelWakeLock(inputLine, WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK);
-        item = parser.getItem();
+        item = new DumpsysBatteryInfoItem();
+        parser.parseKernelWakeLock(item, inputLine, WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK);
 
         assertEquals(1, item.getWakeLocks(WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK).size());
         wakeLock = item.getWakeLocks(WakeLockCategory.LAST_CHARGE_KERNEL_WAKELOCK).get(0);
@@ -149,8 +149,8 @@ public class DumpsysBatteryInfoParserTest extends TestCase {
         String inputLine = "  Wake lock #1234 Process: 1d 2h 3m 4s 5ms (6 times) realtime";
 
         DumpsysBatteryInfoParser parser = new DumpsysBatteryInfoParser();
-        parser.parseWakeLock(inputLine, WakeLockCategory.LAST_CHARGE_WAKELOCK);
-        DumpsysBatteryInfoItem item = parser.getItem();
+        DumpsysBatteryInfoItem item = new DumpsysBatteryInfoItem();
+        parser.parseWakeLock(item, inputLine, WakeLockCategory.LAST_CHARGE_WAKELOCK);
 
         assertEquals(1, item.getWakeLocks(WakeLockCategory.LAST_CHARGE_WAKELOCK).size());
         WakeLock wakeLock = item.getWakeLocks(WakeLockCategory.LAST_CHARGE_WAKELOCK).get(0);
@@ -162,8 +162,8 @@ public class DumpsysBatteryInfoParserTest extends TestCase {
         inputLine = "  Wake lock #1234 Process:with:colons: 5m 7ms (2 times) realtime";
 
         parser = new DumpsysBatteryInfoParser();
-        parser.parseWakeLock(inputLine, WakeLockCategory.LAST_CHARGE_WAKELOCK);
-        item = parser.getItem();
+        item = new DumpsysBatteryInfoItem();
+        parser.parseWakeLock(item, inputLine, WakeLockCategory.LAST_CHARGE_WAKELOCK);
 
         assertEquals(1, item.getWakeLocks(WakeLockCategory.LAST_CHARGE_WAKELOCK).size());
         wakeLock = item.getWakeLocks(WakeLockCategory.LAST_CHARGE_WAKELOCK).get(0);
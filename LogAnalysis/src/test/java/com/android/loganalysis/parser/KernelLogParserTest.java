@@ -18,11 +18,22 @@ package com.android.loganalysis.parser;
 import com.android.loganalysis.item.KernelLogItem;
 import com.android.loganalysis.item.MiscKernelLogItem;
 import com.android.loganalysis.item.SELinuxItem;
+import com.android.loganalysis.util.ArrayUtil;
 import com.android.loganalysis.util.LogPatternUtil;
 import junit.framework.TestCase;
+import org.json.JSONObject;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.regex.Pattern;
 
 /**
  * Unit tests for {@link KernelLogParser}.
@@ -50,6 +61,26 @@ public class KernelLogParserTest extends TestCase {
         assertEquals("Kernel panic", item.getStack());
     }
 
+    /**
+     * Test that the preamble and stack are not computed if they are not requested.
+     */
+    public void testParseFields() {
+        List<String> lines = Arrays.asList(
+                "[    0.000000] Start",
+                "[    1.000000] Kernel panic",
+                "[    2.000000] End");
+
+        KernelLogParser parser = new KernelLogParser();
+        parser.setFields(new HashSet<String>());
+        KernelLogItem kernelLog = parser.parse(lines);
+        assertEquals(1, kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).size());
+
+        MiscKernelLogItem item = kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).get(0);
+        assertEquals(1.0, item.getEventTime(), 0.0000005);
+        assertNull(item.getPreamble());
+        assertNull(item.getStack());
+    }
+
     /**
      * Test that log lines formatted by dmsg are able to be parsed.
      */
@@ -114,6 +145,266 @@ public class KernelLogParserTest extends TestCase {
         assertEquals("Last boot reason: hw_reset", item.getStack());
     }
 
+    /**
+     * Test that times are kept to the microsecond on long uptimes, and that lines which do not
+     * start with a well formed time stamp are treated as messages.
+     */
+    public void testParseTime() {
+        List<String> lines = Arrays.asList(
+                "[12345678.000001] Start",
+                "<6>[12345679.123456] Kernel panic",
+                "[   12.34567] Kernel panic with a bad time stamp",
+                "[12345680.999999] End");
+
+        KernelLogItem kernelLog = new KernelLogParser().parse(lines);
+        assertEquals(12345678000001L, kernelLog.getStartTimeUs());
+        assertEquals(12345680999999L, kernelLog.getStopTimeUs());
+
+        MiscKernelLogItem item = kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).get(0);
+        assertEquals(12345679123456L, item.getEventTimeUs());
+        assertEquals("Kernel panic", item.getStack());
+        assertEquals(1, kernelLog.getEvents().size());
+    }
+
+    /**
+     * Test that times are mapped to wall clock times when the boot time is known.
+     */
+    public void testParseBootTime() throws Exception {
+        List<String> lines = Arrays.asList(
+                "[    1.000000] Start",
+                "[    2.500000] Kernel panic");
+
+        KernelLogItem kernelLog = new KernelLogParser().parse(lines);
+        assertNull(kernelLog.getBootTime());
+        assertNull(kernelLog.getWallTime(kernelLog.getStopTimeUs()));
+        assertFalse(kernelLog.toJson().has(KernelLogItem.BOOT_TIME));
+
+        KernelLogParser parser = new KernelLogParser();
+        parser.setBootTime(new Date(1000000));
+        kernelLog = parser.parse(lines);
+        assertEquals(new Date(1000000), kernelLog.getBootTime());
+        assertEquals(new Date(1001000), kernelLog.getWallTime(kernelLog.getStartTimeUs()));
+        MiscKernelLogItem item = kernelLog.getEvents().get(0);
+        assertEquals(new Date(1002500), kernelLog.getWallTime(item.getEventTimeUs()));
+        assertEquals(2.5, kernelLog.toJson().getJSONArray(KernelLogItem.EVENTS).getJSONObject(0)
+                .getDouble(MiscKernelLogItem.EVENT_TIME), 0.0000005);
+
+        kernelLog.setBootTime(new Date(5000000), 2500000);
+        assertEquals(new Date(4997500), kernelLog.getBootTime());
+    }
+
+    /**
+     * Test that a log with several boots is split where the time stamp goes back, and that each
+     * boot keeps its own first kernel reset.
+     */
+    public void testParseBoots() throws Exception {
+        List<String> lines = Arrays.asList(
+                "[    0.000000] Start",
+                "[    1.000000] Kernel panic",
+                "[    1.000000] Kernel panic again",
+                "[    5.000000] End",
+                "[    0.000000] Start",
+                "[    0.000000] Kernel panic",
+                "[    3.000000] End",
+                "",
+                "[    0.500000] Start",
+                "[    0.499000] Slightly out of order",
+                "[    2.000000] Kernel panic",
+                "Last boot reason: hw_reset");
+
+        for (int parallelism : new int[] {1, 4}) {
+            KernelLogParser parser = new KernelLogParser();
+            parser.setParallelism(parallelism);
+            checkBoots(parser.parse(lines));
+
+            parser = new KernelLogParser();
+            parser.setParallelism(parallelism);
+            checkBoots(parser.parse(new BufferedReader(new StringReader(
+                    ArrayUtil.join("\n", lines)))));
+        }
+    }
+
+    /**
+     * Test that the boots are parsed on an executor which is set on the parser, and that the
+     * parser does not shut it down.
+     */
+    public void testParseExecutor() throws Exception {
+        List<String> lines = Arrays.asList(
+                "[    0.000000] Start",
+                "[    1.000000] Kernel panic",
+                "[    5.000000] End",
+                "[    0.000000] Start",
+                "[    0.000000] Kernel panic",
+                "[    3.000000] End",
+                "[    0.500000] Start",
+                "[    2.000000] Kernel panic");
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            KernelLogParser parser = new KernelLogParser();
+            parser.setExecutor(executor);
+            for (int i = 0; i < 2; i++) {
+                KernelLogItem kernelLog = parser.parse(lines);
+                assertEquals(3, kernelLog.getBoots().size());
+                assertEquals(3, kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).size());
+            }
+            assertFalse(executor.isShutdown());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that a boot with more lines than are held for the thread pool is parsed the same as
+     * with a parallelism of 1.
+     */
+    public void testParseLongBoot() throws Exception {
+        List<String> lines = new ArrayList<String>();
+        lines.add("[    5.000000] Start");
+        for (int i = 0; i < KernelLogParser.MAX_BUFFERED_LINES + 10; i++) {
+            lines.add(String.format("[%5d.000000] Line %d", i / 1000, i));
+        }
+        lines.add("[  200.000000] Kernel panic");
+        lines.add("[    0.000000] Start");
+        lines.add("[    1.000000] Kernel panic");
+
+        KernelLogParser parser = new KernelLogParser();
+        parser.setParallelism(1);
+        JSONObject expected = parser.parse(lines).toJson();
+        parser.setParallelism(4);
+        KernelLogItem kernelLog = parser.parse(lines);
+        assertEquals(3, kernelLog.getBoots().size());
+        assertEquals(200000000, kernelLog.getBoots().get(1).getStopTimeUs());
+        assertTrue(expected.similar(kernelLog.toJson()));
+    }
+
+    /**
+     * Test that a kernel log which is appended to, and parsed from a checkpoint after each append,
+     * has the same boots and events as a parse of the whole log, wherever the appends were cut.
+     */
+    public void testParseCheckpoint() throws Exception {
+        final String denial = "avc:  denied  { getattr } for  pid=797 comm=\"Binder_5\" " +
+                "scontext=u:r:system_server:s0 tcontext=u:object_r:devpts:s0 tclass=chr_file";
+        List<String> lines = Arrays.asList(
+                "[    0.000000] Start",
+                "[    1.000000] Kernel panic",
+                "[    1.500000] " + denial,
+                "[    5.000000] End",
+                "<3>[    0.000000] Start",
+                "<3>[    0.500000] " + denial,
+                "",
+                "[    2.000000] Kernel panic",
+                "[    2.500000] Kernel panic again",
+                "[    3.000000] " + denial,
+                "Unable to handle kernel paging request at virtual address 0",
+                "[    4.000000] " + denial,
+                "Last boot reason: hw_reset");
+        final String text = ArrayUtil.join("\n", lines) + "\n";
+        KernelLogParser parser = new KernelLogParser();
+        JSONObject expected = parser.parse(lines).toJson();
+
+        File file = File.createTempFile("kernel_log", ".txt");
+        File checkpointFile = LogCheckpoint.getCheckpointFile(file);
+        try {
+            for (int cut : LogCheckpointTest.getCuts(text)) {
+                checkpointFile.delete();
+                LogCheckpointTest.writeFile(file, text.substring(0, cut), false);
+                parser.parse(file, checkpointFile);
+                LogCheckpointTest.writeFile(file, text.substring(cut), true);
+                KernelLogItem kernelLog = parser.parse(file, checkpointFile);
+                assertEquals(2, kernelLog.getBoots().size());
+                assertEquals(3, kernelLog.getBoots().get(1).getSELinuxEvents().get(0).getCount());
+                assertTrue(kernelLog.toJson().toString(),
+                        expected.similar(kernelLog.toJson()));
+            }
+
+            // Resume after every append.
+            checkpointFile.delete();
+            LogCheckpointTest.writeFile(file, "", false);
+            int last = 0;
+            for (int cut : LogCheckpointTest.getCuts(text)) {
+                LogCheckpointTest.writeFile(file, text.substring(last, cut), true);
+                parser.parse(file, checkpointFile);
+                last = cut;
+            }
+            LogCheckpointTest.writeFile(file, text.substring(last), true);
+            JSONObject actual = parser.parse(file, checkpointFile).toJson();
+            assertTrue(actual.toString(), expected.similar(actual));
+        } finally {
+            file.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    /**
+     * Test that a checkpoint saved by a parser with other rules is not resumed from, so the events
+     * before the checkpoint are categorized by the new rules too.
+     */
+    public void testParseCheckpoint_rulesChanged() throws Exception {
+        List<String> lines = Arrays.asList(
+                "[    0.000000] Start",
+                "[    1.000000] Modem crashed",
+                "[    2.000000] Kernel panic",
+                "[    3.000000] Modem crashed");
+        KernelLogParser parser = new KernelLogParser();
+        parser.addRule(Pattern.compile("Modem crashed"), "MODEM_CRASH");
+        JSONObject expected = parser.parse(lines).toJson();
+
+        File file = File.createTempFile("kernel_log", ".txt");
+        File checkpointFile = LogCheckpoint.getCheckpointFile(file);
+        try {
+            LogCheckpointTest.writeFile(file, ArrayUtil.join("\n", lines.subList(0, 2)) + "\n",
+                    false);
+            new KernelLogParser().parse(file, checkpointFile);
+            LogCheckpointTest.writeFile(file, ArrayUtil.join("\n", lines.subList(2, 4)) + "\n",
+                    true);
+            KernelLogItem kernelLog = parser.parse(file, checkpointFile);
+            assertEquals(2, kernelLog.getMiscEvents("MODEM_CRASH").size());
+            assertTrue(kernelLog.toJson().toString(), expected.similar(kernelLog.toJson()));
+        } finally {
+            file.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    /**
+     * Check the {@link KernelLogItem} parsed in {@link #testParseBoots()}.
+     */
+    private void checkBoots(KernelLogItem kernelLog) throws Exception {
+        List<KernelLogItem> boots = kernelLog.getBoots();
+        assertEquals(3, boots.size());
+        assertEquals(0, boots.get(0).getStartTimeUs());
+        assertEquals(5000000, boots.get(0).getStopTimeUs());
+        assertEquals(1, boots.get(0).getEvents().size());
+        assertEquals(0, boots.get(1).getEvents().get(0).getEventTimeUs());
+        assertEquals(500000, boots.get(2).getStartTimeUs());
+        assertEquals(2000000, boots.get(2).getStopTimeUs());
+        assertEquals("Kernel panic", boots.get(2).getEvents().get(0).getStack());
+
+        // The merged view has the first kernel reset of each boot.
+        assertEquals(0, kernelLog.getStartTimeUs());
+        assertEquals(2000000, kernelLog.getStopTimeUs());
+        assertEquals(3, kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).size());
+
+        JSONObject json = kernelLog.toJson();
+        assertEquals(3, json.getJSONArray(KernelLogItem.BOOTS).length());
+        assertFalse(json.getJSONArray(KernelLogItem.BOOTS).getJSONObject(0)
+                .has(KernelLogItem.EVENTS));
+        assertEquals(2, json.getJSONArray(KernelLogItem.EVENTS).getJSONObject(2)
+                .getInt(KernelLogItem.BOOT));
+    }
+
+    /**
+     * Test that a log with one boot is its only boot.
+     */
+    public void testParseOneBoot() {
+        KernelLogItem kernelLog = new KernelLogParser().parse(Arrays.asList(
+                "[    0.000000] Start",
+                "[    1.000000] End"));
+        assertEquals(1, kernelLog.getBoots().size());
+        assertSame(kernelLog, kernelLog.getBoots().get(0));
+        assertFalse(kernelLog.toJson().has(KernelLogItem.BOOTS));
+    }
+
     /**
      * Test that an empty input returns {@code null}.
      */
@@ -164,6 +455,37 @@ public class KernelLogParserTest extends TestCase {
                     "avc: denied scontext=0:0:domain:0 "));
     }
 
+    /**
+     * Test that rule packs add rules after the built in rules.
+     */
+    public void testAddRules() {
+        KernelLogParser parser = new KernelLogParser();
+        parser.addRules(Arrays.asList(
+                "# A device rule pack",
+                "",
+                "KERNEL_RESET  Fatal modem error.*",
+                "KERNEL_ERROR Kernel panic and more"));
+        LogPatternUtil patternUtil = parser.getLogPatternUtil();
+        assertEquals(KernelLogParser.KERNEL_RESET,
+                patternUtil.checkMessage("Fatal modem error: 12"));
+        assertEquals(KernelLogParser.KERNEL_RESET,
+                patternUtil.checkMessage("Kernel panic and more"));
+        assertNull(patternUtil.checkMessage("Fatal"));
+
+        try {
+            parser.addRules(Arrays.asList("KERNEL_RESET"));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+        try {
+            parser.addRules(Arrays.asList("KERNEL_RESET (unclosed"));
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
     /**
      * Test that an SELinux Denial can be parsed out of a list of log lines.
      */
@@ -193,11 +515,53 @@ public class KernelLogParserTest extends TestCase {
 
         SELinuxItem selinuxItem = kernelLog.getSELinuxEvents().get(0);
         assertEquals("system_server", selinuxItem.getSContext());
+        assertEquals("devpts", selinuxItem.getTContext());
+        assertEquals("chr_file", selinuxItem.getTClass());
+        assertEquals("getattr", selinuxItem.getPermission());
+        assertEquals("Binder_5", selinuxItem.getComm());
+        assertEquals(1, selinuxItem.getCount());
         assertEquals(43.399164, selinuxItem.getEventTime(), 0.0000005);
+        assertEquals(43.399164, selinuxItem.getLastTime(), 0.0000005);
         assertEquals(KernelLogParser.SELINUX_DENIAL, selinuxItem.getCategory());
         assertEquals(SELINUX_DENIAL_STACK, selinuxItem.getStack());
     }
 
+    /**
+     * Test that identical SELinux denials are aggregated into one event.
+     */
+    public void testSelinuxDenialAggregation() {
+        final String denial = "type=1400 audit(1384544483.730:%d): avc:  denied  " +
+                "{ %s } for  pid=%d comm=\"%s\" path=\"/dev/pts/1\" " +
+                "dev=devpts ino=4 scontext=u:r:system_server:s0 " +
+                "tcontext=u:object_r:devpts:s0 tclass=chr_file";
+        List<String> lines = Arrays.asList(
+                "[   10.000000] Start",
+                "[   11.000000] " + String.format(denial, 1, "getattr", 797, "Binder_5"),
+                "[   12.000000] " + String.format(denial, 2, "read write", 797, "Binder_5"),
+                "[   13.000000] " + String.format(denial, 3, "getattr", 798, "Binder_5"),
+                "[   14.000000] " + String.format(denial, 4, "getattr", 799, "Binder_6"),
+                "[   15.000000] " + String.format(denial, 5, "getattr", 797, "Binder_5"));
+
+        KernelLogItem kernelLog = new KernelLogParser().parse(lines);
+        List<SELinuxItem> denials = kernelLog.getSELinuxEvents();
+        assertEquals(3, denials.size());
+
+        assertEquals("getattr", denials.get(0).getPermission());
+        assertEquals("Binder_5", denials.get(0).getComm());
+        assertEquals(3, denials.get(0).getCount());
+        assertEquals(11000000, denials.get(0).getEventTimeUs());
+        assertEquals(15000000, denials.get(0).getLastTimeUs());
+        assertEquals("[   10.000000] Start", denials.get(0).getPreamble());
+        assertTrue(denials.get(0).getStack().contains("pid=797"));
+
+        assertEquals("read write", denials.get(1).getPermission());
+        assertEquals(1, denials.get(1).getCount());
+        assertEquals(12000000, denials.get(1).getLastTimeUs());
+
+        assertEquals("Binder_6", denials.get(2).getComm());
+        assertEquals(1, denials.get(2).getCount());
+    }
+
     public void testMantaReset() {
         final List<String> lines = Arrays.asList("[ 3281.347296] ---fimc_is_ischain_close(0)",
                 "[ 3281.432055] fimc_is_scalerc_video_close",
@@ -232,9 +596,11 @@ public class KernelLogParserTest extends TestCase {
                 "[ 2.000000] " + SELINUX_DENIAL_STACK);
 
         KernelLogItem kernelLog = new KernelLogParser().parse(lines);
-        assertEquals(7, kernelLog.getEvents().size());
+        // The identical SELinux denials are aggregated into one event.
+        assertEquals(5, kernelLog.getEvents().size());
         assertEquals(1, kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).size());
         assertEquals(0.0,
                 kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).get(0).getEventTime());
+        assertEquals(3, kernelLog.getSELinuxEvents().get(0).getCount());
     }
 }
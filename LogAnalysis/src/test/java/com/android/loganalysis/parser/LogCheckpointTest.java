@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.util.ParseStats;
+import junit.framework.TestCase;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LogCheckpoint}.
+ */
+public class LogCheckpointTest extends TestCase {
+    private static final String KEY = "test";
+
+    private File mFile = null;
+    private File mCheckpointFile = null;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("log_checkpoint", ".txt");
+        mCheckpointFile = LogCheckpoint.getCheckpointFile(mFile);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        mFile.delete();
+        mCheckpointFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that the complete lines are read with the line breaks of a
+     * {@link java.io.BufferedReader}, and that the rest of the log is a partial line.
+     */
+    public void testReadLine() throws IOException {
+        write("one\ntwo\r\nthree\r\nfour\rfive", false);
+        LogCheckpoint checkpoint = new LogCheckpoint(mFile, mCheckpointFile, KEY);
+        try {
+            assertEquals(Arrays.asList("one", "two", "three", "four"), readLines(checkpoint));
+            assertEquals("five", checkpoint.getPartialLine());
+            assertEquals(21, checkpoint.getOffset());
+            assertEquals(5, checkpoint.getLineCount());
+            assertEquals(25, checkpoint.getByteCount());
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Test that a '\r' at the end of the log ends a partial line, since a '\n' may still follow.
+     */
+    public void testReadLine_carriageReturn() throws IOException {
+        write("one\r", false);
+        LogCheckpoint checkpoint = new LogCheckpoint(mFile, mCheckpointFile, KEY);
+        try {
+            assertTrue(readLines(checkpoint).isEmpty());
+            assertEquals("one", checkpoint.getPartialLine());
+            assertEquals(0, checkpoint.getOffset());
+        } finally {
+            checkpoint.close();
+        }
+
+        write("one\n", false);
+        checkpoint = new LogCheckpoint(mFile, mCheckpointFile, KEY);
+        try {
+            assertEquals(Arrays.asList("one"), readLines(checkpoint));
+            assertNull(checkpoint.getPartialLine());
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Test that a checkpoint is resumed after the last complete line, with its state.
+     */
+    public void testSave() throws IOException {
+        write("one\ntw", false);
+        save(KEY, "state");
+
+        write("o\nthree\n", true);
+        LogCheckpoint checkpoint = new LogCheckpoint(mFile, mCheckpointFile, KEY);
+        try {
+            assertEquals(4, checkpoint.getStartOffset());
+            assertEquals("state", LogCheckpoint.readString(checkpoint.getState()));
+            assertEquals(Arrays.asList("two", "three"), readLines(checkpoint));
+            assertNull(checkpoint.getPartialLine());
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Test that a checkpoint is not used for a parser with other settings, or for a log which was
+     * rewritten or truncated.
+     */
+    public void testSave_stale() throws IOException {
+        write("one\ntwo\n", false);
+        save(KEY, "state");
+        assertStartsOver("other");
+
+        write("ONE\ntwo\nthree\n", false);
+        assertStartsOver(KEY);
+
+        write("one\ntwo\n", false);
+        save(KEY, "state");
+        write("one\n", false);
+        assertStartsOver(KEY);
+    }
+
+    /**
+     * Test that a corrupt checkpoint is not used.
+     */
+    public void testSave_corrupt() throws IOException {
+        write("one\ntwo\n", false);
+        OutputStream output = new FileOutputStream(mCheckpointFile);
+        try {
+            output.write(new byte[] {1, 2, 3});
+        } finally {
+            output.close();
+        }
+        assertStartsOver(KEY);
+    }
+
+    /**
+     * Test that a parse resumed from a checkpoint has the same events as a parse of the whole
+     * logcat, and only reads the appended lines.
+     */
+    public void testResume() throws IOException {
+        String first = "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+                "responding) in process: com.android.package\n";
+        String second = "04-25 17:17:08.445   312   366 E ActivityManager: Reason: " +
+                "keyDispatchingTimedOut\n";
+        write(first, false);
+        LogcatParser parser = new LogcatParser("2012");
+        assertEquals(1, parser.parse(mFile, mCheckpointFile).getAnrs().size());
+
+        write(second, true);
+        ParseStats stats = new ParseStats();
+        parser.setStats(stats);
+        LogcatItem logcat = parser.parse(mFile, mCheckpointFile);
+        assertEquals(1, stats.getParser("LogcatParser").getLines());
+        assertEquals(second.length(), stats.getParser("LogcatParser").getBytes());
+        assertEquals(1, logcat.getAnrs().size());
+        assertEquals("keyDispatchingTimedOut", logcat.getAnrs().get(0).getReason());
+    }
+
+    /**
+     * Save a checkpoint with a string as its state, after reading the complete lines.
+     */
+    private void save(String key, final String state) throws IOException {
+        LogCheckpoint checkpoint = new LogCheckpoint(mFile, mCheckpointFile, key);
+        try {
+            readLines(checkpoint);
+            checkpoint.save(mFile, new LogCheckpoint.IState() {
+                @Override
+                public void write(DataOutputStream output) throws IOException {
+                    LogCheckpoint.writeString(output, state);
+                }
+            });
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Assert that a parse with a key starts at the start of the log, without a state.
+     */
+    private void assertStartsOver(String key) throws IOException {
+        LogCheckpoint checkpoint = new LogCheckpoint(mFile, mCheckpointFile, key);
+        try {
+            assertEquals(0, checkpoint.getStartOffset());
+            assertNull(checkpoint.getState());
+        } finally {
+            checkpoint.close();
+        }
+    }
+
+    /**
+     * Read the complete lines of a checkpoint.
+     */
+    private static List<String> readLines(LogCheckpoint checkpoint) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        String line;
+        while ((line = checkpoint.readLine()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    /**
+     * Write or append some text to the log.
+     */
+    private void write(String text, boolean append) throws IOException {
+        writeFile(mFile, text, append);
+    }
+
+    /**
+     * Write or append some text to a file.
+     */
+    static void writeFile(File file, String text, boolean append) throws IOException {
+        OutputStream output = new FileOutputStream(file, append);
+        try {
+            output.write(text.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            output.close();
+        }
+    }
+
+    /**
+     * Get the offsets at which to cut a log to test a parse resumed from a checkpoint: the start
+     * and the middle of each line.
+     */
+    static List<Integer> getCuts(String text) {
+        List<Integer> cuts = new ArrayList<Integer>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = text.indexOf('\n', start);
+            end = end < 0 ? text.length() : end + 1;
+            cuts.add(start);
+            cuts.add((start + end) / 2);
+            start = end;
+        }
+        return cuts;
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.item.MiscLogcatItem;
+import com.android.loganalysis.util.LogGenerator;
+import com.android.loganalysis.util.LogGenerator.LogType;
+import com.android.loganalysis.util.LogTailUtil;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LogcatIndex}.
+ */
+public class LogcatIndexTest extends TestCase {
+    private static final int INTERVAL = 4 * 1024;
+
+    private File mFile = null;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("logcat_index", ".txt");
+        LogGenerator generator = new LogGenerator(20190626);
+        generator.setAnrRate(0.01);
+        generator.setJavaCrashRate(0.01);
+        generator.setNativeCrashRate(0.01);
+        Writer writer = new FileWriter(mFile);
+        try {
+            generator.write(LogType.LOGCAT, 256 * 1024, writer);
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        LogcatIndex.getIndexFile(mFile).delete();
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test that the time of a line is only parsed from a leading timestamp.
+     */
+    public void testGetTime() {
+        final long time = LogcatIndex.getTime(
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR");
+        assertEquals(time, LogcatIndex.getTime("04-25 17:17:08.445 E/ActivityManager( 312): ANR"));
+        assertTrue(time < LogcatIndex.getTime("04-25 17:17:08.446   312   366 I Tag: msg"));
+        assertTrue(time < LogcatIndex.getTime("04-26 00:00:00.000   312   366 I Tag: msg"));
+        assertTrue(time > LogcatIndex.getTime("03-31 23:59:59.999   312   366 I Tag: msg"));
+        assertEquals(LogcatIndex.NO_TIME, LogcatIndex.getTime("--------- beginning of main"));
+        assertEquals(LogcatIndex.NO_TIME, LogcatIndex.getTime("04-25 17:17"));
+        assertEquals(LogcatIndex.NO_TIME, LogcatIndex.getTime("04-25 17:17:0x.445 I Tag: msg"));
+    }
+
+    /**
+     * Test that the times given on the command line include the whole second at the end of a
+     * range.
+     */
+    public void testParseTime() {
+        assertEquals(LogcatIndex.getTime("04-25 17:17:08.000"),
+                LogcatIndex.parseTime("04-25 17:17:08", false));
+        assertEquals(LogcatIndex.getTime("04-25 17:17:08.999"),
+                LogcatIndex.parseTime("04-25 17:17:08", true));
+        assertEquals(LogcatIndex.getTime("04-25 17:17:08.445"),
+                LogcatIndex.parseTime("2012-04-25 17:17:08.445", true));
+        try {
+            LogcatIndex.parseTime("17:17:08", false);
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test that each entry of the index is at the start of a line with its timestamp.
+     */
+    public void testBuild() throws IOException {
+        LogcatIndex index = LogcatIndex.build(mFile, INTERVAL);
+        assertTrue(index.size() > 32);
+
+        List<String> lines = readLines(mFile);
+        long last = LogcatIndex.NO_TIME;
+        for (String line : lines) {
+            final long time = LogcatIndex.getTime(line);
+            if (time != LogcatIndex.NO_TIME) {
+                last = time;
+            }
+        }
+        final long first = LogcatIndex.getTime(lines.get(0));
+        assertEquals(0, index.getStartOffset(first, 0));
+        assertEquals(mFile.length(), index.getEndOffset(last));
+        assertEquals(0, index.getStartOffset(Long.MIN_VALUE, 0));
+        assertEquals(mFile.length(), index.getEndOffset(Long.MAX_VALUE));
+    }
+
+    /**
+     * Test that an index is saved next to the logcat, and rebuilt when the logcat changes.
+     */
+    public void testGetIndex() throws IOException {
+        File indexFile = LogcatIndex.getIndexFile(mFile);
+        assertNull(LogcatIndex.load(mFile, indexFile));
+
+        LogcatIndex index = LogcatIndex.getIndex(mFile);
+        assertTrue(indexFile.isFile());
+        LogcatIndex loaded = LogcatIndex.load(mFile, indexFile);
+        assertNotNull(loaded);
+        assertEquals(index.size(), loaded.size());
+        final long time = LogcatIndex.getTime(readLines(mFile).get(1000));
+        assertEquals(index.getStartOffset(time, 0), loaded.getStartOffset(time, 0));
+        assertEquals(index.getEndOffset(time), loaded.getEndOffset(time));
+
+        Writer writer = new FileWriter(mFile, true);
+        try {
+            writer.write("04-25 23:59:59.999   312   366 I Tag: appended\n");
+        } finally {
+            writer.close();
+        }
+        assertNull(LogcatIndex.load(mFile, indexFile));
+    }
+
+    /**
+     * Test that a range of a logcat read from the index has the same events, with the same
+     * preambles, as the whole logcat.
+     */
+    public void testParseRange() throws IOException {
+        List<String> lines = readLines(mFile);
+        final long since = LogcatIndex.getTime(lines.get(lines.size() / 3));
+        final long until = LogcatIndex.getTime(lines.get(lines.size() * 2 / 3));
+        LogcatParser parser = new LogcatParser("2012");
+
+        LogcatItem whole = parser.parse(lines);
+        List<MiscLogcatItem> expected = new ArrayList<MiscLogcatItem>();
+        for (MiscLogcatItem event : whole.getEvents()) {
+            final long time = getTime(event.getEventTime());
+            if (time >= since && time <= until) {
+                expected.add(event);
+            }
+        }
+        assertFalse(expected.isEmpty());
+
+        LogcatIndex index = LogcatIndex.build(mFile, INTERVAL);
+        assertTrue(index.getStartOffset(since, LogTailUtil.DEFAULT_MAX_BUFFER_SIZE) > 0);
+        assertTrue(index.getEndOffset(until) < mFile.length());
+        BufferedReader reader = index.open(mFile, since, until,
+                LogTailUtil.DEFAULT_MAX_BUFFER_SIZE);
+        LogcatItem range;
+        try {
+            range = parser.parse(reader, since, until);
+        } finally {
+            reader.close();
+        }
+
+        List<MiscLogcatItem> events = range.getEvents();
+        assertEquals(expected.size(), events.size());
+        for (int i = 0; i < events.size(); i++) {
+            assertEquals(expected.get(i).getEventTime(), events.get(i).getEventTime());
+            assertEquals(expected.get(i).getCategory(), events.get(i).getCategory());
+            assertEquals(expected.get(i).getLastPreamble(), events.get(i).getLastPreamble());
+            assertEquals(expected.get(i).getProcessPreamble(),
+                    events.get(i).getProcessPreamble());
+        }
+        assertTrue(getTime(range.getStartTime()) >= since);
+        assertTrue(getTime(range.getStopTime()) <= until);
+    }
+
+    /**
+     * Get the time of a date, as returned by {@link LogcatIndex#getTime(CharSequence)}.
+     */
+    private static long getTime(Date date) {
+        return LogcatIndex.getTime(String.format("%tm-%<td %<tH:%<tM:%<tS.%<tL", date));
+    }
+
+    /**
+     * Read all the lines of a file.
+     */
+    private static List<String> readLines(File file) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+}
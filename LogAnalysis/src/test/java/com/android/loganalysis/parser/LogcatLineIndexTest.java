@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LogcatLineIndex}.
+ */
+public class LogcatLineIndexTest extends TestCase {
+    private static final List<String> LINES = Arrays.asList(
+            "--------- beginning of /dev/log/main",
+            "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+            "responding) in process: com.android.package",
+            "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+            "04-25 17:17:09.000   312   366 I ActivityManager: Start proc com.android.package",
+            "",
+            "04-25 17:17:10.123   512   512 W dalvikvm: threadid=1: thread exiting with " +
+            "uncaught exception",
+            "04-25 17:17:11.500   512   512 E AndroidRuntime: FATAL EXCEPTION: main",
+            "04-25 17:17:12.000   713   713 I My Tag: Not responding to anything");
+
+    private File mFile = null;
+    private LogcatLineIndex mIndex = null;
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mFile = File.createTempFile("logcat_line_index", ".txt");
+        Writer writer = new FileWriter(mFile);
+        try {
+            for (String line : LINES) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        mIndex = LogcatLineIndex.getIndex(mFile, new LogcatParser("2012"));
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        LogcatLineIndex.getIndexFile(mFile).delete();
+        mFile.delete();
+        super.tearDown();
+    }
+
+    /**
+     * Test the lines and times of the index.
+     */
+    public void testIndex() {
+        assertEquals(LINES.size(), mIndex.getLineCount());
+        assertEquals(LogcatIndex.NO_TIME, mIndex.getTime(0));
+        assertEquals(LogcatIndex.getTime(LINES.get(1)), mIndex.getTime(1));
+        assertEquals(LogcatIndex.NO_TIME, mIndex.getTime(4));
+        assertLines(new int[] {1, 2, 3}, mIndex.getLines("tag:ActivityManager"));
+        assertLines(new int[] {5, 6}, mIndex.getLines("pid:512"));
+        assertLines(new int[] {1, 2, 6}, mIndex.getLines("level:E"));
+        assertLines(new int[] {1, 7}, mIndex.getLines("msg:responding"));
+        assertLines(new int[0], mIndex.getLines("msg:a"));
+    }
+
+    /**
+     * Test that the index is saved next to the logcat and mapped when it is opened again.
+     */
+    public void testOpen() throws IOException {
+        File indexFile = LogcatLineIndex.getIndexFile(mFile);
+        assertTrue(indexFile.isFile());
+        LogcatLineIndex index = LogcatLineIndex.open(mFile, indexFile);
+        assertNotNull(index);
+        assertEquals(mIndex.getTermCount(), index.getTermCount());
+        assertLines(mIndex.getLines("tag:ActivityManager"), index.getLines("tag:ActivityManager"));
+
+        assertTrue(mFile.setLastModified(mFile.lastModified() + 2000));
+        assertNull(LogcatLineIndex.open(mFile, indexFile));
+    }
+
+    /**
+     * Test that an index mapped in chunks which split its values reads the same as one mapping.
+     */
+    public void testOpen_chunks() throws IOException {
+        File indexFile = LogcatLineIndex.getIndexFile(mFile);
+        for (int chunkSize : new int[] {1, 7, 64}) {
+            LogcatLineIndex index = LogcatLineIndex.open(mFile, indexFile, chunkSize);
+            assertEquals(mIndex.getLineCount(), index.getLineCount());
+            assertEquals(mIndex.getTermCount(), index.getTermCount());
+            for (int i = 0; i < LINES.size(); i++) {
+                assertEquals(mIndex.getTime(i), index.getTime(i));
+            }
+            for (String term : Arrays.asList("tag:ActivityManager", "pid:512", "level:E",
+                    "msg:responding", "tag:My Tag")) {
+                assertLines(mIndex.getLines(term), index.getLines(term));
+            }
+        }
+    }
+
+    /**
+     * Test the boolean operators of a query.
+     */
+    public void testQuery() {
+        assertQuery(new int[] {1, 2}, "tag:ActivityManager level:E");
+        assertQuery(new int[] {1, 2}, "tag:ActivityManager AND level:E");
+        assertQuery(new int[] {1, 2, 5, 6}, "level:E OR level:W");
+        assertQuery(new int[] {3, 5, 7}, "NOT level:E");
+        assertQuery(new int[] {3}, "tag:ActivityManager NOT level:E");
+        assertQuery(new int[] {1, 3, 6}, "(anr OR proc) OR (pid:512 AND FATAL)");
+        assertQuery(new int[] {1}, "\"not responding\" level:E");
+        assertQuery(new int[] {1, 7}, "msg:\"NOT RESPONDING\"");
+        // The words of quoted text match in any order.
+        assertQuery(new int[] {1, 7}, "\"responding not\"");
+        assertQuery(new int[] {7}, "tag:\"My Tag\"");
+        assertQuery(new int[0], "tag:Missing");
+    }
+
+    /**
+     * Test that a query only matches the lines in a time range.
+     */
+    public void testQuery_range() {
+        assertLines(new int[] {3, 5},
+                mIndex.query("tag:ActivityManager OR pid:512", LogcatIndex.getTime(LINES.get(3)),
+                LogcatIndex.parseTime("04-25 17:17:10", true)));
+        assertLines(new int[] {5, 6}, mIndex.query("NOT tag:ActivityManager",
+                Long.MIN_VALUE, LogcatIndex.parseTime("04-25 17:17:11.500", true)));
+    }
+
+    /**
+     * Test that an invalid query throws an {@link IllegalArgumentException}.
+     */
+    public void testQuery_invalid() {
+        for (String query : Arrays.asList("", "(anr", "anr)", "anr OR", "AND anr", "NOT", "?")) {
+            try {
+                mIndex.query(query, Long.MIN_VALUE, Long.MAX_VALUE);
+                fail(String.format("Expected an IllegalArgumentException for %s", query));
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    /**
+     * Assert that a query matches some lines.
+     */
+    private void assertQuery(int[] expected, String query) {
+        assertLines(expected, mIndex.query(query, Long.MIN_VALUE, Long.MAX_VALUE));
+    }
+
+    /**
+     * Assert that two arrays of lines are equal.
+     */
+    private static void assertLines(int[] expected, int[] actual) {
+        assertEquals(Arrays.toString(expected), Arrays.toString(actual));
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.item.AnrItem;
+import com.android.loganalysis.item.LogcatItem;
+import junit.framework.TestCase;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LogcatMerger}.
+ */
+public class LogcatMergerTest extends TestCase {
+    private List<File> mFiles = new ArrayList<File>();
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void tearDown() throws Exception {
+        for (File file : mFiles) {
+            file.delete();
+        }
+        super.tearDown();
+    }
+
+    /**
+     * Test that the lines of several buffers are merged by time, then by PID and TID, and that
+     * lines without a timestamp stay after the line before them.
+     */
+    public void testMerge() throws IOException {
+        File main = createFile(
+                "--------- beginning of main",
+                "04-25 17:17:08.100   100   101 I Main: one",
+                "04-25 17:17:08.300   300   301 I Main: three",
+                "04-25 17:17:08.300   100   101 I Main: three, after its file",
+                "04-25 17:17:08.500   100   101 I Main: five");
+        File system = createFile(
+                "--------- beginning of system",
+                "04-25 17:17:08.200   200   201 I System: two",
+                "04-25 17:17:08.300   200   201 I System: three, before 300",
+                "continued",
+                "04-25 17:17:08.400   200   201 I System: four");
+
+        assertEquals(Arrays.asList(
+                "--------- beginning of main",
+                "--------- beginning of system",
+                "04-25 17:17:08.100   100   101 I Main: one",
+                "04-25 17:17:08.200   200   201 I System: two",
+                "04-25 17:17:08.300   200   201 I System: three, before 300",
+                "continued",
+                "04-25 17:17:08.300   300   301 I Main: three",
+                "04-25 17:17:08.300   100   101 I Main: three, after its file",
+                "04-25 17:17:08.400   200   201 I System: four",
+                "04-25 17:17:08.500   100   101 I Main: five"),
+                merge(main, system));
+    }
+
+    /**
+     * Test that the overlap of rotated logcats is removed, and that lines repeated in one file
+     * are kept.
+     */
+    public void testMerge_overlap() throws IOException {
+        File older = createFile(
+                "04-25 17:17:08.100   100   101 I Tag: one",
+                "04-25 17:17:08.200   100   101 I Tag: two",
+                "04-25 17:17:08.200   100   101 I Tag: two");
+        File newer = createFile(
+                "04-25 17:17:08.200   100   101 I Tag: two",
+                "04-25 17:17:08.200   100   101 I Tag: two",
+                "04-25 17:17:08.300   100   101 I Tag: three");
+
+        assertEquals(Arrays.asList(
+                "04-25 17:17:08.100   100   101 I Tag: one",
+                "04-25 17:17:08.200   100   101 I Tag: two",
+                "04-25 17:17:08.200   100   101 I Tag: two",
+                "04-25 17:17:08.300   100   101 I Tag: three"),
+                merge(newer, older));
+    }
+
+    /**
+     * Test that the lines of the time format are merged by PID.
+     */
+    public void testMerge_time() throws IOException {
+        File a = createFile("06-04 02:32:14.002 D/Tag(  236): a");
+        File b = createFile("06-04 02:32:14.002 D/Tag(  35): b");
+        assertEquals(Arrays.asList(
+                "06-04 02:32:14.002 D/Tag(  35): b",
+                "06-04 02:32:14.002 D/Tag(  236): a"),
+                merge(a, b));
+    }
+
+    /**
+     * Test that an ANR is parsed from the merged buffers, with the lines of both buffers in its
+     * preamble.
+     */
+    public void testParse() throws IOException {
+        File main = createFile(
+                "04-25 17:17:07.000  1000  1000 I App: before",
+                "04-25 17:17:08.000  1000  1000 I App: during");
+        File system = createFile(
+                "04-25 17:17:06.000   312   366 I ActivityManager: Start proc com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+                "responding) in process: com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: " +
+                "keyDispatchingTimedOut");
+
+        BufferedReader reader = new LogcatMerger(Arrays.asList(main, system)).open();
+        LogcatItem logcat;
+        try {
+            logcat = new LogcatParser("2012").parse(reader);
+        } finally {
+            reader.close();
+        }
+        assertEquals(1, logcat.getAnrs().size());
+        AnrItem anr = logcat.getAnrs().get(0);
+        assertEquals("com.android.package", anr.getApp());
+        assertEquals("04-25 17:17:06.000   312   366 I ActivityManager: Start proc " +
+                "com.android.package\n" +
+                "04-25 17:17:07.000  1000  1000 I App: before\n" +
+                "04-25 17:17:08.000  1000  1000 I App: during", anr.getLastPreamble());
+    }
+
+    /**
+     * Test that a missing file is reported when the merge is opened.
+     */
+    public void testOpen_missing() throws IOException {
+        File file = createFile("04-25 17:17:08.100   100   101 I Tag: one");
+        try {
+            new LogcatMerger(Arrays.asList(file, new File(file.getPath() + ".missing"))).open();
+            fail("Expected a FileNotFoundException");
+        } catch (FileNotFoundException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Merge some files into a list of lines.
+     */
+    private static List<String> merge(File... files) throws IOException {
+        BufferedReader reader = new LogcatMerger(Arrays.asList(files)).open();
+        try {
+            List<String> lines = new ArrayList<String>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lines.add(line);
+            }
+            return lines;
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Create a temporary file with some lines, which is deleted after the test.
+     */
+    private File createFile(String... lines) throws IOException {
+        File file = File.createTempFile("logcat_merger", ".txt");
+        mFiles.add(file);
+        Writer writer = new FileWriter(file);
+        try {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return file;
+    }
+}
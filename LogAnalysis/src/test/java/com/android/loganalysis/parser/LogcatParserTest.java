@@ -18,15 +18,25 @@ package com.android.loganalysis.parser;
 import com.android.loganalysis.item.JavaCrashItem;
 import com.android.loganalysis.item.LogcatItem;
 import com.android.loganalysis.item.MiscLogcatItem;
+import com.android.loganalysis.item.NativeCrashItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.StringTable;
 import junit.framework.TestCase;
+import org.json.JSONObject;
 
+import java.io.File;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.regex.Pattern;
 
 /**
@@ -459,6 +469,95 @@ public class LogcatParserTest extends TestCase {
                 logcat.getJavaCrashes().get(0).getEventTime());
     }
 
+    /**
+     * Test that only the requested optional fields are computed.
+     */
+    public void testParse_fields() throws ParseException {
+        List<String> lines = Arrays.asList(
+                "04-25 09:50:47.799  3064  3082 I tag: message 1",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method2(Class.java:2)");
+
+        LogcatParser parser = new LogcatParser("2012");
+        parser.setFields(new HashSet<String>(Arrays.asList(MiscLogcatItem.PROCESS_PREAMBLE)));
+        LogcatItem logcat = parser.parse(lines);
+        assertEquals(1, logcat.getJavaCrashes().size());
+        JavaCrashItem item = logcat.getJavaCrashes().get(0);
+        assertEquals("java.lang.Exception", item.getException());
+        assertEquals(3064, item.getPid().intValue());
+        assertEquals(parseTime("2012-04-25 09:55:47.799"), item.getEventTime());
+        assertEquals("04-25 09:50:47.799  3064  3082 I tag: message 1",
+                item.getProcessPreamble());
+        assertNull(item.getLastPreamble());
+        assertNull(item.getStack());
+        assertFalse(item.toJson().has(MiscLogcatItem.STACK));
+        assertFalse(item.toJson().has(MiscLogcatItem.LAST_PREAMBLE));
+    }
+
+    /**
+     * Test that parsed crashes are signed and grouped by signature, and that the signature of a
+     * Java crash does not depend on whether its stack is kept.
+     */
+    public void testParse_signatures() {
+        List<String> lines = Arrays.asList(
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method2(Class.java:2)",
+                "04-25 09:56:47.799  3065  3083 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:56:47.799  3065  3083 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "04-25 09:56:47.799  3065  3083 E AndroidRuntime: \tat class.method2(Class.java:2)",
+                "04-25 09:57:47.799  3066  3084 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:57:47.799  3066  3084 E AndroidRuntime: \tat class.method3(Class.java:3)");
+
+        LogcatItem logcat = new LogcatParser("2012").parse(lines);
+        List<JavaCrashItem> crashes = logcat.getJavaCrashes();
+        assertEquals(3, crashes.size());
+        final String signature = crashes.get(0).getSignature();
+        assertNotNull(signature);
+        assertEquals(signature, crashes.get(1).getSignature());
+        assertFalse(signature.equals(crashes.get(2).getSignature()));
+        assertEquals(signature, crashes.get(0).toJson().optString(MiscLogcatItem.SIGNATURE));
+        assertEquals(2, logcat.getCrashSignatures().size());
+        assertEquals(2, logcat.getCrashSignatures().getCount(signature));
+
+        LogcatParser parser = new LogcatParser("2012");
+        parser.setFields(new HashSet<String>());
+        logcat = parser.parse(lines);
+        assertNull(logcat.getJavaCrashes().get(0).getStack());
+        assertEquals(signature, logcat.getJavaCrashes().get(0).getSignature());
+        assertFalse(signature.equals(logcat.getJavaCrashes().get(2).getSignature()));
+    }
+
+    /**
+     * Test that the native crashes of a parse share a {@link StringTable} which is not kept by the
+     * parser, unless a table is set.
+     */
+    public void testParse_nativeStringTable() {
+        final String start = "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***";
+        List<String> lines = Arrays.asList(
+                "04-25 18:33:27.273   115   115 I DEBUG   : " + start,
+                "04-25 18:33:27.273   115   115 I DEBUG   : signal 11 (SIGSEGV), code 1",
+                "04-25 18:33:27.273   115   115 I DEBUG   :     #00  pc 001236a0  /system/lib/libc.so",
+                "04-25 18:34:27.273   116   116 I DEBUG   : " + start,
+                "04-25 18:34:27.273   116   116 I DEBUG   : signal 11 (SIGSEGV), code 1",
+                "04-25 18:34:27.273   116   116 I DEBUG   :     #00  pc 001236a0  /system/lib/libc.so");
+
+        LogcatParser parser = new LogcatParser("2012");
+        List<NativeCrashItem> crashes = parser.parse(lines).getNativeCrashes();
+        assertEquals(2, crashes.size());
+        assertSame(crashes.get(0).getStringTable(), crashes.get(1).getStringTable());
+        assertEquals(1, crashes.get(0).getStringTable().size());
+        List<NativeCrashItem> other = parser.parse(lines).getNativeCrashes();
+        assertNotSame(crashes.get(0).getStringTable(), other.get(0).getStringTable());
+
+        StringTable table = new StringTable();
+        parser.setNativeStringTable(table);
+        assertSame(table, parser.parse(lines).getNativeCrashes().get(0).getStringTable());
+        assertSame(table, parser.parse(lines).getNativeCrashes().get(1).getStringTable());
+        assertEquals(1, table.size());
+    }
+
     /**
      * Test that events while the device is rebooting are ignored.
      */
@@ -616,6 +715,134 @@ public class LogcatParserTest extends TestCase {
         assertEquals("com.android.commands.input.Input", crash.getApp());
     }
 
+    /**
+     * Test that one parser can be shared by several threads, and that each parse gets its own
+     * events.
+     */
+    public void testParse_shared() throws Exception {
+        final List<String> lines = Arrays.asList(
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:55:47.799  3064  3082 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR in com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "04-25 18:33:27.273   115   115 I DEBUG   : *** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***",
+                "04-25 18:33:27.273   115   115 I DEBUG   : Build fingerprint: 'product:build:target'",
+                "04-25 18:33:27.273   115   115 I DEBUG   : pid: 3112, tid: 3112  >>> com.google.android.browser <<<",
+                "04-25 18:33:27.273   115   115 I DEBUG   : signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr 00000000");
+        final LogcatParser parser = new LogcatParser("2012");
+        final String expected = parser.parse(lines).toJson().toString();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<LogcatItem>> results = new ArrayList<Future<LogcatItem>>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(new Callable<LogcatItem>() {
+                    @Override
+                    public LogcatItem call() {
+                        return parser.parse(lines);
+                    }
+                }));
+            }
+            for (Future<LogcatItem> result : results) {
+                LogcatItem logcat = result.get();
+                assertEquals(3, logcat.getEvents().size());
+                assertEquals(expected, logcat.toJson().toString());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Test that a logcat which is appended to, and parsed from a checkpoint after each append, has
+     * the same events as a parse of the whole logcat, wherever the appends were cut.
+     */
+    public void testParse_checkpoint() throws Exception {
+        List<String> lines = Arrays.asList(
+                "--------- beginning of /dev/log/main",
+                "04-25 09:15:40.000   123   123 I App: Calling main entry com.android.commands.am",
+                "04-25 09:55:47.799   123  3082 E AndroidRuntime: *** FATAL EXCEPTION IN " +
+                "SYSTEM PROCESS: main",
+                "04-25 09:55:47.799   123  3082 E AndroidRuntime: java.lang.Exception",
+                "04-25 09:55:47.799   123  3082 E AndroidRuntime: \tat class.method1(Class.java:1)",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+                "responding) in process: com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "",
+                "04-25 17:17:08.500  1000  1000 I App: between",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Load: 0.71 / 0.83 / 0.51",
+                "04-25 17:17:09.000   500   500 W Tag: event timed out (is the CPU pegged?)",
+                "04-25 18:33:27.273   115   115 I DEBUG   : *** *** *** *** *** *** *** *** *** " +
+                "*** *** *** *** *** *** ***",
+                "04-25 18:33:27.273   115   115 I DEBUG   : pid: 3112, tid: 3112  >>> " +
+                "com.google.android.browser <<<",
+                "04-25 18:40:00.000   123  3082 I ShutdownThread: Rebooting, reason: null",
+                "04-25 18:40:01.000  3064  3082 E AndroidRuntime: java.lang.Exception1",
+                "--------- beginning of /dev/log/main",
+                "06-04 02:32:14.002 E/AndroidRuntime(  236): java.lang.Exception2",
+                "06-04 02:32:14.002 E/AndroidRuntime(  236): \tat class.method1(Class.java:1)");
+        final String text = ArrayUtil.join("\n", lines) + "\n";
+        JSONObject expected = new LogcatParser("2012").parse(lines).toJson();
+
+        File file = File.createTempFile("logcat", ".txt");
+        File checkpointFile = LogCheckpoint.getCheckpointFile(file);
+        try {
+            for (int cut : LogCheckpointTest.getCuts(text)) {
+                checkpointFile.delete();
+                LogCheckpointTest.writeFile(file, text.substring(0, cut), false);
+                new LogcatParser("2012").parse(file, checkpointFile);
+                LogCheckpointTest.writeFile(file, text.substring(cut), true);
+                JSONObject actual = new LogcatParser("2012").parse(file, checkpointFile).toJson();
+                assertTrue(actual.toString(), expected.similar(actual));
+            }
+
+            // Resume after every append.
+            checkpointFile.delete();
+            LogCheckpointTest.writeFile(file, "", false);
+            int last = 0;
+            for (int cut : LogCheckpointTest.getCuts(text)) {
+                LogCheckpointTest.writeFile(file, text.substring(last, cut), true);
+                new LogcatParser("2012").parse(file, checkpointFile);
+                last = cut;
+            }
+            LogCheckpointTest.writeFile(file, text.substring(last), true);
+            JSONObject actual = new LogcatParser("2012").parse(file, checkpointFile).toJson();
+            assertTrue(actual.toString(), expected.similar(actual));
+        } finally {
+            file.delete();
+            checkpointFile.delete();
+        }
+    }
+
+    /**
+     * Test that a checkpoint saved by a parser with other patterns is not resumed from, so the
+     * events before the checkpoint are categorized by the new patterns too.
+     */
+    public void testParse_checkpointPatternsChanged() throws Exception {
+        List<String> lines = Arrays.asList(
+                "04-25 09:15:40.000   123   123 I App: first",
+                "04-25 09:15:41.000   123   123 I Other: between",
+                "04-25 09:15:42.000   123   123 I App: second");
+        LogcatParser parser = new LogcatParser("2012");
+        parser.addPattern(null, null, "App", "AppCategory");
+        JSONObject expected = parser.parse(lines).toJson();
+
+        File file = File.createTempFile("logcat", ".txt");
+        File checkpointFile = LogCheckpoint.getCheckpointFile(file);
+        try {
+            LogCheckpointTest.writeFile(file, ArrayUtil.join("\n", lines.subList(0, 2)) + "\n",
+                    false);
+            new LogcatParser("2012").parse(file, checkpointFile);
+            LogCheckpointTest.writeFile(file, lines.get(2) + "\n", true);
+            LogcatItem logcat = parser.parse(file, checkpointFile);
+            assertEquals(2, logcat.getMiscEvents("AppCategory").size());
+            assertTrue(logcat.toJson().toString(), expected.similar(logcat.toJson()));
+        } finally {
+            file.delete();
+            checkpointFile.delete();
+        }
+    }
+
     /**
      * Test that an empty input returns {@code null}.
      */
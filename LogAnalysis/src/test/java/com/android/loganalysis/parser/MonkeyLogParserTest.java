@@ -23,6 +23,9 @@ import com.android.loganalysis.item.NativeCrashItem;
 import com.android.loganalysis.util.ArrayUtil;
 import junit.framework.TestCase;
 
+import org.json.JSONObject;
+
+import java.io.File;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
@@ -207,6 +210,80 @@ public class MonkeyLogParserTest extends TestCase {
                 ((AnrItem) monkeyLog.getCrash()).getTrace());
     }
 
+    /**
+     * Test that a monkey log which is appended to, and parsed from a checkpoint after each append,
+     * has the same run and ANR as a parse of the whole log, wherever the appends were cut.
+     */
+    public void testParse_checkpoint() throws Exception {
+        List<String> lines = Arrays.asList(
+                "# Tuesday, 04/24/2012 05:23:30 PM - device uptime = 216.48: Monkey command used for this test:",
+                "adb shell monkey -p com.google.android.youtube -c android.intent.category.LAUNCHER --throttle 100 -s 993 -v -v -v 10000 ",
+                "",
+                ":Monkey: seed=993 count=10000",
+                ":AllowPackage: com.google.android.youtube",
+                ":IncludeCategory: android.intent.category.LAUNCHER",
+                "    //[calendar_time:2012-04-25 00:27:27.155  system_uptime:454996]",
+                "    // Sending event #5300",
+                "// NOT RESPONDING: com.google.android.youtube (pid 3301)",
+                "ANR in com.google.android.youtube (com.google.android.youtube/.app.honeycomb.phone.WatchActivity)",
+                "Reason: keyDispatchingTimedOut",
+                "Load: 1.0 / 1.05 / 0.6",
+                "",
+                "procrank:",
+                "// procrank status was 0",
+                "anr traces:",
+                "",
+                "----- pid 2887 at 2012-04-25 17:17:08 -----",
+                "Cmd line: com.google.android.youtube",
+                "",
+                "\"main\" prio=5 tid=1 SUSPENDED",
+                "  at class.method1(Class.java:1)",
+                "",
+                "----- end 2887 -----",
+                "// anr traces status was 0",
+                "** Monkey aborted due to error.",
+                "Events injected: 5322",
+                ":Dropped: keys=1 pointers=0 trackballs=0 flips=0 rotations=0",
+                "## Network stats: elapsed time=252942ms (0ms mobile, 252942ms wifi, 0ms not connected)",
+                "** System appears to have crashed at event 5322 of 10000 using seed 993",
+                "",
+                "# Tuesday, 04/24/2012 05:27:44 PM - device uptime = 471.37: Monkey command ran for: 04:14 (mm:ss)");
+        final String text = ArrayUtil.join("\n", lines) + "\n";
+        JSONObject expected = new MonkeyLogParser().parse(lines).toJson();
+
+        File file = File.createTempFile("monkey_log", ".txt");
+        File checkpointFile = LogCheckpoint.getCheckpointFile(file);
+        try {
+            for (int cut : LogCheckpointTest.getCuts(text)) {
+                checkpointFile.delete();
+                LogCheckpointTest.writeFile(file, text.substring(0, cut), false);
+                new MonkeyLogParser().parse(file, checkpointFile);
+                LogCheckpointTest.writeFile(file, text.substring(cut), true);
+                MonkeyLogItem monkeyLog = new MonkeyLogParser().parse(file, checkpointFile);
+                assertTrue(monkeyLog.getCrash() instanceof AnrItem);
+                assertEquals("keyDispatchingTimedOut",
+                        ((AnrItem) monkeyLog.getCrash()).getReason());
+                assertTrue(monkeyLog.toJson().toString(), expected.similar(monkeyLog.toJson()));
+            }
+
+            // Resume after every append.
+            checkpointFile.delete();
+            LogCheckpointTest.writeFile(file, "", false);
+            int last = 0;
+            for (int cut : LogCheckpointTest.getCuts(text)) {
+                LogCheckpointTest.writeFile(file, text.substring(last, cut), true);
+                new MonkeyLogParser().parse(file, checkpointFile);
+                last = cut;
+            }
+            LogCheckpointTest.writeFile(file, text.substring(last), true);
+            JSONObject actual = new MonkeyLogParser().parse(file, checkpointFile).toJson();
+            assertTrue(actual.toString(), expected.similar(actual));
+        } finally {
+            file.delete();
+            checkpointFile.delete();
+        }
+    }
+
     /**
      * Test that a monkey can be parsed if there is a Java crash.
      */
@@ -17,6 +17,7 @@ package com.android.loganalysis.parser;
 
 import com.android.loganalysis.item.NativeCrashItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.StringTable;
 import junit.framework.TestCase;
 
 import java.util.Arrays;
@@ -145,6 +146,55 @@ public class NativeCrashParserTest extends TestCase {
         assertEquals("google/soju/crespo:4.0.4/IMM76D/299849:userdebug/test-keys",
                 nc.getFingerprint());
         assertEquals(ArrayUtil.join("\n", lines), nc.getStack());
+        assertEquals("SIGSEGV", nc.getSignal());
+        assertEquals(20, nc.getFrameCount());
+        assertEquals(0x001236a0L, nc.getFramePc(0));
+        assertEquals(0x00122efaL, nc.getFramePc(19));
+        assertEquals("/system/lib/libwebcore.so", nc.getFrames().get(19).getLibrary());
+        assertEquals(1, nc.getStringTable().size());
+    }
+
+    /**
+     * Test that frames with symbols are parsed, that only the first backtrace is kept, and that
+     * libraries and symbols are shared through the {@link StringTable}.
+     */
+    public void testParseFrames() {
+        List<String> lines = Arrays.asList(
+                "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***",
+                "pid: 2058, tid: 2523  >>> com.google.android.browser <<<",
+                "signal 6 (SIGABRT), code -6 (SI_TKILL), fault addr --------",
+                "",
+                "backtrace:",
+                "    #00 pc 000000000001d9a4  /apex/lib64/libc.so (abort+164) (BuildId: 0a1b)",
+                "    #01 pc 00000000000a1b2c  /system/lib64/libfoo.so (Foo::bar(int)+12)",
+                "    #02 pc ffffffffffff0000  [vdso]",
+                "",
+                "backtrace:",
+                "    #00 pc 0000000000000001  /system/lib64/libother.so (other+1)");
+
+        StringTable table = new StringTable();
+        NativeCrashParser parser = new NativeCrashParser();
+        parser.setStringTable(table);
+        NativeCrashItem nc = parser.parse(lines);
+
+        assertEquals("SIGABRT", nc.getSignal());
+        assertEquals(3, nc.getFrameCount());
+        List<NativeCrashItem.Frame> frames = nc.getFrames();
+        assertEquals(0x1d9a4L, frames.get(0).getPc());
+        assertEquals("/apex/lib64/libc.so", frames.get(0).getLibrary());
+        assertEquals("abort", frames.get(0).getSymbol());
+        assertEquals(164, frames.get(0).getSymbolOffset());
+        assertEquals("Foo::bar(int)", frames.get(1).getSymbol());
+        assertEquals(12, frames.get(1).getSymbolOffset());
+        assertEquals(0xffffffffffff0000L, frames.get(2).getPc());
+        assertEquals("[vdso]", frames.get(2).getLibrary());
+        assertNull(frames.get(2).getSymbol());
+        assertEquals(NativeCrashItem.NO_SYMBOL, nc.getFrameSymbolId(2));
+
+        NativeCrashItem other = parser.parse(lines);
+        assertSame(table, other.getStringTable());
+        assertEquals(nc.getFrameLibraryId(1), other.getFrameLibraryId(1));
+        assertEquals(5, table.size());
     }
 
     /**
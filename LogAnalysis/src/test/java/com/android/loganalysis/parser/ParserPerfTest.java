@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.PerfBudget;
+import com.android.loganalysis.util.LogGenerator;
+import com.android.loganalysis.util.LogGenerator.LogType;
+import junit.framework.TestCase;
+
+import java.util.List;
+
+/**
+ * Performance tests for the parsers, which parse generated logs of a fixed size and check the
+ * throughput and allocations against the budgets of {@link PerfBudget}.
+ * <p>
+ * The parsers run on the calling thread, so that all of their allocations are measured.
+ * </p>
+ */
+public class ParserPerfTest extends TestCase {
+    /** The seed of the generated logs, so that each run parses the same logs. */
+    private static final long SEED = 20190625;
+    private static final long SIZE = 2 * 1024 * 1024;
+
+    /**
+     * Test the throughput of {@link LogcatParser}.
+     */
+    public void testLogcat() throws Exception {
+        final List<String> lines = new LogGenerator(SEED).generate(LogType.LOGCAT, SIZE);
+        final LogcatParser parser = new LogcatParser("2012");
+        PerfBudget.getInstance().check("LOGCAT", lines, new Runnable() {
+            @Override
+            public void run() {
+                parser.parse(lines);
+            }
+        });
+    }
+
+    /**
+     * Test the throughput of {@link KernelLogParser}.
+     */
+    public void testKernelLog() throws Exception {
+        final List<String> lines = new LogGenerator(SEED).generate(LogType.KERNEL_LOG, SIZE);
+        final KernelLogParser parser = new KernelLogParser();
+        parser.setParallelism(1);
+        PerfBudget.getInstance().check("KERNEL_LOG", lines, new Runnable() {
+            @Override
+            public void run() {
+                parser.parse(lines);
+            }
+        });
+    }
+
+    /**
+     * Test the throughput of {@link BugreportParser}.
+     */
+    public void testBugreport() throws Exception {
+        LogGenerator generator = new LogGenerator(SEED);
+        // Keep one boot in each kernel log, so that the boots are parsed on the calling thread.
+        generator.setKernelResetRate(0);
+        final List<String> lines = generator.generate(LogType.BUGREPORT, SIZE);
+        final BugreportParser parser = new BugreportParser();
+        PerfBudget.getInstance().check("BUGREPORT", lines, new Runnable() {
+            @Override
+            public void run() {
+                parser.parse(lines);
+            }
+        });
+    }
+
+    /**
+     * Test the throughput of {@link MonkeyLogParser}.
+     */
+    public void testMonkeyLog() throws Exception {
+        final List<String> lines = new LogGenerator(SEED).generate(LogType.MONKEY_LOG, SIZE);
+        PerfBudget.getInstance().check("MONKEY_LOG", lines, new Runnable() {
+            @Override
+            public void run() {
+                // The parser keeps its state and item, so each run gets a new parser.
+                new MonkeyLogParser().parse(lines);
+            }
+        });
+    }
+
+    /**
+     * Test the throughput of {@link SmartMonkeyLogParser}.
+     */
+    public void testSmartMonkeyLog() throws Exception {
+        final List<String> lines =
+                new LogGenerator(SEED).generate(LogType.SMART_MONKEY_LOG, SIZE);
+        PerfBudget.getInstance().check("SMART_MONKEY_LOG", lines, new Runnable() {
+            @Override
+            public void run() {
+                // The parser keeps its state and item, so each run gets a new parser.
+                new SmartMonkeyLogParser().parse(lines);
+            }
+        });
+    }
+}
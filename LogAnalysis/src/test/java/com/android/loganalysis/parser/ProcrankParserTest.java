@@ -60,6 +60,29 @@ public class ProcrankParserTest extends TestCase {
         assertEquals(ArrayUtil.join("\n", inputBlock), procrank.getText());
     }
 
+    /**
+     * Test that the raw text is kept according to the {@link TextRetention}.
+     */
+    public void testTextRetention() {
+        List<String> inputBlock = Arrays.asList(
+                "  PID      Vss      Rss      Pss      Uss  cmdline",
+                "  178   87136K   81684K   52829K   50012K  system_server",
+                "");
+
+        ProcrankParser parser = new ProcrankParser();
+        parser.setTextRetention(TextRetention.LAZY);
+        ProcrankItem procrank = parser.parse(inputBlock);
+        assertEquals((Integer) 52829, procrank.getPss(178));
+        assertEquals(ArrayUtil.join("\n", inputBlock.subList(0, 2)), procrank.getText());
+        assertEquals(procrank.getText(), procrank.toJson().optString(ProcrankItem.TEXT));
+
+        parser.setTextRetention(TextRetention.NONE);
+        procrank = parser.parse(inputBlock);
+        assertEquals((Integer) 52829, procrank.getPss(178));
+        assertNull(procrank.getText());
+        assertFalse(procrank.toJson().has(ProcrankItem.TEXT));
+    }
+
     /**
      * Test that an empty input returns {@code null}.
      */
@@ -55,6 +55,14 @@ public class SmartMonkeyLogParserTest extends TestCase {
                 monkeyLog.getCrashTimes().toArray()[0]);
         assertEquals(SmartMonkeyLogParser.parseTime("2013-03-04 12:43:39.510"),
                 monkeyLog.getAnrTimes().toArray()[0]);
+        assertEquals(1, monkeyLog.getCrashCount(
+                SmartMonkeyLogParser.parseTime("2013-03-04 12:33:00.000"),
+                SmartMonkeyLogParser.parseTime("2013-03-04 12:34:00.000")));
+        assertEquals(0, monkeyLog.getAnrCount(
+                SmartMonkeyLogParser.parseTime("2013-03-04 12:33:00.000"),
+                SmartMonkeyLogParser.parseTime("2013-03-04 12:34:00.000")));
+        assertTrue(Arrays.equals(new int[] {1}, monkeyLog.getCrashesPerHour()));
+        assertTrue(Arrays.equals(new int[] {1}, monkeyLog.getAnrsPerHour()));
     }
 
     /**
@@ -143,4 +151,32 @@ public class SmartMonkeyLogParserTest extends TestCase {
         assertEquals(608193, monkeyLog.getStopUptimeDuration());
         assertEquals(true, monkeyLog.getIsAborted());
     }
+
+    /**
+     * Test that lines without a well formed time stamp are ignored, that time stamps within the
+     * same second are converted correctly, and that the intermediate time is the last time stamp.
+     * @throws ParseException
+     */
+    public void testTimeStamps() throws ParseException {
+        List<String> lines = Arrays.asList(
+            "2013-03-04 12:33:18.789: Starting [UiAutomator Tests][com.android.cts.uiautomator]",
+            "2013-03-04 12:33:18: Throttle: 10 ms",
+            "2013-3-04 12:33:18.790: Throttle: 20 ms",
+            "2013-03-04 12:33:18.791: Throttle: 30 ms",
+            "2013-03-04 12:33:19.001: [  0](Seq:  0)-UI Exception: CRASH: Stopped.",
+            "2013-03-04 12:33:19.002: [  1](Seq:  0)-UI Exception: CRASH: Stopped again.",
+            "Monkey aborted.",
+            "2013-03-04 12:33:19.003: Monkey aborted.",
+            "2013-03-04 12:33:20.004: ");
+
+        SmartMonkeyLogItem monkeyLog = new SmartMonkeyLogParser().parse(lines);
+        assertEquals(30, monkeyLog.getThrottle());
+        assertEquals(1, monkeyLog.getIntermediateCount());
+        assertTrue(monkeyLog.getIsAborted());
+        assertEquals(2, monkeyLog.getCrashTimes().size());
+        assertTrue(monkeyLog.getCrashTimes().contains(
+                SmartMonkeyLogParser.parseTime("2013-03-04 12:33:19.002")));
+        assertEquals(SmartMonkeyLogParser.parseTime("2013-03-04 12:33:20.004"),
+                monkeyLog.getIntermediateTime());
+    }
 }
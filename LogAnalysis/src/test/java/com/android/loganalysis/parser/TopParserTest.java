@@ -51,6 +51,29 @@ public class TopParserTest extends TestCase {
         assertEquals(ArrayUtil.join("\n", inputBlock), item.getText());
     }
 
+    /**
+     * Test that the raw text is only joined when requested with {@link TextRetention#LAZY}.
+     */
+    public void testTextRetention() {
+        List<String> inputBlock = Arrays.asList(
+                "",
+                "User 150 + Nice 50 + Sys 200 + Idle 510 + IOW 60 + IRQ 5 + SIRQ 25 = 1000",
+                "  PID   TID PR CPU% S     VSS     RSS PCY UID      Thread          Proc");
+
+        TopParser parser = new TopParser();
+        parser.setTextRetention(TextRetention.LAZY);
+        TopItem item = parser.parse(inputBlock);
+        assertEquals(1000, item.getTotal());
+        assertEquals(ArrayUtil.join("\n", inputBlock).trim(), item.getText());
+        assertEquals(item.getText(), item.toJson().optString(TopItem.TEXT));
+
+        parser.setTextRetention(TextRetention.NONE);
+        item = parser.parse(inputBlock);
+        assertEquals(1000, item.getTotal());
+        assertNull(item.getText());
+        assertFalse(item.toJson().has(TopItem.TEXT));
+    }
+
     /**
      * Test that the last output is stored.
      */
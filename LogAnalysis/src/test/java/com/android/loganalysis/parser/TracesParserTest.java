@@ -15,10 +15,16 @@
  */
 package com.android.loganalysis.parser;
 
+import com.android.loganalysis.item.ThreadItem;
 import com.android.loganalysis.item.TracesItem;
 import com.android.loganalysis.util.ArrayUtil;
+import com.android.loganalysis.util.LockWaitGraph;
 import junit.framework.TestCase;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -163,4 +169,100 @@ public class TracesParserTest extends TestCase {
         assertEquals("com.android.package", traces.getApp());
         assertEquals(ArrayUtil.join("\n", expectedStack), traces.getStack());
     }
+
+    /**
+     * Test that every thread of every process is streamed, and that deadlocks are found.
+     */
+    public void testParseThreads() throws IOException {
+        List<String> lines = Arrays.asList(
+                "----- pid 2887 at 2012-05-02 16:43:41 -----",
+                "Cmd line: com.android.package",
+                "",
+                "DALVIK THREADS:",
+                "(mutexes: tll=0 tsl=0 tscl=0 ghl=0)",
+                "",
+                "\"main\" prio=5 tid=1 MONITOR",
+                "  | group=\"main\" sCount=1 dsCount=0 obj=0x00000001 self=0x00000001",
+                "  | sysTid=2887 nice=0 sched=0/0 cgrp=foreground handle=0000000001",
+                "  at class.method1(Class.java:1)",
+                "  - waiting to lock <0x00000002> (a java.lang.Object) held by tid=12 (Thread-9)",
+                "  at class.method2(Class.java:2)",
+                "  - locked <0x00000001> (a java.lang.Object)",
+                "",
+                "\"Thread-9\" daemon prio=5 tid=12 Blocked",
+                "  | sysTid=2900 nice=0 sched=0/0 cgrp=foreground handle=0000000001",
+                "  at class.method1(Class.java:1)",
+                "  - waiting to lock <0x00000001> (a java.lang.Object)",
+                "  - locked <0x00000002> (a java.lang.Object)",
+                "\"Binder\" prio=10 (not attached)",
+                "  | sysTid=2901 nice=0 sched=0/0 cgrp=foreground handle=0000000001",
+                "  native: #00 pc 00001234  /system/lib/lib.so (addr+8)",
+                "",
+                "----- end 2887 -----",
+                "",
+                "----- pid 256 at 2012-05-02 16:43:41 -----",
+                "Cmd line: system_server",
+                "",
+                "\"main\" prio=5 tid=1 WAIT",
+                "  at class.method1(Class.java:1)",
+                "  - waiting on <0x00000003> (a java.lang.Object)",
+                "  at class.method1(Class.java:1)",
+                "----- end 256 -----");
+
+        final List<ThreadItem> threads = new ArrayList<ThreadItem>();
+        ITracesListener listener = new ITracesListener() {
+            @Override
+            public void onThread(ThreadItem thread) {
+                threads.add(thread);
+            }
+        };
+        LockWaitGraph graph = new TracesParser().parseThreads(
+                new BufferedReader(new StringReader(ArrayUtil.join("\n", lines))), listener);
+
+        assertEquals(4, threads.size());
+
+        ThreadItem main = threads.get(0);
+        assertEquals(2887, main.getPid().intValue());
+        assertEquals("com.android.package", main.getApp());
+        assertEquals("main", main.getName());
+        assertEquals(1, main.getTid().intValue());
+        assertEquals(2887, main.getSysTid().intValue());
+        assertEquals("MONITOR", main.getState());
+        assertEquals("0x00000002", main.getWaitingLock());
+        assertEquals(12, main.getLockOwnerTid().intValue());
+        assertEquals(Arrays.asList("0x00000001"), main.getHeldLocks());
+        assertEquals(Arrays.asList("at class.method1(Class.java:1)",
+                "at class.method2(Class.java:2)"), main.getFrames());
+
+        ThreadItem thread = threads.get(1);
+        assertEquals("Thread-9", thread.getName());
+        assertEquals("Blocked", thread.getState());
+        assertNull(thread.getLockOwnerTid());
+
+        ThreadItem binder = threads.get(2);
+        assertEquals("Binder", binder.getName());
+        assertNull(binder.getTid());
+        assertEquals(Arrays.asList("native: #00 pc 00001234  /system/lib/lib.so (addr+8)"),
+                binder.getFrames());
+
+        ThreadItem system = threads.get(3);
+        assertEquals(256, system.getPid().intValue());
+        assertEquals("system_server", system.getApp());
+        assertEquals("0x00000003", system.getWaitingOn());
+        assertNull(system.getWaitingLock());
+        // Equal frames are interned.
+        assertSame(system.getFrames().get(0), system.getFrames().get(1));
+        assertSame(main.getFrames().get(0), system.getFrames().get(0));
+
+        assertEquals(Arrays.asList(Arrays.asList(1, 12)), graph.getDeadlocks(2887));
+        assertTrue(graph.getDeadlocks(256).isEmpty());
+
+        // The main stack is still parsed, and the listener gets every thread.
+        threads.clear();
+        TracesParser parser = new TracesParser();
+        parser.setThreadListener(listener);
+        TracesItem traces = parser.parse(lines);
+        assertEquals(2887, traces.getPid().intValue());
+        assertEquals(4, threads.size());
+    }
 }
@@ -65,4 +65,15 @@ public class ArrayUtilTest extends TestCase {
         String str = ArrayUtil.join(", ", "alpha", "beta", "gamma");
         assertEquals(expected, str);
     }
+
+    /**
+     * Test that {@link ArrayUtil#sortIndicesDescending(long[], int)} sorts stably and only
+     * considers the first {@code length} values.
+     */
+    public void testSortIndicesDescending() {
+        long[] values = new long[] {3, 9, 1, 9, 5, 100};
+        int[] indices = ArrayUtil.sortIndicesDescending(values, 5);
+        assertTrue(Arrays.equals(new int[] {1, 3, 4, 0, 2}, indices));
+        assertEquals(0, ArrayUtil.sortIndicesDescending(values, 0).length);
+    }
 }
@@ -0,0 +1,94 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link CrashSignatureUtil}
+ */
+public class CrashSignatureUtilTest extends TestCase {
+
+    /**
+     * Test that line numbers, anonymous classes and lambdas are normalized in Java crashes.
+     */
+    public void testJavaCrash() {
+        final String stack1 = "java.lang.NullPointerException\n" +
+                "\tat com.android.Foo$1.run(Foo.java:42)\n" +
+                "\tat com.android.Foo.lambda$onCreate$0(Foo.java:12)\n" +
+                "\tat com.android.-$$Lambda$Foo$xYz12.run(Unknown Source:2)\n" +
+                "\tat android.os.Handler.handleCallback(Handler.java:725)";
+        final String stack2 = "java.lang.NullPointerException\n" +
+                "\tat com.android.Foo$3.run(Foo.java:45)\n" +
+                "\tat com.android.Foo.lambda$onCreate$2(Foo.java:13)\n" +
+                "\tat com.android.-$$Lambda$Foo$AbC34.run(Unknown Source:4)\n" +
+                "\tat android.os.Handler.handleCallback(Handler.java:725)";
+
+        assertEquals("java|java.lang.NullPointerException|com.android.Foo$.run(Foo.java)" +
+                "|com.android.Foo.lambda$onCreate$(Foo.java)",
+                CrashSignatureUtil.getJavaCrashKey("java.lang.NullPointerException", stack1, 2));
+        assertEquals(
+                CrashSignatureUtil.getJavaCrashSignature("java.lang.NullPointerException",
+                        stack1, 5),
+                CrashSignatureUtil.getJavaCrashSignature("java.lang.NullPointerException",
+                        stack2, 5));
+        assertFalse(CrashSignatureUtil.getJavaCrashSignature("java.lang.NullPointerException",
+                stack1, 5).equals(CrashSignatureUtil.getJavaCrashSignature(
+                "java.lang.IllegalStateException", stack1, 5)));
+        assertEquals(16, CrashSignatureUtil.getJavaCrashSignature(null, null, 5).length());
+    }
+
+    /**
+     * Test that native crashes use the signal and the library and offset of the top frames.
+     */
+    public void testNativeCrash() {
+        final String stack = "*** *** *** *** *** *** *** *** *** *** *** *** *** *** *** ***\n" +
+                "pid: 2058, tid: 2523  >>> com.google.android.browser <<<\n" +
+                "signal 11 (SIGSEGV), code 1 (SEGV_MAPERR), fault addr 00000000\n" +
+                " r0 00000000  r1 007d9064  r2 007d9063  r3 00000004\n" +
+                "\n" +
+                "         #00  pc 001236a0  /system/lib/libwebcore.so\n" +
+                "         #01  pc 00123896  /system/lib/libc.so (abort+4)\n" +
+                "         #02  pc 00123932  /system/lib/libwebcore.so\n" +
+                "\n" +
+                "stack:\n" +
+                "         #00  pc 00000001  /system/lib/libother.so\n";
+
+        assertEquals("native|SIGSEGV|/system/lib/libwebcore.so+1236a0" +
+                "|/system/lib/libc.so+123896|/system/lib/libwebcore.so+123932",
+                CrashSignatureUtil.getNativeCrashKey(stack, 5));
+        assertEquals("native|SIGSEGV|/system/lib/libwebcore.so+1236a0",
+                CrashSignatureUtil.getNativeCrashKey(stack, 1));
+    }
+
+    /**
+     * Test that ANRs use the main thread stack, or the reason if there is no trace.
+     */
+    public void testAnr() {
+        final String trace = "\"main\" prio=5 tid=1 MONITOR\n" +
+                "  | group=\"main\" sCount=1 dsCount=0 obj=0x00000001 self=0xbeef1000\n" +
+                "  at com.android.Foo.bar(Foo.java:10)\n" +
+                "  - waiting to lock <0x41234567> held by tid=12 (Thread-9)\n" +
+                "  at android.os.Looper.loop(Looper.java:137)";
+
+        assertEquals("anr|com.android.foo|com.android.Foo.bar(Foo.java)" +
+                "|android.os.Looper.loop(Looper.java)",
+                CrashSignatureUtil.getAnrKey("com.android.foo", trace, null, 5));
+        assertEquals("anr|com.android.foo|Input dispatching timed out (Waited # ms)",
+                CrashSignatureUtil.getAnrKey("com.android.foo", null,
+                        "Input dispatching timed out (Waited 5002 ms)", 5));
+    }
+}
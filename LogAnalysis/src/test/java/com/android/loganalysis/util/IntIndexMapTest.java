@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link IntIndexMap}
+ */
+public class IntIndexMapTest extends TestCase {
+
+    /**
+     * Test that keys are assigned rows in insertion order.
+     */
+    public void testGetOrAdd() {
+        IntIndexMap map = new IntIndexMap();
+        assertEquals(0, map.getOrAdd(1313));
+        assertEquals(1, map.getOrAdd(178));
+        assertEquals(0, map.getOrAdd(1313));
+        assertEquals(2, map.size());
+        assertEquals(1, map.get(178));
+        assertEquals(IntIndexMap.NOT_FOUND, map.get(42));
+        assertTrue(map.containsKey(1313));
+        assertFalse(map.containsKey(42));
+    }
+
+    /**
+     * Test that rows are kept when the map grows past its initial capacity.
+     */
+    public void testResize() {
+        IntIndexMap map = new IntIndexMap(1);
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, map.getOrAdd(i * 7 - 5000));
+        }
+        assertEquals(10000, map.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, map.get(i * 7 - 5000));
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Unit tests for {@link IntPostings}.
+ */
+public class IntPostingsTest extends TestCase {
+
+    /**
+     * Test that ids are kept sorted and distinct, and survive encoding.
+     */
+    public void testEncode() {
+        IntPostings postings = new IntPostings();
+        int[] ids = {0, 1, 127, 128, 16384, 16384, 100, 2000000000};
+        for (int id : ids) {
+            postings.add(id);
+        }
+        int[] expected = {0, 1, 127, 128, 16384, 2000000000};
+        assertEquals(expected.length, postings.size());
+        assertTrue(Arrays.equals(expected, postings.toArray()));
+
+        byte[] encoded = postings.encode();
+        // 1 byte for each delta below 128, 2 for 16256, and 5 for the last one.
+        assertEquals(1 + 1 + 1 + 1 + 2 + 5, encoded.length);
+        ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 3);
+        buffer.position(3);
+        buffer.put(encoded);
+        assertTrue(Arrays.equals(expected, IntPostings.decode(buffer, 3, expected.length)));
+    }
+
+    /**
+     * Test the combinations of sorted ids.
+     */
+    public void testCombine() {
+        int[] a = {1, 3, 5, 7, 9};
+        int[] b = {2, 3, 4, 9, 10};
+        assertTrue(Arrays.equals(new int[] {3, 9}, IntPostings.and(a, b)));
+        assertTrue(Arrays.equals(new int[] {1, 2, 3, 4, 5, 7, 9, 10}, IntPostings.or(a, b)));
+        assertTrue(Arrays.equals(new int[] {1, 5, 7}, IntPostings.andNot(a, b)));
+        assertTrue(Arrays.equals(new int[0], IntPostings.and(a, new int[0])));
+        assertTrue(Arrays.equals(a, IntPostings.or(new int[0], a)));
+        assertTrue(Arrays.equals(a, IntPostings.andNot(a, new int[0])));
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Unit tests for {@link IntervalIndex}.
+ */
+public class IntervalIndexTest extends TestCase {
+
+    /**
+     * Test that the intervals which touch the range are found, in order of their starts.
+     */
+    public void testGetOverlapping() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        index.add(10, 10, "point");
+        index.add(0, 100, "long");
+        index.add(20, 30, "short");
+        index.add(10, 15, "same start");
+        index.add(40, 50, "later");
+
+        assertEquals(Arrays.asList("long", "point", "same start"), index.getOverlapping(5, 10));
+        assertEquals(Arrays.asList("long", "same start", "short"),
+                index.getOverlapping(15, 20));
+        assertEquals(Arrays.asList("long"), index.getOverlapping(31, 39));
+        assertEquals(Arrays.asList("long", "later"), index.getOverlapping(50, 1000));
+        assertEquals(Arrays.asList(), index.getOverlapping(101, 1000));
+        assertEquals(Arrays.asList(), index.getOverlapping(20, 10));
+
+        // Values added after a query are found by the next one.
+        index.add(-5, -1, "before");
+        assertEquals(Arrays.asList("before", "long"), index.getOverlapping(-3, 0));
+        assertEquals(6, index.size());
+    }
+
+    /**
+     * Test that an empty index finds nothing, and that an interval must not stop before it
+     * starts.
+     */
+    public void testEmpty() {
+        IntervalIndex<String> index = new IntervalIndex<String>();
+        assertTrue(index.getOverlapping(Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+        try {
+            index.add(2, 1, "invalid");
+            fail("Expected an IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Test random intervals against a scan of all intervals.
+     */
+    public void testRandom() {
+        Random random = new Random(20190627);
+        IntervalIndex<Integer> index = new IntervalIndex<Integer>();
+        long[] starts = new long[1000];
+        long[] stops = new long[1000];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = random.nextInt(100000);
+            stops[i] = starts[i] + (random.nextInt(10) == 0 ? random.nextInt(20000)
+                    : random.nextInt(100));
+            index.add(starts[i], stops[i], i);
+        }
+        for (int query = 0; query < 200; query++) {
+            final long from = random.nextInt(110000) - 5000;
+            final long to = from + random.nextInt(2000);
+            List<Integer> expected = new ArrayList<Integer>();
+            for (int i = 0; i < starts.length; i++) {
+                if (starts[i] <= to && stops[i] >= from) {
+                    expected.add(i);
+                }
+            }
+            List<Integer> actual = index.getOverlapping(from, to);
+            assertEquals(expected.size(), actual.size());
+            assertTrue(actual.containsAll(expected));
+            for (int i = 1; i < actual.size(); i++) {
+                assertTrue(starts[actual.get(i - 1)] <= starts[actual.get(i)]);
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LockWaitGraph}
+ */
+public class LockWaitGraphTest extends TestCase {
+
+    /**
+     * Test that owners are resolved from the held locks when the traces do not give them.
+     */
+    public void testGetWaitingFor() {
+        LockWaitGraph graph = new LockWaitGraph();
+        graph.addWaitingLock(100, 1, "0x1", null);
+        graph.addWaitingLock(100, 2, "0x2", 5);
+        graph.addHeldLock(100, 3, "0x1");
+        graph.addHeldLock(200, 4, "0x2");
+
+        assertEquals(3, graph.getWaitingFor(100, 1).intValue());
+        assertEquals(5, graph.getWaitingFor(100, 2).intValue());
+        assertNull(graph.getWaitingFor(100, 3));
+        assertNull(graph.getWaitingFor(200, 1));
+        assertEquals(Arrays.asList(100, 200), Arrays.asList(graph.getPids().toArray()));
+        assertTrue(graph.getDeadlocks(100).isEmpty());
+    }
+
+    /**
+     * Test that cycles are found once each, starting from the lowest tid, and that threads which
+     * wait on a cycle are not part of it.
+     */
+    public void testGetDeadlocks() {
+        LockWaitGraph graph = new LockWaitGraph();
+        // 7 -> 5 -> 9 -> 7, with 3 waiting on the cycle.
+        graph.addWaitingLock(100, 3, "0xa", 7);
+        graph.addWaitingLock(100, 7, "0xb", null);
+        graph.addHeldLock(100, 5, "0xb");
+        graph.addWaitingLock(100, 5, "0xc", 9);
+        graph.addWaitingLock(100, 9, "0xd", 7);
+        // A separate two thread cycle in the same process.
+        graph.addWaitingLock(100, 20, "0xe", 21);
+        graph.addWaitingLock(100, 21, "0xf", 20);
+        // The same tids in another process do not form a cycle.
+        graph.addWaitingLock(200, 7, "0xb", 5);
+
+        List<List<Integer>> deadlocks = graph.getDeadlocks(100);
+        assertEquals(2, deadlocks.size());
+        assertEquals(Arrays.asList(5, 9, 7), deadlocks.get(0));
+        assertEquals(Arrays.asList(20, 21), deadlocks.get(1));
+        assertTrue(graph.getDeadlocks(200).isEmpty());
+    }
+}
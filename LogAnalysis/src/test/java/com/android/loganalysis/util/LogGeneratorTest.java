@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.KernelLogItem;
+import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.item.MonkeyLogItem;
+import com.android.loganalysis.item.SmartMonkeyLogItem;
+import com.android.loganalysis.parser.BugreportParser;
+import com.android.loganalysis.parser.KernelLogParser;
+import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.parser.MonkeyLogParser;
+import com.android.loganalysis.parser.SmartMonkeyLogParser;
+import com.android.loganalysis.util.LogGenerator.LogType;
+import com.android.loganalysis.util.LogGenerator.LogcatFormat;
+import junit.framework.TestCase;
+
+import java.io.StringWriter;
+import java.util.List;
+
+/**
+ * Unit tests for {@link LogGenerator}.
+ */
+public class LogGeneratorTest extends TestCase {
+
+    /**
+     * Test that the same seed gives the same log, and a different seed a different log.
+     */
+    public void testWrite_seed() throws Exception {
+        for (LogType type : LogType.values()) {
+            String log = write(new LogGenerator(1), type, 64 * 1024);
+            assertEquals(log, write(new LogGenerator(1), type, 64 * 1024));
+            assertFalse(log.equals(write(new LogGenerator(2), type, 64 * 1024)));
+            assertTrue(log.length() >= 64 * 1024);
+            assertTrue(log.length() < 80 * 1024);
+        }
+    }
+
+    /**
+     * Test that a generated logcat has the configured events.
+     */
+    public void testGenerate_logcat() {
+        LogGenerator generator = new LogGenerator(0);
+        generator.setAnrRate(0.01);
+        generator.setJavaCrashRate(0.01);
+        generator.setNativeCrashRate(0.01);
+        LogcatItem logcat = new LogcatParser("2012").parse(
+                generator.generate(LogType.LOGCAT, 256 * 1024));
+        assertTrue(logcat.getAnrs().size() > 10);
+        assertTrue(logcat.getJavaCrashes().size() > 10);
+        assertTrue(logcat.getNativeCrashes().size() > 10);
+        assertNotNull(logcat.getJavaCrashes().get(0).getApp());
+
+        generator.setAnrRate(0);
+        generator.setJavaCrashRate(0);
+        generator.setNativeCrashRate(0);
+        generator.setLogcatFormat(LogcatFormat.TIME);
+        logcat = new LogcatParser("2012").parse(generator.generate(LogType.LOGCAT, 64 * 1024));
+        assertNotNull(logcat.getStartTime());
+        assertEquals(0, logcat.getEvents().size());
+    }
+
+    /**
+     * Test that the tag count limits the number of distinct tags.
+     */
+    public void testGenerate_tags() {
+        LogGenerator generator = new LogGenerator(0);
+        generator.setTagCount(3);
+        generator.setPidChurn(0);
+        generator.setAnrRate(0);
+        generator.setJavaCrashRate(0);
+        generator.setNativeCrashRate(0);
+        for (String line : generator.generate(LogType.LOGCAT, 16 * 1024)) {
+            assertTrue(line, line.matches(".* (ActivityManager|PackageManager|WindowManager): .*"));
+        }
+    }
+
+    /**
+     * Test that a generated kernel log has the configured events and boots.
+     */
+    public void testGenerate_kernelLog() {
+        LogGenerator generator = new LogGenerator(0);
+        generator.setKernelResetRate(0.001);
+        generator.setKernelErrorRate(0.001);
+        List<String> lines = generator.generate(LogType.KERNEL_LOG, 1024 * 1024);
+        KernelLogItem kernelLog = new KernelLogParser().parse(lines);
+        assertTrue(kernelLog.getEvents().size() > 10);
+        assertTrue(kernelLog.getSELinuxEvents().size() > 0);
+        assertTrue(kernelLog.getMiscEvents(KernelLogParser.KERNEL_ERROR).size() > 0);
+        assertTrue(kernelLog.getMiscEvents(KernelLogParser.KERNEL_RESET).size() > 0);
+    }
+
+    /**
+     * Test that generated monkey logs can be parsed.
+     */
+    public void testGenerate_monkeyLogs() {
+        LogGenerator generator = new LogGenerator(0);
+        generator.setJavaCrashRate(0.01);
+        MonkeyLogItem monkeyLog = new MonkeyLogParser().parse(
+                generator.generate(LogType.MONKEY_LOG, 64 * 1024));
+        assertTrue(monkeyLog.getIsFinished());
+        assertTrue(monkeyLog.getFinalCount() > 100);
+        assertNotNull(monkeyLog.getStartTime());
+        assertNotNull(monkeyLog.getStopTime());
+
+        SmartMonkeyLogItem smartMonkeyLog = new SmartMonkeyLogParser().parse(
+                generator.generate(LogType.SMART_MONKEY_LOG, 64 * 1024));
+        assertTrue(smartMonkeyLog.getIsFinished());
+        assertTrue(smartMonkeyLog.getCrashTimes().size() > 0);
+        assertTrue(smartMonkeyLog.getFinalCount() > 100);
+    }
+
+    /**
+     * Test that a generated bugreport has every section.
+     */
+    public void testGenerate_bugreport() {
+        LogGenerator generator = new LogGenerator(0);
+        generator.setJavaCrashRate(0.01);
+        BugreportItem bugreport = new BugreportParser().parse(
+                generator.generate(LogType.BUGREPORT, 256 * 1024));
+        assertNotNull(bugreport.getTime());
+        assertNotNull(bugreport.getCommandLine());
+        assertNotNull(bugreport.getMemInfo());
+        assertNotNull(bugreport.getTop());
+        assertEquals(40, bugreport.getProcrank().getPids().size());
+        assertNotNull(bugreport.getKernelLog());
+        assertNotNull(bugreport.getLastKmsg());
+        assertTrue(bugreport.getSystemLog().getEvents().size() > 0);
+        assertEquals(200, bugreport.getSystemProps().size());
+        assertNotNull(bugreport.getDumpsys().getBatteryInfo());
+    }
+
+    /**
+     * Test parsing sizes.
+     */
+    public void testParseSize() {
+        assertEquals(512, LogGenerator.parseSize("512"));
+        assertEquals(64 * 1024, LogGenerator.parseSize("64k"));
+        assertEquals(100L << 20, LogGenerator.parseSize("100M"));
+        assertEquals(10L << 30, LogGenerator.parseSize("10G"));
+        try {
+            LogGenerator.parseSize("G");
+            fail("Expected a NumberFormatException");
+        } catch (NumberFormatException e) {
+            // Expected
+        }
+    }
+
+    /**
+     * Write a log to a string.
+     */
+    private static String write(LogGenerator generator, LogType type, long size)
+            throws Exception {
+        StringWriter output = new StringWriter();
+        generator.write(type, size, output);
+        return output.toString();
+    }
+}
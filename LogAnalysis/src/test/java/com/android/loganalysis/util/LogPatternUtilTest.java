@@ -17,6 +17,8 @@ package com.android.loganalysis.util;
 
 import junit.framework.TestCase;
 
+import java.util.HashSet;
+import java.util.Set;
 import java.util.regex.Pattern;
 
 /**
@@ -54,4 +56,109 @@ public class LogPatternUtilTest extends TestCase {
         assertEquals("cat2", patternUtil.checkMessage("123", "E/tag1"));
         assertEquals("cat3", patternUtil.checkMessage("123", "E/tag2"));
     }
+
+    /**
+     * Test that the first pattern added which matches is used, whether or not the patterns have a
+     * leading literal character.
+     */
+    public void testOrder() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile("abc.*"), "cat1");
+        patternUtil.addPattern(Pattern.compile(".*def"), "cat2");
+        patternUtil.addPattern(Pattern.compile("abcdef"), "cat3");
+        patternUtil.addPattern(Pattern.compile("x(y)z|(w)"), "cat4");
+        patternUtil.addPattern(Pattern.compile(".*(\\d)\\1"), "cat5");
+        patternUtil.addPattern(Pattern.compile("ghi", Pattern.CASE_INSENSITIVE), "cat6");
+        patternUtil.addPattern(Pattern.compile("(g)hi"), "cat7");
+
+        assertEquals("cat1", patternUtil.checkMessage("abcdef"));
+        assertEquals("cat2", patternUtil.checkMessage("xyzdef"));
+        assertEquals("cat4", patternUtil.checkMessage("xyz"));
+        assertEquals("cat4", patternUtil.checkMessage("w"));
+        assertEquals("cat5", patternUtil.checkMessage("a11"));
+        assertNull(patternUtil.checkMessage("a12"));
+        assertEquals("cat6", patternUtil.checkMessage("GHI"));
+        assertEquals("cat6", patternUtil.checkMessage("ghi"));
+        assertNull(patternUtil.checkMessage(""));
+
+        // Adding a pattern after matching recompiles the patterns.
+        patternUtil.addPattern(Pattern.compile(""), "cat8");
+        assertEquals("cat8", patternUtil.checkMessage(""));
+    }
+
+    /**
+     * Test that a later pattern is used if the first match has other extras.
+     */
+    public void testExtrasOrder() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile("abc"), "E/tag1", "cat1");
+        patternUtil.addPattern(Pattern.compile("a.*"), "E/tag2", "cat2");
+        patternUtil.addPattern(Pattern.compile(".*c"), null, "cat3");
+
+        assertEquals("cat1", patternUtil.checkMessage("abc", "E/tag1"));
+        assertEquals("cat2", patternUtil.checkMessage("abc", "E/tag2"));
+        assertEquals("cat3", patternUtil.checkMessage("abc", "E/tag3"));
+        assertNull(patternUtil.checkMessage("ab", "E/tag3"));
+    }
+
+    /**
+     * Test the leading character of patterns.
+     */
+    public void testGetLeadingChar() {
+        assertEquals('a', LogPatternUtil.getLeadingChar(Pattern.compile("abc")));
+        assertEquals('a', LogPatternUtil.getLeadingChar(Pattern.compile("^a+bc")));
+        assertEquals('[', LogPatternUtil.getLeadingChar(Pattern.compile("\\[MODEM_IF\\].*")));
+        assertEquals('a', LogPatternUtil.getLeadingChar(Pattern.compile("a(b|c)")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile("ab|c")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile("a?b")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile("a*b")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile("\\d")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile(".*abc")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile("[a]bc")));
+        assertEquals(-1, LogPatternUtil.getLeadingChar(Pattern.compile("abc",
+                Pattern.CASE_INSENSITIVE)));
+    }
+
+    /**
+     * Test which patterns can be combined.
+     */
+    public void testIsCombinable() {
+        assertTrue(LogPatternUtil.isCombinable(Pattern.compile("a(b)c\\\\1")));
+        assertTrue(LogPatternUtil.isCombinable(Pattern.compile("(?<=a)b(?<!c)")));
+        assertFalse(LogPatternUtil.isCombinable(Pattern.compile("(a)\\1")));
+        assertFalse(LogPatternUtil.isCombinable(Pattern.compile("(?<name>a)")));
+        assertFalse(LogPatternUtil.isCombinable(Pattern.compile("a", Pattern.DOTALL)));
+    }
+
+    /**
+     * Test that the digest changes with the patterns, their flags, extras and categories, and
+     * their order.
+     */
+    public void testGetDigest() {
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile("abc"), "cat1");
+        LogPatternUtil other = new LogPatternUtil();
+        other.addPattern(Pattern.compile("abc"), "cat1");
+        assertEquals(patternUtil.getDigest(), other.getDigest());
+
+        Set<String> digests = new HashSet<String>();
+        digests.add(patternUtil.getDigest());
+        digests.add(new LogPatternUtil().getDigest());
+        other = new LogPatternUtil();
+        other.addPattern(Pattern.compile("abc"), "cat2");
+        digests.add(other.getDigest());
+        other = new LogPatternUtil();
+        other.addPattern(Pattern.compile("abc", Pattern.CASE_INSENSITIVE), "cat1");
+        digests.add(other.getDigest());
+        other = new LogPatternUtil();
+        other.addPattern(Pattern.compile("abc"), "extra", "cat1");
+        digests.add(other.getDigest());
+        patternUtil.addPattern(Pattern.compile("def"), "cat1");
+        digests.add(patternUtil.getDigest());
+        other = new LogPatternUtil();
+        other.addPattern(Pattern.compile("def"), "cat1");
+        other.addPattern(Pattern.compile("abc"), "cat1");
+        digests.add(other.getDigest());
+        assertEquals(7, digests.size());
+    }
 }
@@ -0,0 +1,112 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.parser.BugreportParser;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Unit tests for {@link ParsePhase}.
+ */
+public class ParsePhaseTest extends TestCase {
+    private static final String SECTION = "com.android.loganalysis.Section";
+    private static final String LOGCAT_BLOCK = "com.android.loganalysis.LogcatBlock";
+    private static final String SUB_PARSER = "com.android.loganalysis.SubParser";
+
+    /**
+     * Test that the phases of a bugreport are recorded with their names and counts.
+     */
+    public void testRecording() throws Exception {
+        if (!ParsePhase.isAvailable()) {
+            return;
+        }
+        List<String> lines = Arrays.asList(
+                "========================================================",
+                "== dumpstate: 2012-04-25 20:45:10",
+                "========================================================",
+                "------ SYSTEM LOG (logcat -v threadtime -d *:v) ------",
+                "04-25 17:17:08.445   312   366 E ActivityManager: ANR (application not " +
+                "responding) in process: com.android.package",
+                "04-25 17:17:08.445   312   366 E ActivityManager: Reason: keyDispatchingTimedOut",
+                "");
+
+        List<RecordedEvent> events = record(lines);
+        RecordedEvent section = find(events, SECTION, "SYSTEM LOG (logcat -v threadtime -d *:v)");
+        assertEquals("BugreportParser", section.getString("parser"));
+        assertEquals(3, section.getLong("lines"));
+        assertEquals(ParseStats.getBytes(lines.subList(4, 7)), section.getLong("bytes"));
+
+        RecordedEvent block = find(events, LOGCAT_BLOCK, "E/ActivityManager");
+        assertEquals("LogcatParser", block.getString("parser"));
+        assertEquals(2, block.getLong("lines"));
+
+        boolean foundAnr = false;
+        for (RecordedEvent event : events) {
+            if (SUB_PARSER.equals(event.getEventType().getName())
+                    && "AnrParser".equals(event.getString("parser"))) {
+                foundAnr = true;
+                assertEquals(2, event.getLong("lines"));
+            }
+        }
+        assertTrue(foundAnr);
+    }
+
+    /**
+     * Parse a bugreport in a recording with the phase events enabled.
+     */
+    private static List<RecordedEvent> record(List<String> lines) throws Exception {
+        File file = File.createTempFile("parse_phase", ".jfr");
+        try {
+            Recording recording = new Recording();
+            try {
+                recording.enable(SECTION);
+                recording.enable(LOGCAT_BLOCK);
+                recording.enable(SUB_PARSER);
+                recording.start();
+                new BugreportParser().parse(lines);
+                recording.stop();
+                recording.dump(file.toPath());
+            } finally {
+                recording.close();
+            }
+            return new ArrayList<RecordedEvent>(RecordingFile.readAllEvents(file.toPath()));
+        } finally {
+            file.delete();
+        }
+    }
+
+    /**
+     * Find the event of a type with a name.
+     */
+    private static RecordedEvent find(List<RecordedEvent> events, String type, String name) {
+        for (RecordedEvent event : events) {
+            if (type.equals(event.getEventType().getName())
+                    && name.equals(event.getString("name"))) {
+                return event;
+            }
+        }
+        fail(String.format("No %s event named %s in %s", type, name, events));
+        return null;
+    }
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.util.ParseStats.ParserStats;
+import com.android.loganalysis.util.ParseStats.RuleStats;
+import junit.framework.TestCase;
+import org.json.JSONObject;
+
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Unit tests for {@link ParseStats}.
+ */
+public class ParseStatsTest extends TestCase {
+
+    /**
+     * Test that the counters of a parser are added up.
+     */
+    public void testParserStats() throws Exception {
+        ParseStats stats = new ParseStats();
+        ParserStats parser = stats.getParser("parser");
+        assertSame(parser, stats.getParser("parser"));
+        assertNotSame(parser, stats.getSection("parser"));
+
+        parser.add(new ParseStats.Timer(), 10, 100, 1);
+        parser.add(new ParseStats.Timer(), 5, 50, 2);
+        parser.updatePeakBufferedLines(7);
+        parser.updatePeakBufferedLines(3);
+        assertEquals(2, parser.getParses());
+        assertEquals(15, parser.getLines());
+        assertEquals(150, parser.getBytes());
+        assertEquals(3, parser.getEvents());
+        assertEquals(7, parser.getPeakBufferedLines());
+        assertTrue(parser.getWallNanos() >= 0);
+        assertTrue(parser.getCpuNanos() >= 0);
+
+        JSONObject json = stats.toJson().getJSONObject(ParseStats.PARSERS)
+                .getJSONObject("parser");
+        assertEquals(15, json.getLong(ParseStats.LINES));
+        assertEquals(150, json.getLong(ParseStats.BYTES));
+        assertEquals(7, json.getLong(ParseStats.PEAK_BUFFERED_LINES));
+        assertTrue(json.has(ParseStats.WALL_MS));
+        assertTrue(json.has(ParseStats.CPU_MS));
+    }
+
+    /**
+     * Test that the counters of a rule are added up, by group.
+     */
+    public void testRuleStats() throws Exception {
+        ParseStats stats = new ParseStats();
+        RuleStats rule = stats.getRule("group", "a.*");
+        assertSame(rule, stats.getRule("group", "a.*"));
+        assertNotSame(rule, stats.getRule("other", "a.*"));
+
+        rule.add(true);
+        rule.add(false);
+        assertEquals(2, rule.getEvaluations());
+        assertEquals(1, rule.getHits());
+
+        JSONObject json = stats.toJson().getJSONObject(ParseStats.RULES)
+                .getJSONObject("group").getJSONObject("a.*");
+        assertEquals(2, json.getLong(ParseStats.EVALUATIONS));
+        assertEquals(1, json.getLong(ParseStats.HITS));
+    }
+
+    /**
+     * Test that {@link LogPatternUtil} counts the patterns a message is checked against.
+     */
+    public void testLogPatternUtil() {
+        ParseStats stats = new ParseStats();
+        LogPatternUtil patternUtil = new LogPatternUtil();
+        patternUtil.addPattern(Pattern.compile("abc.*"), "cat1");
+        patternUtil.setStats(stats, "group");
+        patternUtil.addPattern(Pattern.compile("ab.*"), "cat2");
+
+        assertEquals("cat1", patternUtil.checkMessage("abcd"));
+        assertEquals("cat2", patternUtil.checkMessage("abd"));
+        assertNull(patternUtil.checkMessage("xyz"));
+        assertEquals(2, stats.getRule("group", "abc.*").getEvaluations());
+        assertEquals(1, stats.getRule("group", "abc.*").getHits());
+        assertEquals(1, stats.getRule("group", "ab.*").getEvaluations());
+        assertEquals(1, stats.getRule("group", "ab.*").getHits());
+
+        patternUtil.setStats(null, null);
+        assertEquals("cat1", patternUtil.checkMessage("abcd"));
+        assertEquals(2, stats.getRule("group", "abc.*").getEvaluations());
+    }
+
+    /**
+     * Test that {@link RegexTrie} counts the patterns a string is matched against.
+     */
+    public void testRegexTrie() {
+        ParseStats stats = new ParseStats();
+        RegexTrie<Integer> trie = new RegexTrie<Integer>();
+        trie.put(1, "a.*");
+        trie.put(2, "b.*");
+        trie.setStats(stats, "group");
+
+        assertEquals((Integer) 2, trie.retrieve("bc"));
+        assertNull(trie.retrieve("cd"));
+        assertEquals(2, stats.getRule("group", "a.*").getEvaluations());
+        assertEquals(0, stats.getRule("group", "a.*").getHits());
+        assertEquals(2, stats.getRule("group", "b.*").getEvaluations());
+        assertEquals(1, stats.getRule("group", "b.*").getHits());
+    }
+
+    /**
+     * Test the size of lines.
+     */
+    public void testGetBytes() {
+        assertEquals(0, ParseStats.getBytes(Arrays.<String>asList()));
+        assertEquals(6, ParseStats.getBytes(Arrays.asList("ab", "", "c")));
+    }
+}
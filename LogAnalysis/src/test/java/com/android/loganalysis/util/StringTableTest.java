@@ -0,0 +1,56 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+/**
+ * Unit tests for {@link StringTable}.
+ */
+public class StringTableTest extends TestCase {
+
+    /**
+     * Test that equal strings get the same id, and that ids map back to the strings.
+     */
+    public void testIntern() {
+        StringTable table = new StringTable();
+        assertEquals(0, table.intern("libc.so"));
+        assertEquals(1, table.intern("libm.so"));
+        assertEquals(0, table.intern(new String("libc.so")));
+        assertEquals("libm.so", table.get(1));
+        assertEquals(1, table.indexOf("libm.so"));
+        assertEquals(StringTable.NOT_FOUND, table.indexOf("libz.so"));
+        assertEquals(2, table.size());
+    }
+
+    /**
+     * Test that equal strings are shared, and that no strings are added once the table is full.
+     */
+    public void testShare() {
+        StringTable table = new StringTable(2);
+        String first = new String("at a.b(C.java:1)");
+        assertSame(first, table.share(first));
+        assertSame(first, table.share(new String("at a.b(C.java:1)")));
+        assertNull(table.share(null));
+        table.share("at a.c(C.java:2)");
+        String third = new String("at a.d(C.java:3)");
+        assertSame(third, table.share(third));
+        assertNotSame(third, table.share(new String("at a.d(C.java:3)")));
+        assertEquals(2, table.size());
+        // Ids are still assigned once the table is full.
+        assertEquals(2, table.intern("at a.d(C.java:3)"));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+
+/**
+ * Unit tests for {@link TimeSeries}
+ */
+public class TimeSeriesTest extends TestCase {
+    private static final long BASE = 1362400398789L;
+
+    /**
+     * Test that values added in order across several blocks are decoded correctly.
+     */
+    public void testAdd_inOrder() {
+        TimeSeries series = new TimeSeries();
+        long[] expected = new long[TimeSeries.BLOCK_SIZE * 3 + 5];
+        long value = BASE;
+        for (int i = 0; i < expected.length; i++) {
+            // Mix small and large deltas to exercise multi-byte encodings.
+            value += (i % 7 == 0) ? 1L << 40 : i;
+            expected[i] = value;
+            assertTrue(series.add(value));
+        }
+        assertEquals(expected.length, series.size());
+        assertTrue(Arrays.equals(expected, series.toArray()));
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], series.get(i));
+            assertEquals(i, series.lowerBound(expected[i]));
+            assertEquals(i + 1, series.lowerBound(expected[i] + 1));
+        }
+        assertEquals(0, series.lowerBound(BASE - 1));
+    }
+
+    /**
+     * Test that out of order and duplicate values keep the series sorted and distinct.
+     */
+    public void testAdd_outOfOrder() {
+        TimeSeries series = new TimeSeries();
+        assertTrue(series.add(BASE + 30));
+        assertTrue(series.add(BASE + 10));
+        assertTrue(series.add(BASE + 20));
+        assertFalse(series.add(BASE + 10));
+        assertFalse(series.add(BASE + 30));
+        assertTrue(series.add(BASE + 40));
+        assertTrue(Arrays.equals(new long[] {BASE + 10, BASE + 20, BASE + 30, BASE + 40},
+                series.toArray()));
+        assertTrue(series.contains(BASE + 20));
+        assertFalse(series.contains(BASE + 25));
+    }
+
+    /**
+     * Test that late values which are merged on read across several blocks give the same series
+     * as a sorted set, including reads between batches of late values.
+     */
+    public void testAdd_outOfOrderBatches() {
+        TimeSeries series = new TimeSeries();
+        TreeSet<Long> expected = new TreeSet<Long>();
+        Random random = new Random(0);
+        for (int i = 0; i < TimeSeries.BLOCK_SIZE * 10; i++) {
+            final long value = BASE + (i % 5 == 0 ? random.nextInt(i + 1) : i) * 1000L;
+            assertEquals(expected.add(value), series.add(value));
+            assertEquals(expected.size(), series.size());
+            if (i % 100 == 0) {
+                assertEquals(expected.headSet(value).size(), series.lowerBound(value));
+            }
+        }
+        long[] values = new long[expected.size()];
+        int i = 0;
+        for (Long value : expected) {
+            values[i++] = value;
+        }
+        assertTrue(Arrays.equals(values, series.toArray()));
+        assertTrue(Arrays.equals(Arrays.copyOfRange(values, 70, 200),
+                series.range(values[70], values[200])));
+        assertEquals(values[130], series.get(130));
+    }
+
+    /**
+     * Test range queries and bucket counts.
+     */
+    public void testRanges() {
+        TimeSeries series = new TimeSeries();
+        for (int i = 0; i < 200; i++) {
+            series.add(BASE + i * 10);
+        }
+        assertEquals(10, series.count(BASE, BASE + 100));
+        assertEquals(0, series.count(BASE + 100, BASE));
+        assertEquals(200, series.count(Long.MIN_VALUE, Long.MAX_VALUE));
+        assertTrue(Arrays.equals(new long[] {BASE + 990, BASE + 1000},
+                series.range(BASE + 985, BASE + 1001)));
+        assertTrue(Arrays.equals(new int[] {100, 100, 0},
+                series.countBuckets(BASE, 1000, 3)));
+        assertTrue(Arrays.equals(new int[] {0, 5},
+                series.countBuckets(BASE - 50, 50, 2)));
+        assertEquals(new TimeSeries().hashCode(), new TimeSeries().hashCode());
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import com.android.loganalysis.util.LogGenerator;
+import com.android.loganalysis.util.LogGenerator.LogType;
+
+import java.util.List;
+
+/**
+ * The input of the benchmarks: a log generated by {@link LogGenerator} from a fixed seed, so every
+ * run of a benchmark parses the same input.
+ */
+public class BenchmarkInput {
+    private static final long SEED = 20190625L;
+
+    private final List<String> mLines;
+    private final long mBytes;
+
+    /**
+     * Constructor for {@link BenchmarkInput}.
+     */
+    private BenchmarkInput(List<String> lines) {
+        mLines = lines;
+        long bytes = 0;
+        for (String line : lines) {
+            bytes += line.length() + 1;
+        }
+        mBytes = bytes;
+    }
+
+    /**
+     * Get the lines of the input.
+     */
+    public List<String> getLines() {
+        return mLines;
+    }
+
+    /**
+     * Get the size of the input in bytes, counting one byte per character and line break.
+     */
+    public long getBytes() {
+        return mBytes;
+    }
+
+    /**
+     * Generate a log with the default event rates.
+     *
+     * @param type the {@link LogType} of the log.
+     * @param size the size of the log, such as {@code 4M}.
+     */
+    public static BenchmarkInput generate(LogType type, String size) {
+        return new BenchmarkInput(new LogGenerator(SEED).generate(type,
+                LogGenerator.parseSize(size)));
+    }
+}
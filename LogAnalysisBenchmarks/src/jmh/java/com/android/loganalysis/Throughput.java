@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counters for the amount of input processed by a benchmark. JMH reports each public field as a
+ * rate next to the score, so a benchmark which adds its input each time it runs reports
+ * {@code megabytes} as MB/s and {@code lines} as lines/s.
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+    /** The number of megabytes of input processed. */
+    public double megabytes;
+    /** The number of lines of input processed. */
+    public long lines;
+
+    /**
+     * Reset the counters before each iteration.
+     */
+    @Setup(Level.Iteration)
+    public void reset() {
+        megabytes = 0;
+        lines = 0;
+    }
+
+    /**
+     * Count an input as processed.
+     */
+    public void add(BenchmarkInput input) {
+        megabytes += input.getBytes() / 1000000.0;
+        lines += input.getLines().size();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.item;
+
+import com.android.loganalysis.BenchmarkInput;
+import com.android.loganalysis.Throughput;
+import com.android.loganalysis.parser.LogcatParser;
+import com.android.loganalysis.util.LogGenerator.LogType;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for {@link GenericItem#toJson()}, on the item parsed from a generated logcat. The
+ * throughput counts the logcat which the item was parsed from.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ItemBenchmark {
+    @Param({"4M"})
+    public String size;
+
+    private BenchmarkInput mLogcat;
+    private LogcatItem mItem;
+
+    /**
+     * Generate the logcat and parse it.
+     */
+    @Setup
+    public void setup() {
+        mLogcat = BenchmarkInput.generate(LogType.LOGCAT, size);
+        mItem = new LogcatParser("2012").parse(mLogcat.getLines());
+    }
+
+    /**
+     * Benchmark {@link GenericItem#toJson()}.
+     */
+    @Benchmark
+    public JSONObject toJson(Throughput throughput) {
+        throughput.add(mLogcat);
+        return mItem.toJson();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.parser;
+
+import com.android.loganalysis.BenchmarkInput;
+import com.android.loganalysis.Throughput;
+import com.android.loganalysis.item.BugreportItem;
+import com.android.loganalysis.item.KernelLogItem;
+import com.android.loganalysis.item.LogcatItem;
+import com.android.loganalysis.item.MonkeyLogItem;
+import com.android.loganalysis.item.SmartMonkeyLogItem;
+import com.android.loganalysis.util.LogGenerator.LogType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for parsing whole logs. Each benchmark parses the same generated log once per
+ * operation. The logcat, kernel log and bugreport parsers are created once, as a server would
+ * share them, and the monkey log parsers are created for each log since they keep their state.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+    @Param({"4M"})
+    public String size;
+
+    private BenchmarkInput mLogcat;
+    private BenchmarkInput mKernelLog;
+    private BenchmarkInput mBugreport;
+    private BenchmarkInput mMonkeyLog;
+    private BenchmarkInput mSmartMonkeyLog;
+
+    private LogcatParser mLogcatParser;
+    private KernelLogParser mKernelLogParser;
+    private BugreportParser mBugreportParser;
+
+    /**
+     * Generate the logs and create the shared parsers.
+     */
+    @Setup
+    public void setup() {
+        mLogcat = BenchmarkInput.generate(LogType.LOGCAT, size);
+        mKernelLog = BenchmarkInput.generate(LogType.KERNEL_LOG, size);
+        mBugreport = BenchmarkInput.generate(LogType.BUGREPORT, size);
+        mMonkeyLog = BenchmarkInput.generate(LogType.MONKEY_LOG, size);
+        mSmartMonkeyLog = BenchmarkInput.generate(LogType.SMART_MONKEY_LOG, size);
+
+        mLogcatParser = new LogcatParser("2012");
+        mKernelLogParser = new KernelLogParser();
+        mBugreportParser = new BugreportParser();
+    }
+
+    /**
+     * Benchmark {@link LogcatParser}.
+     */
+    @Benchmark
+    public LogcatItem logcat(Throughput throughput) {
+        throughput.add(mLogcat);
+        return mLogcatParser.parse(mLogcat.getLines());
+    }
+
+    /**
+     * Benchmark {@link KernelLogParser}.
+     */
+    @Benchmark
+    public KernelLogItem kernelLog(Throughput throughput) {
+        throughput.add(mKernelLog);
+        return mKernelLogParser.parse(mKernelLog.getLines());
+    }
+
+    /**
+     * Benchmark {@link BugreportParser}.
+     */
+    @Benchmark
+    public BugreportItem bugreport(Throughput throughput) {
+        throughput.add(mBugreport);
+        return mBugreportParser.parse(mBugreport.getLines());
+    }
+
+    /**
+     * Benchmark {@link MonkeyLogParser}.
+     */
+    @Benchmark
+    public MonkeyLogItem monkeyLog(Throughput throughput) {
+        throughput.add(mMonkeyLog);
+        return new MonkeyLogParser().parse(mMonkeyLog.getLines());
+    }
+
+    /**
+     * Benchmark {@link SmartMonkeyLogParser}.
+     */
+    @Benchmark
+    public SmartMonkeyLogItem smartMonkeyLog(Throughput throughput) {
+        throughput.add(mSmartMonkeyLog);
+        return new SmartMonkeyLogParser().parse(mSmartMonkeyLog.getLines());
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2019 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.android.loganalysis.util;
+
+import com.android.loganalysis.BenchmarkInput;
+import com.android.loganalysis.Throughput;
+import com.android.loganalysis.util.LogGenerator.LogType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * Benchmarks for the utilities which the parsers run on every line: matching section headers
+ * with {@link RegexTrie}, matching kernel log messages with {@link LogPatternUtil} and keeping
+ * the tail of a log with {@link LogTailUtil}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UtilBenchmark {
+    private static final String[] SECTION_REGEXES = {
+        "------ MEMORY INFO .*",
+        "------ PROCRANK .*",
+        "------ KERNEL LOG .*",
+        "------ LAST KMSG .*",
+        "------ CPU INFO .*",
+        "------ SYSTEM PROPERTIES .*",
+        "------ (SYSTEM|MAIN|MAIN AND SYSTEM) LOG .*",
+        "------ VM TRACES AT LAST ANR .*",
+        "------ DUMPSYS .*",
+        "------ .*",
+    };
+
+    private static final String[] KERNEL_REGEXES = {
+        "smem: DIAG.*",
+        "smsm: AMSS FATAL ERROR.*",
+        "kernel BUG at .*",
+        "PVR_K:\\(Fatal\\): Debug Dump of PVR Services.*",
+        "Kernel panic.*",
+        "Unable to handle kernel paging request.*",
+        "Watchdog bark! Now = .*",
+        "Internal error:.*",
+        ".*avc:\\s.*scontext=\\w*:\\w*:([\\w\\s]*):\\w*\\s.*",
+    };
+
+    @Param({"4M"})
+    public String size;
+
+    private BenchmarkInput mLogcat;
+    private BenchmarkInput mKernelLog;
+    private List<String> mKernelMessages;
+
+    private RegexTrie<String> mTrie;
+    private LogPatternUtil mPatternUtil;
+
+    /**
+     * Generate the logs and add the patterns.
+     */
+    @Setup
+    public void setup() {
+        mLogcat = BenchmarkInput.generate(LogType.LOGCAT, size);
+        mKernelLog = BenchmarkInput.generate(LogType.KERNEL_LOG, size);
+        // Match the messages without the timestamps, as the kernel log parser does.
+        mKernelMessages = new ArrayList<String>(mKernelLog.getLines().size());
+        for (String line : mKernelLog.getLines()) {
+            mKernelMessages.add(line.substring(line.indexOf(']') + 2));
+        }
+
+        mTrie = new RegexTrie<String>();
+        for (String regex : SECTION_REGEXES) {
+            mTrie.put(regex, regex);
+        }
+        mPatternUtil = new LogPatternUtil();
+        for (String regex : KERNEL_REGEXES) {
+            mPatternUtil.addPattern(Pattern.compile(regex), regex);
+        }
+    }
+
+    /**
+     * Benchmark {@link RegexTrie#retrieve(String...)} on the lines of a logcat, as a section
+     * parser does for every line of a bugreport.
+     */
+    @Benchmark
+    public void regexTrieRetrieve(Throughput throughput, Blackhole blackhole) {
+        throughput.add(mLogcat);
+        for (String line : mLogcat.getLines()) {
+            blackhole.consume(mTrie.retrieve(line));
+        }
+    }
+
+    /**
+     * Benchmark {@link LogPatternUtil#checkMessage(String)} on the messages of a kernel log.
+     */
+    @Benchmark
+    public void logPatternCheckMessage(Throughput throughput, Blackhole blackhole) {
+        throughput.add(mKernelLog);
+        for (String message : mKernelMessages) {
+            blackhole.consume(mPatternUtil.checkMessage(message));
+        }
+    }
+
+    /**
+     * Benchmark {@link LogTailUtil} on the lines of a logcat, getting the last tail every hundred
+     * lines as the logcat parser does for its events.
+     */
+    @Benchmark
+    public void logTail(Throughput throughput, Blackhole blackhole) {
+        throughput.add(mLogcat);
+        LogTailUtil tailUtil = new LogTailUtil();
+        int id = 0;
+        for (String line : mLogcat.getLines()) {
+            tailUtil.addLine(id, line);
+            if (++id % 100 == 0) {
+                blackhole.consume(tailUtil.getLastTail());
+            }
+        }
+    }
+}